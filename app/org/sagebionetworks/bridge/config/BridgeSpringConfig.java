@@ -3,6 +3,9 @@ package org.sagebionetworks.bridge.config;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import javax.annotation.Resource;
 
@@ -64,6 +67,8 @@ import org.sagebionetworks.bridge.dynamodb.DynamoUserConsent3;
 import org.sagebionetworks.bridge.dynamodb.DynamoUtils;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.s3.S3Helper;
+import org.sagebionetworks.bridge.sqs.MessageQueue;
+import org.sagebionetworks.bridge.sqs.SqsMessageQueue;
 import org.sagebionetworks.bridge.upload.DecryptHandler;
 import org.sagebionetworks.bridge.upload.IosSchemaValidationHandler2;
 import org.sagebionetworks.bridge.upload.ParseJsonHandler;
@@ -218,12 +223,71 @@ public class BridgeSpringConfig {
         return new AmazonSQSClient(awsCredentials);
     }
 
+    @Bean(name = "uploadCompletionQueue")
+    @Autowired
+    public MessageQueue uploadCompletionQueue(BridgeConfig bridgeConfig, AmazonSQSClient sqsClient) {
+        return new SqsMessageQueue(sqsClient, bridgeConfig.getProperty("upload.completion.sqs.queue.url"));
+    }
+
     @Bean(name = "asyncExecutorService")
     @Resource(name = "bridgeConfig")
     public ExecutorService asyncExecutorService(BridgeConfig bridgeConfig) {
         return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("async.worker.thread.count"));
     }
 
+    @Bean(name = "dynamoIndexPrefetchExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService dynamoIndexPrefetchExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("ddb.index.prefetch.thread.count"));
+    }
+
+    @Bean(name = "dynamoBatchLoadExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService dynamoBatchLoadExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("ddb.batch.load.thread.count"));
+    }
+
+    @Bean(name = "dynamoScanExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService dynamoScanExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("ddb.scan.thread.count"));
+    }
+
+    @Bean(name = "healthDataDeleteExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService healthDataDeleteExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("health.data.delete.thread.count"));
+    }
+
+    @Bean(name = "uploadArtifactsExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService uploadArtifactsExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("upload.artifacts.thread.count"));
+    }
+
+    @Bean(name = "uploadValidationHandlerExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService uploadValidationHandlerExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("upload.validation.handler.thread.count"));
+    }
+
+    @Bean(name = "uploadJsonParsePool")
+    @Resource(name = "bridgeConfig")
+    public ForkJoinPool uploadJsonParsePool(BridgeConfig bridgeConfig) {
+        return new ForkJoinPool(bridgeConfig.getPropertyAsInt("upload.json.parse.thread.count"));
+    }
+
+    @Bean(name = "uploadValidationStatusExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ScheduledExecutorService uploadValidationStatusExecutorService(BridgeConfig bridgeConfig) {
+        // Long-poll timeouts are usually cancelled, since most uploads finish validation first. Remove them from the
+        // queue right away instead of letting them pile up until they would have fired.
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(bridgeConfig.getPropertyAsInt(
+                "upload.status.wait.thread.count"));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
     @Bean(name = "supportEmail")
     @Resource(name = "bridgeConfig")
     public String supportEmail(BridgeConfig bridgeConfig) {
@@ -233,7 +297,8 @@ public class BridgeSpringConfig {
     @Bean(name = "cmsEncryptorCache")
     @Autowired
     public LoadingCache<String, CmsEncryptor> cmsEncryptorCache(CmsEncryptorCacheLoader cacheLoader) {
-        return CacheBuilder.newBuilder().build(cacheLoader);
+        // No expiration. CmsEncryptorCacheRefresher warms and reloads this in the background.
+        return CacheBuilder.newBuilder().recordStats().build(cacheLoader);
     }
 
     @Bean(name = "dynamoUtils")
@@ -307,7 +372,22 @@ public class BridgeSpringConfig {
     public DynamoIndexHelper healthDataHealthCodeIndex(AmazonDynamoDBClient dynamoDBClient,
                                                        DynamoUtils dynamoUtils,
                                                        DynamoNamingHelper dynamoNamingHelper) {
-        return DynamoIndexHelper.create(DynamoHealthDataRecord.class, "healthCode-index", dynamoDBClient, dynamoNamingHelper, dynamoUtils);
+        DynamoIndexHelper indexHelper = DynamoIndexHelper.create(DynamoHealthDataRecord.class, "healthCode-index",
+                dynamoDBClient, dynamoNamingHelper, dynamoUtils);
+        indexHelper.setPrefetchExecutorService(dynamoIndexPrefetchExecutorService(bridgeConfig()));
+        return indexHelper;
+    }
+
+    @Bean(name = "healthDataHealthCodeCreatedOnIndex")
+    @Autowired
+    public DynamoIndexHelper healthDataHealthCodeCreatedOnIndex(AmazonDynamoDBClient dynamoDBClient,
+                                                                DynamoUtils dynamoUtils,
+                                                                DynamoNamingHelper dynamoNamingHelper) {
+        DynamoIndexHelper indexHelper = DynamoIndexHelper.create(DynamoHealthDataRecord.class,
+                "healthCode-createdOn-index", dynamoDBClient, dynamoNamingHelper, dynamoUtils);
+        indexHelper.setPrefetchExecutorService(dynamoIndexPrefetchExecutorService(bridgeConfig()));
+        indexHelper.setBatchLoadExecutorService(dynamoBatchLoadExecutorService(bridgeConfig()));
+        return indexHelper;
     }
 
     @Bean(name = "healthDataUploadDateIndex")
@@ -315,7 +395,11 @@ public class BridgeSpringConfig {
     public DynamoIndexHelper healthDataUploadDateIndexDynamoUtils(AmazonDynamoDBClient dynamoDBClient,
                                                                   DynamoUtils dynamoUtils,
                                                                   DynamoNamingHelper dynamoNamingHelper) {
-        return DynamoIndexHelper.create(DynamoHealthDataRecord.class, "uploadDate-index", dynamoDBClient, dynamoNamingHelper, dynamoUtils);
+        DynamoIndexHelper indexHelper = DynamoIndexHelper.create(DynamoHealthDataRecord.class, "uploadDate-index",
+                dynamoDBClient, dynamoNamingHelper, dynamoUtils);
+        indexHelper.setPrefetchExecutorService(dynamoIndexPrefetchExecutorService(bridgeConfig()));
+        indexHelper.setBatchLoadExecutorService(dynamoBatchLoadExecutorService(bridgeConfig()));
+        return indexHelper;
     }
 
     @Bean(name = "activitySchedulePlanGuidIndex")
@@ -335,6 +419,15 @@ public class BridgeSpringConfig {
         return DynamoIndexHelper.create(DynamoUploadSchema.class, "studyId-index", dynamoDBClient, dynamoNamingHelper, dynamoUtils);
     }
 
+    @Bean(name = "uploadDedupeRequestedOnIndex")
+    @Autowired
+    public DynamoIndexHelper uploadDedupeRequestedOnIndex(AmazonDynamoDBClient dynamoDBClient,
+                                                          DynamoUtils dynamoUtils,
+                                                          DynamoNamingHelper dynamoNamingHelper) {
+        return DynamoIndexHelper.create(DynamoUploadDedupe.class, "uploadRequestedDate-uploadRequestedOn-index",
+                dynamoDBClient, dynamoNamingHelper, dynamoUtils);
+    }
+
     @Bean(name = "uploadDdbMapper")
     @Autowired
     public DynamoDBMapper uploadDdbMapper(DynamoUtils dynamoUtils) {
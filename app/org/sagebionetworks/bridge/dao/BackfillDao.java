@@ -36,6 +36,12 @@ public interface BackfillDao {
      */
     BackfillRecord createRecord(String taskId, String studyId, String accountId, String operation);
 
+    /**
+     * Creates a new backfill record for the specified task, for an upload rather than an account. The upload ID is
+     * under the "upload" key of the record's JSON.
+     */
+    BackfillRecord createUploadRecord(String taskId, String studyId, String uploadId, String operation);
+
     /**
      * Gets the list of records of a particular task.
      */
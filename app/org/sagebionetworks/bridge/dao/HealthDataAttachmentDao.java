@@ -1,6 +1,7 @@
 package org.sagebionetworks.bridge.dao;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 
 import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachment;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachmentBuilder;
@@ -18,6 +19,16 @@ public interface HealthDataAttachmentDao {
      */
     String createOrUpdateAttachment(@Nonnull HealthDataAttachment attachment);
 
+    /**
+     * DAO method used by worker apps to create or update a batch of health data attachments in as few round trips as
+     * possible. Attachments without IDs will have IDs assigned, as in {@link #createOrUpdateAttachment}.
+     *
+     * @param attachmentList
+     *         list of attachment objects to create or update, must be non-null
+     * @return list of IDs of the created or updated attachments, in the same order as the passed in list
+     */
+    List<String> createOrUpdateAttachments(@Nonnull List<HealthDataAttachment> attachmentList);
+
     /** Gets a builder instance, used for building prototype health data records for create or update. */
     HealthDataAttachmentBuilder getRecordBuilder();
 }
@@ -1,8 +1,11 @@
 package org.sagebionetworks.bridge.dao;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.List;
+import java.util.function.Consumer;
 
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 
@@ -20,7 +23,8 @@ public interface HealthDataDao {
 
     /**
      * DAO method user by admin to delete all health data records for a health code (user in study). This is generally
-     * used through the user admin service, when the admin deletes a user.
+     * used through the user admin service, when the admin deletes a user. Records are deleted as they're queried, so
+     * this doesn't hold all of the user's records in memory.
      *
      * @param healthCode
      *         health code of the health data records to exist, keyed to a particular user in a study
@@ -47,6 +51,72 @@ public interface HealthDataDao {
      */
     List<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate);
 
+    /**
+     * DAO method used by worker apps to query one page of health data records uploaded for a specific date, generally
+     * used for export. Unlike {@link #getRecordsForUploadDate(String)}, this only holds one page in memory.
+     *
+     * @param uploadDate
+     *         upload date in YYYY-MM-DD format, must be non-null, non-empty, and must represent a valid date
+     * @param offsetKey
+     *         offset key from the previous page, or null for the first page
+     * @param pageSize
+     *         max number of records to return
+     * @return page of health records uploaded on that date, with the offset key for the next page, if there is one
+     */
+    PagedResourceList<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate, @Nullable String offsetKey,
+            int pageSize);
+
+    /**
+     * DAO method used by worker apps to stream all health data records uploaded for a specific date to the given
+     * consumer, generally used for export. Memory use doesn't depend on how many records were uploaded that day.
+     *
+     * @param uploadDate
+     *         upload date in YYYY-MM-DD format, must be non-null, non-empty, and must represent a valid date
+     * @param consumer
+     *         called with each health record uploaded on that date, on the caller's thread
+     * @return number of records streamed
+     */
+    int streamRecordsForUploadDate(@Nonnull String uploadDate, @Nonnull Consumer<HealthDataRecord> consumer);
+
+    /**
+     * DAO method used by researchers and support tools to query one page of a participant's health data records,
+     * created within the given time range. Only records in the time range are read.
+     *
+     * @param healthCode
+     *         health code of the participant whose records to query
+     * @param createdOnStart
+     *         start of the created-on range, in epoch milliseconds, inclusive
+     * @param createdOnEnd
+     *         end of the created-on range, in epoch milliseconds, inclusive
+     * @param offsetKey
+     *         offset key from the previous page, or null for the first page
+     * @param pageSize
+     *         max number of records to return
+     * @return page of health records created within the time range, in created-on order, with the offset key for the
+     *         next page, if there is one
+     */
+    PagedResourceList<HealthDataRecord> getRecordsForHealthCodeCreatedOn(@Nonnull String healthCode,
+            long createdOnStart, long createdOnEnd, @Nullable String offsetKey, int pageSize);
+
+    /**
+     * DAO method used by researchers and support tools to stream a participant's health data records, created within
+     * the given time range, to the given consumer. Only records in the time range are read, and memory use doesn't
+     * depend on how many records there are.
+     *
+     * @param healthCode
+     *         health code of the participant whose records to query
+     * @param createdOnStart
+     *         start of the created-on range, in epoch milliseconds, inclusive
+     * @param createdOnEnd
+     *         end of the created-on range, in epoch milliseconds, inclusive
+     * @param consumer
+     *         called with each health record created within the time range, in created-on order, on the caller's
+     *         thread
+     * @return number of records streamed
+     */
+    int streamRecordsForHealthCodeCreatedOn(@Nonnull String healthCode, long createdOnStart, long createdOnEnd,
+            @Nonnull Consumer<HealthDataRecord> consumer);
+
     /**
      * Gets a builder instance, used for building prototype health data records. This is generally used by worker apps
      * to unpack uploads.
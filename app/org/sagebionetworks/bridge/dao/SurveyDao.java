@@ -33,11 +33,13 @@ public interface SurveyDao {
     /**
      * Make this version of this survey available for scheduling. One scheduled for publishing, 
      * a survey version can no longer be changed (it can still be the source of a new version).  
-     * There can be more than one published version of a survey.
+     * There can be more than one published version of a survey. The upload schema for the survey must already have
+     * been created. Publishing a survey that's already published does nothing.
      * @param keys
+     * @param schemaRevision revision of the upload schema created from this survey
      * @return
      */
-    public Survey publishSurvey(StudyIdentifier study, GuidCreatedOnVersionHolder keys);
+    public Survey publishSurvey(GuidCreatedOnVersionHolder keys, int schemaRevision);
 
     /**
      * Delete this survey. Survey still exists in system and can be retrieved by direct reference
@@ -52,7 +54,7 @@ public interface SurveyDao {
     /**
      * Admin API to remove the survey from the backing store. This exists to clean up surveys from tests. This will
      * remove the survey regardless of publish status, whether it has responses. This will delete all survey elements
-     * as well.
+     * as well, but not the survey's upload schemas.
      *
      * @param keys survey keys (guid, created-on timestamp)
      */
@@ -1,6 +1,7 @@
 package org.sagebionetworks.bridge.dao;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.List;
 
 import org.sagebionetworks.bridge.models.upload.Upload;
@@ -15,9 +16,28 @@ public interface UploadDao {
      *         upload request from user
      * @param healthCode
      *         user's health code
+     * @param duplicateUploadId
+     *         if this upload is a dupe of a previously completed upload, the upload ID of the original upload, null
+     *         otherwise
      * @return upload metadata of created upload
      */
-    Upload createUpload(@Nonnull UploadRequest uploadRequest, @Nonnull String healthCode);
+    Upload createUpload(@Nonnull UploadRequest uploadRequest, @Nonnull String healthCode,
+            @Nullable String duplicateUploadId);
+
+    /**
+     * Creates several uploads for the same user in a single batch write.
+     *
+     * @param uploadRequestList
+     *         upload requests from user, must be non-null and non-empty
+     * @param healthCode
+     *         user's health code
+     * @param duplicateUploadIdList
+     *         for each upload request, in the same order, the upload ID of the original upload if the upload is a
+     *         dupe of a previously completed upload, or null otherwise; must be the same size as the request list
+     * @return upload metadata of created uploads, in the same order as the upload requests
+     */
+    List<Upload> createUploads(@Nonnull List<UploadRequest> uploadRequestList, @Nonnull String healthCode,
+            @Nonnull List<String> duplicateUploadIdList);
 
     /**
      * Gets the upload metadata associated with this upload.
@@ -28,6 +48,22 @@ public interface UploadDao {
      */
     Upload getUpload(@Nonnull String uploadId);
 
+    /**
+     * Marks the given upload as a multipart upload and persists the multipart upload info. This is called after the
+     * upload is created, since the S3 multipart upload is keyed by the upload ID.
+     *
+     * @param upload
+     *         upload to mark as multipart, must be non-null
+     * @param multipartUploadId
+     *         S3 multipart upload ID, must be non-null and non-empty
+     * @param partSize
+     *         size of each part in bytes, except for the last part, which may be smaller
+     * @param partCount
+     *         number of parts
+     */
+    void writeMultipartUploadInfo(@Nonnull Upload upload, @Nonnull String multipartUploadId, long partSize,
+            int partCount);
+
     /**
      * Signals to the Bridge server that the file has been uploaded. This also kicks off upload validation.
      *
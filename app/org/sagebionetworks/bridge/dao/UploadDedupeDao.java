@@ -1,5 +1,8 @@
 package org.sagebionetworks.bridge.dao;
 
+import java.util.Map;
+import java.util.Set;
+
 import org.joda.time.DateTime;
 
 /** DAO to answer the simple question: Given some upload attributes, is this upload a duplicate? */
@@ -26,6 +29,19 @@ public interface UploadDedupeDao {
      */
     String getDuplicate(String healthCode, String uploadMd5, DateTime uploadRequestedOn);
 
+    /**
+     * Batch version of {@link #getDuplicate}, for checking several uploads from the same user at once.
+     *
+     * @param healthCode
+     *         user's health code
+     * @param uploadMd5Set
+     *         MD5s of the uploads to check
+     * @param uploadRequestedOn
+     *         time that the uploads were requested
+     * @return map from upload MD5 to the upload ID of the previous upload, containing only the MD5s that are dupes
+     */
+    Map<String, String> getDuplicates(String healthCode, Set<String> uploadMd5Set, DateTime uploadRequestedOn);
+
     /**
      * Writes upload attributes to the DAO so that future calls to {@link #getDuplicate} recognize these attributes as
      * duplicates.
@@ -40,4 +56,16 @@ public interface UploadDedupeDao {
      *         upload ID to register in the dedupe table
      */
     void registerUpload(String healthCode, String uploadMd5, DateTime uploadRequestedOn, String originalUploadId);
+
+    /**
+     * Batch version of {@link #registerUpload}, for registering several uploads from the same user at once.
+     *
+     * @param healthCode
+     *         user's health code
+     * @param uploadIdsByMd5
+     *         map from upload MD5 to the upload ID to register for that MD5
+     * @param uploadRequestedOn
+     *         time that the uploads were requested
+     */
+    void registerUploads(String healthCode, Map<String, String> uploadIdsByMd5, DateTime uploadRequestedOn);
 }
@@ -0,0 +1,112 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Charsets;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+/**
+ * <p>
+ * DynamoDB marshaller for large JsonNode attributes. JSON at least {@value #DEFAULT_THRESHOLD_BYTES} bytes long is
+ * gzipped and stored as base64, prefixed with the format marker {@value #FORMAT_MARKER_GZIP}, as long as that's
+ * smaller than the plain JSON. Smaller JSON is stored as plain JSON, same as {@link JsonNodeMarshaller}.
+ * </p>
+ * <p>
+ * DynamoDBMarshaller in our version of the AWS SDK can only marshall to strings, so this can't use a binary
+ * attribute. The base64 encoding costs a third of the compressed size, but JSON with repeated keys typically
+ * compresses well enough that it doesn't matter.
+ * </p>
+ * <p>
+ * Reads always handle both formats, so records written before this marshaller, or with compression disabled, still
+ * read correctly. Compression on write is controlled by the ddb.json.compression.enabled config, so it can stay off
+ * until everything that reads these tables directly understands the compressed format.
+ * </p>
+ */
+public class CompressedJsonNodeMarshaller extends JsonNodeMarshaller {
+    // package-scoped for unit tests
+    static final String CONFIG_KEY_COMPRESSION_ENABLED = "ddb.json.compression.enabled";
+    static final int DEFAULT_THRESHOLD_BYTES = 1024;
+    static final String FORMAT_MARKER_GZIP = "gz1:";
+
+    private static final boolean DEFAULT_COMPRESSION_ENABLED;
+    static {
+        BridgeConfig config = BridgeConfigFactory.getConfig();
+        DEFAULT_COMPRESSION_ENABLED = Boolean.parseBoolean(config.getProperty(CONFIG_KEY_COMPRESSION_ENABLED));
+    }
+
+    private final boolean compressionEnabled;
+    private final int thresholdBytes;
+
+    /** Creates a marshaller with compression enabled from config. This is called by the DynamoDB mapper. */
+    public CompressedJsonNodeMarshaller() {
+        this(DEFAULT_COMPRESSION_ENABLED, DEFAULT_THRESHOLD_BYTES);
+    }
+
+    /** Creates a marshaller with the given compression options. This is used by unit tests and benchmarks. */
+    public CompressedJsonNodeMarshaller(boolean compressionEnabled, int thresholdBytes) {
+        this.compressionEnabled = compressionEnabled;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String marshall(JsonNode node) {
+        String json = super.marshall(node);
+        if (!compressionEnabled) {
+            return json;
+        }
+
+        byte[] jsonBytes = json.getBytes(Charsets.UTF_8);
+        if (jsonBytes.length < thresholdBytes) {
+            return json;
+        }
+
+        // Base64 is pure ASCII, so its length is its size in bytes.
+        String compressed = FORMAT_MARKER_GZIP + Base64.getEncoder().encodeToString(gzip(jsonBytes));
+        return compressed.length() < jsonBytes.length ? compressed : json;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public JsonNode unmarshall(Class<JsonNode> clazz, String data) {
+        // JSON never starts with the format marker, so anything else is plain JSON.
+        if (!data.startsWith(FORMAT_MARKER_GZIP)) {
+            return super.unmarshall(clazz, data);
+        }
+
+        byte[] compressed;
+        try {
+            compressed = Base64.getDecoder().decode(data.substring(FORMAT_MARKER_GZIP.length()));
+        } catch (IllegalArgumentException ex) {
+            throw new DynamoDBMappingException("Compressed JSON attribute isn't valid base64", ex);
+        }
+        try (InputStream jsonStream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return BridgeObjectMapper.get().readTree(jsonStream);
+        } catch (IOException ex) {
+            throw new DynamoDBMappingException("Error reading compressed JSON attribute: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(bytes.length / 4);
+        try (OutputStream gzipStream = new GZIPOutputStream(byteStream)) {
+            gzipStream.write(bytes);
+        } catch (IOException ex) {
+            // Writing to a byte array doesn't throw.
+            throw new IllegalStateException(ex);
+        }
+        return byteStream.toByteArray();
+    }
+}
@@ -11,16 +11,15 @@ import java.util.Map;
 import javax.annotation.Resource;
 
 import org.joda.time.DateTime;
-import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.ActivityEventDao;
 import org.sagebionetworks.bridge.models.activities.ActivityEvent;
 import org.sagebionetworks.bridge.models.activities.ActivityEventType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.Lists;
@@ -33,11 +32,17 @@ public class DynamoActivityEventDao implements ActivityEventDao {
     private static final String TWO_MONTHS = TWO_MONTHS_BEFORE_ENROLLMENT.name().toLowerCase();
     
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
 
     @Resource(name = "activityEventDdbMapper")
     public final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
+
+    @Autowired
+    public final void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
     
     @Override
     public void publishEvent(ActivityEvent event) {
@@ -90,8 +95,7 @@ public class DynamoActivityEventDao implements ActivityEventDao {
         objectsToDelete.addAll(queryResults);
         
         if (!objectsToDelete.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchDelete(objectsToDelete);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchDelete(mapper, objectsToDelete);
         }
     }
     
@@ -93,6 +93,17 @@ public class DynamoBackfillDao implements BackfillDao {
         return record;
     }
 
+    @Override
+    public BackfillRecord createUploadRecord(String taskId, String studyId, String uploadId, String operation) {
+        checkArgument(isNotBlank(taskId));
+        checkArgument(isNotBlank(studyId));
+        checkArgument(isNotBlank(uploadId));
+        checkArgument(isNotBlank(operation));
+        DynamoBackfillRecord record = DynamoBackfillRecord.forUpload(taskId, studyId, uploadId, operation);
+        recordMapper.save(record);
+        return record;
+    }
+
     @Override
     public Iterator<DynamoBackfillRecord> getRecords(String taskId) {
         DynamoDBQueryExpression<DynamoBackfillRecord> queryExpression = getRecordQueryExpression(taskId, 0);
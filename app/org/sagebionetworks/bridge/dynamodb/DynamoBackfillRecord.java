@@ -24,6 +24,7 @@ public class DynamoBackfillRecord implements BackfillRecord {
 
     private String studyId;
     private String accountId;
+    private String uploadId;
     private String operation;
 
     /**
@@ -40,6 +41,12 @@ public class DynamoBackfillRecord implements BackfillRecord {
         this.operation = operation;
     }
 
+    static DynamoBackfillRecord forUpload(String taskId, String studyId, String uploadId, String operation) {
+        DynamoBackfillRecord record = new DynamoBackfillRecord(taskId, studyId, null, operation);
+        record.uploadId = uploadId;
+        return record;
+    }
+
     @DynamoDBHashKey
     @Override
     public String getTaskId() {
@@ -86,6 +93,16 @@ public class DynamoBackfillRecord implements BackfillRecord {
         this.accountId = account;
     }
 
+    /**
+     * Upload ID, for backfills that operate on uploads rather than accounts, such as upload validation backfills.
+     */
+    public String getUploadId() {
+        return uploadId;
+    }
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
     public String getOperation() {
         return operation;
     }
@@ -99,6 +116,9 @@ public class DynamoBackfillRecord implements BackfillRecord {
         ObjectNode node = MAPPER.createObjectNode();
         node.put("study", studyId);
         node.put("account", accountId);
+        if (uploadId != null) {
+            node.put("upload", uploadId);
+        }
         node.put("operation", operation);
         return node;
     }
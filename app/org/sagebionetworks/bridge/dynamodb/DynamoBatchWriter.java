@@ -0,0 +1,302 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import javax.annotation.Nonnull;
+import javax.annotation.Resource;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.config.BridgeConfig;
+
+/**
+ * <p>
+ * Batch saves and deletes for all DAOs. The mapper's batchSave and batchDelete hand back a FailedBatch for every
+ * sub-batch of 25 items that threw, which is usually throttling, since our client only retries once. Rather than
+ * failing the whole request, this retries just the unprocessed items of those sub-batches, with jittered exponential
+ * backoff, up to {@value #MAX_ATTEMPTS} attempts. Items that still can't be written are reported through
+ * {@link BridgeUtils#ifFailuresThrowException}, same as before.
+ * </p>
+ * <p>
+ * Batch writes from all DAOs share a limit on how many BatchWriteItem requests can be in flight at once
+ * (ddb.batch.write.max.concurrency), so a burst of deletes can't eat all of a table's write capacity. To make that
+ * limit count requests rather than callers, objects are split into sub-batches of {@value #MAX_BATCH_SIZE} here, and
+ * each sub-batch (and each retry) holds a permit only while its request is in flight. Throttling is counted per table,
+ * see {@link #getMetrics}.
+ * </p>
+ */
+@Component
+public class DynamoBatchWriter {
+    private static final Logger logger = LoggerFactory.getLogger(DynamoBatchWriter.class);
+
+    // package-scoped for unit tests
+    static final String CONFIG_KEY_MAX_CONCURRENCY = "ddb.batch.write.max.concurrency";
+    static final int DEFAULT_MAX_CONCURRENCY = 8;
+    static final int MAX_ATTEMPTS = 5;
+
+    // Max number of items in a single BatchWriteItem request.
+    static final int MAX_BATCH_SIZE = 25;
+
+    private static final long RETRY_BASE_DELAY_MILLIS = 100;
+    private static final long RETRY_MAX_DELAY_MILLIS = 3000;
+    private static final String ERROR_CODE_THROTTLING = "ThrottlingException";
+
+    /** Batch write counters for a single table. */
+    public static class TableMetrics {
+        private final AtomicLong throttledCount = new AtomicLong();
+        private final AtomicLong retriedItemCount = new AtomicLong();
+        private final AtomicLong failedItemCount = new AtomicLong();
+
+        /** Number of batch writes that were throttled, or came back with unprocessed items for this table. */
+        public long getThrottledCount() {
+            return throttledCount.get();
+        }
+
+        /** Number of items retried, counted once per retry. */
+        public long getRetriedItemCount() {
+            return retriedItemCount.get();
+        }
+
+        /** Number of items that couldn't be written after all retries. */
+        public long getFailedItemCount() {
+            return failedItemCount.get();
+        }
+    }
+
+    private final ConcurrentMap<String, TableMetrics> metricsByTable = new ConcurrentHashMap<>();
+    private AmazonDynamoDB dynamoDbClient;
+    private Semaphore permits = new Semaphore(DEFAULT_MAX_CONCURRENCY);
+    private long retryBaseDelayMillis = RETRY_BASE_DELAY_MILLIS;
+
+    /** Bridge config, used to get the max number of concurrent batch writes. */
+    @Autowired
+    public final void setConfig(BridgeConfig config) {
+        this.permits = new Semaphore(config.getPropertyAsInt(CONFIG_KEY_MAX_CONCURRENCY));
+    }
+
+    /** DynamoDB client, used to retry unprocessed items. This is configured by Spring. */
+    @Resource(name = "dynamoDbClient")
+    public final void setDynamoDbClient(AmazonDynamoDB dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+    }
+
+    /** Base delay for retries, doubled on each retry. Package-scoped so unit tests can set 0. */
+    void setRetryBaseDelayMillis(long retryBaseDelayMillis) {
+        this.retryBaseDelayMillis = retryBaseDelayMillis;
+    }
+
+    /**
+     * Saves the given objects using the mapper's batch save, retrying unprocessed items.
+     *
+     * @param mapper
+     *         mapper for the objects' table
+     * @param objectList
+     *         objects to save
+     * @throws org.sagebionetworks.bridge.exceptions.BridgeServiceException
+     *         if any objects couldn't be saved after retries
+     */
+    public void batchSave(@Nonnull DynamoDBMapper mapper, @Nonnull List<?> objectList) {
+        BridgeUtils.ifFailuresThrowException(batchSaveAndGetFailures(mapper, objectList));
+    }
+
+    /**
+     * Like {@link #batchSave}, but returns the failed batches that are left after retries instead of throwing, for
+     * callers that need to know which objects weren't saved.
+     *
+     * @param mapper
+     *         mapper for the objects' table
+     * @param objectList
+     *         objects to save
+     * @return failed batches with the items that still couldn't be saved, or an empty list if everything was saved
+     */
+    public List<DynamoDBMapper.FailedBatch> batchSaveAndGetFailures(@Nonnull DynamoDBMapper mapper,
+            @Nonnull List<?> objectList) {
+        return write(objectList, oneBatch -> mapper.batchSave(oneBatch));
+    }
+
+    /**
+     * Deletes the given objects using the mapper's batch delete, retrying unprocessed items.
+     *
+     * @param mapper
+     *         mapper for the objects' table
+     * @param objectList
+     *         objects to delete
+     * @throws org.sagebionetworks.bridge.exceptions.BridgeServiceException
+     *         if any objects couldn't be deleted after retries
+     */
+    public void batchDelete(@Nonnull DynamoDBMapper mapper, @Nonnull List<?> objectList) {
+        BridgeUtils.ifFailuresThrowException(batchDeleteAndGetFailures(mapper, objectList));
+    }
+
+    /**
+     * Like {@link #batchDelete}, but returns the failed batches that are left after retries instead of throwing, for
+     * callers that collect failures from several calls.
+     *
+     * @param mapper
+     *         mapper for the objects' table
+     * @param objectList
+     *         objects to delete
+     * @return failed batches with the items that still couldn't be deleted, or an empty list if everything was deleted
+     */
+    public List<DynamoDBMapper.FailedBatch> batchDeleteAndGetFailures(@Nonnull DynamoDBMapper mapper,
+            @Nonnull List<?> objectList) {
+        return write(objectList, oneBatch -> mapper.batchDelete(oneBatch));
+    }
+
+    /** Batch write counters for the given table. Counters for tables we haven't written to are all zero. */
+    public TableMetrics getMetrics(@Nonnull String tableName) {
+        return metricsByTable.computeIfAbsent(tableName, key -> new TableMetrics());
+    }
+
+    /** Batch write counters for every table we've had to retry, keyed by table name. */
+    public Map<String, TableMetrics> getAllMetrics() {
+        return ImmutableMap.copyOf(metricsByTable);
+    }
+
+    // Writes the objects one sub-batch at a time, so the mapper only ever sends one request per permit, and retries
+    // each sub-batch's unprocessed items before moving on to the next.
+    private List<DynamoDBMapper.FailedBatch> write(List<?> objectList,
+            Function<List<?>, List<DynamoDBMapper.FailedBatch>> batchWrite) {
+        List<DynamoDBMapper.FailedBatch> remainingFailureList = Lists.newArrayList();
+        for (List<?> oneBatch : Iterables.partition(objectList, MAX_BATCH_SIZE)) {
+            List<DynamoDBMapper.FailedBatch> failureList;
+            permits.acquireUninterruptibly();
+            try {
+                failureList = batchWrite.apply(oneBatch);
+            } finally {
+                permits.release();
+            }
+
+            for (DynamoDBMapper.FailedBatch oneFailure : failureList) {
+                DynamoDBMapper.FailedBatch remainingFailure = retry(oneFailure);
+                if (remainingFailure != null) {
+                    remainingFailureList.add(remainingFailure);
+                }
+            }
+        }
+        return remainingFailureList;
+    }
+
+    /**
+     * Retries the unprocessed items of a failed sub-batch. Returns null if they were all written, or a failed batch
+     * with whatever is still unprocessed.
+     */
+    private DynamoDBMapper.FailedBatch retry(DynamoDBMapper.FailedBatch failure) {
+        Map<String, List<WriteRequest>> unprocessedItems = failure.getUnprocessedItems();
+        Exception lastException = failure.getException();
+        if (unprocessedItems == null || unprocessedItems.isEmpty()) {
+            // Nothing we can retry. Pass the failure on as is.
+            return failure;
+        }
+        recordThrottling(unprocessedItems, lastException);
+
+        int attempt = 1;
+        while (!unprocessedItems.isEmpty() && attempt < MAX_ATTEMPTS && isRetryable(lastException)) {
+            long delayMillis = getRetryDelayMillis(attempt);
+            logger.warn("Batch write has " + countItems(unprocessedItems) + " unprocessed items in " +
+                    unprocessedItems.keySet() + " on attempt " + attempt + ", retrying in " + delayMillis + " ms");
+            Uninterruptibles.sleepUninterruptibly(delayMillis, TimeUnit.MILLISECONDS);
+            attempt++;
+
+            for (Map.Entry<String, List<WriteRequest>> oneEntry : unprocessedItems.entrySet()) {
+                getMetrics(oneEntry.getKey()).retriedItemCount.addAndGet(oneEntry.getValue().size());
+            }
+            permits.acquireUninterruptibly();
+            try {
+                // The mapper never puts more than 25 items in a sub-batch, so this fits in one request.
+                BatchWriteItemResult result = dynamoDbClient.batchWriteItem(new BatchWriteItemRequest()
+                        .withRequestItems(unprocessedItems));
+                unprocessedItems = result.getUnprocessedItems();
+                lastException = null;
+            } catch (AmazonClientException ex) {
+                lastException = ex;
+            } finally {
+                permits.release();
+            }
+
+            if (unprocessedItems != null && !unprocessedItems.isEmpty()) {
+                recordThrottling(unprocessedItems, lastException);
+            }
+        }
+
+        if (unprocessedItems == null || unprocessedItems.isEmpty()) {
+            return null;
+        }
+
+        for (Map.Entry<String, List<WriteRequest>> oneEntry : unprocessedItems.entrySet()) {
+            getMetrics(oneEntry.getKey()).failedItemCount.addAndGet(oneEntry.getValue().size());
+        }
+        logger.error("Giving up on batch write with " + countItems(unprocessedItems) + " unprocessed items in " +
+                unprocessedItems.keySet() + " after " + attempt + " attempts");
+
+        DynamoDBMapper.FailedBatch remainingFailure = new DynamoDBMapper.FailedBatch();
+        remainingFailure.setUnprocessedItems(unprocessedItems);
+        remainingFailure.setException(lastException != null ? lastException : new AmazonClientException(
+                "Items still unprocessed after " + attempt + " attempts"));
+        return remainingFailure;
+    }
+
+    // Unprocessed items with no exception means DynamoDB didn't get to them, which is throttling too.
+    private void recordThrottling(Map<String, List<WriteRequest>> unprocessedItems, Exception ex) {
+        if (ex == null || isThrottling(ex)) {
+            for (String oneTableName : unprocessedItems.keySet()) {
+                getMetrics(oneTableName).throttledCount.incrementAndGet();
+            }
+        }
+    }
+
+    // Full jitter: a random delay up to the exponential backoff for this attempt, so retries from concurrent writers
+    // don't all land at once.
+    private long getRetryDelayMillis(int attempt) {
+        long maxDelayMillis = Math.min(retryBaseDelayMillis << (attempt - 1), RETRY_MAX_DELAY_MILLIS);
+        return ThreadLocalRandom.current().nextLong(maxDelayMillis + 1);
+    }
+
+    private static boolean isThrottling(Exception ex) {
+        return ex instanceof ProvisionedThroughputExceededException || (ex instanceof AmazonServiceException &&
+                ERROR_CODE_THROTTLING.equals(((AmazonServiceException) ex).getErrorCode()));
+    }
+
+    // Throttling, server errors, and client errors (like timeouts) are worth retrying. Anything else, like a validation
+    // error, will just fail again.
+    private static boolean isRetryable(Exception ex) {
+        if (ex == null || isThrottling(ex)) {
+            return true;
+        }
+        if (ex instanceof AmazonServiceException) {
+            return ((AmazonServiceException) ex).getStatusCode() >= 500;
+        }
+        return ex instanceof AmazonClientException;
+    }
+
+    private static int countItems(Map<String, List<WriteRequest>> unprocessedItems) {
+        int count = 0;
+        for (List<WriteRequest> oneRequestList : unprocessedItems.values()) {
+            count += oneRequestList.size();
+        }
+        return count;
+    }
+}
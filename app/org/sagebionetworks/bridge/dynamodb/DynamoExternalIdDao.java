@@ -24,7 +24,6 @@ import org.joda.time.DateTimeUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.config.Config;
 import org.sagebionetworks.bridge.dao.ExternalIdDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
@@ -38,7 +37,6 @@ import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
@@ -65,6 +63,7 @@ public class DynamoExternalIdDao implements ExternalIdDao {
     private int addLimit;
     private int lockDuration;
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
 
     /** Gets the add limit and lock duration from Config. */
     @Autowired
@@ -78,6 +77,11 @@ public class DynamoExternalIdDao implements ExternalIdDao {
         this.mapper = mapper;
     }
 
+    @Autowired
+    public final void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
     @Override
     public PagedResourceList<ExternalIdentifierInfo> getExternalIds(StudyIdentifier studyId, String offsetKey, 
             int pageSize, String idFilter, Boolean assignmentFilter) {
@@ -135,8 +139,7 @@ public class DynamoExternalIdDao implements ExternalIdDao {
         }).collect(Collectors.toList());
         
         if (!idsToSave.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchSave(idsToSave);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchSave(mapper, idsToSave);
         }
     }
     
@@ -219,8 +222,7 @@ public class DynamoExternalIdDao implements ExternalIdDao {
                 return new DynamoExternalIdentifier(studyId, id);
             }).collect(Collectors.toList());
             
-            List<FailedBatch> failures = mapper.batchDelete(idsToDelete);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchDelete(mapper, idsToDelete);
         }
     }
 
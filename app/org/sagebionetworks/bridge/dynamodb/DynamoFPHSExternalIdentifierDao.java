@@ -7,7 +7,6 @@ import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
 
-import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.config.Config;
 import org.sagebionetworks.bridge.dao.FPHSExternalIdentifierDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
@@ -20,7 +19,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 
 @Component
@@ -29,6 +27,8 @@ public class DynamoFPHSExternalIdentifierDao implements FPHSExternalIdentifierDa
 
     private int addLimit;
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
+    private DynamoParallelScanner parallelScanner;
 
     /** Gets the add limit from Config. */
     @Autowired
@@ -40,6 +40,16 @@ public class DynamoFPHSExternalIdentifierDao implements FPHSExternalIdentifierDa
     public final void setMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
+
+    @Autowired
+    public final void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
+    @Autowired
+    public final void setParallelScanner(DynamoParallelScanner parallelScanner) {
+        this.parallelScanner = parallelScanner;
+    }
     
     @Override
     public void verifyExternalId(ExternalIdentifier externalId) {
@@ -74,9 +84,8 @@ public class DynamoFPHSExternalIdentifierDao implements FPHSExternalIdentifierDa
     public List<FPHSExternalIdentifier> getExternalIds() {
         DynamoDBScanExpression scan = new DynamoDBScanExpression();
         
-        return mapper.scan(DynamoFPHSExternalIdentifier.class, scan).stream().map(identifier -> {
-            return (FPHSExternalIdentifier)identifier;
-        }).collect(Collectors.toList());
+        return parallelScanner.scanToList(mapper, DynamoFPHSExternalIdentifier.class, scan).stream()
+                .map(identifier -> (FPHSExternalIdentifier)identifier).collect(Collectors.toList());
     }
 
     @Override
@@ -96,8 +105,7 @@ public class DynamoFPHSExternalIdentifierDao implements FPHSExternalIdentifierDa
                 return new DynamoFPHSExternalIdentifier(id.getExternalId());  
             }).collect(Collectors.toList());
             if (!idsToSave.isEmpty()) {
-                List<FailedBatch> failures = mapper.batchSave(idsToSave);
-                BridgeUtils.ifFailuresThrowException(failures);
+                batchWriter.batchSave(mapper, idsToSave);
             }
         }
     }
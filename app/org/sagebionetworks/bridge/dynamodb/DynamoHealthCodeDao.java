@@ -17,6 +17,7 @@ import org.springframework.stereotype.Component;
 public class DynamoHealthCodeDao implements HealthCodeDao {
 
     private DynamoDBMapper mapper;
+    private DynamoLoadCache loadCache;
 
     @Autowired
     public void setDynamoDbClient(AmazonDynamoDB client, DynamoNamingHelper dynamoNamingHelper) {
@@ -26,13 +27,18 @@ public class DynamoHealthCodeDao implements HealthCodeDao {
         mapper = new DynamoDBMapper(client, mapperConfig);
     }
 
+    @Autowired
+    public void setLoadCache(DynamoLoadCache loadCache) {
+        this.loadCache = loadCache;
+    }
+
     @Override
     public boolean setIfNotExist(String code, String studyId) {
         checkArgument(isNotBlank(code));
         checkArgument(isNotBlank(studyId));
         try {
             DynamoHealthCode toSave = new DynamoHealthCode(code, studyId);
-            mapper.save(toSave);
+            loadCache.save(mapper, toSave);
             return true;
         } catch(ConditionalCheckFailedException e) {
             return false;
@@ -43,7 +49,7 @@ public class DynamoHealthCodeDao implements HealthCodeDao {
     public String getStudyIdentifier(final String code) {
         DynamoHealthCode key = new DynamoHealthCode();
         key.setCode(code);
-        DynamoHealthCode loaded = mapper.load(key);
+        DynamoHealthCode loaded = loadCache.load(mapper, key);
         if (loaded == null) {
             return null;
         }
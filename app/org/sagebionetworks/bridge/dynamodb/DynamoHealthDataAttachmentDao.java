@@ -2,9 +2,12 @@ package org.sagebionetworks.bridge.dynamodb;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
+import java.util.List;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import org.apache.commons.lang3.StringUtils;
+import com.google.common.collect.ImmutableList;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeUtils;
@@ -16,6 +19,7 @@ import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachmentBuilder;
 @Component
 public class DynamoHealthDataAttachmentDao implements HealthDataAttachmentDao {
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
 
     /** DynamoDB mapper for the HealthDataAttachment table. This is configured by Spring. */
     @Resource(name = "healthDataAttachmentDdbMapper")
@@ -23,20 +27,57 @@ public class DynamoHealthDataAttachmentDao implements HealthDataAttachmentDao {
         this.mapper = mapper;
     }
 
+    /** Batch writer for saves and deletes. This is configured by Spring. */
+    @Autowired
+    public void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String createOrUpdateAttachment(@Nonnull HealthDataAttachment attachment) {
-        DynamoHealthDataAttachment dynamoAttachment = (DynamoHealthDataAttachment) attachment;
+        DynamoHealthDataAttachment dynamoAttachment = assignIdIfBlank(attachment);
+
+        // persist to DDB
+        mapper.save(dynamoAttachment);
+        return dynamoAttachment.getId();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This uses a DynamoDB batch write, which the mapper splits into batches of 25. Note that batch writes bypass
+     * optimistic versioning, so this should only be used for new attachments.
+     * </p>
+     */
+    @Override
+    public List<String> createOrUpdateAttachments(@Nonnull List<HealthDataAttachment> attachmentList) {
+        if (attachmentList.isEmpty()) {
+            return ImmutableList.of();
+        }
 
+        ImmutableList.Builder<DynamoHealthDataAttachment> dynamoAttachmentListBuilder = ImmutableList.builder();
+        ImmutableList.Builder<String> idListBuilder = ImmutableList.builder();
+        for (HealthDataAttachment oneAttachment : attachmentList) {
+            DynamoHealthDataAttachment dynamoAttachment = assignIdIfBlank(oneAttachment);
+            dynamoAttachmentListBuilder.add(dynamoAttachment);
+            idListBuilder.add(dynamoAttachment.getId());
+        }
+
+        // persist to DDB
+        batchWriter.batchSave(mapper, dynamoAttachmentListBuilder.build());
+        return idListBuilder.build();
+    }
+
+    // Helper method which casts the attachment to its DynamoDB implementation and assigns an ID if it doesn't have
+    // one yet (new attachment).
+    private static DynamoHealthDataAttachment assignIdIfBlank(HealthDataAttachment attachment) {
+        DynamoHealthDataAttachment dynamoAttachment = (DynamoHealthDataAttachment) attachment;
         if (StringUtils.isBlank(dynamoAttachment.getId())) {
-            // The attachment doesn't have its ID assigned yet (new attachment). Create an ID and assign it.
             String id = BridgeUtils.generateGuid();
             dynamoAttachment.setId(id);
         }
-
-        // persist to DDB
-        mapper.save(dynamoAttachment);
-        return dynamoAttachment.getId();
+        return dynamoAttachment;
     }
 
     /** {@inheritDoc} */
@@ -1,24 +1,52 @@
 package org.sagebionetworks.bridge.dynamodb;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.HealthDataDao;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /** DynamoDB implementation of {@link org.sagebionetworks.bridge.dao.HealthDataDao}. */
 @Component
 public class DynamoHealthDataDao implements HealthDataDao {
+    private static final Logger logger = LoggerFactory.getLogger(DynamoHealthDataDao.class);
+
+    // package-scoped for unit tests
+    static final int DELETE_BATCH_SIZE = 25;
+
+    private static final int DELETE_PROGRESS_LOG_INTERVAL = 1000;
+
     private DynamoDBMapper mapper;
+    private HealthDataRecordBatchWriter batchWriter;
+    private DynamoBatchWriter deleteBatchWriter;
     private DynamoIndexHelper healthCodeIndex;
+    private DynamoIndexHelper healthCodeCreatedOnIndex;
     private DynamoIndexHelper uploadDateIndex;
+    private ExecutorService deleteExecutorService;
 
     /** DynamoDB mapper for the HealthDataRecord table. This is configured by Spring. */
     @Resource(name = "healthDataDdbMapper")
@@ -26,6 +54,24 @@ public class DynamoHealthDataDao implements HealthDataDao {
         this.mapper = mapper;
     }
 
+    /**
+     * Batch writer, used to coalesce new records from concurrent callers into batch writes, if it's enabled. This is
+     * configured by Spring.
+     */
+    @Autowired
+    public void setBatchWriter(HealthDataRecordBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
+    /**
+     * Batch writer for deletes, which retries unprocessed keys and shares the batch write concurrency limit with the
+     * other DAOs. This is configured by Spring.
+     */
+    @Autowired
+    public void setDeleteBatchWriter(DynamoBatchWriter deleteBatchWriter) {
+        this.deleteBatchWriter = deleteBatchWriter;
+    }
+
     /**
      * DynamoDB Index reference for the healthCode index. This is needed because the DynamoDB mapper does allow queries
      * using global secondary indices. This is configured by Spring
@@ -35,6 +81,15 @@ public class DynamoHealthDataDao implements HealthDataDao {
         this.healthCodeIndex = healthCodeIndex;
     }
 
+    /**
+     * DynamoDB Index reference for the healthCode-createdOn index. This is needed because the DynamoDB mapper does
+     * allow queries using global secondary indices. This is configured by Spring
+     */
+    @Resource(name = "healthDataHealthCodeCreatedOnIndex")
+    public void setHealthCodeCreatedOnIndex(DynamoIndexHelper healthCodeCreatedOnIndex) {
+        this.healthCodeCreatedOnIndex = healthCodeCreatedOnIndex;
+    }
+
     /**
      * DynamoDB Index reference for the uploadDate index. This is needed because the DynamoDB mapper does allow queries
      * using global secondary indices. This is configured by Spring
@@ -44,6 +99,15 @@ public class DynamoHealthDataDao implements HealthDataDao {
         this.uploadDateIndex = uploadDateIndex;
     }
 
+    /**
+     * Executor used to delete batches of {@value #DELETE_BATCH_SIZE} records concurrently. If this isn't set, batches
+     * are deleted one at a time on the caller's thread. This is configured by Spring.
+     */
+    @Resource(name = "healthDataDeleteExecutorService")
+    public void setDeleteExecutorService(ExecutorService deleteExecutorService) {
+        this.deleteExecutorService = deleteExecutorService;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String createOrUpdateRecord(@Nonnull HealthDataRecord record) {
@@ -56,22 +120,74 @@ public class DynamoHealthDataDao implements HealthDataDao {
         }
 
         // persist to DDB
-        mapper.save(dynamoRecord);
+        // A record that has never been saved has no version, even if its ID was pre-assigned (see
+        // UploadArtifactsHandler). IDs are generated GUIDs, so new records can't conflict with anything, and they can
+        // go in a batch write, which can't check versions.
+        boolean isNew = dynamoRecord.getVersion() == null;
+        if (isNew && batchWriter != null && batchWriter.isEnabled()) {
+            getFutureResult(batchWriter.write(dynamoRecord));
+        } else {
+            mapper.save(dynamoRecord);
+        }
         return dynamoRecord.getId();
     }
 
     /** {@inheritDoc} */
     @Override
     public int deleteRecordsForHealthCode(@Nonnull String healthCode) {
-        // query for the keys we need to delete
-        List<HealthDataRecord> keysToDelete = healthCodeIndex.queryKeys(HealthDataRecord.class, "healthCode",
-                healthCode, null);
+        // Delete each page of keys as it's queried, rather than holding all of the user's keys in memory. Deleting
+        // doesn't disturb the query, since the next page starts after the last key of this page.
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int[] numDeleted = { 0 };
+        healthCodeIndex.queryKeysInPages(HealthDataRecord.class, "healthCode", healthCode, null, keyPage -> {
+            deleteInBatches(keyPage);
+
+            int prevNumDeleted = numDeleted[0];
+            numDeleted[0] += keyPage.size();
+            if (numDeleted[0] / DELETE_PROGRESS_LOG_INTERVAL > prevNumDeleted / DELETE_PROGRESS_LOG_INTERVAL) {
+                logger.info("Deleted " + numDeleted[0] + " health data records so far in " +
+                        stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
+            }
+        });
+
+        logger.info("Deleted " + numDeleted[0] + " health data records in " + stopwatch.elapsed(TimeUnit.MILLISECONDS)
+                + " ms");
+        return numDeleted[0];
+    }
+
+    // Deletes the keys in concurrent batches of DELETE_BATCH_SIZE, and waits for all of them, so that only one page of
+    // deletes is in flight at a time. The batch writer retries unprocessed keys. Throws if any batch still fails after
+    // retries.
+    private void deleteInBatches(List<HealthDataRecord> keyList) {
+        List<Future<List<DynamoDBMapper.FailedBatch>>> futureList = new ArrayList<>();
+        for (List<HealthDataRecord> oneBatch : Lists.partition(keyList, DELETE_BATCH_SIZE)) {
+            if (deleteExecutorService == null) {
+                futureList.add(Futures.immediateFuture(deleteBatchWriter.batchDeleteAndGetFailures(mapper,
+                        oneBatch)));
+            } else {
+                futureList.add(deleteExecutorService.submit(() -> deleteBatchWriter.batchDeleteAndGetFailures(mapper,
+                        oneBatch)));
+            }
+        }
 
-        // and then delete
-        List<DynamoDBMapper.FailedBatch> failureList = mapper.batchDelete(keysToDelete);
+        List<DynamoDBMapper.FailedBatch> failureList = new ArrayList<>();
+        for (Future<List<DynamoDBMapper.FailedBatch>> oneFuture : futureList) {
+            failureList.addAll(getFutureResult(oneFuture));
+        }
         BridgeUtils.ifFailuresThrowException(failureList);
+    }
 
-        return keysToDelete.size();
+    // Waits for the future, even if interrupted, since the write is already under way. Unwraps runtime exceptions.
+    private static <V> V getFutureResult(Future<V> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BridgeServiceException(cause);
+        }
     }
 
     /** {@inheritDoc} */
@@ -86,6 +202,39 @@ public class DynamoHealthDataDao implements HealthDataDao {
         return uploadDateIndex.query(HealthDataRecord.class, "uploadDate", uploadDate, null);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public PagedResourceList<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate,
+            @Nullable String offsetKey, int pageSize) {
+        return uploadDateIndex.queryPage(HealthDataRecord.class, "uploadDate", uploadDate, null, offsetKey, pageSize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int streamRecordsForUploadDate(@Nonnull String uploadDate, @Nonnull Consumer<HealthDataRecord> consumer) {
+        return uploadDateIndex.queryStream(HealthDataRecord.class, "uploadDate", uploadDate, null, consumer);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PagedResourceList<HealthDataRecord> getRecordsForHealthCodeCreatedOn(@Nonnull String healthCode,
+            long createdOnStart, long createdOnEnd, @Nullable String offsetKey, int pageSize) {
+        return healthCodeCreatedOnIndex.queryPage(HealthDataRecord.class, "healthCode", healthCode,
+                makeCreatedOnCondition(createdOnStart, createdOnEnd), offsetKey, pageSize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int streamRecordsForHealthCodeCreatedOn(@Nonnull String healthCode, long createdOnStart, long createdOnEnd,
+            @Nonnull Consumer<HealthDataRecord> consumer) {
+        return healthCodeCreatedOnIndex.queryStream(HealthDataRecord.class, "healthCode", healthCode,
+                makeCreatedOnCondition(createdOnStart, createdOnEnd), consumer);
+    }
+
+    private static RangeKeyCondition makeCreatedOnCondition(long createdOnStart, long createdOnEnd) {
+        return new RangeKeyCondition("createdOn").between(createdOnStart, createdOnEnd);
+    }
+
     /** {@inheritDoc} */
     @Override
     public HealthDataRecordBuilder getRecordBuilder() {
@@ -14,6 +14,7 @@ import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMarshalling;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBVersionAttribute;
@@ -43,6 +44,7 @@ public class DynamoHealthDataRecord implements HealthDataRecord {
     private Long version;
 
     /** {@inheritDoc} */
+    @DynamoDBIndexRangeKey(attributeName = "createdOn", globalSecondaryIndexName = "healthCode-createdOn-index")
     @JsonSerialize(using = DateTimeToLongSerializer.class)
     @Override
     public Long getCreatedOn() {
@@ -56,7 +58,7 @@ public class DynamoHealthDataRecord implements HealthDataRecord {
     }
 
     /** {@inheritDoc} */
-    @DynamoDBMarshalling(marshallerClass = JsonNodeMarshaller.class)
+    @DynamoDBMarshalling(marshallerClass = CompressedJsonNodeMarshaller.class)
     @Override
     public JsonNode getData() {
         return data;
@@ -68,7 +70,8 @@ public class DynamoHealthDataRecord implements HealthDataRecord {
     }
 
     /** {@inheritDoc} */
-    @DynamoDBIndexHashKey(attributeName = "healthCode", globalSecondaryIndexName = "healthCode-index")
+    @DynamoDBIndexHashKey(attributeName = "healthCode", globalSecondaryIndexNames = { "healthCode-index",
+            "healthCode-createdOn-index" })
     @Override
     public String getHealthCode() {
         return healthCode;
@@ -92,7 +95,7 @@ public class DynamoHealthDataRecord implements HealthDataRecord {
     }
 
     /** {@inheritDoc} */
-    @DynamoDBMarshalling(marshallerClass = JsonNodeMarshaller.class)
+    @DynamoDBMarshalling(marshallerClass = CompressedJsonNodeMarshaller.class)
     @Override
     public JsonNode getMetadata() {
         return metadata;
@@ -17,6 +17,7 @@ import org.springframework.stereotype.Component;
 public class DynamoHealthIdDao implements HealthIdDao {
 
     private DynamoDBMapper mapper;
+    private DynamoLoadCache loadCache;
 
     @Autowired
     public void setDynamoDbClient(AmazonDynamoDB client, DynamoNamingHelper dynamoNamingHelper) {
@@ -26,6 +27,11 @@ public class DynamoHealthIdDao implements HealthIdDao {
         mapper = new DynamoDBMapper(client, mapperConfig);
     }
 
+    @Autowired
+    public void setLoadCache(DynamoLoadCache loadCache) {
+        this.loadCache = loadCache;
+    }
+
     @Override
     public boolean setIfNotExist(String id, String code) {
         checkArgument(isNotBlank(id), "Health ID is blank or null");
@@ -34,7 +40,7 @@ public class DynamoHealthIdDao implements HealthIdDao {
             DynamoHealthId toSave = new DynamoHealthId();
             toSave.setId(id);
             toSave.setCode(code);
-            mapper.save(toSave);
+            loadCache.save(mapper, toSave);
             return true;
         } catch(ConditionalCheckFailedException e) {
             return false;
@@ -44,7 +50,9 @@ public class DynamoHealthIdDao implements HealthIdDao {
     @Override
     public String getCode(String id) {
         checkArgument(isNotBlank(id), "Health ID is blank or null");
-        DynamoHealthId healthId = mapper.load(DynamoHealthId.class, id);
+        DynamoHealthId key = new DynamoHealthId();
+        key.setId(id);
+        DynamoHealthId healthId = loadCache.load(mapper, key);
         if (healthId != null) {
             return healthId.getCode();
         }
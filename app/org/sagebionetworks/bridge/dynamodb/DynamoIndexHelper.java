@@ -1,9 +1,15 @@
 package org.sagebionetworks.bridge.dynamodb;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -12,10 +18,24 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Index;
 import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemUtils;
+import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.Select;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 
 /**
  * This class is a wrapper around a DynamoDB Index object, to enable easy testing and easy mocking. This class is used
@@ -23,26 +43,52 @@ import org.sagebionetworks.bridge.json.BridgeObjectMapper;
  * encapsulates logic to re-query tables to get full table entries.
  */
 public class DynamoIndexHelper {
+    // DynamoDB allows at most 100 items per BatchGetItem.
+    static final int BATCH_LOAD_MAX_SIZE = 100;
+
+    private static final TypeReference<Map<String, Object>> OFFSET_KEY_TYPE =
+            new TypeReference<Map<String, Object>>() {};
 
     public static DynamoIndexHelper create(final Class<?> dynamoTable, final String indexName,
            final AmazonDynamoDB client, DynamoNamingHelper dynamoNamingHelper, DynamoUtils dynamoUtils) {
         final DynamoDB ddb = new DynamoDB(client);
         final Table ddbTable = ddb.getTable(dynamoNamingHelper.getFullyQualifiedTableName(dynamoTable));
         final Index ddbIndex = ddbTable.getIndex(indexName);
+        return create(dynamoTable, ddbIndex, dynamoUtils.getMapper(dynamoTable));
+    }
+
+    /**
+     * Creates an index helper for the given table class, index, and mapper. This is used by {@link #create(Class,
+     * String, AmazonDynamoDB, DynamoNamingHelper, DynamoUtils)}, and by tools that set up their own tables.
+     */
+    public static DynamoIndexHelper create(final Class<?> dynamoTable, final Index ddbIndex,
+            final DynamoDBMapper mapper) {
         final DynamoIndexHelper indexHelper = new DynamoIndexHelper();
         indexHelper.setIndex(ddbIndex);
-        indexHelper.setMapper(dynamoUtils.getMapper(dynamoTable));
+        indexHelper.setMapper(mapper);
+        indexHelper.setTableClass(dynamoTable);
         return indexHelper;
     }
 
     private Index index;
     private DynamoDBMapper mapper;
+    private Class<?> tableClass;
+    private ExecutorService prefetchExecutorService;
+    private ExecutorService batchLoadExecutorService;
 
     /** DynamoDB index. This is used to query the secondary index. This is configured by Spring. */
     private void setIndex(Index index) {
         this.index = index;
     }
 
+    /**
+     * DynamoDB table class. The mapper uses this to convert index items directly into key objects. This setter is
+     * called by tests.
+     */
+    public void setTableClass(Class<?> tableClass) {
+        this.tableClass = tableClass;
+    }
+
     /**
      * DynamoDB mapper. This is used to re-query the DynamoDB table to get full entries from the key objects. This setter is
      * called by tests.
@@ -51,6 +97,23 @@ public class DynamoIndexHelper {
         this.mapper = mapper;
     }
 
+    /**
+     * Executor used to query the next page of index keys while the current page is loaded from the table and handed to
+     * the caller. If this isn't set, index pages are queried on the caller's thread. This is configured by Spring.
+     */
+    public void setPrefetchExecutorService(ExecutorService prefetchExecutorService) {
+        this.prefetchExecutorService = prefetchExecutorService;
+    }
+
+    /**
+     * Executor used to batch load chunks of {@value #BATCH_LOAD_MAX_SIZE} keys concurrently. The caller's thread loads
+     * the first chunk. If this isn't set, chunks are loaded one at a time on the caller's thread. This is configured
+     * by Spring.
+     */
+    public void setBatchLoadExecutorService(ExecutorService batchLoadExecutorService) {
+        this.batchLoadExecutorService = batchLoadExecutorService;
+    }
+
     /**
      * Queries the secondary index with the specified key name and value, and an optional range key condition. Only 
      * the attributes projected onto the index will be returned. (Generally, this is only the table index keys 
@@ -77,14 +140,14 @@ public class DynamoIndexHelper {
         // convert items to the specified class
         List<T> recordKeyList = new ArrayList<>();
         for (Item oneItem : itemIter) {
-            T oneRecord = BridgeObjectMapper.get().convertValue(oneItem.asMap(), clazz);
-            recordKeyList.add(oneRecord);
+            recordKeyList.add(convertItem(clazz, ItemUtils.toAttributeValues(oneItem)));
         }
         return recordKeyList;
     }
     
     /**
-     * Query via a secondary index to return the count of matching items in the table.
+     * Query via a secondary index to return the count of matching items in the table. DynamoDB counts the items
+     * server-side.
      *  
      * @param indexKeyName
      *         index key name to query on
@@ -96,11 +159,24 @@ public class DynamoIndexHelper {
      */
     public int queryKeyCount(@Nonnull String indexKeyName, @Nonnull Object indexKeyValue,
                     RangeKeyCondition rangeKeyCondition) {
+        // Select.COUNT makes DynamoDB count the items server-side, so no items come over the wire. DynamoDB still
+        // pages through the index 1MB at a time, so add up the counts from each page.
         int count = 0;
-        Iterable<Item> itemIter = queryHelper(indexKeyName, indexKeyValue, rangeKeyCondition);
-        for(Iterator<Item> i = itemIter.iterator(); i.hasNext(); i.next()) {
-            count++;
-        }
+        Map<String, Object> startKey = null;
+        do {
+            QuerySpec spec = new QuerySpec().withHashKey(indexKeyName, indexKeyValue).withSelect(Select.COUNT);
+            if (rangeKeyCondition != null) {
+                spec.withRangeKeyCondition(rangeKeyCondition);
+            }
+            if (startKey != null) {
+                spec.withExclusiveStartKey(toKeyAttributes(startKey));
+            }
+
+            QueryResult result = queryPageHelper(spec).getQueryResult();
+            count += result.getCount();
+            Map<String, AttributeValue> lastKey = result.getLastEvaluatedKey();
+            startKey = lastKey != null ? ItemUtils.toSimpleMapValue(lastKey) : null;
+        } while (startKey != null);
         return count;
     }
     
@@ -121,7 +197,6 @@ public class DynamoIndexHelper {
      *         expected result type
      * @return list of query results
      */
-    @SuppressWarnings("unchecked")
     public <T> List<T> query(@Nonnull Class<? extends T> clazz, @Nonnull String indexKeyName,
             @Nonnull Object indexKeyValue, RangeKeyCondition rangeKeyCondition) {
         // In general, we only project keys onto global secondary indices, to save storage space. This means the
@@ -131,29 +206,294 @@ public class DynamoIndexHelper {
         // First step is to query the index to get these "key objects".
         List<T> recordKeyList = queryKeys(clazz, indexKeyName, indexKeyValue, rangeKeyCondition);
 
-        // Using the "key objects", batch query DDB to get full records. For some reason, batchLoad() returns a map.
-        // Flatten that map into a list.
+        // Using the "key objects", batch query DDB to get full records.
+        return batchLoad(clazz, recordKeyList);
+    }
+
+    /**
+     * <p>
+     * Queries one page of full table entries from the secondary index. Like {@link #query}, this queries the index for
+     * keys and re-queries the table for full entries, but it only holds one page in memory at a time.
+     * </p>
+     * <p>
+     * The returned page's offset key is an opaque token. Pass it back to get the next page. It's null if there are no
+     * more pages. Like all DynamoDB queries, the last page may be empty.
+     * </p>
+     *
+     * @param clazz
+     *         expected result class
+     * @param indexKeyName
+     *         index key name to query on
+     * @param indexKeyValue
+     *         index key value to query on
+     * @param rangeKeyCondition
+     *         condition for query on range portion of key (optional)
+     * @param offsetKey
+     *         offset key from the previous page, or null for the first page
+     * @param pageSize
+     *         max number of results to return
+     * @param <T>
+     *         expected result type
+     * @return page of query results
+     */
+    public <T> PagedResourceList<T> queryPage(@Nonnull Class<? extends T> clazz, @Nonnull String indexKeyName,
+            @Nonnull Object indexKeyValue, @Nullable RangeKeyCondition rangeKeyCondition, @Nullable String offsetKey,
+            int pageSize) {
+        List<T> recordList = new ArrayList<>();
+        Map<String, AttributeValue> lastKey = queryInChunks(clazz, indexKeyName, indexKeyValue, rangeKeyCondition,
+                decodeOffsetKey(offsetKey), pageSize, true, recordList::addAll);
+
+        // There's no cheap way to get the total, so the total is just the number of records in this page.
+        return new PagedResourceList<>(recordList, null, pageSize, recordList.size())
+                .withOffsetKey(encodeOffsetKey(lastKey));
+    }
+
+    /**
+     * Queries the secondary index and streams full table entries to the given consumer, in chunks of at most
+     * {@value #BATCH_LOAD_MAX_SIZE}. Memory use is bounded by the chunk size, regardless of how many entries match.
+     * The next page of index keys is queried while the current chunk is loaded from the table and consumed.
+     *
+     * @param clazz
+     *         expected result class
+     * @param indexKeyName
+     *         index key name to query on
+     * @param indexKeyValue
+     *         index key value to query on
+     * @param rangeKeyCondition
+     *         condition for query on range portion of key (optional)
+     * @param consumer
+     *         called with each result, on the caller's thread
+     * @param <T>
+     *         expected result type
+     * @return number of results streamed
+     */
+    public <T> int queryStream(@Nonnull Class<? extends T> clazz, @Nonnull String indexKeyName,
+            @Nonnull Object indexKeyValue, @Nullable RangeKeyCondition rangeKeyCondition,
+            @Nonnull Consumer<? super T> consumer) {
+        int[] count = { 0 };
+        queryInChunks(clazz, indexKeyName, indexKeyValue, rangeKeyCondition, null, Integer.MAX_VALUE, true,
+                chunk -> {
+                    chunk.forEach(consumer);
+                    count[0] += chunk.size();
+                });
+        return count[0];
+    }
+
+    /**
+     * Queries the secondary index and passes key objects to the given consumer, one page of at most
+     * {@value #BATCH_LOAD_MAX_SIZE} at a time. Like {@link #queryKeys}, this doesn't re-query the table, but it only
+     * holds one page in memory at a time, and the next page is queried while the current page is consumed. This is
+     * generally used to batch update or batch delete rows as they're queried.
+     *
+     * @param clazz
+     *         expected result class
+     * @param indexKeyName
+     *         index key name to query on
+     * @param indexKeyValue
+     *         index key value to query on
+     * @param rangeKeyCondition
+     *         condition for query on range portion of key (optional)
+     * @param pageConsumer
+     *         called with each page of key objects, on the caller's thread
+     * @param <T>
+     *         expected result type
+     * @return number of key objects queried
+     */
+    public <T> int queryKeysInPages(@Nonnull Class<? extends T> clazz, @Nonnull String indexKeyName,
+            @Nonnull Object indexKeyValue, @Nullable RangeKeyCondition rangeKeyCondition,
+            @Nonnull Consumer<List<T>> pageConsumer) {
+        int[] count = { 0 };
+        queryInChunks(clazz, indexKeyName, indexKeyValue, rangeKeyCondition, null, Integer.MAX_VALUE, false,
+                keyPage -> {
+                    pageConsumer.accept(keyPage);
+                    count[0] += keyPage.size();
+                });
+        return count[0];
+    }
+
+    // Queries the index one page at a time, starting at the given key, until there are no more keys or we've reached
+    // maxResults. Each page is batch loaded from the table (or passed as key objects, if loadFromTable is false) to
+    // the chunk consumer, while the next page is queried on the prefetch executor. Returns the last evaluated key, or
+    // null if there are no more keys.
+    private <T> Map<String, AttributeValue> queryInChunks(Class<? extends T> clazz, String indexKeyName,
+            Object indexKeyValue, RangeKeyCondition rangeKeyCondition, Map<String, Object> startKey, int maxResults,
+            boolean loadFromTable, Consumer<List<T>> chunkConsumer) {
+        int remaining = maxResults;
+        Future<QueryOutcome> keyPageFuture = queryKeyPageAsync(makeQuerySpec(indexKeyName, indexKeyValue,
+                rangeKeyCondition, startKey, Math.min(remaining, BATCH_LOAD_MAX_SIZE)));
+        try {
+            while (true) {
+                QueryOutcome keyPage = getFutureResult(keyPageFuture);
+                List<Map<String, AttributeValue>> itemList = keyPage.getQueryResult().getItems();
+                remaining -= itemList.size();
+                Map<String, AttributeValue> lastKey = keyPage.getQueryResult().getLastEvaluatedKey();
+
+                boolean hasNext = lastKey != null && remaining > 0;
+                if (hasNext) {
+                    keyPageFuture = queryKeyPageAsync(makeQuerySpec(indexKeyName, indexKeyValue, rangeKeyCondition,
+                            ItemUtils.toSimpleMapValue(lastKey), Math.min(remaining, BATCH_LOAD_MAX_SIZE)));
+                } else {
+                    keyPageFuture = null;
+                }
+
+                if (!itemList.isEmpty()) {
+                    List<T> recordKeyList = new ArrayList<>();
+                    for (Map<String, AttributeValue> oneItem : itemList) {
+                        recordKeyList.add(convertItem(clazz, oneItem));
+                    }
+                    chunkConsumer.accept(loadFromTable ? batchLoad(clazz, recordKeyList) : recordKeyList);
+                }
+
+                if (!hasNext) {
+                    return lastKey;
+                }
+            }
+        } finally {
+            if (keyPageFuture != null) {
+                // The caller bailed out early. Don't bother finishing the prefetch.
+                keyPageFuture.cancel(true);
+            }
+        }
+    }
+
+    private Future<QueryOutcome> queryKeyPageAsync(QuerySpec spec) {
+        if (prefetchExecutorService == null) {
+            return Futures.immediateFuture(queryPageHelper(spec));
+        }
+        return prefetchExecutorService.submit(() -> queryPageHelper(spec));
+    }
+
+    // Waits for the future, even if interrupted, since we need its result to continue. Unwraps runtime exceptions.
+    private static <V> V getFutureResult(Future<V> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BridgeServiceException(cause);
+        }
+    }
+
+    private static QuerySpec makeQuerySpec(String indexKeyName, Object indexKeyValue,
+            RangeKeyCondition rangeKeyCondition, Map<String, Object> startKey, int limit) {
+        QuerySpec spec = new QuerySpec().withHashKey(indexKeyName, indexKeyValue).withMaxPageSize(limit)
+                .withMaxResultSize(limit);
+        if (rangeKeyCondition != null) {
+            spec.withRangeKeyCondition(rangeKeyCondition);
+        }
+        if (startKey != null) {
+            spec.withExclusiveStartKey(toKeyAttributes(startKey));
+        }
+        return spec;
+    }
+
+    private static KeyAttribute[] toKeyAttributes(Map<String, Object> key) {
+        return key.entrySet().stream().map(entry -> new KeyAttribute(entry.getKey(), entry.getValue()))
+                .toArray(KeyAttribute[]::new);
+    }
+
+    // Offset keys are the last evaluated key, as URL-safe base64 encoded JSON. Index keys include the table keys, so
+    // this isn't something we can represent as a single attribute.
+    private static String encodeOffsetKey(Map<String, AttributeValue> lastKey) {
+        if (lastKey == null) {
+            return null;
+        }
+        try {
+            byte[] json = BridgeObjectMapper.get().writeValueAsBytes(ItemUtils.toSimpleMapValue(lastKey));
+            return Base64.getUrlEncoder().encodeToString(json);
+        } catch (IOException ex) {
+            throw new BridgeServiceException(ex);
+        }
+    }
+
+    private static Map<String, Object> decodeOffsetKey(String offsetKey) {
+        if (offsetKey == null) {
+            return null;
+        }
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(offsetKey.getBytes(Charsets.UTF_8));
+            return BridgeObjectMapper.get().readValue(json, OFFSET_KEY_TYPE);
+        } catch (IllegalArgumentException | IOException ex) {
+            throw new BadRequestException("Invalid offsetKey " + offsetKey);
+        }
+    }
+
+    // Converts an index item into a key object. The mapper reads the item's attributes using the table class's
+    // annotations, so this is a direct projection.
+    private <T> T convertItem(Class<? extends T> clazz, Map<String, AttributeValue> item) {
+        Object keyObject = mapper.marshallIntoObject(tableClass, item);
+        return checkResultType(clazz, keyObject);
+    }
+
+    // Batch loads full records from the table, using the given "key objects". Keys are split into chunks of
+    // BATCH_LOAD_MAX_SIZE, which are loaded concurrently on the batch load executor. The mapper retries unprocessed
+    // keys within each chunk.
+    private <T> List<T> batchLoad(Class<? extends T> clazz, List<T> recordKeyList) {
+        List<List<T>> chunkList = Lists.partition(recordKeyList, BATCH_LOAD_MAX_SIZE);
+        List<T> recordList = new ArrayList<>();
+        if (batchLoadExecutorService == null || chunkList.size() <= 1) {
+            for (List<T> oneChunk : chunkList) {
+                recordList.addAll(batchLoadChunk(clazz, oneChunk));
+            }
+            return recordList;
+        }
+
+        List<Future<List<T>>> futureList = new ArrayList<>();
+        try {
+            for (List<T> oneChunk : chunkList.subList(1, chunkList.size())) {
+                futureList.add(batchLoadExecutorService.submit(() -> batchLoadChunk(clazz, oneChunk)));
+            }
+            recordList.addAll(batchLoadChunk(clazz, chunkList.get(0)));
+            for (Future<List<T>> oneFuture : futureList) {
+                recordList.addAll(getFutureResult(oneFuture));
+            }
+            return recordList;
+        } finally {
+            // If a chunk failed, don't bother loading the rest. This is a no-op for chunks that are already done.
+            for (Future<List<T>> oneFuture : futureList) {
+                oneFuture.cancel(true);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> batchLoadChunk(Class<? extends T> clazz, List<T> recordKeyList) {
+        // For some reason, batchLoad() returns a map. Flatten that map, keyed by each record's table key.
         //
         // Also, for some reason, batchLoad() takes a List<Object>, not a List<T> or List<?>. Fortunately, Java type
         // erasure means we can safely cast this to a List<Object>.
         Map<String, List<Object>> resultMap = mapper.batchLoad((List<Object>) recordKeyList);
-        List<T> recordList = new ArrayList<>();
+        Map<List<Object>, T> recordsByKey = new HashMap<>();
         for (List<Object> resultList : resultMap.values()) {
             for (Object oneResult : resultList) {
-                if (!clazz.isInstance(oneResult)) {
-                    // This should never happen, but just in case.
-                    throw new BridgeServiceException(String.format(
-                            "DynamoDB returned objects of type %s instead of %s",
-                            oneResult.getClass().getName(), clazz.getName()));
-                }
-
-                recordList.add((T) oneResult);
+                T record = checkResultType(clazz, oneResult);
+                recordsByKey.put(DynamoKeyUtils.getKey(record), record);
             }
         }
 
+        // BatchGetItem returns records in no particular order. Put them back in index order, so callers get the same
+        // order as the index query. Records deleted since the index query are skipped.
+        List<T> recordList = new ArrayList<>(recordsByKey.size());
+        for (T oneRecordKey : recordKeyList) {
+            T record = recordsByKey.get(DynamoKeyUtils.getKey(oneRecordKey));
+            if (record != null) {
+                recordList.add(record);
+            }
+        }
         return recordList;
     }
 
+    private static <T> T checkResultType(Class<? extends T> clazz, Object result) {
+        if (!clazz.isInstance(result)) {
+            // This should never happen, but just in case.
+            throw new BridgeServiceException(String.format("DynamoDB returned objects of type %s instead of %s",
+                    result.getClass().getName(), clazz.getName()));
+        }
+        return clazz.cast(result);
+    }
+
     /**
      * This abstracts away the call to index.query(), which returns an ItemCollection. While ItemCollection implements
      * Iterable, it overrides iterator() to return an IteratorSupport, which is not publicly exposed. This makes
@@ -166,6 +506,13 @@ public class DynamoIndexHelper {
         } else {
             return index.query(indexKeyName, indexKeyValue);
         }
-    }    
+    }
 
+    /**
+     * Queries a single page of the index, using the given query spec. Like {@link #queryHelper}, this abstracts away
+     * the ItemCollection, which is nearly impossible to mock.
+     */
+    protected QueryOutcome queryPageHelper(@Nonnull QuerySpec spec) {
+        return index.query(spec).firstPage().getLowLevelResult();
+    }
 }
\ No newline at end of file
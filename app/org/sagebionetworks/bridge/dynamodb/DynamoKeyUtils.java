@@ -0,0 +1,73 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Reads the table key from mapper-annotated entities, using the same getters the mapper uses. This is used to match
+ * entities by key, for example to cache loads or to put batch load results back in key order.
+ */
+final class DynamoKeyUtils {
+    private static final ConcurrentMap<Class<?>, List<Method>> KEY_GETTER_LIST_BY_CLASS = new ConcurrentHashMap<>();
+
+    private DynamoKeyUtils() {
+    }
+
+    /**
+     * Returns the values of the hash key and range key (if any) of the given entity or key object. Two objects of the
+     * same class have the same key if and only if their key lists are equal.
+     *
+     * @throws IllegalArgumentException
+     *         if the class has no hash key, or if a key value is null
+     */
+    static List<Object> getKey(Object keyObject) {
+        List<Method> keyGetterList = KEY_GETTER_LIST_BY_CLASS.computeIfAbsent(keyObject.getClass(),
+                DynamoKeyUtils::findKeyGetters);
+        List<Object> keyValueList = Lists.newArrayListWithCapacity(keyGetterList.size());
+        for (Method oneGetter : keyGetterList) {
+            Object keyValue;
+            try {
+                keyValue = oneGetter.invoke(keyObject);
+            } catch (InvocationTargetException ex) {
+                // Some key getters throw if the fields the key is made from are missing.
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw new IllegalArgumentException(ex.getCause());
+            } catch (IllegalAccessException ex) {
+                throw new IllegalArgumentException(ex);
+            }
+            if (keyValue == null) {
+                throw new IllegalArgumentException(keyObject.getClass().getSimpleName() + " key " +
+                        oneGetter.getName() + " is null");
+            }
+            keyValueList.add(keyValue);
+        }
+        return keyValueList;
+    }
+
+    private static List<Method> findKeyGetters(Class<?> clazz) {
+        Method hashKeyGetter = null;
+        Method rangeKeyGetter = null;
+        for (Method oneMethod : clazz.getMethods()) {
+            if (oneMethod.isAnnotationPresent(DynamoDBHashKey.class)) {
+                hashKeyGetter = oneMethod;
+            } else if (oneMethod.isAnnotationPresent(DynamoDBRangeKey.class)) {
+                rangeKeyGetter = oneMethod;
+            }
+        }
+        if (hashKeyGetter == null) {
+            throw new IllegalArgumentException(clazz.getName() + " has no hash key");
+        }
+        return rangeKeyGetter != null ? ImmutableList.of(hashKeyGetter, rangeKeyGetter) :
+                ImmutableList.of(hashKeyGetter);
+    }
+}
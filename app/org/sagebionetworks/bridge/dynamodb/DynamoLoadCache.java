@@ -0,0 +1,134 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+
+/**
+ * <p>
+ * Read-through cache for mapper loads of entities that don't change once they're written, like health code and
+ * health ID mappings. Caching is enabled per entity class, by simple class name, in
+ * ddb.load.cache.classes. Loads of other classes go straight to the mapper. Each class has its own cache, with at most
+ * ddb.load.cache.max.size entries, and its own hit and miss counts (see {@link #getStats}).
+ * </p>
+ * <p>
+ * Saves must go through this cache (or call {@link #invalidate}) so this server never serves an entity it has
+ * changed. Other servers can't invalidate our cache, so entries also expire after ddb.load.cache.expire.minutes, and
+ * "not found" is never cached. Entities that can be deleted and re-created with the same key, like upload schema
+ * revisions, must not be cached here, since another server would keep serving the deleted entity.
+ * </p>
+ * <p>
+ * Cached entities are shared between callers, so callers must not modify them. DAOs that load an entity to modify it
+ * should load it from the mapper directly.
+ * </p>
+ */
+@Component
+public class DynamoLoadCache {
+    // package-scoped for unit tests
+    static final String CONFIG_KEY_CLASSES = "ddb.load.cache.classes";
+    static final String CONFIG_KEY_MAX_SIZE = "ddb.load.cache.max.size";
+    static final String CONFIG_KEY_EXPIRE_MINUTES = "ddb.load.cache.expire.minutes";
+
+    private final ConcurrentMap<Class<?>, Cache<List<Object>, Object>> cacheByClass = new ConcurrentHashMap<>();
+    private Set<String> enabledClassNameSet = ImmutableSet.of();
+    private long maxSize;
+    private long expireMinutes;
+
+    /** Bridge config, used to get the cached classes, and the size and expiration of each class's cache. */
+    @Autowired
+    public final void setConfig(BridgeConfig config) {
+        this.enabledClassNameSet = ImmutableSet.copyOf(config.getPropertyAsList(CONFIG_KEY_CLASSES));
+        this.maxSize = config.getPropertyAsInt(CONFIG_KEY_MAX_SIZE);
+        this.expireMinutes = config.getPropertyAsInt(CONFIG_KEY_EXPIRE_MINUTES);
+        cacheByClass.clear();
+    }
+
+    /** True if loads of the given class are cached. */
+    public boolean isEnabled(@Nonnull Class<?> clazz) {
+        return enabledClassNameSet.contains(clazz.getSimpleName());
+    }
+
+    /**
+     * Loads the entity with the same keys as the given key object, from the cache if it's there, otherwise from the
+     * mapper. The returned entity must not be modified.
+     *
+     * @param mapper
+     *         mapper for the entity's table
+     * @param keyObject
+     *         object with the hash key, and range key if any, set
+     * @return the entity, or null if it doesn't exist
+     */
+    public <T> T load(@Nonnull DynamoDBMapper mapper, @Nonnull T keyObject) {
+        Class<?> clazz = keyObject.getClass();
+        if (!isEnabled(clazz)) {
+            return mapper.load(keyObject);
+        }
+
+        Cache<List<Object>, Object> cache = getCache(clazz);
+        List<Object> key = DynamoKeyUtils.getKey(keyObject);
+        @SuppressWarnings("unchecked")
+        T entity = (T) cache.getIfPresent(key);
+        if (entity == null) {
+            entity = mapper.load(keyObject);
+            if (entity != null) {
+                cache.put(key, entity);
+            }
+        }
+        return entity;
+    }
+
+    /** Saves the entity using the mapper, and invalidates its cache entry, even if the save fails. */
+    public void save(@Nonnull DynamoDBMapper mapper, @Nonnull Object entity) {
+        try {
+            mapper.save(entity);
+        } finally {
+            invalidate(entity);
+        }
+    }
+
+    /**
+     * Removes the cache entry for the entity with the same keys as the given object, if there is one. DAOs call this
+     * for entities written some other way, like batch writes.
+     */
+    public void invalidate(@Nonnull Object keyObject) {
+        Class<?> clazz = keyObject.getClass();
+        if (isEnabled(clazz)) {
+            getCache(clazz).invalidate(DynamoKeyUtils.getKey(keyObject));
+        }
+    }
+
+    /** Hit, miss, and eviction counts for the given class's cache. These are all zero if the class isn't cached. */
+    public CacheStats getStats(@Nonnull Class<?> clazz) {
+        Cache<List<Object>, Object> cache = cacheByClass.get(clazz);
+        return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+    /** Stats for every class that has been cached, keyed by simple class name. */
+    public Map<String, CacheStats> getAllStats() {
+        ImmutableMap.Builder<String, CacheStats> statsMapBuilder = ImmutableMap.builder();
+        for (Map.Entry<Class<?>, Cache<List<Object>, Object>> oneEntry : cacheByClass.entrySet()) {
+            statsMapBuilder.put(oneEntry.getKey().getSimpleName(), oneEntry.getValue().stats());
+        }
+        return statsMapBuilder.build();
+    }
+
+    private Cache<List<Object>, Object> getCache(Class<?> clazz) {
+        return cacheByClass.computeIfAbsent(clazz, key -> CacheBuilder.newBuilder().maximumSize(maxSize)
+                .expireAfterWrite(expireMinutes, TimeUnit.MINUTES).recordStats().build());
+    }
+}
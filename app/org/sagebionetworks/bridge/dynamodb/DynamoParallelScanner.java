@@ -0,0 +1,259 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Resource;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.util.concurrent.RateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+/**
+ * <p>
+ * Parallel full table scans. A scan is split into segments (ddb.scan.segment.count), which are scanned concurrently
+ * on a shared executor. Pages of results are handed to the calling thread through a bounded queue
+ * (ddb.scan.queue.pages), so a slow consumer holds back the scan rather than piling up the whole table in memory.
+ * </p>
+ * <p>
+ * Each scan is limited to ddb.scan.read.capacity.per.second read capacity units, based on the capacity DynamoDB
+ * reports each page consumed, so administrative scans don't starve regular traffic on the same table.
+ * </p>
+ * <p>
+ * Items are converted using the DAO's mapper. The filter conditions and filter expression of the scan expression are
+ * applied; limits and start keys are not, since each segment pages through to the end.
+ * </p>
+ */
+@Component
+public class DynamoParallelScanner {
+    // package-scoped for unit tests
+    static final String CONFIG_KEY_SEGMENT_COUNT = "ddb.scan.segment.count";
+    static final String CONFIG_KEY_QUEUE_PAGES = "ddb.scan.queue.pages";
+    static final String CONFIG_KEY_READ_CAPACITY_PER_SECOND = "ddb.scan.read.capacity.per.second";
+
+    // How often a segment blocked on a full queue checks whether the scan was abandoned.
+    private static final long QUEUE_OFFER_TIMEOUT_MILLIS = 100;
+
+    // How long the calling thread waits for the next page before giving up on the scan. A page is one DynamoDB call
+    // plus the rate limiter's wait, so this only trips if a segment thread is stuck or died without posting its end.
+    private static final long DEFAULT_PAGE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // A page of items from one segment, or the end of that segment, or the error that ended it.
+    private static class ScanPage<T> {
+        final List<T> itemList;
+        final Throwable error;
+
+        ScanPage(List<T> itemList, Throwable error) {
+            this.itemList = itemList;
+            this.error = error;
+        }
+    }
+
+    private int segmentCount;
+    private int queuePages;
+    private int readCapacityPerSecond;
+    private AmazonDynamoDB dynamoDbClient;
+    private DynamoNamingHelper dynamoNamingHelper;
+    private ExecutorService scanExecutorService;
+    private long pageTimeoutMillis = DEFAULT_PAGE_TIMEOUT_MILLIS;
+
+    /** Bridge config, used to get the segment count, queue size, and read capacity limit. */
+    @Autowired
+    public final void setConfig(BridgeConfig config) {
+        this.segmentCount = config.getPropertyAsInt(CONFIG_KEY_SEGMENT_COUNT);
+        this.queuePages = config.getPropertyAsInt(CONFIG_KEY_QUEUE_PAGES);
+        this.readCapacityPerSecond = config.getPropertyAsInt(CONFIG_KEY_READ_CAPACITY_PER_SECOND);
+    }
+
+    /** DynamoDB client, used to scan segments. This is configured by Spring. */
+    @Resource(name = "dynamoDbClient")
+    public final void setDynamoDbClient(AmazonDynamoDB dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+    }
+
+    /** Naming helper, used to get the table name for the scanned class. This is configured by Spring. */
+    @Autowired
+    public final void setDynamoNamingHelper(DynamoNamingHelper dynamoNamingHelper) {
+        this.dynamoNamingHelper = dynamoNamingHelper;
+    }
+
+    /** Executor shared by all scans, for scanning segments. This is configured by Spring. */
+    @Resource(name = "dynamoScanExecutorService")
+    public final void setScanExecutorService(ExecutorService scanExecutorService) {
+        this.scanExecutorService = scanExecutorService;
+    }
+
+    /** Sets how long to wait for the next page. Package-scoped so unit tests don't have to wait minutes. */
+    void setPageTimeoutMillis(long pageTimeoutMillis) {
+        this.pageTimeoutMillis = pageTimeoutMillis;
+    }
+
+    /**
+     * Scans the whole table for the given class, and returns all items that match the scan expression's filters.
+     *
+     * @see #scan
+     */
+    public <T> List<T> scanToList(@Nonnull DynamoDBMapper mapper, @Nonnull Class<T> clazz,
+            @Nonnull DynamoDBScanExpression scanExpression) {
+        List<T> resultList = new ArrayList<>();
+        scan(mapper, clazz, scanExpression, resultList::add);
+        return resultList;
+    }
+
+    /**
+     * Scans the whole table for the given class in parallel segments, and passes each item that matches the scan
+     * expression's filters to the consumer. The consumer is called on the calling thread, one item at a time, in no
+     * particular order. If a segment fails, or the consumer throws, the rest of the scan is abandoned and the
+     * exception is rethrown. Segment failures that aren't runtime exceptions (such as errors) are wrapped in a
+     * BridgeServiceException. If no page arrives for several minutes, the scan is abandoned with a
+     * BridgeServiceException, rather than waiting forever on a stuck segment.
+     *
+     * @param mapper
+     *         mapper for the table, used to convert items
+     * @param clazz
+     *         class of the table to scan
+     * @param scanExpression
+     *         scan filters
+     * @param consumer
+     *         called with each item
+     */
+    public <T> void scan(@Nonnull DynamoDBMapper mapper, @Nonnull Class<T> clazz,
+            @Nonnull DynamoDBScanExpression scanExpression, @Nonnull Consumer<? super T> consumer) {
+        String tableName = dynamoNamingHelper.getFullyQualifiedTableName(clazz);
+        int totalSegments = segmentCount;
+        BlockingQueue<ScanPage<T>> queue = new ArrayBlockingQueue<>(queuePages);
+        RateLimiter rateLimiter = RateLimiter.create(readCapacityPerSecond);
+        AtomicBoolean abandoned = new AtomicBoolean();
+
+        for (int i = 0; i < totalSegments; i++) {
+            final int segment = i;
+            scanExecutorService.execute(() -> scanSegment(mapper, clazz, tableName, scanExpression, segment,
+                    totalSegments, queue, rateLimiter, abandoned));
+        }
+
+        try {
+            int remainingSegments = totalSegments;
+            while (remainingSegments > 0) {
+                ScanPage<T> page = takePage(queue, tableName);
+                if (page.error instanceof RuntimeException) {
+                    throw (RuntimeException) page.error;
+                } else if (page.error != null) {
+                    throw new BridgeServiceException(page.error);
+                } else if (page.itemList == null) {
+                    remainingSegments--;
+                } else {
+                    page.itemList.forEach(consumer);
+                }
+            }
+        } finally {
+            // Lets segments that are still running give up, if we're leaving early.
+            abandoned.set(true);
+        }
+    }
+
+    // Waits for the next page, up to the page timeout. Like Uninterruptibles, an interrupt doesn't end the wait early,
+    // but the interrupt flag is restored before returning.
+    private <T> ScanPage<T> takePage(BlockingQueue<ScanPage<T>> queue, String tableName) {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pageTimeoutMillis);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                try {
+                    ScanPage<T> page = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (page == null) {
+                        throw new BridgeServiceException("Scan of " + tableName + " got no page in " +
+                                pageTimeoutMillis + " ms");
+                    }
+                    return page;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private <T> void scanSegment(DynamoDBMapper mapper, Class<T> clazz, String tableName,
+            DynamoDBScanExpression scanExpression, int segment, int totalSegments, BlockingQueue<ScanPage<T>> queue,
+            RateLimiter rateLimiter, AtomicBoolean abandoned) {
+        if (abandoned.get()) {
+            // The scan ended before this segment got a thread.
+            return;
+        }
+
+        ScanPage<T> lastPage;
+        try {
+            Map<String, AttributeValue> startKey = null;
+            do {
+                ScanRequest request = new ScanRequest().withTableName(tableName)
+                        .withSegment(segment).withTotalSegments(totalSegments)
+                        .withScanFilter(scanExpression.getScanFilter())
+                        .withConditionalOperator(scanExpression.getConditionalOperator())
+                        .withFilterExpression(scanExpression.getFilterExpression())
+                        .withExpressionAttributeNames(scanExpression.getExpressionAttributeNames())
+                        .withExpressionAttributeValues(scanExpression.getExpressionAttributeValues())
+                        .withExclusiveStartKey(startKey)
+                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+                ScanResult result = dynamoDbClient.scan(request);
+
+                // This page's capacity is already spent, so this makes the next page (from any segment) wait for it.
+                ConsumedCapacity consumedCapacity = result.getConsumedCapacity();
+                if (consumedCapacity != null && consumedCapacity.getCapacityUnits() != null) {
+                    rateLimiter.acquire(Math.max(1, (int) Math.ceil(consumedCapacity.getCapacityUnits())));
+                }
+
+                List<T> itemList = new ArrayList<>(result.getItems().size());
+                for (Map<String, AttributeValue> oneItem : result.getItems()) {
+                    itemList.add(mapper.marshallIntoObject(clazz, oneItem));
+                }
+                if (!offer(queue, new ScanPage<>(itemList, null), abandoned)) {
+                    return;
+                }
+
+                startKey = result.getLastEvaluatedKey();
+            } while (startKey != null && !startKey.isEmpty());
+            lastPage = new ScanPage<>(null, null);
+        } catch (Throwable ex) {
+            // Errors too, so the calling thread never waits on a segment that died without posting its end.
+            lastPage = new ScanPage<>(null, ex);
+        }
+        offer(queue, lastPage, abandoned);
+    }
+
+    // Waits for room on the queue. Returns false if the scan was abandoned first.
+    private static <T> boolean offer(BlockingQueue<ScanPage<T>> queue, ScanPage<T> page, AtomicBoolean abandoned) {
+        while (!abandoned.get()) {
+            try {
+                if (queue.offer(page, QUEUE_OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+}
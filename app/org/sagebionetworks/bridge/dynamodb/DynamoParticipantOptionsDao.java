@@ -4,7 +4,6 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
-import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Resource;
@@ -15,6 +14,7 @@ import org.sagebionetworks.bridge.models.accounts.AllParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
@@ -28,12 +28,18 @@ import com.google.common.collect.ImmutableMap;
 public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
 
     private DynamoDBMapper mapper;
+    private DynamoParallelScanner parallelScanner;
     
     @Resource(name = "participantOptionsDbMapper")
     final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
 
+    @Autowired
+    final void setParallelScanner(DynamoParallelScanner parallelScanner) {
+        this.parallelScanner = parallelScanner;
+    }
+
     @Override
     public void setOption(StudyIdentifier studyIdentifier, String healthCode, ParticipantOption option, String value) {
         checkNotNull(studyIdentifier);
@@ -133,10 +139,8 @@ public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
         condition.withAttributeValueList(new AttributeValue().withS(studyIdentifier.getIdentifier()));
         scan.addFilterCondition("studyKey", condition);
         
-        List<DynamoParticipantOptions> mappings = mapper.scan(DynamoParticipantOptions.class, scan);
-        for (DynamoParticipantOptions mapping : mappings) {
-            allLookup.put(mapping.getHealthCode(), new ParticipantOptionsLookup(mapping.getOptions()));
-        }
+        parallelScanner.scan(mapper, DynamoParticipantOptions.class, scan, mapping -> allLookup.put(
+                mapping.getHealthCode(), new ParticipantOptionsLookup(mapping.getOptions())));
         return allLookup;
     }
 
@@ -7,16 +7,15 @@ import java.util.Map;
 
 import javax.annotation.Resource;
 
-import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.ScheduledActivityDao;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
 
 import org.joda.time.DateTimeZone;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
 import com.google.common.collect.ImmutableList;
@@ -27,12 +26,18 @@ import com.google.common.collect.Lists;
 public class DynamoScheduledActivityDao implements ScheduledActivityDao {
     
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
     
     @Resource(name = "activityDdbMapper")
     public final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
 
+    @Autowired
+    public final void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
     /** {@inheritDoc} */
     @Override
     public ScheduledActivity getActivity(DateTimeZone timeZone, String healthCode, String guid) {
@@ -75,8 +80,7 @@ public class DynamoScheduledActivityDao implements ScheduledActivityDao {
     public void saveActivities(List<ScheduledActivity> activities) {
         if (!activities.isEmpty()) {
             // Health code is (now) set during construction in the scheduler.
-            List<FailedBatch> failures = mapper.batchSave(activities);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchSave(mapper, activities);
         }
     }
     
@@ -84,8 +88,7 @@ public class DynamoScheduledActivityDao implements ScheduledActivityDao {
     @Override
     public void updateActivities(String healthCode, List<ScheduledActivity> activities) {
         if (!activities.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchSave(activities);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchSave(mapper, activities);
         }
     }
     
@@ -105,8 +108,7 @@ public class DynamoScheduledActivityDao implements ScheduledActivityDao {
         activitiesToDelete.addAll(queryResults);
 
         if (!activitiesToDelete.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchDelete(activitiesToDelete);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchDelete(mapper, activitiesToDelete);
         }
     }
     
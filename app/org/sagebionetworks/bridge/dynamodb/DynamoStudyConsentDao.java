@@ -6,15 +6,14 @@ import java.util.List;
 import javax.annotation.Resource;
 
 import org.joda.time.DateTime;
-import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.StudyConsentDao;
 import org.sagebionetworks.bridge.models.subpopulations.StudyConsent;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
@@ -25,11 +24,17 @@ import com.amazonaws.services.dynamodbv2.model.Condition;
 public class DynamoStudyConsentDao implements StudyConsentDao {
 
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
 
     @Resource(name = "studyConsentDdbMapper")
     final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
+
+    @Autowired
+    final void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
     
     @Override
     public StudyConsent addConsent(SubpopulationGuid subpopGuid, String storagePath, DateTime createdOn) {
@@ -133,8 +138,7 @@ public class DynamoStudyConsentDao implements StudyConsentDao {
             consentsToDelete.add(consent);
         }
         if (!consentsToDelete.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchDelete(consentsToDelete);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchDelete(mapper, consentsToDelete);
         }
     }
 }
@@ -33,6 +33,7 @@ public class DynamoStudyDao implements StudyDao {
             BridgeConfigFactory.getConfig().getPropertyAsList("study.whitelist"));
 
     private DynamoDBMapper mapper;
+    private DynamoParallelScanner parallelScanner;
 
     @Autowired
     public void setDynamoDbClient(AmazonDynamoDB client, DynamoNamingHelper dynamoNamingHelper) {
@@ -42,6 +43,11 @@ public class DynamoStudyDao implements StudyDao {
         mapper = new DynamoDBMapper(client, mapperConfig);
     }
 
+    @Autowired
+    public void setParallelScanner(DynamoParallelScanner parallelScanner) {
+        this.parallelScanner = parallelScanner;
+    }
+
     @Override
     public boolean doesIdentifierExist(String identifier) {
         DynamoStudy study = new DynamoStudy();
@@ -66,7 +72,7 @@ public class DynamoStudyDao implements StudyDao {
     public List<Study> getStudies() {
         DynamoDBScanExpression scan = new DynamoDBScanExpression();
         
-        List<DynamoStudy> mappings = mapper.scan(DynamoStudy.class, scan);
+        List<DynamoStudy> mappings = parallelScanner.scanToList(mapper, DynamoStudy.class, scan);
         return new ArrayList<Study>(mappings);
     }
 
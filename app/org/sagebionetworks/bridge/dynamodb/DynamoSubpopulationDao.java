@@ -10,7 +10,6 @@ import javax.annotation.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.CriteriaDao;
 import org.sagebionetworks.bridge.dao.StudyConsentDao;
 import org.sagebionetworks.bridge.dao.SubpopulationDao;
@@ -26,13 +25,13 @@ import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.google.common.collect.ImmutableList;
 
 @Component
 public class DynamoSubpopulationDao implements SubpopulationDao {
     
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
     private StudyConsentDao studyConsentDao;
     private CriteriaDao criteriaDao;
 
@@ -40,6 +39,11 @@ public class DynamoSubpopulationDao implements SubpopulationDao {
     final void setMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
+
+    @Autowired
+    final void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
     
     @Autowired
     final void setStudyConsentDao(StudyConsentDao studyConsentDao) {
@@ -197,8 +201,7 @@ public class DynamoSubpopulationDao implements SubpopulationDao {
                 studyConsentDao.deleteAllConsents(subpop.getGuid());
                 criteriaDao.deleteCriteria(subpop.getCriteria().getKey());
             }
-            List<FailedBatch> failures = mapper.batchDelete(subpops);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchDelete(mapper, subpops);
         }
     }
     
@@ -9,7 +9,6 @@ import javax.annotation.Resource;
 
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.SurveyDao;
-import org.sagebionetworks.bridge.dao.UploadSchemaDao;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
@@ -17,16 +16,13 @@ import org.sagebionetworks.bridge.exceptions.PublishedSurveyException;
 import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
-import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.SurveyElement;
 import org.sagebionetworks.bridge.models.surveys.SurveyElementFactory;
-import org.sagebionetworks.bridge.models.upload.UploadSchema;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
@@ -92,7 +88,8 @@ public class DynamoSurveyDao implements SurveyDao {
             if (notDeleted) {
                 query.withQueryFilterEntry(DELETED_PROPERTY, equalsNumber("0"));
             }
-            return surveyMapper.queryPage(DynamoSurvey.class, query).getCount();
+            // count() uses Select.COUNT and sums the counts across all pages, so no surveys come over the wire.
+            return surveyMapper.count(DynamoSurvey.class, query);
         }
         
         List<Survey> getAll(boolean exceptionIfEmpty) {
@@ -189,7 +186,7 @@ public class DynamoSurveyDao implements SurveyDao {
 
     private DynamoDBMapper surveyMapper;
     private DynamoDBMapper surveyElementMapper;
-    private UploadSchemaDao uploadSchemaDao;
+    private DynamoBatchWriter batchWriter;
     
     @Resource(name = "surveyMapper")
     public void setSurveyMapper(DynamoDBMapper surveyMapper) {
@@ -202,8 +199,8 @@ public class DynamoSurveyDao implements SurveyDao {
     }
 
     @Autowired
-    public final void setUploadSchemaDao(UploadSchemaDao uploadSchemaDao) {
-        this.uploadSchemaDao = uploadSchemaDao;
+    public void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
     }
 
     @Override
@@ -222,19 +219,15 @@ public class DynamoSurveyDao implements SurveyDao {
     }
 
     @Override
-    public Survey publishSurvey(StudyIdentifier study, GuidCreatedOnVersionHolder keys) {
+    public Survey publishSurvey(GuidCreatedOnVersionHolder keys, int schemaRevision) {
         Survey survey = getSurvey(keys);
         if (survey.isDeleted()) {
             throw new EntityNotFoundException(Survey.class);
         }
         if (!survey.isPublished()) {
-            // make schema from survey
-            UploadSchema schema = uploadSchemaDao.createUploadSchemaFromSurvey(study, survey);
-
-            // update survey
             survey.setPublished(true);
             survey.setModifiedOn(DateUtils.getCurrentMillisFromEpoch());
-            survey.setSchemaRevision(schema.getRevision());
+            survey.setSchemaRevision(schemaRevision);
             try {
                 surveyMapper.save(survey);
             } catch(ConditionalCheckFailedException e) {
@@ -312,14 +305,6 @@ public class DynamoSurveyDao implements SurveyDao {
         Survey existing = getSurvey(keys);
         deleteAllElements(existing.getGuid(), existing.getCreatedOn());
         surveyMapper.delete(existing);
-        
-        // Delete the schemas as well, or they accumulate.
-        try {
-            StudyIdentifier studyId = new StudyIdentifierImpl(existing.getStudyIdentifier());
-            uploadSchemaDao.deleteUploadSchemaById(studyId, existing.getIdentifier());
-        } catch(EntityNotFoundException e) {
-            // This is OK. Just means this survey wasn't published.
-        }
     }
 
     @Override
@@ -395,8 +380,7 @@ public class DynamoSurveyDao implements SurveyDao {
             dynamoElements.add((DynamoSurveyElement)element);
         }
         
-        List<FailedBatch> failures = surveyElementMapper.batchSave(dynamoElements);
-        BridgeUtils.ifFailuresThrowException(failures);
+        batchWriter.batchSave(surveyElementMapper, dynamoElements);
 
         try {
             surveyMapper.save(survey);
@@ -418,7 +402,6 @@ public class DynamoSurveyDao implements SurveyDao {
         query.withHashKeyValues(template);
         
         List<DynamoSurveyElement> page = surveyElementMapper.query(DynamoSurveyElement.class, query);
-        List<FailedBatch> failures = surveyElementMapper.batchDelete(page);
-        BridgeUtils.ifFailuresThrowException(failures);
+        batchWriter.batchDelete(surveyElementMapper, page);
     }
 }
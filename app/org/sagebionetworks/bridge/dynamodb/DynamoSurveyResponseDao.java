@@ -20,7 +20,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
@@ -37,12 +36,18 @@ public class DynamoSurveyResponseDao implements SurveyResponseDao {
     private static final List<SurveyAnswer> EMPTY_ANSWERS = ImmutableList.of();
     
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
     private DynamoSurveyDao surveyDao;
 
     @Resource(name = "surveyResponseDdbMapper")
     public void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
+
+    @Autowired
+    public void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
     
     @Autowired
     public void setSurveyDao(DynamoSurveyDao surveyDao) {
@@ -97,8 +102,7 @@ public class DynamoSurveyResponseDao implements SurveyResponseDao {
         responsesToDelete.addAll(results);
         
         if (!responsesToDelete.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchDelete(responsesToDelete);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchDelete(mapper, responsesToDelete);
         }
     }
     
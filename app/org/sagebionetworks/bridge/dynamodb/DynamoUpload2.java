@@ -31,8 +31,12 @@ public class DynamoUpload2 implements Upload {
     private long contentLength;
     private String contentMd5;
     private String contentType;
+    private String duplicateUploadId;
     private String filename;
     private String healthCode;
+    private String multipartUploadId;
+    private Integer partCount;
+    private Long partSize;
     private String recordId;
     private UploadStatus status;
     private LocalDate uploadDate;
@@ -93,6 +97,17 @@ public class DynamoUpload2 implements Upload {
         this.contentType = contentType;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public String getDuplicateUploadId() {
+        return duplicateUploadId;
+    }
+
+    /** @see #getDuplicateUploadId */
+    public void setDuplicateUploadId(String duplicateUploadId) {
+        this.duplicateUploadId = duplicateUploadId;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getFilename() {
@@ -124,6 +139,39 @@ public class DynamoUpload2 implements Upload {
         return uploadId;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public String getMultipartUploadId() {
+        return multipartUploadId;
+    }
+
+    /** @see #getMultipartUploadId */
+    public void setMultipartUploadId(String multipartUploadId) {
+        this.multipartUploadId = multipartUploadId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Integer getPartCount() {
+        return partCount;
+    }
+
+    /** @see #getPartCount */
+    public void setPartCount(Integer partCount) {
+        this.partCount = partCount;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long getPartSize() {
+        return partSize;
+    }
+
+    /** @see #getPartSize */
+    public void setPartSize(Long partSize) {
+        this.partSize = partSize;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getRecordId() {
@@ -5,12 +5,15 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.List;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.Resource;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeConstants;
@@ -24,6 +27,7 @@ import org.sagebionetworks.bridge.models.upload.UploadStatus;
 @Component
 public class DynamoUploadDao implements UploadDao {
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
 
     /**
      * This is the DynamoDB mapper that reads from and writes to our DynamoDB table. This is normally configured by
@@ -34,18 +38,49 @@ public class DynamoUploadDao implements UploadDao {
         this.mapper = mapper;
     }
 
+    /** Batch writer for saves and deletes. This is configured by Spring. */
+    @Autowired
+    public void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
     /** {@inheritDoc} */
     @Override
-    public Upload createUpload(@Nonnull UploadRequest uploadRequest, @Nonnull String healthCode) {
+    public Upload createUpload(@Nonnull UploadRequest uploadRequest, @Nonnull String healthCode,
+            @Nullable String duplicateUploadId) {
         checkNotNull(uploadRequest, "Upload request is null");
         checkArgument(StringUtils.isNotBlank(healthCode), "Health code is null or blank");        
 
         // Always write new uploads to the new upload table.
         DynamoUpload2 upload = new DynamoUpload2(uploadRequest, healthCode);
+        upload.setDuplicateUploadId(duplicateUploadId);
         mapper.save(upload);
         return upload;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public List<Upload> createUploads(@Nonnull List<UploadRequest> uploadRequestList, @Nonnull String healthCode,
+            @Nonnull List<String> duplicateUploadIdList) {
+        checkArgument(uploadRequestList != null && !uploadRequestList.isEmpty(),
+                "Upload request list is null or empty");
+        checkArgument(StringUtils.isNotBlank(healthCode), "Health code is null or blank");
+        checkNotNull(duplicateUploadIdList, "Duplicate upload ID list is null");
+        checkArgument(uploadRequestList.size() == duplicateUploadIdList.size(),
+                "Duplicate upload ID list must be the same size as upload request list");
+
+        ImmutableList.Builder<Upload> uploadListBuilder = ImmutableList.builder();
+        for (int i = 0; i < uploadRequestList.size(); i++) {
+            DynamoUpload2 upload = new DynamoUpload2(uploadRequestList.get(i), healthCode);
+            upload.setDuplicateUploadId(duplicateUploadIdList.get(i));
+            uploadListBuilder.add(upload);
+        }
+        List<Upload> uploadList = uploadListBuilder.build();
+
+        batchWriter.batchSave(mapper, uploadList);
+        return uploadList;
+    }
+
     // TODO: Cache this, or make it so that calling getUpload() and uploadComplete() in sequence don't cause duplicate
     // calls to DynamoDB.
     /** {@inheritDoc} */
@@ -62,6 +97,19 @@ public class DynamoUploadDao implements UploadDao {
         throw new NotFoundException(String.format("Upload ID %s not found", uploadId));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void writeMultipartUploadInfo(@Nonnull Upload upload, @Nonnull String multipartUploadId, long partSize,
+            int partCount) {
+        checkArgument(StringUtils.isNotBlank(multipartUploadId), "Multipart upload ID is null or blank");
+
+        DynamoUpload2 upload2 = (DynamoUpload2) upload;
+        upload2.setMultipartUploadId(multipartUploadId);
+        upload2.setPartSize(partSize);
+        upload2.setPartCount(partCount);
+        mapper.save(upload2);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void uploadComplete(@Nonnull Upload upload) {
@@ -3,6 +3,7 @@ package org.sagebionetworks.bridge.dynamodb;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMarshalling;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
@@ -75,10 +76,10 @@ public class DynamoUploadDedupe {
 
     /**
      * Calendar date the upload was requested on, as recorded using the server's local time zone (Seattle time). This
-     * is used to clean up old upload dedupe entries afterwards.
+     * is used to clean up old upload dedupe entries afterwards, and to load the dedupe filter.
      */
-    @DynamoDBIndexHashKey(attributeName = "uploadRequestedDate",
-            globalSecondaryIndexName = "uploadRequestedDate-index")
+    @DynamoDBIndexHashKey(attributeName = "uploadRequestedDate", globalSecondaryIndexNames = {
+            "uploadRequestedDate-index", "uploadRequestedDate-uploadRequestedOn-index" })
     @DynamoDBMarshalling(marshallerClass = LocalDateMarshaller.class)
     @SuppressWarnings("unused")
     public LocalDate getUploadRequestedDate() {
@@ -95,6 +96,8 @@ public class DynamoUploadDedupe {
      * collisions, we need an additional key to make sure the uploads are different.
      */
     @DynamoDBRangeKey
+    @DynamoDBIndexRangeKey(attributeName = "uploadRequestedOn",
+            globalSecondaryIndexName = "uploadRequestedDate-uploadRequestedOn-index")
     @SuppressWarnings("unused")
     public long getUploadRequestedOn() {
         return uploadRequestedOn;
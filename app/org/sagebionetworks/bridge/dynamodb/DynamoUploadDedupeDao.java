@@ -1,25 +1,90 @@
 package org.sagebionetworks.bridge.dynamodb;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.dao.UploadDedupeDao;
+import org.sagebionetworks.bridge.redis.JedisOps;
+import org.sagebionetworks.bridge.redis.JedisTransaction;
+import org.sagebionetworks.bridge.redis.RedisKey;
 
-/** DDB implementation of UploadDedupeDao. */
+/**
+ * <p>
+ * DDB implementation of UploadDedupeDao.
+ * </p>
+ * <p>
+ * Each node keeps a Bloom filter of uploads registered in the dedupe window, so most dupe checks can skip the DynamoDB
+ * query. The filter only learns about uploads registered by other nodes when it's refreshed, so every registration is
+ * also written to Redis, with a TTL longer than the time it takes every node's filter to pick it up. A dupe check only
+ * skips the query if neither the filter nor Redis has seen the upload. If the filter hasn't been refreshed recently
+ * enough for the Redis TTL to cover the gap, or Redis is unavailable, we always query.
+ * </p>
+ */
 @Component
 public class DynamoUploadDedupeDao implements UploadDedupeDao {
+    private static final Logger logger = LoggerFactory.getLogger(DynamoUploadDedupeDao.class);
+
     private static final int NUM_DAYS_BEFORE = 7;
 
+    // Each refresh loads uploads requested since the previous refresh, less this overlap, in case of index lag or
+    // clock skew between nodes. This must be less than the refresh interval.
+    private static final long REFRESH_OVERLAP_MILLIS = 60 * 1000;
+
+    // package-scoped to be available in unit tests
+    static final String CONFIG_KEY_FILTER_EXPECTED_UPLOADS_PER_DAY = "upload.dedupe.filter.expected.uploads.per.day";
+    static final String CONFIG_KEY_FILTER_FALSE_POSITIVE_RATE = "upload.dedupe.filter.false.positive.rate";
+    static final String CONFIG_KEY_FILTER_REFRESH_MINUTES = "upload.dedupe.filter.refresh.minutes";
+    static final String INDEX_KEY_UPLOAD_REQUESTED_DATE = "uploadRequestedDate";
+    static final String INDEX_KEY_UPLOAD_REQUESTED_ON = "uploadRequestedOn";
+
+    private UploadDedupeFilter filter;
+    private ScheduledExecutorService filterRefreshExecutor;
+    private int filterRefreshMinutes;
+    private int recentRegistrationTtlSeconds;
+    private long maxFilterAgeMillis;
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
+    private DynamoIndexHelper requestedOnIndex;
+    private JedisOps jedisOps;
+
+    /** Sets up the dedupe filter from the specified Bridge config. */
+    @Autowired
+    public final void setConfig(BridgeConfig config) {
+        filter = new UploadDedupeFilter(config.getPropertyAsInt(CONFIG_KEY_FILTER_EXPECTED_UPLOADS_PER_DAY),
+                Double.parseDouble(config.getProperty(CONFIG_KEY_FILTER_FALSE_POSITIVE_RATE)));
+        filterRefreshMinutes = config.getPropertyAsInt(CONFIG_KEY_FILTER_REFRESH_MINUTES);
+
+        // Recent registrations stay in Redis for 3 refresh intervals. The filter is only trusted if it was refreshed
+        // within the last 2, so anything registered before the last refresh it missed is still in Redis.
+        recentRegistrationTtlSeconds = (int) TimeUnit.MINUTES.toSeconds(3 * filterRefreshMinutes);
+        maxFilterAgeMillis = TimeUnit.MINUTES.toMillis(2 * filterRefreshMinutes);
+    }
 
     /** UploadDedupe DDB mapper. */
     @Resource(name = "uploadDedupeDdbMapper")
@@ -27,9 +92,98 @@ public class DynamoUploadDedupeDao implements UploadDedupeDao {
         this.mapper = mapper;
     }
 
+    /** Batch writer for saves and deletes. This is configured by Spring. */
+    @Autowired
+    public void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
+    /** Index on upload requested date and time, used to load the dedupe filter. */
+    @Resource(name = "uploadDedupeRequestedOnIndex")
+    public void setRequestedOnIndex(DynamoIndexHelper requestedOnIndex) {
+        this.requestedOnIndex = requestedOnIndex;
+    }
+
+    /** Redis, used to share recent registrations with other nodes until their filters pick them up. */
+    @Autowired
+    public void setJedisOps(JedisOps jedisOps) {
+        this.jedisOps = jedisOps;
+    }
+
+    /**
+     * Starts loading the dedupe filter from the dedupe table in the background, then keeps refreshing it. Until a
+     * date is loaded, dupe checks that touch that date fall back to querying DynamoDB.
+     */
+    @PostConstruct
+    public void startFilterRefresh() {
+        filterRefreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("upload-dedupe-filter-%d").setDaemon(true).build());
+        filterRefreshExecutor.scheduleWithFixedDelay(this::refreshFilter, 0, filterRefreshMinutes,
+                TimeUnit.MINUTES);
+    }
+
+    /** Stops refreshing the dedupe filter. */
+    @PreDestroy
+    public void stopFilterRefresh() {
+        if (filterRefreshExecutor != null) {
+            filterRefreshExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads dates in the dedupe window that haven't been loaded yet, loads uploads requested since the last refresh
+     * for dates that have, and drops dates that have fallen out of the window. Package-scoped so unit tests can call
+     * it directly.
+     */
+    void refreshFilter() {
+        try {
+            long refreshStartMillis = DateTimeUtils.currentTimeMillis();
+            LocalDate today = toRequestedDate(new DateTime(refreshStartMillis));
+            LocalDate windowStartDate = today.minusDays(NUM_DAYS_BEFORE);
+            for (LocalDate date = windowStartDate; !date.isAfter(today); date = date.plusDays(1)) {
+                Long loadedAsOfMillis = filter.getLoadedAsOfMillis(date);
+                if (loadedAsOfMillis == null) {
+                    loadFilterDate(date, null);
+                } else {
+                    // Only uploads requested since the last load can be missing. Dates that ended before then can't
+                    // have any.
+                    long newSinceMillis = loadedAsOfMillis - REFRESH_OVERLAP_MILLIS;
+                    if (!date.isBefore(toRequestedDate(new DateTime(newSinceMillis)))) {
+                        loadFilterDate(date, new RangeKeyCondition(INDEX_KEY_UPLOAD_REQUESTED_ON).ge(
+                                newSinceMillis));
+                    }
+                }
+                filter.markLoaded(date, refreshStartMillis);
+            }
+            filter.removeDatesBefore(windowStartDate);
+        } catch (RuntimeException ex) {
+            // Exceptions would cancel the scheduled refresh. Log and try again next time.
+            logger.error("Error refreshing upload dedupe filter: " + ex.getMessage(), ex);
+        }
+    }
+
+    // Adds uploads registered on the given date to the filter, optionally only those matching the upload requested
+    // time condition. The index only has keys, which is all we need.
+    private void loadFilterDate(LocalDate date, RangeKeyCondition requestedOnCondition) {
+        List<DynamoUploadDedupe> dedupeKeyList = requestedOnIndex.queryKeys(DynamoUploadDedupe.class,
+                INDEX_KEY_UPLOAD_REQUESTED_DATE, date.toString(), requestedOnCondition);
+        for (DynamoUploadDedupe oneDedupeKey : dedupeKeyList) {
+            filter.put(oneDedupeKey.getHealthCode(), oneDedupeKey.getUploadMd5(), date);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getDuplicate(String healthCode, String uploadMd5, DateTime uploadRequestedOn) {
+        // The vast majority of uploads aren't dupes. If neither the filter nor recent registrations have seen this
+        // upload in the dedupe window, skip the query.
+        DateTime dupeWindowStartTime = uploadRequestedOn.minusDays(NUM_DAYS_BEFORE);
+        if (filter != null && !filter.mightContain(healthCode, uploadMd5, toRequestedDate(dupeWindowStartTime),
+                toRequestedDate(uploadRequestedOn), DateTimeUtils.currentTimeMillis() - maxFilterAgeMillis) &&
+                !isRecentlyRegistered(healthCode, uploadMd5)) {
+            return null;
+        }
+
         // Hash key comes from health code and upload MD5
         DynamoUploadDedupe hashKey = new DynamoUploadDedupe();
         hashKey.setHealthCode(healthCode);
@@ -38,7 +192,6 @@ public class DynamoUploadDedupeDao implements UploadDedupeDao {
         // MD5s can collide. So as an extra check for duplicate values, we only look at uploads requested within a
         // certain time. Since apps are known to upload a file, then upload the same file the next day, we'll give it
         // a 7-day buffer period for finding dupes.
-        DateTime dupeWindowStartTime = uploadRequestedOn.minusDays(NUM_DAYS_BEFORE);
         Condition requestedOnCondition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
                 .withAttributeValueList(new AttributeValue().withN(String.valueOf(dupeWindowStartTime.getMillis())),
                         new AttributeValue().withN(String.valueOf(uploadRequestedOn.getMillis())));
@@ -55,16 +208,96 @@ public class DynamoUploadDedupeDao implements UploadDedupeDao {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This can't query the health code's dedupe rows in one go. The table's only hash key is the combined
+     * "healthCode:md5" key, health code isn't stored as its own attribute, and the upload requested date indices span
+     * all users. Querying by health code would need a new attribute, a backfill, and a new index. Instead, each MD5 is
+     * first checked against the dedupe filter and recent registrations (see {@link #getDuplicate}), so only MD5s that
+     * might be dupes cost a query. In practice, that's almost none of them.
+     * </p>
+     */
+    @Override
+    public Map<String, String> getDuplicates(String healthCode, Set<String> uploadMd5Set,
+            DateTime uploadRequestedOn) {
+        Map<String, String> originalUploadIdsByMd5 = new HashMap<>();
+        for (String oneUploadMd5 : uploadMd5Set) {
+            String originalUploadId = getDuplicate(healthCode, oneUploadMd5, uploadRequestedOn);
+            if (originalUploadId != null) {
+                originalUploadIdsByMd5.put(oneUploadMd5, originalUploadId);
+            }
+        }
+        return originalUploadIdsByMd5;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void registerUpload(String healthCode, String uploadMd5, DateTime uploadRequestedOn,
             String originalUploadId) {
+        mapper.save(makeDedupe(healthCode, uploadMd5, uploadRequestedOn, originalUploadId));
+        if (filter != null) {
+            filter.put(healthCode, uploadMd5, toRequestedDate(uploadRequestedOn));
+        }
+        jedisOps.setex(makeRedisKey(healthCode, uploadMd5), recentRegistrationTtlSeconds, originalUploadId);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void registerUploads(String healthCode, Map<String, String> uploadIdsByMd5, DateTime uploadRequestedOn) {
+        if (uploadIdsByMd5.isEmpty()) {
+            return;
+        }
+
+        ImmutableList.Builder<DynamoUploadDedupe> dedupeListBuilder = ImmutableList.builder();
+        for (Map.Entry<String, String> oneEntry : uploadIdsByMd5.entrySet()) {
+            dedupeListBuilder.add(makeDedupe(healthCode, oneEntry.getKey(), uploadRequestedOn, oneEntry.getValue()));
+        }
+        batchWriter.batchSave(mapper, dedupeListBuilder.build());
+
+        if (filter != null) {
+            LocalDate uploadRequestedDate = toRequestedDate(uploadRequestedOn);
+            for (String oneUploadMd5 : uploadIdsByMd5.keySet()) {
+                filter.put(healthCode, oneUploadMd5, uploadRequestedDate);
+            }
+        }
+        try (JedisTransaction transaction = jedisOps.getTransaction()) {
+            for (Map.Entry<String, String> oneEntry : uploadIdsByMd5.entrySet()) {
+                transaction.setex(makeRedisKey(healthCode, oneEntry.getKey()), recentRegistrationTtlSeconds,
+                        oneEntry.getValue());
+            }
+            transaction.exec();
+        }
+    }
+
+    // True if any node registered this upload recently enough that our filter might not have it yet. If Redis is
+    // unavailable, we can't rule it out.
+    private boolean isRecentlyRegistered(String healthCode, String uploadMd5) {
+        try {
+            return jedisOps.get(makeRedisKey(healthCode, uploadMd5)) != null;
+        } catch (RuntimeException ex) {
+            logger.warn("Error checking recent upload dedupe registrations: " + ex.getMessage(), ex);
+            return true;
+        }
+    }
+
+    private static String makeRedisKey(String healthCode, String uploadMd5) {
+        return RedisKey.UPLOAD_DEDUPE.getRedisKey(healthCode + ":" + uploadMd5);
+    }
+
+    private static DynamoUploadDedupe makeDedupe(String healthCode, String uploadMd5, DateTime uploadRequestedOn,
+            String originalUploadId) {
         DynamoUploadDedupe dedupe = new DynamoUploadDedupe();
         dedupe.setHealthCode(healthCode);
         dedupe.setOriginalUploadId(originalUploadId);
         dedupe.setUploadMd5(uploadMd5);
-        dedupe.setUploadRequestedDate(uploadRequestedOn.withZone(BridgeConstants.LOCAL_TIME_ZONE).toLocalDate());
+        dedupe.setUploadRequestedDate(toRequestedDate(uploadRequestedOn));
         dedupe.setUploadRequestedOn(uploadRequestedOn.getMillis());
-        mapper.save(dedupe);
+        return dedupe;
+    }
+
+    // Upload requested date, as recorded in the dedupe table, in the server's local time zone.
+    private static LocalDate toRequestedDate(DateTime uploadRequestedOn) {
+        return uploadRequestedOn.withZone(BridgeConstants.LOCAL_TIME_ZONE).toLocalDate();
     }
 }
@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.dynamodb;
 
 import java.io.IOException;
 import java.util.List;
+import javax.annotation.Nonnull;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
@@ -48,7 +49,26 @@ public class DynamoUploadSchema implements UploadSchema {
     private Long surveyCreatedOn;
     private String studyId;
     private Long version;
-    
+
+    /**
+     * Makes a copy of the given schema, so that callers can modify the copy without affecting the original. The field
+     * definition list is immutable, so the copy shares it with the original.
+     */
+    public static DynamoUploadSchema copyOf(@Nonnull UploadSchema other) {
+        DynamoUploadSchema copy = new DynamoUploadSchema();
+        copy.fieldDefList = other.getFieldDefinitions() != null ? ImmutableList.copyOf(other.getFieldDefinitions()) :
+                null;
+        copy.name = other.getName();
+        copy.rev = other.getRevision();
+        copy.schemaId = other.getSchemaId();
+        copy.schemaType = other.getSchemaType();
+        copy.surveyGuid = other.getSurveyGuid();
+        copy.surveyCreatedOn = other.getSurveyCreatedOn();
+        copy.studyId = other.getStudyId();
+        copy.version = other.getVersion();
+        return copy;
+    }
+
     /** {@inheritDoc} */
     @DynamoDBMarshalling(marshallerClass = FieldDefinitionListMarshaller.class)
     @Override
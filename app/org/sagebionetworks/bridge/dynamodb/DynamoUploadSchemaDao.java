@@ -17,8 +17,8 @@ import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.UploadSchemaDao;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
@@ -52,6 +52,7 @@ public class DynamoUploadSchemaDao implements UploadSchemaDao {
     private static final int MAX_STRING_LENGTH = 100;
 
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
     private DynamoIndexHelper studyIdIndex;
 
     /**
@@ -63,6 +64,12 @@ public class DynamoUploadSchemaDao implements UploadSchemaDao {
         this.mapper = mapper;
     }
 
+    /** Batch writer for saves and deletes. This is configured by Spring. */
+    @Autowired
+    public void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
     @Resource(name = "uploadSchemaStudyIdIndex")
     public void setStudyIdIndex(DynamoIndexHelper studyIdIndex) {
         this.studyIdIndex = studyIdIndex;
@@ -102,16 +109,7 @@ public class DynamoUploadSchemaDao implements UploadSchemaDao {
     public @Nonnull UploadSchema createUploadSchemaFromSurvey(@Nonnull StudyIdentifier studyIdentifier,
             @Nonnull Survey survey) {
         // create upload field definitions from survey questions
-        List<UploadFieldDefinition> fieldDefList = new ArrayList<>();
-        for (SurveyQuestion oneQuestion : survey.getUnmodifiableQuestionList()) {
-            String name = oneQuestion.getIdentifier();
-            UploadFieldType type = getFieldTypeFromConstraints(oneQuestion.getConstraints());
-
-            // All survey questions are skippable, so mark the field as optional (not required)
-            UploadFieldDefinition oneFieldDef = new DynamoUploadFieldDefinition.Builder().withName(name)
-                    .withType(type).withRequired(false).build();
-            fieldDefList.add(oneFieldDef);
-        }
+        List<UploadFieldDefinition> fieldDefList = getFieldDefinitionsFromSurvey(survey);
 
         // Get the current rev.
         String studyId = studyIdentifier.getIdentifier();
@@ -146,6 +144,24 @@ public class DynamoUploadSchemaDao implements UploadSchemaDao {
         return createdSchema;
     }
 
+    /**
+     * Converts the survey's questions into upload schema field definitions, one per question, in question order. This
+     * is public so that other upload schema DAOs, like the replay harness's in-memory DAO, create the same schemas.
+     */
+    public static List<UploadFieldDefinition> getFieldDefinitionsFromSurvey(@Nonnull Survey survey) {
+        List<UploadFieldDefinition> fieldDefList = new ArrayList<>();
+        for (SurveyQuestion oneQuestion : survey.getUnmodifiableQuestionList()) {
+            String name = oneQuestion.getIdentifier();
+            UploadFieldType type = getFieldTypeFromConstraints(oneQuestion.getConstraints());
+
+            // All survey questions are skippable, so mark the field as optional (not required)
+            UploadFieldDefinition oneFieldDef = new DynamoUploadFieldDefinition.Builder().withName(name)
+                    .withType(type).withRequired(false).build();
+            fieldDefList.add(oneFieldDef);
+        }
+        return fieldDefList;
+    }
+
     /**
      * Private helper function that converts a survey question constraints object into an upload schema field type.
      * This is used to help convert surveys into upload schemas.
@@ -260,8 +276,7 @@ public class DynamoUploadSchemaDao implements UploadSchemaDao {
         }
 
         // now batch delete these schemas
-        List<DynamoDBMapper.FailedBatch> failureList = mapper.batchDelete(schemaList);
-        BridgeUtils.ifFailuresThrowException(failureList);
+        batchWriter.batchDelete(mapper, schemaList);
     }
 
     /** {@inheritDoc} */
@@ -4,13 +4,13 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
 
-import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.UserConsentDao;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
@@ -18,10 +18,10 @@ import org.sagebionetworks.bridge.models.accounts.UserConsent;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
 
 import org.apache.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
@@ -32,12 +32,24 @@ import com.amazonaws.services.dynamodbv2.model.Condition;
 public class DynamoUserConsentDao implements UserConsentDao {
 
     private DynamoDBMapper mapper;
+    private DynamoBatchWriter batchWriter;
+    private DynamoParallelScanner parallelScanner;
 
     @Resource(name = "userConsentDdbMapper")
     public final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
 
+    @Autowired
+    public final void setBatchWriter(DynamoBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
+    @Autowired
+    public final void setParallelScanner(DynamoParallelScanner parallelScanner) {
+        this.parallelScanner = parallelScanner;
+    }
+
     @Override
     public UserConsent giveConsent(String healthCode, SubpopulationGuid subpopGuid, long consentCreatedOn, long signedOn) {
         checkArgument(isNotBlank(healthCode));
@@ -133,8 +145,7 @@ public class DynamoUserConsentDao implements UserConsentDao {
         
         List<UserConsent> consents = getUserConsentHistory(healthCode, subpopGuid);
         if (!consents.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchDelete(consents);
-            BridgeUtils.ifFailuresThrowException(failures);
+            batchWriter.batchDelete(mapper, consents);
         }
     }
     
@@ -151,8 +162,9 @@ public class DynamoUserConsentDao implements UserConsentDao {
                 .withFilterConditionEntry("withdrewOn", new Condition()
                         .withComparisonOperator(ComparisonOperator.NULL));
 
-        return mapper.scan(DynamoUserConsent3.class, scan).stream()
-            .map(DynamoUserConsent3::getHealthCode)
-            .collect(Collectors.toSet());
+        Set<String> healthCodes = new HashSet<>();
+        parallelScanner.scan(mapper, DynamoUserConsent3.class, scan,
+                consent -> healthCodes.add(consent.getHealthCode()));
+        return healthCodes;
     }
 }
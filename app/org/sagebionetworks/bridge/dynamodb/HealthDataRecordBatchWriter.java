@@ -0,0 +1,303 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+/**
+ * <p>
+ * Coalesces new health data records from concurrent upload validations into batch writes of up to
+ * {@value #BATCH_SIZE} records. A batch is written when it's full, or when the linger window has passed since its
+ * first record was queued, whichever comes first. Each caller gets its own future, which completes when its record
+ * is written, or fails if its record couldn't be written after retries. Batches are written through
+ * {@link DynamoBatchWriter}, which retries unprocessed records and counts against the shared batch write concurrency
+ * limit.
+ * </p>
+ * <p>
+ * Batch writes can't be conditional, so they can't check the record's version. This only accepts new records, which
+ * have freshly generated IDs and nothing to conflict with, and sets their version to 1, like a regular save would.
+ * Updates should go through the mapper's save.
+ * </p>
+ * <p>
+ * This is off unless health.data.batch.write.enabled is set. Callers should check {@link #isEnabled} first.
+ * </p>
+ */
+@Component
+public class HealthDataRecordBatchWriter {
+    private static final Logger logger = LoggerFactory.getLogger(HealthDataRecordBatchWriter.class);
+
+    // package-scoped for unit tests
+    static final String CONFIG_KEY_ENABLED = "health.data.batch.write.enabled";
+    static final String CONFIG_KEY_LINGER_MILLIS = "health.data.batch.write.linger.millis";
+    static final String CONFIG_KEY_THREAD_COUNT = "health.data.batch.write.thread.count";
+    static final int BATCH_SIZE = 25;
+
+    private static final String ID_ATTRIBUTE = "id";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    // A record waiting to be written, and the future to complete when it is.
+    static class PendingWrite {
+        final DynamoHealthDataRecord record;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingWrite(DynamoHealthDataRecord record) {
+            this.record = record;
+        }
+    }
+
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private boolean configEnabled;
+    private long lingerMillis;
+    private int threadCount;
+    private DynamoBatchWriter dynamoBatchWriter;
+    private DynamoDBMapper mapper;
+    private ExecutorService collectExecutor;
+    private ExecutorService writeExecutor;
+    private volatile boolean running;
+    private boolean stopped;
+
+    /** Bridge config, used to get whether batching is enabled, the linger window, and the thread count. */
+    @Autowired
+    public final void setConfig(BridgeConfig config) {
+        this.configEnabled = Boolean.parseBoolean(config.getProperty(CONFIG_KEY_ENABLED));
+        this.lingerMillis = config.getPropertyAsInt(CONFIG_KEY_LINGER_MILLIS);
+        this.threadCount = config.getPropertyAsInt(CONFIG_KEY_THREAD_COUNT);
+    }
+
+    /** DynamoDB mapper for the HealthDataRecord table. This is configured by Spring. */
+    @Resource(name = "healthDataDdbMapper")
+    public final void setMapper(DynamoDBMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /** Batch writer that writes and retries each batch. This is configured by Spring. */
+    @Autowired
+    public final void setDynamoBatchWriter(DynamoBatchWriter dynamoBatchWriter) {
+        this.dynamoBatchWriter = dynamoBatchWriter;
+    }
+
+    /** Starts collecting and writing batches in the background, if batching is enabled. */
+    @PostConstruct
+    public void start() {
+        if (!configEnabled) {
+            return;
+        }
+
+        collectExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("health-data-batch-collect-%d").setDaemon(true).build());
+        writeExecutor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("health-data-batch-write-%d").setDaemon(true).build());
+        running = true;
+        collectExecutor.execute(this::collectLoop);
+    }
+
+    /** Stops collecting batches, and writes whatever is still queued before returning. */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        synchronized (queue) {
+            stopped = true;
+        }
+        if (collectExecutor != null) {
+            // Wait for the collector to hand off the batch it's holding, if any.
+            collectExecutor.shutdownNow();
+            awaitTermination(collectExecutor);
+        }
+
+        // Anything still queued is written on this thread, so no caller is left waiting.
+        List<PendingWrite> remainingList = new ArrayList<>();
+        queue.drainTo(remainingList);
+        for (int i = 0; i < remainingList.size(); i += BATCH_SIZE) {
+            writeBatch(remainingList.subList(i, Math.min(i + BATCH_SIZE, remainingList.size())));
+        }
+
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+            awaitTermination(writeExecutor);
+        }
+    }
+
+    // Waits up to the shutdown timeout for the executor to finish. An interrupt doesn't end the wait early, but the interrupt
+    // flag is restored before returning.
+    private static void awaitTermination(ExecutorService executor) {
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                try {
+                    executor.awaitTermination(remainingNanos, TimeUnit.NANOSECONDS);
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** True if batching is enabled and running. If this is false, callers should save records directly. */
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * Queues a new record to be written in the next batch. The record must already have its ID, and must not have a
+     * version. This sets the version to 1.
+     *
+     * @param record
+     *         new health data record to write
+     * @return future that completes when the record is written, or fails if it couldn't be written
+     */
+    public CompletableFuture<Void> write(@Nonnull DynamoHealthDataRecord record) {
+        checkArgument(StringUtils.isNotBlank(record.getId()), "record must have an ID");
+        checkArgument(record.getVersion() == null, "record must be new");
+        record.setVersion(1L);
+
+        PendingWrite pendingWrite = new PendingWrite(record);
+        synchronized (queue) {
+            if (!stopped) {
+                queue.add(pendingWrite);
+                return pendingWrite.future;
+            }
+        }
+
+        // We're shut down, and the queue has already been drained. Write it ourselves.
+        writeBatch(ImmutableList.of(pendingWrite));
+        return pendingWrite.future;
+    }
+
+    // Collects and submits batches until we're stopped.
+    private void collectLoop() {
+        while (running) {
+            try {
+                List<PendingWrite> batch = collectBatch();
+                writeExecutor.execute(() -> writeBatch(batch));
+            } catch (InterruptedException ex) {
+                // We're shutting down. stop() writes whatever is left.
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                // Don't let one bad batch kill the collector thread.
+                logger.error("Error collecting health data record batch: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Waits for the first record, then collects more until the batch is full or the linger window has passed. Records
+     * that are already queued are always collected, up to the batch size. Package-scoped for unit tests.
+     */
+    List<PendingWrite> collectBatch() throws InterruptedException {
+        List<PendingWrite> batch = new ArrayList<>();
+        batch.add(queue.take());
+
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (batch.size() < BATCH_SIZE) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            PendingWrite next;
+            try {
+                next = remainingNanos > 0 ? queue.poll(remainingNanos, TimeUnit.NANOSECONDS) : queue.poll();
+            } catch (InterruptedException ex) {
+                // We're shutting down, but we're already holding records. Return them so they get written.
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    /**
+     * Writes the batch and completes each record's future. Records that are still unprocessed after the batch writer's
+     * retries fail their futures. Package-scoped for unit tests.
+     */
+    void writeBatch(List<PendingWrite> batch) {
+        List<DynamoHealthDataRecord> recordList = batch.stream().map(pendingWrite -> pendingWrite.record)
+                .collect(Collectors.toList());
+
+        Set<String> failedIdSet;
+        String errorMessage = null;
+        try {
+            List<DynamoDBMapper.FailedBatch> failureList = dynamoBatchWriter.batchSaveAndGetFailures(mapper,
+                    recordList);
+            failedIdSet = getUnprocessedIds(failureList);
+            if (!failureList.isEmpty()) {
+                errorMessage = failureList.get(0).getException().getMessage();
+                if (failedIdSet.isEmpty()) {
+                    // We can't tell which records failed. Fail all of them.
+                    failedIdSet = getIds(recordList);
+                }
+            }
+        } catch (RuntimeException ex) {
+            // We don't know what got written. Fail all of them.
+            failedIdSet = getIds(recordList);
+            errorMessage = ex.getMessage();
+        }
+
+        if (!failedIdSet.isEmpty()) {
+            logger.error("Error writing " + failedIdSet.size() + " health data records: " + errorMessage);
+        }
+        BridgeServiceException failedEx = new BridgeServiceException("Error writing health data record: " +
+                errorMessage);
+        for (PendingWrite onePendingWrite : batch) {
+            if (failedIdSet.contains(onePendingWrite.record.getId())) {
+                onePendingWrite.future.completeExceptionally(failedEx);
+            } else {
+                onePendingWrite.future.complete(null);
+            }
+        }
+    }
+
+    private static Set<String> getIds(List<DynamoHealthDataRecord> recordList) {
+        return recordList.stream().map(DynamoHealthDataRecord::getId).collect(Collectors.toSet());
+    }
+
+    // Record IDs from the unprocessed put requests in the failed batches.
+    private static Set<String> getUnprocessedIds(List<DynamoDBMapper.FailedBatch> failureList) {
+        Set<String> idSet = new HashSet<>();
+        for (DynamoDBMapper.FailedBatch oneFailure : failureList) {
+            for (List<WriteRequest> oneRequestList : oneFailure.getUnprocessedItems().values()) {
+                for (WriteRequest oneRequest : oneRequestList) {
+                    AttributeValue idValue = oneRequest.getPutRequest().getItem().get(ID_ATTRIBUTE);
+                    idSet.add(idValue.getS());
+                }
+            }
+        }
+        return idSet;
+    }
+}
@@ -0,0 +1,104 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.joda.time.LocalDate;
+
+/**
+ * <p>
+ * Per-node, probabilistic pre-filter for upload dedupe. This keeps one Bloom filter per upload requested date, keyed
+ * by health code and upload MD5. If the filter says an upload is definitely not in any date in the dedupe window, we
+ * can skip the DynamoDB query.
+ * </p>
+ * <p>
+ * A date's filter can only answer "definitely not seen" once it's been loaded from the dedupe table, since uploads
+ * may have been registered before this node started, or by other nodes. Until then, all lookups touching that date
+ * return "might contain", which falls back to the query. Each date records when it was last loaded, so callers can
+ * also refuse to trust dates that haven't been refreshed recently.
+ * </p>
+ * <p>
+ * This class is thread-safe. Guava Bloom filters aren't, so each filter is synchronized on.
+ * </p>
+ */
+class UploadDedupeFilter {
+    private final ConcurrentMap<LocalDate, BloomFilter<CharSequence>> filtersByDate = new ConcurrentHashMap<>();
+    private final ConcurrentMap<LocalDate, Long> loadedAsOfMillisByDate = new ConcurrentHashMap<>();
+    private final int expectedUploadsPerDay;
+    private final double falsePositiveRate;
+
+    /**
+     * Constructs the filter.
+     *
+     * @param expectedUploadsPerDay
+     *         expected number of uploads per day, used to size each date's filter
+     * @param falsePositiveRate
+     *         desired false positive rate for each date's filter, between 0 and 1 (exclusive)
+     */
+    UploadDedupeFilter(int expectedUploadsPerDay, double falsePositiveRate) {
+        this.expectedUploadsPerDay = expectedUploadsPerDay;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Returns false if the given health code and MD5 were definitely not registered on any date between the start and
+     * end dates (inclusive), as of when those dates were last loaded. Returns true if they might have been, or if any
+     * of those dates wasn't loaded at or after minLoadedAsOfMillis.
+     */
+    boolean mightContain(String healthCode, String uploadMd5, LocalDate startDate, LocalDate endDate,
+            long minLoadedAsOfMillis) {
+        String key = makeKey(healthCode, uploadMd5);
+        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            Long loadedAsOfMillis = loadedAsOfMillisByDate.get(date);
+            if (loadedAsOfMillis == null || loadedAsOfMillis < minLoadedAsOfMillis) {
+                return true;
+            }
+
+            BloomFilter<CharSequence> filter = filtersByDate.get(date);
+            if (filter != null) {
+                synchronized (filter) {
+                    if (filter.mightContain(key)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Adds the given health code and MD5 to the filter for the given date. */
+    void put(String healthCode, String uploadMd5, LocalDate date) {
+        BloomFilter<CharSequence> filter = filtersByDate.computeIfAbsent(date, key -> BloomFilter.create(
+                Funnels.stringFunnel(Charsets.UTF_8), expectedUploadsPerDay, falsePositiveRate));
+        synchronized (filter) {
+            filter.put(makeKey(healthCode, uploadMd5));
+        }
+    }
+
+    /**
+     * Marks the given date as loaded, meaning every upload registered on that date before the given time has been
+     * added to the filter.
+     */
+    void markLoaded(LocalDate date, long asOfMillis) {
+        loadedAsOfMillisByDate.put(date, asOfMillis);
+    }
+
+    /** When the given date was last loaded, or null if it hasn't been loaded. */
+    Long getLoadedAsOfMillis(LocalDate date) {
+        return loadedAsOfMillisByDate.get(date);
+    }
+
+    /** Drops filters for dates before the given date, since they're no longer in the dedupe window. */
+    void removeDatesBefore(LocalDate date) {
+        filtersByDate.keySet().removeIf(oneDate -> oneDate.isBefore(date));
+        loadedAsOfMillisByDate.keySet().removeIf(oneDate -> oneDate.isBefore(date));
+    }
+
+    // Same format as the dedupe table's hash key.
+    private static String makeKey(String healthCode, String uploadMd5) {
+        return healthCode + ":" + uploadMd5;
+    }
+}
@@ -0,0 +1,37 @@
+package org.sagebionetworks.bridge.models.upload;
+
+import org.sagebionetworks.bridge.json.BridgeTypeName;
+import org.sagebionetworks.bridge.models.BridgeEntity;
+
+/**
+ * Returned when a user starts a multipart upload. The user uploads the file in partCount parts of partSize bytes each
+ * (the last part may be smaller), getting a presigned URL for each part, then calls upload complete.
+ */
+@BridgeTypeName("MultipartUploadSession")
+public class MultipartUploadSession implements BridgeEntity {
+
+    public MultipartUploadSession(String id, long partSize, int partCount) {
+        this.id = id;
+        this.partSize = partSize;
+        this.partCount = partCount;
+    }
+
+    /** Upload ID. */
+    public String getId() {
+        return id;
+    }
+
+    /** Size of each part in bytes, except for the last part, which may be smaller. */
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /** Number of parts. Part numbers start at 1. */
+    public int getPartCount() {
+        return partCount;
+    }
+
+    private final String id;
+    private final long partSize;
+    private final int partCount;
+}
@@ -12,18 +12,39 @@ public interface Upload {
      */
     boolean canBeValidated();
 
+    /**
+     * If this upload is a dupe of a previously completed upload (same health code and content MD5), this is the
+     * upload ID of the original upload. Null if this upload isn't a known dupe.
+     */
+    String getDuplicateUploadId();
+
     /** Name of the file to upload. */
     String getFilename();
 
     /** Health code of the user from which this upload originates from. */
     String getHealthCode();
 
+    /**
+     * If this is a multipart upload, this is the S3 multipart upload ID used to upload and assemble the parts. Null if
+     * this is a single-part upload.
+     */
+    String getMultipartUploadId();
+
     /**
      * S3 object ID (key name). This is generated by Bridge to ensure no filename collisions and to ensure that we
      * don't get S3 hotspots from poorly distributed names.
      */
     String getObjectId();
 
+    /** Number of parts in a multipart upload. Null if this is a single-part upload. */
+    Integer getPartCount();
+
+    /**
+     * Size of each part in a multipart upload, in bytes. The last part may be smaller. Null if this is a single-part
+     * upload.
+     */
+    Long getPartSize();
+
     /**
      * Record ID of the corresponding health data record. This is generally null until upload validation is complete
      * and creates the corresponding record.
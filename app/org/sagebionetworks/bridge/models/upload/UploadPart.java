@@ -0,0 +1,27 @@
+package org.sagebionetworks.bridge.models.upload;
+
+import org.sagebionetworks.bridge.json.BridgeTypeName;
+import org.sagebionetworks.bridge.models.BridgeEntity;
+
+/** A part of a multipart upload that has been uploaded to S3. */
+@BridgeTypeName("UploadPart")
+public class UploadPart implements BridgeEntity {
+
+    public UploadPart(int partNumber, long size) {
+        this.partNumber = partNumber;
+        this.size = size;
+    }
+
+    /** Part number, starting at 1. */
+    public int getPartNumber() {
+        return partNumber;
+    }
+
+    /** Size of the uploaded part in bytes. */
+    public long getSize() {
+        return size;
+    }
+
+    private final int partNumber;
+    private final long size;
+}
@@ -0,0 +1,48 @@
+package org.sagebionetworks.bridge.models.upload;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import org.sagebionetworks.bridge.json.BridgeTypeName;
+import org.sagebionetworks.bridge.models.BridgeEntity;
+
+/**
+ * The parts of a multipart upload that have been uploaded so far. Clients use this to resume an interrupted upload,
+ * by uploading only the parts that aren't in the list.
+ */
+@BridgeTypeName("UploadPartList")
+public class UploadPartList implements BridgeEntity {
+
+    public UploadPartList(String uploadId, long partSize, int partCount, List<UploadPart> parts) {
+        this.uploadId = uploadId;
+        this.partSize = partSize;
+        this.partCount = partCount;
+        this.parts = ImmutableList.copyOf(parts);
+    }
+
+    /** Upload ID. */
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    /** Size of each part in bytes, except for the last part, which may be smaller. */
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /** Total number of parts in the upload. */
+    public int getPartCount() {
+        return partCount;
+    }
+
+    /** Parts that have been uploaded, in part number order. */
+    public List<UploadPart> getParts() {
+        return parts;
+    }
+
+    private final String uploadId;
+    private final long partSize;
+    private final int partCount;
+    private final List<UploadPart> parts;
+}
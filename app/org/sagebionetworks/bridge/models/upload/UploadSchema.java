@@ -16,6 +16,14 @@ import org.sagebionetworks.bridge.schema.UploadSchemaKey;
 @BridgeTypeName("UploadSchema")
 @JsonDeserialize(as = DynamoUploadSchema.class)
 public interface UploadSchema extends BridgeEntity {
+    /**
+     * Makes a copy of the given schema, so that callers can modify the copy without affecting the original. The field
+     * definition list is immutable, so the copy shares it with the original.
+     */
+    static UploadSchema copyOf(UploadSchema other) {
+        return DynamoUploadSchema.copyOf(other);
+    }
+
     /** A list of fields defined in the schema. This can be changed across different schema revisions. */
     List<UploadFieldDefinition> getFieldDefinitions();
 
@@ -1,18 +1,28 @@
 package org.sagebionetworks.bridge.play.controllers;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.models.Metrics;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
+import org.sagebionetworks.bridge.models.upload.MultipartUploadSession;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadPartList;
 import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadSession;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
 import org.sagebionetworks.bridge.services.UploadService;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
+import play.libs.F;
+import play.libs.F.Promise;
 import play.mvc.Result;
 
 @Controller
@@ -34,6 +44,31 @@ public class UploadController extends BaseController {
         return ok(HealthDataRecord.PUBLIC_RECORD_WRITER.writeValueAsString(validationStatus));
     }
 
+    /**
+     * Long-poll version of {@link #getValidationStatus}. If the upload is still being validated, this waits up to the
+     * given number of seconds for validation to complete before returning the validation status.
+     */
+    public Promise<Result> waitForValidationStatus(String uploadId, int timeout) {
+        UserSession session = getAuthenticatedAndConsentedSession();
+        F.RedeemablePromise<Result> promise = F.RedeemablePromise.empty();
+        uploadService.waitForUploadValidationStatus(session.getUser(), uploadId, timeout).whenComplete(
+                (validationStatus, ex) -> {
+                    if (ex != null) {
+                        promise.failure(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() :
+                                ex);
+                        return;
+                    }
+                    try {
+                        // Same as getValidationStatus(). Filter out health code.
+                        promise.success(ok(HealthDataRecord.PUBLIC_RECORD_WRITER.writeValueAsString(
+                                validationStatus)));
+                    } catch (JsonProcessingException jsonEx) {
+                        promise.failure(jsonEx);
+                    }
+                });
+        return promise;
+    }
+
     public Result upload() throws Exception {
         UserSession session = getAuthenticatedAndConsentedSession();
         UploadRequest uploadRequest = UploadRequest.fromJson(requestToJSON(request()));
@@ -47,6 +82,58 @@ public class UploadController extends BaseController {
         return okResult(uploadSession);
     }
 
+    /** Creates several upload sessions at once. The request body is a JSON array of upload requests. */
+    public Result createUploads() throws Exception {
+        UserSession session = getAuthenticatedAndConsentedSession();
+        JsonNode requestNode = requestToJSON(request());
+        if (requestNode == null || !requestNode.isArray()) {
+            throw new BadRequestException("Expected a JSON array of upload requests");
+        }
+        List<UploadRequest> uploadRequestList = new ArrayList<>();
+        for (JsonNode oneRequestNode : requestNode) {
+            uploadRequestList.add(UploadRequest.fromJson(oneRequestNode));
+        }
+
+        List<UploadSession> uploadSessionList = uploadService.createUploads(session.getStudyIdentifier(),
+                session.getUser(), uploadRequestList);
+        return okResult(uploadSessionList);
+    }
+
+    /** Starts a multipart upload, for large files such as sensor archives. */
+    public Result createMultipartUpload() throws Exception {
+        UserSession session = getAuthenticatedAndConsentedSession();
+        UploadRequest uploadRequest = UploadRequest.fromJson(requestToJSON(request()));
+        MultipartUploadSession uploadSession = uploadService.createMultipartUpload(session.getStudyIdentifier(),
+                session.getUser(), uploadRequest);
+        final Metrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.setUploadSize(uploadRequest.getContentLength());
+            metrics.setUploadId(uploadSession.getId());
+        }
+        return okResult(uploadSession);
+    }
+
+    /** Gets a presigned URL for uploading one part of a multipart upload. */
+    public Result getUploadPartUrl(String uploadId, int partNumber) throws Exception {
+        UserSession session = getAuthenticatedAndConsentedSession();
+        UploadSession uploadSession = uploadService.getUploadPartUrl(session.getUser(), uploadId, partNumber);
+        return okResult(uploadSession);
+    }
+
+    /** Confirms that one part of a multipart upload was uploaded, and returns the parts uploaded so far. */
+    public Result uploadPartComplete(String uploadId, int partNumber) throws Exception {
+        UserSession session = getAuthenticatedAndConsentedSession();
+        UploadPartList partList = uploadService.uploadPartComplete(session.getUser(), uploadId, partNumber);
+        return okResult(partList);
+    }
+
+    /** Lists the parts of a multipart upload uploaded so far, so clients can resume interrupted uploads. */
+    public Result listUploadParts(String uploadId) throws Exception {
+        UserSession session = getAuthenticatedAndConsentedSession();
+        UploadPartList partList = uploadService.listUploadParts(session.getUser(), uploadId);
+        return okResult(partList);
+    }
+
     /**
      * Signals to the Bridge server that the upload is complete. This kicks off the asynchronous validation process
      * through the Upload Validation Service.
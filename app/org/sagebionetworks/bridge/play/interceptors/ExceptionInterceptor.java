@@ -15,6 +15,7 @@ import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 
+import play.libs.F.Promise;
 import play.libs.Json;
 import play.mvc.Http;
 import play.mvc.Http.Request;
@@ -28,17 +29,34 @@ public class ExceptionInterceptor implements MethodInterceptor {
     
     @Override
     public Object invoke(MethodInvocation method) throws Throwable {
+        // The HTTP context isn't available when an asynchronous result fails, so get the request ID up front.
+        final Request request = Http.Context.current().request();
+        final String requestId = RequestUtils.getRequestId(request);
+        final boolean isAsync = isAsync(method);
         try {
-            return method.proceed();
+            final Object result = method.proceed();
+            if (isAsync && result != null) {
+                @SuppressWarnings("unchecked")
+                final Promise<Result> promise = (Promise<Result>)result;
+                return promise.recover(throwable -> {
+                    logException(requestId, throwable);
+                    return getResult(throwable);
+                });
+            }
+            return result;
         } catch(Throwable throwable) {
-            logException(throwable);
-            return getResult(throwable);
+            logException(requestId, throwable);
+            final Result result = getResult(throwable);
+            return isAsync ? Promise.pure(result) : result;
         }
     }
 
-    private void logException(final Throwable throwable) {
-        final Request request = Http.Context.current().request();
-        final String requestId = RequestUtils.getRequestId(request);
+    // True if the intercepted controller method returns a Promise, in which case our result must be a Promise too.
+    private static boolean isAsync(final MethodInvocation method) {
+        return method.getMethod() != null && Promise.class.isAssignableFrom(method.getMethod().getReturnType());
+    }
+
+    private void logException(final String requestId, final Throwable throwable) {
         final String msg = "request: " + requestId + " " + throwable.getMessage();
         if (throwable.getClass().isAnnotationPresent(NoStackTraceException.class)) {
             logger.info(msg);
@@ -12,6 +12,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import play.cache.Cache;
+import play.libs.F.Promise;
 import play.mvc.Http;
 import play.mvc.Http.Request;
 import play.mvc.Result;
@@ -25,17 +26,39 @@ public class MetricsInterceptor implements MethodInterceptor {
     public Object invoke(MethodInvocation method) throws Throwable {
         final Metrics metrics = initMetrics();
         Cache.set(metrics.getCacheKey(), metrics, METRICS_EXPIRE_SECONDS);
+        boolean isAsync = false;
         try {
-            final Result result = (Result)method.proceed();
-            metrics.setStatus(result.toScala().header().status());
+            final Object result = method.proceed();
+            if (result instanceof Promise) {
+                // Asynchronous controller method. The request isn't done until the promise is redeemed, so end the
+                // metrics then.
+                isAsync = true;
+                @SuppressWarnings("unchecked")
+                final Promise<Result> promise = (Promise<Result>)result;
+                return promise.transform(asyncResult -> {
+                    metrics.setStatus(asyncResult.toScala().header().status());
+                    endMetrics(metrics);
+                    return asyncResult;
+                }, throwable -> {
+                    endMetrics(metrics);
+                    return throwable;
+                });
+            }
+            metrics.setStatus(((Result)result).toScala().header().status());
             return result;
         } finally {
-            Cache.remove(metrics.getCacheKey());
-            metrics.end();
-            logger.info(metrics.toJsonString());
+            if (!isAsync) {
+                endMetrics(metrics);
+            }
         }
     }
 
+    private static void endMetrics(final Metrics metrics) {
+        Cache.remove(metrics.getCacheKey());
+        metrics.end();
+        logger.info(metrics.toJsonString());
+    }
+
     Metrics initMetrics() {
         final Request request = Http.Context.current().request();
         final Metrics metrics = new Metrics(RequestUtils.getRequestId(request));
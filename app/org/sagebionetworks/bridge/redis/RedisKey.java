@@ -47,6 +47,9 @@ public interface RedisKey {
     RedisKey VIEW = new SimpleKey("view");
 
     RedisKey STUDY_EMAIL_STATUS = new SimpleKey("study-email-status");
+
+    /** Upload dedupe keys registered recently, by any node. */
+    RedisKey UPLOAD_DEDUPE = new SimpleKey("upload-dedupe");
     
     String SEPARATOR = ":";
 
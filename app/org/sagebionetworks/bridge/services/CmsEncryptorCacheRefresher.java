@@ -0,0 +1,142 @@
+package org.sagebionetworks.bridge.services;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.crypto.CmsEncryptor;
+import org.sagebionetworks.bridge.models.studies.Study;
+
+/**
+ * <p>
+ * Keeps the CMS encryptor cache warm. At startup, this loads the encryptor for every study in parallel, so the first
+ * upload for each study on a new node doesn't pay for the S3 fetch and PEM parsing. After that, it reloads every
+ * study's encryptor on a schedule, so rotated certificates and keys are picked up without a restart.
+ * </p>
+ * <p>
+ * Reloads happen on this class's threads. While a study is reloading, the cache keeps serving the old encryptor, and
+ * if the reload fails, the old encryptor is kept. Encryptors for studies that no longer exist are evicted.
+ * </p>
+ */
+@Component
+public class CmsEncryptorCacheRefresher {
+    private static final Logger logger = LoggerFactory.getLogger(CmsEncryptorCacheRefresher.class);
+
+    // package-scoped for unit tests
+    static final String CONFIG_KEY_REFRESH_MINUTES = "upload.cms.encryptor.cache.refresh.minutes";
+    static final String CONFIG_KEY_THREAD_COUNT = "upload.cms.encryptor.cache.thread.count";
+
+    private LoadingCache<String, CmsEncryptor> cmsEncryptorCache;
+    private StudyService studyService;
+    private int refreshMinutes;
+    private int threadCount;
+    private ScheduledExecutorService scheduleExecutor;
+    private ExecutorService loadExecutor;
+
+    /** Bridge config, used to get the refresh interval and thread count. */
+    @Autowired
+    public final void setConfig(BridgeConfig config) {
+        this.refreshMinutes = config.getPropertyAsInt(CONFIG_KEY_REFRESH_MINUTES);
+        this.threadCount = config.getPropertyAsInt(CONFIG_KEY_THREAD_COUNT);
+    }
+
+    /** Loading cache for CMS encryptor, keyed by study ID. This is configured by Spring. */
+    @Autowired
+    public final void setCmsEncryptorCache(LoadingCache<String, CmsEncryptor> cmsEncryptorCache) {
+        this.cmsEncryptorCache = cmsEncryptorCache;
+    }
+
+    /** Study service, used to list studies. This is configured by Spring. */
+    @Autowired
+    public final void setStudyService(StudyService studyService) {
+        this.studyService = studyService;
+    }
+
+    /** Starts warming the cache in the background, and schedules periodic refreshes. */
+    @PostConstruct
+    public void start() {
+        loadExecutor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("cms-encryptor-load-%d").setDaemon(true).build());
+        scheduleExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cms-encryptor-refresh-%d").setDaemon(true).build());
+
+        // The first run warms the cache. Don't block startup on it.
+        scheduleExecutor.scheduleWithFixedDelay(this::refreshAll, 0, refreshMinutes, TimeUnit.MINUTES);
+    }
+
+    /** Stops refreshing the cache. */
+    @PreDestroy
+    public void stop() {
+        if (scheduleExecutor != null) {
+            scheduleExecutor.shutdownNow();
+        }
+        if (loadExecutor != null) {
+            loadExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads or reloads the encryptor for every study in parallel, and evicts encryptors for studies that no longer
+     * exist. Blocks until all loads are done. This is package-scoped so unit tests can call it directly.
+     */
+    void refreshAll() {
+        try {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            CacheStats startStats = cmsEncryptorCache.stats();
+
+            List<Study> studyList = studyService.getStudies();
+            Set<String> studyIdSet = new HashSet<>();
+            List<Future<?>> futureList = new ArrayList<>();
+            for (Study oneStudy : studyList) {
+                String studyId = oneStudy.getIdentifier();
+                studyIdSet.add(studyId);
+
+                // If the study isn't in the cache yet, this loads it. Otherwise, this reloads it, and the cache keeps
+                // the old encryptor if the reload fails. Either way, failures are logged by the cache.
+                futureList.add(loadExecutor.submit(() -> cmsEncryptorCache.refresh(studyId)));
+            }
+            for (Future<?> oneFuture : futureList) {
+                oneFuture.get();
+            }
+
+            // Evict deleted studies.
+            cmsEncryptorCache.asMap().keySet().retainAll(studyIdSet);
+
+            CacheStats refreshStats = cmsEncryptorCache.stats().minus(startStats);
+            logger.info(String.format("Refreshed CMS encryptors for %d studies in %d ms: %d loaded, %d failed; " +
+                    "cache size %d, lifetime stats %s", studyList.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS),
+                    refreshStats.loadSuccessCount(), refreshStats.loadExceptionCount(), cmsEncryptorCache.size(),
+                    cmsEncryptorCache.stats()));
+        } catch (ExecutionException | RuntimeException ex) {
+            // Exceptions would cancel the scheduled refresh. Log and try again next time.
+            logger.error("Error refreshing CMS encryptor cache: " + ex.getMessage(), ex);
+        } catch (InterruptedException ex) {
+            // We're shutting down.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Executor used to load encryptors in parallel. Package-scoped so unit tests can call this without start(). */
+    void setLoadExecutor(ExecutorService loadExecutor) {
+        this.loadExecutor = loadExecutor;
+    }
+}
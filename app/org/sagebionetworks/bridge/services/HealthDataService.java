@@ -1,8 +1,13 @@
 package org.sagebionetworks.bridge.services;
 
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MINIMUM_PAGE_SIZE;
+
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -11,6 +16,7 @@ import org.sagebionetworks.bridge.dao.HealthDataDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
 import org.sagebionetworks.bridge.json.DateUtils;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachment;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachmentBuilder;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
@@ -21,6 +27,9 @@ import org.sagebionetworks.bridge.validators.Validate;
 /** Service handler for health data APIs. */
 @Component
 public class HealthDataService {
+    private static final String PAGE_SIZE_ERROR = "pageSize must be from " + API_MINIMUM_PAGE_SIZE + "-" +
+            API_MAXIMUM_PAGE_SIZE + " records";
+
     private HealthDataAttachmentDao healthDataAttachmentDao;
     private HealthDataDao healthDataDao;
 
@@ -105,7 +114,121 @@ public class HealthDataService {
      * @return list of health data records
      */
     public List<HealthDataRecord> getRecordsForUploadDate(String uploadDate) {
-        // validate upload date
+        validateUploadDate(uploadDate);
+
+        // call through to DAO
+        return healthDataDao.getRecordsForUploadDate(uploadDate);
+    }
+
+    /**
+     * Returns one page of health data records with the given upload date. This method is generally called by worker
+     * apps as part of data export, for days with too many records to hold in memory at once.
+     *
+     * @param uploadDate
+     *         an upload date in YYYY-MM-DD format, must be non-null, non-empty, and represent a valid date
+     * @param offsetKey
+     *         offset key from the previous page, or null for the first page
+     * @param pageSize
+     *         max number of records to return, must be between API_MINIMUM_PAGE_SIZE and API_MAXIMUM_PAGE_SIZE
+     * @return page of health data records, with the offset key for the next page, if there is one
+     */
+    public PagedResourceList<HealthDataRecord> getRecordsForUploadDate(String uploadDate, String offsetKey,
+            int pageSize) {
+        validateUploadDate(uploadDate);
+        if (pageSize < API_MINIMUM_PAGE_SIZE || pageSize > API_MAXIMUM_PAGE_SIZE) {
+            throw new BadRequestException(PAGE_SIZE_ERROR);
+        }
+
+        // call through to DAO
+        return healthDataDao.getRecordsForUploadDate(uploadDate, offsetKey, pageSize);
+    }
+
+    /**
+     * Streams all health data records with the given upload date to the given consumer. This method is generally
+     * called by worker apps as part of data export. Memory use doesn't depend on how many records there are.
+     *
+     * @param uploadDate
+     *         an upload date in YYYY-MM-DD format, must be non-null, non-empty, and represent a valid date
+     * @param consumer
+     *         called with each health data record, on the caller's thread
+     * @return number of records streamed
+     */
+    public int streamRecordsForUploadDate(String uploadDate, Consumer<HealthDataRecord> consumer) {
+        validateUploadDate(uploadDate);
+
+        // call through to DAO
+        return healthDataDao.streamRecordsForUploadDate(uploadDate, consumer);
+    }
+
+    /**
+     * Returns one page of a participant's health data records, created within the given time range, in created-on
+     * order. This method is generally used by researchers and support tools to look up a participant's records,
+     * without reading every record the participant has ever submitted.
+     *
+     * @param healthCode
+     *         health code of the participant whose records to query, must be non-null and non-empty
+     * @param createdOnStart
+     *         start of the created-on range, inclusive, must be non-null
+     * @param createdOnEnd
+     *         end of the created-on range, inclusive, must be non-null and not before createdOnStart
+     * @param offsetKey
+     *         offset key from the previous page, or null for the first page
+     * @param pageSize
+     *         max number of records to return, must be between API_MINIMUM_PAGE_SIZE and API_MAXIMUM_PAGE_SIZE
+     * @return page of health data records, with the offset key for the next page, if there is one
+     */
+    public PagedResourceList<HealthDataRecord> getRecordsForHealthCodeCreatedOn(String healthCode,
+            DateTime createdOnStart, DateTime createdOnEnd, String offsetKey, int pageSize) {
+        validateHealthCodeCreatedOn(healthCode, createdOnStart, createdOnEnd);
+        if (pageSize < API_MINIMUM_PAGE_SIZE || pageSize > API_MAXIMUM_PAGE_SIZE) {
+            throw new BadRequestException(PAGE_SIZE_ERROR);
+        }
+
+        // call through to DAO
+        return healthDataDao.getRecordsForHealthCodeCreatedOn(healthCode, createdOnStart.getMillis(),
+                createdOnEnd.getMillis(), offsetKey, pageSize);
+    }
+
+    /**
+     * Streams a participant's health data records, created within the given time range, to the given consumer, in
+     * created-on order. Memory use doesn't depend on how many records there are.
+     *
+     * @param healthCode
+     *         health code of the participant whose records to query, must be non-null and non-empty
+     * @param createdOnStart
+     *         start of the created-on range, inclusive, must be non-null
+     * @param createdOnEnd
+     *         end of the created-on range, inclusive, must be non-null and not before createdOnStart
+     * @param consumer
+     *         called with each health data record, on the caller's thread
+     * @return number of records streamed
+     */
+    public int streamRecordsForHealthCodeCreatedOn(String healthCode, DateTime createdOnStart, DateTime createdOnEnd,
+            Consumer<HealthDataRecord> consumer) {
+        validateHealthCodeCreatedOn(healthCode, createdOnStart, createdOnEnd);
+
+        // call through to DAO
+        return healthDataDao.streamRecordsForHealthCodeCreatedOn(healthCode, createdOnStart.getMillis(),
+                createdOnEnd.getMillis(), consumer);
+    }
+
+    private static void validateHealthCodeCreatedOn(String healthCode, DateTime createdOnStart,
+            DateTime createdOnEnd) {
+        if (StringUtils.isBlank(healthCode)) {
+            throw new BadRequestException(String.format(Validate.CANNOT_BE_BLANK, "healthCode"));
+        }
+        if (createdOnStart == null) {
+            throw new BadRequestException(String.format(Validate.CANNOT_BE_NULL, "createdOnStart"));
+        }
+        if (createdOnEnd == null) {
+            throw new BadRequestException(String.format(Validate.CANNOT_BE_NULL, "createdOnEnd"));
+        }
+        if (createdOnStart.isAfter(createdOnEnd)) {
+            throw new BadRequestException("createdOnStart can't be after createdOnEnd");
+        }
+    }
+
+    private static void validateUploadDate(String uploadDate) {
         if (StringUtils.isBlank(uploadDate)) {
             throw new BadRequestException(String.format(Validate.CANNOT_BE_BLANK, "uploadDate"));
         }
@@ -117,9 +240,6 @@ public class HealthDataService {
         } catch (IllegalArgumentException ex) {
             throw new BadRequestException(String.format("Expected date format YYYY-MM-DD, received %s", uploadDate));
         }
-
-        // call through to DAO
-        return healthDataDao.getRecordsForUploadDate(uploadDate);
     }
 
     /* HEALTH DATA ATTACHMENT APIs */
@@ -145,6 +265,30 @@ public class HealthDataService {
         return healthDataAttachmentDao.createOrUpdateAttachment(attachment);
     }
 
+    /**
+     * Creates or updates a batch of health data attachments in a single batch write. This is used by upload
+     * validation to persist all of a record's attachment metadata at once. See
+     * {@link #createOrUpdateAttachment} for details on create vs update.
+     *
+     * @param attachmentList
+     *         list of health data attachments to create or update, must be non-null
+     * @return list of attachment IDs, in the same order as the passed in list
+     */
+    public List<String> createOrUpdateAttachments(List<HealthDataAttachment> attachmentList) {
+        // validate attachment list
+        if (attachmentList == null) {
+            throw new InvalidEntityException(String.format(Validate.CANNOT_BE_NULL, "attachmentList"));
+        }
+        for (HealthDataAttachment oneAttachment : attachmentList) {
+            if (oneAttachment == null) {
+                throw new InvalidEntityException(String.format(Validate.CANNOT_BE_NULL, "HealthDataAttachment"));
+            }
+        }
+
+        // call through to DAO
+        return healthDataAttachmentDao.createOrUpdateAttachments(attachmentList);
+    }
+
     /* BUILDERS */
 
     /** Returns a builder object, used for building attachments, for create or update. */
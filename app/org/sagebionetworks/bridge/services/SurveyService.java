@@ -9,10 +9,13 @@ import java.util.List;
 import org.apache.commons.lang3.StringUtils;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.SurveyDao;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.SurveyElement;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
 import org.sagebionetworks.bridge.validators.SurveyValidator;
 import org.sagebionetworks.bridge.validators.Validate;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,11 +27,21 @@ public class SurveyService {
 
     private Validator validator;
     private SurveyDao surveyDao;
+    private UploadSchemaService uploadSchemaService;
     
     @Autowired
     public void setSurveyDao(SurveyDao surveyDao) {
         this.surveyDao = surveyDao;
     }
+
+    /**
+     * Upload schema service, used to create and delete the upload schemas for surveys. Going through the service
+     * (rather than the DAO) keeps its schema cache up to date.
+     */
+    @Autowired
+    public void setUploadSchemaService(UploadSchemaService uploadSchemaService) {
+        this.uploadSchemaService = uploadSchemaService;
+    }
     
     @Autowired
     public void setValidator(SurveyValidator validator) {
@@ -100,7 +113,17 @@ public class SurveyService {
         checkArgument(StringUtils.isNotBlank(keys.getGuid()), "Survey GUID cannot be null/blank");
         checkArgument(keys.getCreatedOn() != 0L, "Survey createdOn timestamp cannot be 0");
         
-        return surveyDao.publishSurvey(study, keys);
+        Survey survey = surveyDao.getSurvey(keys);
+        if (survey.isDeleted()) {
+            throw new EntityNotFoundException(Survey.class);
+        }
+        if (survey.isPublished()) {
+            return survey;
+        }
+
+        // make schema from survey
+        UploadSchema schema = uploadSchemaService.createUploadSchemaFromSurvey(study, survey);
+        return surveyDao.publishSurvey(keys, schema.getRevision());
     }
     
     /**
@@ -145,7 +168,16 @@ public class SurveyService {
         checkArgument(StringUtils.isNotBlank(keys.getGuid()), "Survey GUID cannot be null/blank");
         checkArgument(keys.getCreatedOn() != 0L, "Survey createdOn timestamp cannot be 0");
 
+        Survey existing = surveyDao.getSurvey(keys);
         surveyDao.deleteSurveyPermanently(keys);
+
+        // Delete the schemas as well, or they accumulate.
+        try {
+            uploadSchemaService.deleteUploadSchemaById(new StudyIdentifierImpl(existing.getStudyIdentifier()),
+                    existing.getIdentifier());
+        } catch(EntityNotFoundException e) {
+            // This is OK. Just means this survey wasn't published.
+        }
     }
 
     /**
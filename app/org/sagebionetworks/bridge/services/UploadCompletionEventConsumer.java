@@ -0,0 +1,210 @@
+package org.sagebionetworks.bridge.services;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.dao.HealthCodeDao;
+import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.sqs.MessageQueue;
+import org.sagebionetworks.bridge.sqs.QueueMessage;
+
+/**
+ * <p>
+ * Consumes S3 object-created notifications for the upload bucket and completes the corresponding uploads, so that
+ * uploads are validated even if the client crashes or is backgrounded before it calls uploadComplete.
+ * </p>
+ * <p>
+ * This is idempotent with the client-triggered path. Both go through {@link UploadService#uploadComplete}, which skips
+ * uploads that are already complete. The upload's version attribute ensures that if both paths race, only one of
+ * them marks the upload complete and kicks off validation.
+ * </p>
+ * <p>
+ * Messages are deleted once they've been handled, including messages for uploads that don't exist or are already
+ * complete. If handling throws, the message is left on the queue and redelivered after its visibility timeout.
+ * </p>
+ */
+@Component
+public class UploadCompletionEventConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(UploadCompletionEventConsumer.class);
+
+    // package-scoped for unit tests
+    static final String CONFIG_KEY_CONSUMER_ENABLED = "upload.completion.consumer.enabled";
+    static final int MAX_MESSAGES_PER_POLL = 10;
+    static final int POLL_WAIT_SECONDS = 20;
+
+    private static final String EVENT_NAME_PREFIX_OBJECT_CREATED = "ObjectCreated:";
+
+    private boolean consumerEnabled;
+    private String uploadBucket;
+    private HealthCodeDao healthCodeDao;
+    private MessageQueue queue;
+    private UploadDao uploadDao;
+    private UploadService uploadService;
+    private ScheduledExecutorService pollExecutor;
+
+    /** Bridge config, used to get the upload bucket and whether the consumer is enabled. */
+    @Autowired
+    public final void setConfig(BridgeConfig config) {
+        this.consumerEnabled = Boolean.parseBoolean(config.getProperty(CONFIG_KEY_CONSUMER_ENABLED));
+        this.uploadBucket = config.getProperty(UploadService.CONFIG_KEY_UPLOAD_BUCKET);
+    }
+
+    /** DAO for getting the study ID from a health code. This is configured by Spring. */
+    @Autowired
+    public final void setHealthCodeDao(HealthCodeDao healthCodeDao) {
+        this.healthCodeDao = healthCodeDao;
+    }
+
+    /** Queue that receives S3 object-created notifications for the upload bucket. This is configured by Spring. */
+    @Resource(name = "uploadCompletionQueue")
+    public final void setQueue(MessageQueue queue) {
+        this.queue = queue;
+    }
+
+    /** Upload DAO, used to look up uploads by upload ID. This is configured by Spring. */
+    @Autowired
+    public final void setUploadDao(UploadDao uploadDao) {
+        this.uploadDao = uploadDao;
+    }
+
+    /** Upload service, used to complete uploads. This is configured by Spring. */
+    @Autowired
+    public final void setUploadService(UploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
+    /** Starts polling the queue in the background, if the consumer is enabled. */
+    @PostConstruct
+    public void start() {
+        if (!consumerEnabled) {
+            logger.info("Upload completion event consumer is disabled");
+            return;
+        }
+
+        // Each poll long-polls the queue, so a short delay between polls is fine.
+        pollExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("upload-completion-consumer-%d").setDaemon(true).build());
+        pollExecutor.scheduleWithFixedDelay(this::poll, 0, 1, TimeUnit.SECONDS);
+    }
+
+    /** Stops polling the queue. */
+    @PreDestroy
+    public void stop() {
+        if (pollExecutor != null) {
+            pollExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Receives one batch of messages from the queue and handles them. This is package-scoped so unit tests can call it
+     * directly.
+     */
+    void poll() {
+        List<QueueMessage> messageList;
+        try {
+            messageList = queue.receiveMessages(MAX_MESSAGES_PER_POLL, POLL_WAIT_SECONDS);
+        } catch (RuntimeException ex) {
+            // Exceptions would cancel the scheduled poll. Log and try again next time.
+            logger.error("Error receiving upload completion events: " + ex.getMessage(), ex);
+            return;
+        }
+
+        for (QueueMessage oneMessage : messageList) {
+            try {
+                handleMessage(oneMessage.getBody());
+                queue.deleteMessage(oneMessage);
+            } catch (RuntimeException ex) {
+                logger.error("Error handling upload completion event, will retry after visibility timeout: " +
+                        ex.getMessage(), ex);
+            }
+        }
+    }
+
+    // Parses an S3 event notification and completes each upload it refers to.
+    private void handleMessage(String body) {
+        JsonNode eventNode;
+        try {
+            eventNode = BridgeObjectMapper.get().readTree(body);
+        } catch (IOException ex) {
+            // Retrying won't help. Log and drop the message.
+            logger.error("Unparseable upload completion event: " + ex.getMessage(), ex);
+            return;
+        }
+
+        // S3 sends a test event with no records when the notification is first configured.
+        JsonNode recordsNode = eventNode.get("Records");
+        if (recordsNode == null || !recordsNode.isArray()) {
+            return;
+        }
+
+        for (JsonNode oneRecordNode : recordsNode) {
+            String eventName = oneRecordNode.path("eventName").asText();
+            String bucket = oneRecordNode.path("s3").path("bucket").path("name").asText();
+            String key = oneRecordNode.path("s3").path("object").path("key").asText();
+            if (!eventName.startsWith(EVENT_NAME_PREFIX_OBJECT_CREATED) || !uploadBucket.equals(bucket) ||
+                    Strings.isNullOrEmpty(key)) {
+                continue;
+            }
+
+            // Upload IDs are also S3 keys. S3 URL-encodes keys in event notifications.
+            completeUpload(decodeKey(key));
+        }
+    }
+
+    // Completes the given upload, if it exists and isn't already complete.
+    private void completeUpload(String uploadId) {
+        Upload upload;
+        try {
+            upload = uploadDao.getUpload(uploadId);
+        } catch (NotFoundException ex) {
+            logger.warn("Upload completion event for upload " + uploadId + ", which doesn't exist");
+            return;
+        }
+
+        if (!upload.canBeValidated()) {
+            // The client already called uploadComplete.
+            return;
+        }
+
+        String studyId = healthCodeDao.getStudyIdentifier(upload.getHealthCode());
+        if (studyId == null) {
+            logger.error("Upload completion event for upload " + uploadId + ", which has no study");
+            return;
+        }
+
+        // If the client calls uploadComplete at the same time, UploadService makes sure only one of us kicks off
+        // validation.
+        uploadService.uploadComplete(new StudyIdentifierImpl(studyId), upload);
+        logger.info("Completed upload " + uploadId + " from upload completion event");
+    }
+
+    private static String decodeKey(String key) {
+        try {
+            return URLDecoder.decode(key, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(ex);
+        }
+    }
+}
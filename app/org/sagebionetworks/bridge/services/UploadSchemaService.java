@@ -1,7 +1,10 @@
 package org.sagebionetworks.bridge.services;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -9,15 +12,43 @@ import org.sagebionetworks.bridge.dao.UploadSchemaDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.upload.UploadSchema;
 import org.sagebionetworks.bridge.validators.UploadSchemaValidator;
 import org.sagebionetworks.bridge.validators.Validate;
 
 /**
+ * <p>
  * Service handler for upload schema APIs. This is called by researchers to create, read, and update upload schemas.
+ * </p>
+ * <p>
+ * Upload validation looks up a schema for every upload, so this service keeps a short-lived local cache of schema
+ * revisions, keyed by study, schema ID, and revision, as well as a pointer to the latest revision of each schema.
+ * Both are invalidated when schemas are created, updated, or deleted through this service, including schemas created
+ * when surveys are published. Other servers can't invalidate this cache, so both expire after a minute or less. The
+ * cache holds its own
+ * copy of each schema, and callers get a fresh copy each time, so callers can't modify the cached schemas. Copies
+ * share the cached schema's immutable field definition list.
+ * </p>
  */
 @Component
 public class UploadSchemaService {
+    // Schema revisions don't change once they're written, but they can be deleted (and the revision number re-used)
+    // through another server, so this is kept short too. Upload validation looks up the same few schemas many times a
+    // minute, so this still saves most reads.
+    private static final int SCHEMA_REV_CACHE_EXPIRE_SECONDS = 60;
+    private static final int SCHEMA_REV_CACHE_MAX_SIZE = 1000;
+
+    // The latest revision changes whenever a schema is updated, so this is kept short.
+    private static final int LATEST_REV_CACHE_EXPIRE_SECONDS = 30;
+
+    private final Cache<String, UploadSchema> schemaRevCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(SCHEMA_REV_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+            .maximumSize(SCHEMA_REV_CACHE_MAX_SIZE).build();
+    private final Cache<String, Integer> latestRevCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(LATEST_REV_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+            .maximumSize(SCHEMA_REV_CACHE_MAX_SIZE).build();
+
     private UploadSchemaDao uploadSchemaDao;
 
     /** DAO for upload schemas. This is configured by Spring. */
@@ -49,7 +80,37 @@ public class UploadSchemaService {
         Validate.entityThrowingException(UploadSchemaValidator.INSTANCE, uploadSchema);
 
         // call through to DAO
-        return uploadSchemaDao.createOrUpdateUploadSchema(studyIdentifier.getIdentifier(), uploadSchema);
+        String studyId = studyIdentifier.getIdentifier();
+        UploadSchema createdSchema = uploadSchemaDao.createOrUpdateUploadSchema(studyId, uploadSchema);
+
+        // The latest revision has changed. Also invalidate the new revision, in case a previous schema with the same
+        // revision was deleted.
+        latestRevCache.invalidate(getLatestRevCacheKey(studyId, createdSchema.getSchemaId()));
+        schemaRevCache.invalidate(getSchemaRevCacheKey(studyId, createdSchema.getSchemaId(),
+                createdSchema.getRevision()));
+
+        return createdSchema;
+    }
+
+    /**
+     * Creates an upload schema from a survey, or re-uses the latest revision if the survey's fields haven't changed.
+     * This is called when a survey is published.
+     *
+     * @param studyIdentifier
+     *         study the survey and schema live in
+     * @param survey
+     *         survey to create the upload schema from
+     * @return the created (or re-used) schema
+     */
+    public UploadSchema createUploadSchemaFromSurvey(StudyIdentifier studyIdentifier, Survey survey) {
+        UploadSchema createdSchema = uploadSchemaDao.createUploadSchemaFromSurvey(studyIdentifier, survey);
+
+        String studyId = studyIdentifier.getIdentifier();
+        latestRevCache.invalidate(getLatestRevCacheKey(studyId, createdSchema.getSchemaId()));
+        schemaRevCache.invalidate(getSchemaRevCacheKey(studyId, createdSchema.getSchemaId(),
+                createdSchema.getRevision()));
+
+        return createdSchema;
     }
 
     /**
@@ -76,6 +137,10 @@ public class UploadSchemaService {
             throw new BadRequestException("Schema revision must be positive");
         }
         uploadSchemaDao.deleteUploadSchemaByIdAndRev(studyIdentifier, schemaId, rev);
+
+        String studyId = studyIdentifier.getIdentifier();
+        latestRevCache.invalidate(getLatestRevCacheKey(studyId, schemaId));
+        schemaRevCache.invalidate(getSchemaRevCacheKey(studyId, schemaId, rev));
     }
 
     /**
@@ -97,6 +162,12 @@ public class UploadSchemaService {
             throw new BadRequestException(String.format("Invalid schema ID %s", schemaId));
         }
         uploadSchemaDao.deleteUploadSchemaById(studyIdentifier, schemaId);
+
+        // Invalidate all revisions of this schema.
+        String studyId = studyIdentifier.getIdentifier();
+        String latestRevCacheKey = getLatestRevCacheKey(studyId, schemaId);
+        latestRevCache.invalidate(latestRevCacheKey);
+        schemaRevCache.asMap().keySet().removeIf(key -> key.startsWith(latestRevCacheKey + ":"));
     }
 
     /**
@@ -119,7 +190,22 @@ public class UploadSchemaService {
         if (StringUtils.isBlank(schemaId)) {
             throw new BadRequestException(String.format("Invalid schema ID %s", schemaId));
         }
-        return uploadSchemaDao.getUploadSchema(studyIdentifier.getIdentifier(), schemaId);
+        String studyId = studyIdentifier.getIdentifier();
+        String latestRevCacheKey = getLatestRevCacheKey(studyId, schemaId);
+        Integer latestRev = latestRevCache.getIfPresent(latestRevCacheKey);
+        if (latestRev != null) {
+            UploadSchema cachedSchema = schemaRevCache.getIfPresent(getSchemaRevCacheKey(studyId, schemaId,
+                    latestRev));
+            if (cachedSchema != null) {
+                return UploadSchema.copyOf(cachedSchema);
+            }
+        }
+
+        UploadSchema schema = uploadSchemaDao.getUploadSchema(studyId, schemaId);
+        UploadSchema cachedSchema = UploadSchema.copyOf(schema);
+        latestRevCache.put(latestRevCacheKey, schema.getRevision());
+        schemaRevCache.put(getSchemaRevCacheKey(studyId, schemaId, schema.getRevision()), cachedSchema);
+        return UploadSchema.copyOf(cachedSchema);
     }
 
     /**
@@ -168,7 +254,14 @@ public class UploadSchemaService {
         if (schemaRev <= 0) {
             throw new BadRequestException(String.format("Invalid schema revision %d", schemaRev));
         }
-        return uploadSchemaDao.getUploadSchemaByIdAndRev(studyIdentifier, schemaId, schemaRev);
+        String schemaRevCacheKey = getSchemaRevCacheKey(studyIdentifier.getIdentifier(), schemaId, schemaRev);
+        UploadSchema cachedSchema = schemaRevCache.getIfPresent(schemaRevCacheKey);
+        if (cachedSchema == null) {
+            UploadSchema schema = uploadSchemaDao.getUploadSchemaByIdAndRev(studyIdentifier, schemaId, schemaRev);
+            cachedSchema = UploadSchema.copyOf(schema);
+            schemaRevCache.put(schemaRevCacheKey, cachedSchema);
+        }
+        return UploadSchema.copyOf(cachedSchema);
     }
 
     /**
@@ -187,4 +280,14 @@ public class UploadSchemaService {
     public List<UploadSchema> getUploadSchemasForStudy(StudyIdentifier studyId) {
         return uploadSchemaDao.getUploadSchemasForStudy(studyId);
     }
+
+    // Cache key for the latest revision pointer. This is also the prefix for all revisions of the schema.
+    private static String getLatestRevCacheKey(String studyId, String schemaId) {
+        return studyId + ":" + schemaId;
+    }
+
+    // Cache key for a specific schema revision.
+    private static String getSchemaRevCacheKey(String studyId, String schemaId, int schemaRev) {
+        return getLatestRevCacheKey(studyId, schemaId) + ":" + schemaRev;
+    }
 }
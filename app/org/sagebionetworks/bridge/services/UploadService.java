@@ -7,10 +7,23 @@ import javax.annotation.Nonnull;
 import javax.annotation.Resource;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.TreeSet;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.AWSSessionCredentials;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -19,17 +32,22 @@ import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.dao.UploadDao;
 import org.sagebionetworks.bridge.dao.UploadDedupeDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
 import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.upload.MultipartUploadSession;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadPart;
+import org.sagebionetworks.bridge.models.upload.UploadPartList;
 import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadSession;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
+import org.sagebionetworks.bridge.upload.UploadValidationStatusNotifier;
 import org.sagebionetworks.bridge.validators.UploadValidator;
 import org.sagebionetworks.bridge.validators.Validate;
 import org.slf4j.Logger;
@@ -40,8 +58,15 @@ import org.springframework.validation.Validator;
 
 import com.amazonaws.HttpMethod;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
 
 @Component
 public class UploadService {
@@ -50,10 +75,33 @@ public class UploadService {
 
     private static final long EXPIRATION = 60 * 1000; // 1 minute
 
+    /** Max time a caller can wait for upload validation status, in seconds. */
+    public static final int MAX_VALIDATION_STATUS_WAIT_SECONDS = 30;
+
+    /** Max number of upload sessions that can be created in a single batch. */
+    public static final int MAX_UPLOAD_BATCH_SIZE = 25;
+
+    // S3 allows at most 10,000 parts per multipart upload.
+    private static final int MAX_PART_COUNT = 10000;
+
+    // S3 error code when the multipart upload doesn't exist, either because it was never started, or because it was
+    // already completed or aborted.
+    private static final String ERROR_CODE_NO_SUCH_UPLOAD = "NoSuchUpload";
+
+    // Request parameters for presigned part upload URLs.
+    private static final String PARAM_PART_NUMBER = "partNumber";
+    private static final String PARAM_UPLOAD_ID = "uploadId";
+
+    // Multipart uploads are allowed to be much bigger than single-part uploads.
+    private static final Validator MULTIPART_UPLOAD_VALIDATOR = new UploadValidator(
+            UploadValidator.MAX_MULTIPART_UPLOAD_SIZE);
+
     // package-scoped to be available in unit tests
+    static final String CONFIG_KEY_MULTIPART_PART_SIZE = "upload.multipart.part.size";
     static final String CONFIG_KEY_UPLOAD_BUCKET = "upload.bucket";
 
     private HealthDataService healthDataService;
+    private long multipartPartSize;
     private AmazonS3 s3UploadClient;
     private AmazonS3 s3Client;
     private String uploadBucket;
@@ -61,12 +109,14 @@ public class UploadService {
     private UploadSessionCredentialsService uploadCredentailsService;
     private UploadDedupeDao uploadDedupeDao;
     private UploadValidationService uploadValidationService;
+    private UploadValidationStatusNotifier uploadValidationStatusNotifier;
     private Validator validator;
 
     /** Sets parameters from the specified Bridge config. */
     @Autowired
     final void setConfig(BridgeConfig config) {
         uploadBucket = config.getProperty(CONFIG_KEY_UPLOAD_BUCKET);
+        multipartPartSize = config.getPropertyAsInt(CONFIG_KEY_MULTIPART_PART_SIZE);
     }
 
     /**
@@ -108,6 +158,12 @@ public class UploadService {
         this.uploadValidationService = uploadValidationService;
     }
 
+    /** Notifier, used to wait for upload validation to complete. This is configured by Spring. */
+    @Autowired
+    final void setUploadValidationStatusNotifier(UploadValidationStatusNotifier uploadValidationStatusNotifier) {
+        this.uploadValidationStatusNotifier = uploadValidationStatusNotifier;
+    }
+
     @Autowired
     public void setValidator(UploadValidator validator) {
         this.validator = validator;
@@ -126,7 +182,13 @@ public class UploadService {
             originalUploadId = uploadDedupeDao.getDuplicate(healthCode, uploadMd5, uploadRequestedOn);
             if (originalUploadId != null) {
                 Upload originalUpload = uploadDao.getUpload(originalUploadId);
-                originalUploadStatus = originalUpload.getStatus();
+                if (originalUpload.getMultipartUploadId() != null && originalUpload.canBeValidated()) {
+                    // Incomplete multipart uploads can't be reactivated as single-part uploads. Treat this as a new
+                    // upload.
+                    originalUploadId = null;
+                } else {
+                    originalUploadStatus = originalUpload.getStatus();
+                }
             }
         } catch (RuntimeException ex) {
             // Don't want dedupe logic to fail the upload. Log an error and swallow the exception.
@@ -139,8 +201,9 @@ public class UploadService {
             // creating a new upload in the upload table, reactivate the old one.
             uploadId = originalUploadId;
         } else {
-            // This is a new upload.
-            Upload upload = uploadDao.createUpload(uploadRequest, healthCode);
+            // This is a new upload. If it's a dupe of a previous completed upload, link it to the original, so that
+            // uploadComplete() can re-use the original's validation result.
+            Upload upload = uploadDao.createUpload(uploadRequest, healthCode, originalUploadId);
             uploadId = upload.getUploadId();
 
             if (originalUploadId != null) {
@@ -158,29 +221,343 @@ public class UploadService {
             }
         }
 
+        return createUploadSession(uploadId, uploadRequest, uploadCredentailsService.getSessionCredentials(),
+                getPresignedUrlExpiration());
+    }
+
+    /**
+     * <p>
+     * Creates several upload sessions at once, for clients that accumulate several files offline. This is equivalent
+     * to calling {@link #createUpload} for each upload request, except that dupe checking, upload table writes, and
+     * dedupe registration are each done as a single batch call, and all URLs are signed with the same session
+     * credentials.
+     * </p>
+     * <p>
+     * Like multipart uploads, batch uploads are never reactivated as dupes of incomplete uploads. Dupes of previous
+     * uploads are linked to the original upload, so that uploadComplete() can re-use the original's validation
+     * result if it succeeded.
+     * </p>
+     *
+     * @param studyId
+     *         study the uploads belong to
+     * @param user
+     *         calling user
+     * @param uploadRequestList
+     *         upload requests, at most {@link #MAX_UPLOAD_BATCH_SIZE}
+     * @return upload sessions, in the same order as the upload requests
+     */
+    public List<UploadSession> createUploads(StudyIdentifier studyId, User user,
+            List<UploadRequest> uploadRequestList) {
+        if (uploadRequestList == null || uploadRequestList.isEmpty()) {
+            throw new BadRequestException("Upload request list must not be empty");
+        }
+        if (uploadRequestList.size() > MAX_UPLOAD_BATCH_SIZE) {
+            throw new BadRequestException("Upload request list can't have more than " + MAX_UPLOAD_BATCH_SIZE +
+                    " uploads");
+        }
+        for (UploadRequest oneUploadRequest : uploadRequestList) {
+            Validate.entityThrowingException(validator, oneUploadRequest);
+        }
+
+        // Check all uploads for dupes at once.
+        String healthCode = user.getHealthCode();
+        DateTime uploadRequestedOn = DateUtils.getCurrentDateTime();
+        Set<String> uploadMd5Set = new LinkedHashSet<>();
+        for (UploadRequest oneUploadRequest : uploadRequestList) {
+            uploadMd5Set.add(oneUploadRequest.getContentMd5());
+        }
+        Map<String, String> originalUploadIdsByMd5 = new HashMap<>();
+        try {
+            originalUploadIdsByMd5.putAll(uploadDedupeDao.getDuplicates(healthCode, uploadMd5Set,
+                    uploadRequestedOn));
+        } catch (RuntimeException ex) {
+            // Don't want dedupe logic to fail the upload. Log an error and swallow the exception.
+            logger.error("Error deduping uploads: " + ex.getMessage(), ex);
+        }
+
+        // Create all uploads in one batch write.
+        List<String> duplicateUploadIdList = new ArrayList<>();
+        for (UploadRequest oneUploadRequest : uploadRequestList) {
+            duplicateUploadIdList.add(originalUploadIdsByMd5.get(oneUploadRequest.getContentMd5()));
+        }
+        List<Upload> uploadList = uploadDao.createUploads(uploadRequestList, healthCode, duplicateUploadIdList);
+
+        // Register uploads that aren't dupes, so we can detect dupes of these. If the same file appears more than
+        // once in the batch, only the first one is registered.
+        Map<String, String> uploadIdsToRegisterByMd5 = new HashMap<>();
+        for (int i = 0; i < uploadList.size(); i++) {
+            String uploadMd5 = uploadRequestList.get(i).getContentMd5();
+            String uploadId = uploadList.get(i).getUploadId();
+            String originalUploadId = duplicateUploadIdList.get(i);
+            if (originalUploadId != null) {
+                logger.info("Detected dupe: Study " + studyId.getIdentifier() + ", upload " + uploadId +
+                        " is a dupe of " + originalUploadId);
+            } else if (!uploadIdsToRegisterByMd5.containsKey(uploadMd5)) {
+                uploadIdsToRegisterByMd5.put(uploadMd5, uploadId);
+            }
+        }
+        try {
+            uploadDedupeDao.registerUploads(healthCode, uploadIdsToRegisterByMd5, uploadRequestedOn);
+        } catch (RuntimeException ex) {
+            // Don't want dedupe logic to fail the upload. Log an error and swallow the exception.
+            logger.error("Error registering uploads " + uploadIdsToRegisterByMd5.values() + " in dedupe table: " +
+                    ex.getMessage(), ex);
+        }
+
+        // Sign all URLs with the same credentials and expiration.
+        AWSSessionCredentials credentials = uploadCredentailsService.getSessionCredentials();
+        Date expiration = getPresignedUrlExpiration();
+        List<UploadSession> uploadSessionList = new ArrayList<>();
+        for (int i = 0; i < uploadList.size(); i++) {
+            uploadSessionList.add(createUploadSession(uploadList.get(i).getUploadId(), uploadRequestList.get(i),
+                    credentials, expiration));
+        }
+        return uploadSessionList;
+    }
+
+    // Creates an upload session with a presigned URL for uploading the whole file in a single PUT.
+    private UploadSession createUploadSession(String uploadId, UploadRequest uploadRequest,
+            AWSSessionCredentials credentials, Date expiration) {
         // Upload ID in DynamoDB is the same as the S3 Object ID
         GeneratePresignedUrlRequest presignedUrlRequest =
                 new GeneratePresignedUrlRequest(uploadBucket, uploadId, HttpMethod.PUT);
 
         // Expiration
-        final Date expiration = DateTime.now(DateTimeZone.UTC).toDate();
-        expiration.setTime(expiration.getTime() + EXPIRATION);
         presignedUrlRequest.setExpiration(expiration);
 
         // Temporary session credentials
-        presignedUrlRequest.setRequestCredentials(uploadCredentailsService.getSessionCredentials());
+        presignedUrlRequest.setRequestCredentials(credentials);
 
         // Ask for server-side encryption
         presignedUrlRequest.addRequestParameter(SERVER_SIDE_ENCRYPTION, AES_256_SERVER_SIDE_ENCRYPTION);
 
         // Additional headers for signing
-        presignedUrlRequest.setContentMd5(uploadMd5);
+        presignedUrlRequest.setContentMd5(uploadRequest.getContentMd5());
         presignedUrlRequest.setContentType(uploadRequest.getContentType());
 
         URL url = s3UploadClient.generatePresignedUrl(presignedUrlRequest);
         return new UploadSession(uploadId, url, expiration.getTime());
     }
 
+    /**
+     * <p>
+     * Starts a multipart upload, for uploads too large to reliably upload in a single request, such as large sensor
+     * archives. The client gets a presigned URL for each part from {@link #getUploadPartUrl}, uploads the parts (in
+     * any order, and in parallel if it likes), then calls upload complete, which assembles the parts and kicks off
+     * validation. If the upload is interrupted, the client can call {@link #listUploadParts} to find out which parts
+     * still need to be uploaded.
+     * </p>
+     * <p>
+     * Unlike single-part uploads, multipart uploads are never linked to earlier uploads as dupes. Dupes of completed
+     * uploads skip validation and re-use the original's record, which means trusting the client's MD5, and the MD5 of
+     * a multipart upload can only be checked once its parts are assembled and downloaded during validation. Multipart
+     * uploads are still registered in the dedupe table, so later uploads can be linked to them once they validate.
+     * </p>
+     * <p>
+     * Multipart uploads are capped at {@link UploadValidator#MAX_MULTIPART_UPLOAD_SIZE}, because validation still
+     * holds the whole archive in memory. This is a known limitation until validation streams uploads.
+     * </p>
+     *
+     * @param studyId
+     *         study the upload belongs to
+     * @param user
+     *         calling user
+     * @param uploadRequest
+     *         upload request, with content length, MD5, and type of the whole file
+     * @return multipart upload session, with the upload ID, part size, and part count
+     */
+    public MultipartUploadSession createMultipartUpload(StudyIdentifier studyId, User user,
+            UploadRequest uploadRequest) {
+        Validate.entityThrowingException(MULTIPART_UPLOAD_VALIDATOR, uploadRequest);
+
+        // Never linked as a dupe, since the declared MD5 isn't verified until validation. See above.
+        String healthCode = user.getHealthCode();
+        String uploadMd5 = uploadRequest.getContentMd5();
+        DateTime uploadRequestedOn = DateUtils.getCurrentDateTime();
+        Upload upload = uploadDao.createUpload(uploadRequest, healthCode, null);
+        String uploadId = upload.getUploadId();
+        try {
+            // Register this upload so we can detect dupes of this.
+            uploadDedupeDao.registerUpload(healthCode, uploadMd5, uploadRequestedOn, uploadId);
+        } catch (RuntimeException ex) {
+            // Don't want dedupe logic to fail the upload. Log an error and swallow the exception.
+            logger.error("Error registering upload " + uploadId + " in dedupe table: " + ex.getMessage(), ex);
+        }
+
+        // Use the configured part size, unless the file is so big that it would need more than the max part count.
+        long contentLength = uploadRequest.getContentLength();
+        long partSize = Math.max(multipartPartSize, divideRoundingUp(contentLength, MAX_PART_COUNT));
+        int partCount = (int) divideRoundingUp(contentLength, partSize);
+
+        // Start the S3 multipart upload. Upload ID in DynamoDB is the same as the S3 Object ID. Server-side
+        // encryption and content type are set for the whole object here, rather than on each part.
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(uploadRequest.getContentType());
+        metadata.setSSEAlgorithm(AES_256_SERVER_SIDE_ENCRYPTION);
+        InitiateMultipartUploadResult result = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(
+                uploadBucket, uploadId, metadata));
+        uploadDao.writeMultipartUploadInfo(upload, result.getUploadId(), partSize, partCount);
+
+        return new MultipartUploadSession(uploadId, partSize, partCount);
+    }
+
+    /**
+     * Gets a presigned URL to upload a single part of a multipart upload. The client uploads the part with an HTTP PUT
+     * to the returned URL.
+     *
+     * @param user
+     *         calling user, must own the upload
+     * @param uploadId
+     *         ID of a multipart upload that hasn't been completed yet
+     * @param partNumber
+     *         part number, between 1 and the upload's part count
+     * @return upload session with the presigned URL for the part
+     */
+    public UploadSession getUploadPartUrl(@Nonnull User user, @Nonnull String uploadId, int partNumber) {
+        Upload upload = getIncompleteMultipartUpload(user, uploadId);
+        validatePartNumber(upload, partNumber);
+
+        GeneratePresignedUrlRequest presignedUrlRequest =
+                new GeneratePresignedUrlRequest(uploadBucket, upload.getObjectId(), HttpMethod.PUT);
+        final Date expiration = getPresignedUrlExpiration();
+        presignedUrlRequest.setExpiration(expiration);
+        presignedUrlRequest.setRequestCredentials(uploadCredentailsService.getSessionCredentials());
+        presignedUrlRequest.addRequestParameter(PARAM_PART_NUMBER, String.valueOf(partNumber));
+        presignedUrlRequest.addRequestParameter(PARAM_UPLOAD_ID, upload.getMultipartUploadId());
+
+        URL url = s3UploadClient.generatePresignedUrl(presignedUrlRequest);
+        return new UploadSession(uploadId, url, expiration.getTime());
+    }
+
+    /**
+     * Called by the client after it uploads a part, to confirm that S3 received the part. Returns the parts uploaded
+     * so far, so the client can track its progress.
+     *
+     * @param user
+     *         calling user, must own the upload
+     * @param uploadId
+     *         ID of a multipart upload that hasn't been completed yet
+     * @param partNumber
+     *         part number that was uploaded
+     * @return parts uploaded so far
+     * @throws NotFoundException
+     *         if S3 doesn't have the part
+     */
+    public UploadPartList uploadPartComplete(@Nonnull User user, @Nonnull String uploadId, int partNumber) {
+        Upload upload = getIncompleteMultipartUpload(user, uploadId);
+        validatePartNumber(upload, partNumber);
+
+        UploadPartList partList = getUploadPartList(upload);
+        for (UploadPart onePart : partList.getParts()) {
+            if (onePart.getPartNumber() == partNumber) {
+                return partList;
+            }
+        }
+        throw new NotFoundException("Part " + partNumber + " of upload " + uploadId + " has not been uploaded");
+    }
+
+    /**
+     * Lists the parts of a multipart upload that have been uploaded so far. Clients use this to resume an interrupted
+     * upload.
+     *
+     * @param user
+     *         calling user, must own the upload
+     * @param uploadId
+     *         ID of a multipart upload that hasn't been completed yet
+     * @return parts uploaded so far
+     */
+    public UploadPartList listUploadParts(@Nonnull User user, @Nonnull String uploadId) {
+        Upload upload = getIncompleteMultipartUpload(user, uploadId);
+        return getUploadPartList(upload);
+    }
+
+    // Gets the upload and verifies that it's a multipart upload that can still accept parts.
+    private Upload getIncompleteMultipartUpload(User user, String uploadId) {
+        // The call to getUpload() also validates inputs and verifies the user matches.
+        Upload upload = getUpload(user, uploadId);
+        if (upload.getMultipartUploadId() == null) {
+            throw new BadRequestException("Upload " + uploadId + " is not a multipart upload");
+        }
+        if (!upload.canBeValidated()) {
+            throw new BadRequestException("Upload " + uploadId + " is already complete");
+        }
+        return upload;
+    }
+
+    private static void validatePartNumber(Upload upload, int partNumber) {
+        if (partNumber < 1 || partNumber > upload.getPartCount()) {
+            throw new BadRequestException("Part number must be between 1 and " + upload.getPartCount());
+        }
+    }
+
+    private UploadPartList getUploadPartList(Upload upload) {
+        List<UploadPart> partList = new ArrayList<>();
+        for (PartSummary onePart : listS3Parts(upload)) {
+            partList.add(new UploadPart(onePart.getPartNumber(), onePart.getSize()));
+        }
+        return new UploadPartList(upload.getUploadId(), upload.getPartSize(), upload.getPartCount(), partList);
+    }
+
+    // Lists all uploaded parts of the S3 multipart upload, in part number order. S3 returns at most 1000 parts per
+    // call, so this follows the part number marker until the listing is complete.
+    private List<PartSummary> listS3Parts(Upload upload) {
+        ListPartsRequest listPartsRequest = new ListPartsRequest(uploadBucket, upload.getObjectId(),
+                upload.getMultipartUploadId());
+        List<PartSummary> partList = new ArrayList<>();
+        PartListing partListing;
+        do {
+            partListing = s3Client.listParts(listPartsRequest);
+            partList.addAll(partListing.getParts());
+            listPartsRequest.setPartNumberMarker(partListing.getNextPartNumberMarker());
+        } while (partListing.isTruncated());
+        return partList;
+    }
+
+    // Assembles the parts of a multipart upload into a single S3 object. Throws if any parts are missing.
+    private void completeMultipartUpload(Upload upload) {
+        String uploadId = upload.getUploadId();
+        List<PartSummary> partList;
+        try {
+            partList = listS3Parts(upload);
+        } catch (AmazonServiceException ex) {
+            if (ERROR_CODE_NO_SUCH_UPLOAD.equals(ex.getErrorCode())) {
+                // The multipart upload was already assembled, but a previous uploadComplete() call failed before
+                // marking the upload as complete. The S3 object check that follows will tell us if the object
+                // really exists.
+                logger.info("Multipart upload for upload " + uploadId + " no longer exists, assuming already " +
+                        "assembled");
+                return;
+            }
+            throw ex;
+        }
+
+        List<PartETag> partETagList = new ArrayList<>();
+        SortedSet<Integer> missingPartSet = new TreeSet<>();
+        for (int i = 1; i <= upload.getPartCount(); i++) {
+            missingPartSet.add(i);
+        }
+        for (PartSummary onePart : partList) {
+            partETagList.add(new PartETag(onePart.getPartNumber(), onePart.getETag()));
+            missingPartSet.remove(onePart.getPartNumber());
+        }
+        if (!missingPartSet.isEmpty()) {
+            throw new BadRequestException("Upload " + uploadId + " is missing parts " + missingPartSet);
+        }
+
+        s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(uploadBucket, upload.getObjectId(),
+                upload.getMultipartUploadId(), partETagList));
+    }
+
+    private static long divideRoundingUp(long dividend, long divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private static Date getPresignedUrlExpiration() {
+        final Date expiration = DateTime.now(DateTimeZone.UTC).toDate();
+        expiration.setTime(expiration.getTime() + EXPIRATION);
+        return expiration;
+    }
+
     /**
      * <p>
      * Get upload service handler. This isn't currently exposed directly to the users, but is currently used by the
@@ -233,6 +610,56 @@ public class UploadService {
     public UploadValidationStatus getUploadValidationStatus(@Nonnull User user, @Nonnull String uploadId) {
         // The call to getUpload() also validates inputs and verifies the user matches.
         Upload upload = getUpload(user, uploadId);
+        return getUploadValidationStatus(upload);
+    }
+
+    /**
+     * <p>
+     * Long-poll version of {@link #getUploadValidationStatus}. If the upload is still waiting for or going through
+     * validation, this waits until validation completes or the timeout elapses, then returns the validation status at
+     * that time. Otherwise, it returns the validation status right away.
+     * </p>
+     * <p>
+     * Inputs are validated and the user is verified before this returns, so those errors are thrown directly rather
+     * than through the future.
+     * </p>
+     *
+     * @param user
+     *         calling user, must be non-null
+     * @param uploadId
+     *         ID of upload to fetch, must be non-null and non-empty
+     * @param timeoutSeconds
+     *         max time to wait, in seconds, between 1 and {@link #MAX_VALIDATION_STATUS_WAIT_SECONDS}
+     * @return future for the upload validation status
+     */
+    public CompletableFuture<UploadValidationStatus> waitForUploadValidationStatus(@Nonnull User user,
+            @Nonnull String uploadId, int timeoutSeconds) {
+        if (timeoutSeconds < 1 || timeoutSeconds > MAX_VALIDATION_STATUS_WAIT_SECONDS) {
+            throw new BadRequestException("timeout must be between 1 and " + MAX_VALIDATION_STATUS_WAIT_SECONDS +
+                    " seconds");
+        }
+
+        // The call to getUpload() also validates inputs and verifies the user matches.
+        Upload upload = getUpload(user, uploadId);
+        if (isValidationComplete(upload.getStatus())) {
+            return CompletableFuture.completedFuture(getUploadValidationStatus(upload));
+        }
+
+        // Validation is still pending. Wait, then re-read the upload, since it has changed (or we timed out). While
+        // waiting, re-check the stored status, in case the upload is validated on another node.
+        return uploadValidationStatusNotifier.awaitValidation(uploadId, timeoutSeconds * 1000L,
+                () -> isValidationComplete(uploadDao.getUpload(uploadId).getStatus())).thenApply(
+                ignored -> getUploadValidationStatus(getUpload(user, uploadId)));
+    }
+
+    // True if the upload is no longer waiting for or going through validation.
+    private static boolean isValidationComplete(UploadStatus status) {
+        return status != UploadStatus.REQUESTED && status != UploadStatus.VALIDATION_IN_PROGRESS;
+    }
+
+    // Gets the validation status for the given upload, including the health data record, if it exists.
+    private UploadValidationStatus getUploadValidationStatus(Upload upload) {
+        String uploadId = upload.getUploadId();
 
         // get record, if it exists
         HealthDataRecord record = null;
@@ -260,6 +687,11 @@ public class UploadService {
             return;
         }
 
+        // Multipart uploads need to be assembled before the object exists in S3.
+        if (upload.getMultipartUploadId() != null) {
+            completeMultipartUpload(upload);
+        }
+
         final String objectId = upload.getObjectId();
         ObjectMetadata obj;
         try {
@@ -271,9 +703,53 @@ public class UploadService {
         if (!AES_256_SERVER_SIDE_ENCRYPTION.equals(sse)) {
             logger.error("Missing S3 server-side encryption (SSE) for presigned upload " + uploadId + ".");
         }
-        uploadDao.uploadComplete(upload);
+        try {
+            uploadDao.uploadComplete(upload);
+        } catch (ConcurrentModificationException ex) {
+            // Uploads can be completed by both the client and the S3 upload completion event. Whichever gets here
+            // second has nothing left to do.
+            logger.info(String.format("Upload %s was concurrently marked complete", uploadId));
+            return;
+        }
+
+        // If this is a dupe of an upload that already validated successfully, the content is byte-for-byte identical
+        // (same health code and MD5), so we'd just get the same result again. Link this upload to the original's
+        // record instead of re-downloading, decrypting, and parsing the upload.
+        String duplicateUploadId = upload.getDuplicateUploadId();
+        String originalRecordId = getValidatedRecordIdForDupe(upload);
+        if (originalRecordId != null) {
+            logger.info("Skipping validation for upload " + uploadId + ", dupe of upload " + duplicateUploadId +
+                    " with record " + originalRecordId);
+            uploadDao.writeValidationStatus(upload, UploadStatus.SUCCEEDED, ImmutableList.of("Upload is a dupe of " +
+                    "upload " + duplicateUploadId + ", re-using record " + originalRecordId), originalRecordId);
+            uploadValidationStatusNotifier.notifyValidationComplete(uploadId);
+            return;
+        }
 
         // kick off upload validation
         uploadValidationService.validateUpload(studyId, upload);
     }
+
+    // If the given upload is a dupe of an upload that validated successfully, returns the record ID of the original
+    // upload. Otherwise, returns null, and the upload should go through validation.
+    private String getValidatedRecordIdForDupe(Upload upload) {
+        String duplicateUploadId = upload.getDuplicateUploadId();
+        if (Strings.isNullOrEmpty(duplicateUploadId)) {
+            return null;
+        }
+
+        try {
+            Upload originalUpload = uploadDao.getUpload(duplicateUploadId);
+            if (originalUpload.getStatus() == UploadStatus.SUCCEEDED &&
+                    Objects.equals(upload.getHealthCode(), originalUpload.getHealthCode()) &&
+                    !Strings.isNullOrEmpty(originalUpload.getRecordId())) {
+                return originalUpload.getRecordId();
+            }
+        } catch (RuntimeException ex) {
+            // Don't want dedupe logic to fail the upload. Log an error and fall back to full validation.
+            logger.error("Error getting original upload " + duplicateUploadId + " for dupe upload " +
+                    upload.getUploadId() + ": " + ex.getMessage(), ex);
+        }
+        return null;
+    }
 }
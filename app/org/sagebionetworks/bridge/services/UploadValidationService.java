@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import org.sagebionetworks.bridge.upload.UploadValidationTask;
 import org.sagebionetworks.bridge.upload.UploadValidationTaskFactory;
 
@@ -49,4 +50,27 @@ public class UploadValidationService {
         UploadValidationTask task = taskFactory.newTask(study, upload);
         asyncExecutorService.execute(task);
     }
+
+    /**
+     * Runs upload validation synchronously, on the calling thread. This is used by upload validation backfills, which
+     * manage their own thread pools and rate limits. Unlike {@link #validateUpload}, this throws if validation fails,
+     * so the caller can tell whether to retry (for example, if DynamoDB or S3 was throttling us) and whether the
+     * upload was successfully re-driven.
+     *
+     * @param study
+     *         study this upload lives in
+     * @param upload
+     *         upload metadata object for the upload
+     * @throws RuntimeException
+     *         if validation failed, with the exception thrown by the failing handler, if any, as the cause
+     */
+    public void validateUploadSynchronously(@Nonnull StudyIdentifier study, @Nonnull Upload upload) {
+        UploadValidationTask task = taskFactory.newTask(study, upload);
+        task.run();
+
+        if (task.getValidationStatus() != UploadStatus.SUCCEEDED) {
+            throw new RuntimeException("Upload validation failed for upload " + upload.getUploadId() + " with status " +
+                    task.getValidationStatus(), task.getHandlerException());
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package org.sagebionetworks.bridge.services.backfill;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * <p>
+ * Token-bucket rate limiter whose rate adapts to throttling. Each throttling signal halves the rate (down to the
+ * configured minimum). Each success adds a small increment back to the rate (up to the configured maximum). This is
+ * the same additive-increase, multiplicative-decrease scheme that TCP uses, and it lets backfills run as fast as our
+ * DynamoDB and S3 capacity allows without browning them out.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+class AdaptiveRateLimiter {
+    // Each success bumps the rate by this fraction of the min rate, so that recovering from a halving takes a few
+    // hundred successes rather than a few.
+    private static final double INCREASE_FRACTION = 0.05;
+
+    private final double minRate;
+    private final double maxRate;
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Creates an adaptive rate limiter.
+     *
+     * @param initialRate
+     *         initial rate, in permits per second
+     * @param minRate
+     *         the rate will never drop below this, in permits per second
+     * @param maxRate
+     *         the rate will never rise above this, in permits per second
+     */
+    AdaptiveRateLimiter(double initialRate, double minRate, double maxRate) {
+        checkArgument(minRate > 0, "minRate must be positive");
+        checkArgument(minRate <= maxRate, "minRate can't be greater than maxRate");
+        checkArgument(initialRate >= minRate && initialRate <= maxRate, "initialRate must be between minRate and " +
+                "maxRate");
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.rateLimiter = RateLimiter.create(initialRate);
+    }
+
+    /** Blocks until a permit is available. */
+    void acquire() {
+        rateLimiter.acquire();
+    }
+
+    /** Current rate, in permits per second. */
+    double getRate() {
+        return rateLimiter.getRate();
+    }
+
+    /** Signals that a call succeeded. This nudges the rate up. */
+    synchronized void onSuccess() {
+        rateLimiter.setRate(Math.min(maxRate, rateLimiter.getRate() + minRate * INCREASE_FRACTION));
+    }
+
+    /** Signals that a call was throttled. This halves the rate. */
+    synchronized void onThrottle() {
+        rateLimiter.setRate(Math.max(minRate, rateLimiter.getRate() / 2.0));
+    }
+}
@@ -33,6 +33,12 @@ abstract class AsyncBackfillTemplate implements BackfillService {
     public final void setDistributedLockDao(DistributedLockDao lockDao) {
         this.lockDao = lockDao;
     }
+
+    /** Backfill DAO, for sub-classes that write their own backfill records, such as checkpoints. */
+    public BackfillDao getBackfillDao() {
+        return backfillDao;
+    }
+
     @Autowired
     public final void setBackfillDao(BackfillDao backfillDao) {
         this.backfillDao = backfillDao;
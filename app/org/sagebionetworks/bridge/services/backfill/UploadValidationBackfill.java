@@ -1,15 +1,31 @@
 package org.sagebionetworks.bridge.services.backfill;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Resource;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.dao.BackfillDao;
 import org.sagebionetworks.bridge.dao.HealthCodeDao;
 import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.models.backfill.BackfillRecord;
+import org.sagebionetworks.bridge.models.backfill.BackfillStatus;
 import org.sagebionetworks.bridge.models.backfill.BackfillTask;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
@@ -18,17 +34,59 @@ import org.sagebionetworks.bridge.s3.S3Helper;
 import org.sagebionetworks.bridge.services.UploadValidationService;
 
 /**
+ * <p>
  * Re-drives upload validation. Depending on the sub-class, this can get upload IDs from a variety of sources. See
- * {@link UploadValidationByUploadIdBackfill} and TODO
+ * {@link UploadValidationByUploadIdBackfill} and {@link UploadValidationByRecordIdBackfill}.
+ * </p>
+ * <p>
+ * Uploads are re-driven in parallel, with a configurable number of threads, and with a token-bucket rate limit that
+ * backs off when DynamoDB or S3 throttles us (see {@link AdaptiveRateLimiter}). Each successfully re-driven upload is
+ * checkpointed as a backfill record. If the previous run of this backfill didn't complete, uploads checkpointed by
+ * that run are skipped, so an interrupted backfill resumes where it stopped.
+ * </p>
  */
 public abstract class UploadValidationBackfill extends AsyncBackfillTemplate {
     private static final Logger logger = LoggerFactory.getLogger(UploadValidationBackfill.class);
 
+    // package-scoped to be available in unit tests
+    static final String CONFIG_KEY_CONCURRENCY = "upload.validation.backfill.thread.count";
+    static final String CONFIG_KEY_INITIAL_RATE = "upload.validation.backfill.initial.rate";
+    static final String CONFIG_KEY_MAX_RATE = "upload.validation.backfill.max.rate";
+    static final String CONFIG_KEY_MIN_RATE = "upload.validation.backfill.min.rate";
+    static final String OPERATION_REDRIVE = "upload validation redrive";
+
+    // Try each upload at most this many times if we're being throttled.
+    private static final int MAX_ATTEMPTS = 3;
+
+    // Only resume from incomplete tasks that started at most this long ago.
+    private static final long RESUME_LOOKBACK_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    // Backfill record JSON key for the re-driven upload ID. See BackfillDao.createUploadRecord().
+    private static final String RECORD_KEY_UPLOAD_ID = "upload";
+
+    // HTTP status and AWS error codes that mean we're being throttled.
+    private static final int HTTP_STATUS_SERVICE_UNAVAILABLE = 503;
+    private static final Set<String> THROTTLING_ERROR_CODES = ImmutableSet.of("ProvisionedThroughputExceededException",
+            "RequestLimitExceeded", "SlowDown", "Throttling", "ThrottlingException");
+
+    private int concurrency;
     private HealthCodeDao healthCodeDao;
+    private double initialRate;
+    private double maxRate;
+    private double minRate;
     private S3Helper s3Helper;
     private UploadDao uploadDao;
     private UploadValidationService uploadValidationService;
 
+    /** Sets the concurrency and rate limits from the specified Bridge config. */
+    @Autowired
+    public final void setConfig(BridgeConfig config) {
+        concurrency = config.getPropertyAsInt(CONFIG_KEY_CONCURRENCY);
+        initialRate = Double.parseDouble(config.getProperty(CONFIG_KEY_INITIAL_RATE));
+        maxRate = Double.parseDouble(config.getProperty(CONFIG_KEY_MAX_RATE));
+        minRate = Double.parseDouble(config.getProperty(CONFIG_KEY_MIN_RATE));
+    }
+
     /** DAO for getting the study ID from a health code. This is configured by Spring. */
     @Autowired
     public final void setHealthCodeDao(HealthCodeDao healthCodeDao) {
@@ -60,7 +118,7 @@ public abstract class UploadValidationBackfill extends AsyncBackfillTemplate {
 
     @Override
     int getLockExpireInSeconds() {
-        // We do roughly one upload per second. One hour should be enough for most cases.
+        // Interrupted backfills resume from their checkpoints, so one hour is enough, even for large backfills.
         return 3600;
     }
 
@@ -75,36 +133,154 @@ public abstract class UploadValidationBackfill extends AsyncBackfillTemplate {
             throw new RuntimeException(ex);
         }
 
-        for (String oneUploadId : uploadIdList) {
-            // rate limit so we down starve threads or brown out DDB
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException ex) {
-                logger.error("Interrupted while sleeping: " + ex.getMessage(), ex);
-            }
+        // If the previous run was interrupted, skip uploads it already re-drove.
+        Set<String> redrivenUploadIdSet = getRedrivenUploadIds(task);
+        if (!redrivenUploadIdSet.isEmpty()) {
+            recordMessageSynchronized(task, callback, "Resuming backfill, skipping " + redrivenUploadIdSet.size() +
+                    " previously backfilled uploads");
+        }
 
-            try {
-                // Get upload.
-                Upload oneUpload = uploadDao.getUpload(oneUploadId);
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(initialRate, minRate, maxRate);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (String oneUploadId : uploadIdList) {
+                if (!redrivenUploadIdSet.contains(oneUploadId)) {
+                    executor.execute(() -> redriveWithRetries(task, callback, rateLimiter, oneUploadId));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
 
-                // Get study ID from health code. Upload validation needs this.
-                String studyId = healthCodeDao.getStudyIdentifier(oneUpload.getHealthCode());
-                StudyIdentifier studyIdentifier = new StudyIdentifierImpl(studyId);
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for UploadValidationBackfill, current rate " + rateLimiter.getRate() +
+                        " uploads/sec");
+            }
+        } catch (InterruptedException ex) {
+            // Stop the workers. Whatever they finished is already checkpointed.
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for UploadValidationBackfill", ex);
+        }
 
-                // Kick off upload validation.
-                uploadValidationService.validateUpload(studyIdentifier, oneUpload);
+        logger.info("UploadValidationBackfill complete");
+    }
 
-                recordMessage(task, callback, "Backfilled upload ID " + oneUploadId);
-                logger.info("Backfilled upload ID " + oneUploadId);
+    // Re-drives a single upload. If we're throttled, back off and try again. Other errors are recorded and don't fail
+    // the entire backfill.
+    private void redriveWithRetries(BackfillTask task, BackfillCallback callback, AdaptiveRateLimiter rateLimiter,
+            String uploadId) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            rateLimiter.acquire();
+            try {
+                redrive(task, callback, uploadId);
+                rateLimiter.onSuccess();
+                return;
             } catch (RuntimeException ex) {
-                // Ensure that errors won't fail the entire backfill. Log an error and move on.
-                String errMsg = "Error backfilling upload ID " + oneUploadId + ": " + ex.getMessage();
+                if (isThrottlingException(ex)) {
+                    rateLimiter.onThrottle();
+                    if (attempt < MAX_ATTEMPTS) {
+                        logger.warn("Throttled backfilling upload ID " + uploadId + ", rate reduced to " +
+                                rateLimiter.getRate() + " uploads/sec");
+                        continue;
+                    }
+                }
+
+                String errMsg = "Error backfilling upload ID " + uploadId + ": " + ex.getMessage();
                 logger.error(errMsg, ex);
-                recordMessage(task, callback, errMsg);
+                recordMessageSynchronized(task, callback, errMsg);
+                return;
             }
         }
+    }
 
-        logger.info("UploadValidationBackfill complete");
+    // Re-drives upload validation for a single upload and checkpoints it.
+    private void redrive(BackfillTask task, BackfillCallback callback, String uploadId) {
+        // Get upload.
+        Upload upload = uploadDao.getUpload(uploadId);
+
+        // Get study ID from health code. Upload validation needs this.
+        String studyId = healthCodeDao.getStudyIdentifier(upload.getHealthCode());
+        StudyIdentifier studyIdentifier = new StudyIdentifierImpl(studyId);
+
+        // Run upload validation on this worker thread, so that our thread count and rate limit actually bound the
+        // load we put on DynamoDB and S3. This throws if validation fails, with the handler's exception as the cause,
+        // so throttling reaches the rate limiter, and failed uploads aren't checkpointed.
+        uploadValidationService.validateUploadSynchronously(studyIdentifier, upload);
+
+        checkpoint(task, callback, studyId, uploadId);
+        logger.info("Backfilled upload ID " + uploadId);
+    }
+
+    // Writes a backfill record for the given upload, so that if this backfill is interrupted, the next run can skip
+    // this upload.
+    private void checkpoint(BackfillTask task, BackfillCallback callback, String studyId, String uploadId) {
+        try {
+            BackfillRecord record = getBackfillDao().createUploadRecord(task.getId(), studyId, uploadId,
+                    OPERATION_REDRIVE);
+            synchronized (callback) {
+                callback.newRecords(record);
+            }
+        } catch (RuntimeException ex) {
+            // The upload was still re-driven. At worst, the next run re-drives it again. Log and move on.
+            logger.error("Error checkpointing upload ID " + uploadId + ": " + ex.getMessage(), ex);
+            recordMessageSynchronized(task, callback, "Backfilled upload ID " + uploadId);
+        }
+    }
+
+    // Gets the upload IDs checkpointed by previous incomplete runs of this backfill. We walk back from the most recent
+    // run until we find one that completed, since an incomplete run may itself have resumed from an earlier one.
+    private Set<String> getRedrivenUploadIds(BackfillTask task) {
+        BackfillDao backfillDao = getBackfillDao();
+        long since = DateTime.now(DateTimeZone.UTC).getMillis() - RESUME_LOOKBACK_MILLIS;
+        List<? extends BackfillTask> previousTaskList = backfillDao.getTasks(task.getName(), since);
+
+        Set<String> uploadIdSet = new HashSet<>();
+        for (int i = previousTaskList.size() - 1; i >= 0; i--) {
+            BackfillTask previousTask = previousTaskList.get(i);
+            if (previousTask.getId().equals(task.getId())) {
+                // This is the current run.
+                continue;
+            }
+            if (BackfillStatus.COMPLETED.name().equals(previousTask.getStatus())) {
+                break;
+            }
+
+            Iterator<? extends BackfillRecord> recordIter = backfillDao.getRecords(previousTask.getId());
+            while (recordIter.hasNext()) {
+                JsonNode uploadIdNode = recordIter.next().toJsonNode().get(RECORD_KEY_UPLOAD_ID);
+                if (uploadIdNode != null && uploadIdNode.isTextual()) {
+                    uploadIdSet.add(uploadIdNode.textValue());
+                }
+            }
+        }
+        return uploadIdSet;
+    }
+
+    // Backfill callbacks write to a single response stream, so they need to be synchronized across worker threads.
+    private void recordMessageSynchronized(BackfillTask task, BackfillCallback callback, String message) {
+        synchronized (callback) {
+            recordMessage(task, callback, message);
+        }
+    }
+
+    // Returns true if the exception (or any of its causes) means DynamoDB or S3 is throttling us.
+    // Package-scoped to facilitate unit tests.
+    static boolean isThrottlingException(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ProvisionedThroughputExceededException) {
+                return true;
+            }
+            if (cause instanceof AmazonServiceException) {
+                AmazonServiceException serviceEx = (AmazonServiceException) cause;
+                if (serviceEx.getStatusCode() == HTTP_STATUS_SERVICE_UNAVAILABLE ||
+                        THROTTLING_ERROR_CODES.contains(serviceEx.getErrorCode())) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /** Subclasses should override this to return a list of upload IDs to redrive upload validation for. */
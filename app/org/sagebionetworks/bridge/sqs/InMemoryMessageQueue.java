@@ -0,0 +1,83 @@
+package org.sagebionetworks.bridge.sqs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+/**
+ * In-memory {@link MessageQueue}, for unit tests and local development. Received messages are held as in-flight until
+ * they're deleted. Since there's no visibility timeout, call {@link #redeliverInFlightMessages} to simulate in-flight
+ * messages becoming visible again.
+ */
+public class InMemoryMessageQueue implements MessageQueue {
+    private final BlockingQueue<String> pendingQueue = new LinkedBlockingQueue<>();
+    private final Map<String, String> inFlightBodiesByReceiptHandle = new LinkedHashMap<>();
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendMessage(@Nonnull String body) {
+        pendingQueue.add(body);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<QueueMessage> receiveMessages(int maxMessages, int waitSeconds) {
+        List<QueueMessage> messageList = new ArrayList<>();
+
+        // Wait for the first message only. After that, take whatever is available.
+        String body;
+        try {
+            body = pendingQueue.poll(waitSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return messageList;
+        }
+        while (body != null) {
+            String receiptHandle = UUID.randomUUID().toString();
+            synchronized (inFlightBodiesByReceiptHandle) {
+                inFlightBodiesByReceiptHandle.put(receiptHandle, body);
+            }
+            messageList.add(new QueueMessage(receiptHandle, body));
+
+            if (messageList.size() >= maxMessages) {
+                break;
+            }
+            body = pendingQueue.poll();
+        }
+        return messageList;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteMessage(@Nonnull QueueMessage message) {
+        synchronized (inFlightBodiesByReceiptHandle) {
+            inFlightBodiesByReceiptHandle.remove(message.getReceiptHandle());
+        }
+    }
+
+    /** Number of messages waiting to be received. */
+    public int getPendingCount() {
+        return pendingQueue.size();
+    }
+
+    /** Number of messages that have been received but not deleted. */
+    public int getInFlightCount() {
+        synchronized (inFlightBodiesByReceiptHandle) {
+            return inFlightBodiesByReceiptHandle.size();
+        }
+    }
+
+    /** Puts all in-flight messages back on the queue, as if their visibility timeout expired. */
+    public void redeliverInFlightMessages() {
+        synchronized (inFlightBodiesByReceiptHandle) {
+            pendingQueue.addAll(inFlightBodiesByReceiptHandle.values());
+            inFlightBodiesByReceiptHandle.clear();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.sagebionetworks.bridge.sqs;
+
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Minimal message queue abstraction, modeled after SQS. Received messages stay on the queue (hidden from other
+ * receivers) until they're deleted, so a consumer that fails to process a message gets it redelivered later.
+ */
+public interface MessageQueue {
+    /**
+     * Sends a message to the queue.
+     *
+     * @param body
+     *         message body
+     */
+    void sendMessage(@Nonnull String body);
+
+    /**
+     * Receives up to the given number of messages, waiting up to the given number of seconds for messages to arrive.
+     * Returns an empty list if there are no messages.
+     *
+     * @param maxMessages
+     *         max number of messages to receive
+     * @param waitSeconds
+     *         max time to wait for messages, in seconds
+     * @return list of received messages, never null
+     */
+    List<QueueMessage> receiveMessages(int maxMessages, int waitSeconds);
+
+    /**
+     * Deletes a received message from the queue. Call this once the message has been processed.
+     *
+     * @param message
+     *         message to delete, as returned by {@link #receiveMessages}
+     */
+    void deleteMessage(@Nonnull QueueMessage message);
+}
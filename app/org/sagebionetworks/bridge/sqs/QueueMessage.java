@@ -0,0 +1,30 @@
+package org.sagebionetworks.bridge.sqs;
+
+/** A message received from a {@link MessageQueue}. */
+public final class QueueMessage {
+    private final String receiptHandle;
+    private final String body;
+
+    /**
+     * Constructs a queue message.
+     *
+     * @param receiptHandle
+     *         handle used to delete the message, specific to this receipt of the message
+     * @param body
+     *         message body
+     */
+    public QueueMessage(String receiptHandle, String body) {
+        this.receiptHandle = receiptHandle;
+        this.body = body;
+    }
+
+    /** Handle used to delete the message, specific to this receipt of the message. */
+    public String getReceiptHandle() {
+        return receiptHandle;
+    }
+
+    /** Message body. */
+    public String getBody() {
+        return body;
+    }
+}
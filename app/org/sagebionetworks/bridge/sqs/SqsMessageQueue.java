@@ -0,0 +1,55 @@
+package org.sagebionetworks.bridge.sqs;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+/** {@link MessageQueue} backed by a single SQS queue. */
+public class SqsMessageQueue implements MessageQueue {
+    private final AmazonSQS sqsClient;
+    private final String queueUrl;
+
+    /**
+     * Constructs the queue.
+     *
+     * @param sqsClient
+     *         SQS client
+     * @param queueUrl
+     *         URL of the SQS queue
+     */
+    public SqsMessageQueue(AmazonSQS sqsClient, String queueUrl) {
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendMessage(@Nonnull String body) {
+        sqsClient.sendMessage(queueUrl, body);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<QueueMessage> receiveMessages(int maxMessages, int waitSeconds) {
+        ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(maxMessages)
+                .withWaitTimeSeconds(waitSeconds);
+        ReceiveMessageResult result = sqsClient.receiveMessage(request);
+
+        List<QueueMessage> messageList = new ArrayList<>();
+        for (Message oneMessage : result.getMessages()) {
+            messageList.add(new QueueMessage(oneMessage.getReceiptHandle(), oneMessage.getBody()));
+        }
+        return messageList;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteMessage(@Nonnull QueueMessage message) {
+        sqsClient.deleteMessage(queueUrl, message.getReceiptHandle());
+    }
+}
@@ -1,7 +1,9 @@
 package org.sagebionetworks.bridge.upload;
 
+import java.util.Set;
 import javax.annotation.Nonnull;
 
+import com.google.common.collect.Sets;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -14,6 +16,11 @@ import org.sagebionetworks.bridge.services.UploadArchiveService;
  */
 @Component
 public class DecryptHandler implements UploadValidationHandler {
+    private static final Set<UploadValidationContextKey> READ_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.STUDY, UploadValidationContextKey.DATA);
+    private static final Set<UploadValidationContextKey> WRITE_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.DECRYPTED_DATA);
+
     private UploadArchiveService uploadArchiveService;
 
     /** Upload archive service, which handles decrypting and unzipping of files. This is configured by Spring. */
@@ -22,6 +29,18 @@ public class DecryptHandler implements UploadValidationHandler {
         this.uploadArchiveService = uploadArchiveService;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getReadKeys() {
+        return READ_KEYS;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getWriteKeys() {
+        return WRITE_KEYS;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void handle(@Nonnull UploadValidationContext context) {
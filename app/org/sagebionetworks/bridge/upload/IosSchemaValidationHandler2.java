@@ -15,6 +15,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
@@ -60,6 +61,14 @@ import org.sagebionetworks.bridge.services.UploadSchemaService;
  */
 @Component
 public class IosSchemaValidationHandler2 implements UploadValidationHandler {
+    private static final Set<UploadValidationContextKey> READ_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.STUDY, UploadValidationContextKey.UPLOAD,
+            UploadValidationContextKey.UNZIPPED_DATA_MAP, UploadValidationContextKey.JSON_DATA_MAP);
+    private static final Set<UploadValidationContextKey> WRITE_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.UNZIPPED_DATA_MAP, UploadValidationContextKey.JSON_DATA_MAP,
+            UploadValidationContextKey.HEALTH_DATA_RECORD_BUILDER,
+            UploadValidationContextKey.ATTACHMENTS_BY_FIELD_NAME);
+
     private static final Logger logger = LoggerFactory.getLogger(IosSchemaValidationHandler2.class);
 
     private static final String FILENAME_INFO_JSON = "info.json";
@@ -116,6 +125,18 @@ public class IosSchemaValidationHandler2 implements UploadValidationHandler {
         this.uploadSchemaService = uploadSchemaService;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getReadKeys() {
+        return READ_KEYS;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getWriteKeys() {
+        return WRITE_KEYS;
+    }
+
     /**
      * Processes iOS data into health data records. iOS data comes from a third party, and we have no control over the
      * data format. So our data validation needs to be as flexible as possible. Which means our error handling strategy
@@ -1,48 +1,289 @@
 package org.sagebionetworks.bridge.upload;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import javax.annotation.Nonnull;
+import javax.annotation.Resource;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 
 /**
+ * <p>
  * Validation handler for parsing the upload data into JSON, if applicable. This handler reads unzipped data from
  * {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getUnzippedDataMap}. As it iterates over the unzipped
  * data, if it's able to parse any entries into JSON, it will remove it from getUnzippedDataMap, and write it to
  * {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getJsonDataMap}.
+ * </p>
+ * <p>
+ * To avoid running the JSON parser (and throwing and catching parse exceptions) on audio files and other binary
+ * entries, each entry is first sniffed using its first significant byte, its filename, and the content type declared
+ * for it in info.json, if any. Entries that can't be JSON are left in the unzipped data map without being parsed.
+ * </p>
+ * <p>
+ * Archives with many JSON entries are parsed in parallel on a fork-join pool shared by all upload validations. Each
+ * upload uses at most the configured max parallelism (including the validation thread itself), so a single large
+ * archive can't take over the pool. Entries are processed in filename order, and if parsing throws, the exception
+ * for the first such entry in filename order is rethrown, so results don't depend on thread scheduling.
+ * </p>
  */
 @Component
 public class ParseJsonHandler implements UploadValidationHandler {
+    private static final Set<UploadValidationContextKey> READ_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.UNZIPPED_DATA_MAP);
+    private static final Set<UploadValidationContextKey> WRITE_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.UNZIPPED_DATA_MAP, UploadValidationContextKey.JSON_DATA_MAP);
+
+    // package-scoped for unit tests
+    static final String CONFIG_KEY_MAX_PARALLELISM = "upload.json.parse.max.parallelism";
+    static final String CONFIG_KEY_PARALLEL_MIN_ENTRIES = "upload.json.parse.parallel.min.entries";
+
+    private static final String FILENAME_INFO_JSON = "info.json";
+    private static final String FILENAME_JSON_SUFFIX = ".json";
+    private static final String JSON_CONTENT_TYPE_SUFFIX = "json";
+    private static final String KEY_CONTENT_TYPE = "contentType";
+    private static final String KEY_FILENAME = "filename";
+    private static final String KEY_FILES = "files";
+
+    private ForkJoinPool forkJoinPool;
+    private int maxParallelism = 1;
+    private int parallelMinEntries = Integer.MAX_VALUE;
+
+    /** Bridge config, used to get the per-upload max parallelism and the entry count threshold for parallelism. */
+    @Autowired
+    public final void setConfig(BridgeConfig config) {
+        setParallelism(config.getPropertyAsInt(CONFIG_KEY_MAX_PARALLELISM),
+                config.getPropertyAsInt(CONFIG_KEY_PARALLEL_MIN_ENTRIES));
+    }
+
+    /**
+     * Sets the max number of threads a single upload can use for parsing, and the min number of JSON candidate
+     * entries an upload needs before we parse it in parallel. If max parallelism is 1, we always parse on the
+     * validation thread.
+     */
+    public final void setParallelism(int maxParallelism, int parallelMinEntries) {
+        this.maxParallelism = maxParallelism;
+        this.parallelMinEntries = parallelMinEntries;
+    }
+
+    /**
+     * Fork-join pool shared by all upload validations, used to parse entries in parallel. If this isn't set, entries
+     * are parsed on the validation thread. This is configured by Spring.
+     */
+    @Resource(name = "uploadJsonParsePool")
+    public final void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getReadKeys() {
+        return READ_KEYS;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getWriteKeys() {
+        return WRITE_KEYS;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void handle(@Nonnull UploadValidationContext context) {
         Map<String, byte[]> unzippedDataMap = context.getUnzippedDataMap();
         Map<String, JsonNode> jsonDataMap = new HashMap<>();
 
-        // We use the iterator directly, because we may want to modify unzippedDataMap as we iterate it, and this is
-        // the most straightforward way to do that without hitting a ConcurrentModificationException.
-        Iterator<Map.Entry<String, byte[]>> unzippedDataIter = unzippedDataMap.entrySet().iterator();
-        while (unzippedDataIter.hasNext()) {
-            Map.Entry<String, byte[]> oneUnzippedData = unzippedDataIter.next();
+        // Parse info.json first, since it tells us the content types of the other files.
+        Map<String, String> contentTypesByFilename = new HashMap<>();
+        byte[] infoJsonBytes = unzippedDataMap.get(FILENAME_INFO_JSON);
+        if (infoJsonBytes != null && isJsonCandidate(FILENAME_INFO_JSON, infoJsonBytes, null)) {
+            JsonNode infoJson = parseJsonOrNull(infoJsonBytes);
+            if (infoJson != null) {
+                jsonDataMap.put(FILENAME_INFO_JSON, infoJson);
+                unzippedDataMap.remove(FILENAME_INFO_JSON);
+                contentTypesByFilename = getContentTypesByFilename(infoJson);
+            }
+        }
+
+        // Find the entries that could be JSON, in filename order. Entries that can't be JSON are normal (for example,
+        // audio files), and are left in the unzipped data map.
+        List<String> candidateNameList = new ArrayList<>();
+        for (Map.Entry<String, byte[]> oneUnzippedData : unzippedDataMap.entrySet()) {
             String entryName = oneUnzippedData.getKey();
+            if (isJsonCandidate(entryName, oneUnzippedData.getValue(), contentTypesByFilename.get(entryName))) {
+                candidateNameList.add(entryName);
+            }
+        }
+        candidateNameList.sort(null);
 
-            try {
-                // Try to parse it as JSON. If you can, remove the entry from unzippedDataMap and add it to
-                // jsonDataMap.
-                JsonNode jsonNode = BridgeObjectMapper.get().readTree(oneUnzippedData.getValue());
-                jsonDataMap.put(entryName, jsonNode);
-                unzippedDataIter.remove();
-            } catch (Exception ex) {
-                // Can't parse this as a JSON node. This could be normal (for example, for audio files). Ignore the
-                // error and move on.
+        // Try to parse each candidate as JSON. If you can, remove the entry from unzippedDataMap and add it to
+        // jsonDataMap.
+        ParseResult[] resultArr = parseAll(candidateNameList, unzippedDataMap);
+        for (int i = 0; i < resultArr.length; i++) {
+            if (resultArr[i].exception != null) {
+                throw resultArr[i].exception;
+            }
+            if (resultArr[i].jsonNode != null) {
+                String entryName = candidateNameList.get(i);
+                jsonDataMap.put(entryName, resultArr[i].jsonNode);
+                unzippedDataMap.remove(entryName);
             }
         }
 
         context.setJsonDataMap(jsonDataMap);
     }
+
+    // Parses the given entries, in parallel if there are enough of them. Results are in the same order as the entry
+    // name list.
+    private ParseResult[] parseAll(List<String> entryNameList, Map<String, byte[]> unzippedDataMap) {
+        int numEntries = entryNameList.size();
+        ParseResult[] resultArr = new ParseResult[numEntries];
+        int numStripes = Math.min(maxParallelism, numEntries);
+        if (forkJoinPool == null || numStripes <= 1 || numEntries < parallelMinEntries) {
+            parseStripe(entryNameList, unzippedDataMap, resultArr, 0, 1);
+            return resultArr;
+        }
+
+        // Entries are striped rather than split into contiguous ranges, since similar files tend to have similar
+        // names (and sizes). The validation thread parses the first stripe itself, so this upload uses at most
+        // numStripes threads, and never leaves the validation thread idle.
+        List<ForkJoinTask<?>> taskList = new ArrayList<>();
+        for (int stripe = 1; stripe < numStripes; stripe++) {
+            int stripeStart = stripe;
+            taskList.add(forkJoinPool.submit(() -> parseStripe(entryNameList, unzippedDataMap, resultArr,
+                    stripeStart, numStripes)));
+        }
+        parseStripe(entryNameList, unzippedDataMap, resultArr, 0, numStripes);
+        for (ForkJoinTask<?> oneTask : taskList) {
+            // parseStripe() catches per-entry exceptions, so this only throws for Errors.
+            oneTask.join();
+        }
+        return resultArr;
+    }
+
+    // Parses every numStripes-th entry, starting at the given index, and writes the results into the result array.
+    // Exceptions are recorded per entry, so the caller can report them in entry order.
+    private static void parseStripe(List<String> entryNameList, Map<String, byte[]> unzippedDataMap,
+            ParseResult[] resultArr, int start, int numStripes) {
+        for (int i = start; i < resultArr.length; i += numStripes) {
+            ParseResult result = new ParseResult();
+            try {
+                result.jsonNode = parseJsonOrNull(unzippedDataMap.get(entryNameList.get(i)));
+            } catch (RuntimeException ex) {
+                result.exception = ex;
+            }
+            resultArr[i] = result;
+        }
+    }
+
+    /**
+     * <p>
+     * Cheaply determines whether the given entry could be JSON, without parsing it. This is a conservative check: It
+     * may return true for entries that turn out not to be JSON, but it should never return false for JSON entries
+     * that the upload validation handlers care about.
+     * </p>
+     * <p>
+     * An entry is a JSON candidate if its first non-whitespace byte starts a JSON object or array. Entries whose first
+     * byte could start a JSON scalar (string, number, true, false, null) are also candidates, unless info.json
+     * declares a non-JSON content type for them. Entries whose filename ends in .json are always candidates. Empty
+     * entries are never candidates.
+     * </p>
+     *
+     * <p>
+     * This is package-scoped to facilitate unit tests.
+     * </p>
+     *
+     * @param filename
+     *         entry filename
+     * @param data
+     *         entry data
+     * @param contentTypeHint
+     *         content type declared for this entry in info.json, null if not declared
+     * @return true if the entry should be parsed as JSON
+     */
+    static boolean isJsonCandidate(String filename, byte[] data, String contentTypeHint) {
+        int firstByte = getFirstSignificantByte(data);
+        if (firstByte < 0) {
+            // Empty or all whitespace.
+            return false;
+        }
+        if (firstByte == '{' || firstByte == '[') {
+            return true;
+        }
+        if (filename.toLowerCase(Locale.ROOT).endsWith(FILENAME_JSON_SUFFIX)) {
+            return true;
+        }
+
+        boolean couldBeScalar = firstByte == '"' || firstByte == '-' || (firstByte >= '0' && firstByte <= '9') ||
+                firstByte == 't' || firstByte == 'f' || firstByte == 'n';
+        if (!couldBeScalar) {
+            return false;
+        }
+
+        // The entry may be a JSON scalar. Use the content type from info.json, if we have one.
+        return contentTypeHint == null || contentTypeHint.toLowerCase(Locale.ROOT).endsWith(JSON_CONTENT_TYPE_SUFFIX);
+    }
+
+    // Returns the first byte that isn't JSON whitespace or part of a UTF-8 byte order mark, or -1 if there is no such
+    // byte.
+    private static int getFirstSignificantByte(byte[] data) {
+        int i = 0;
+        if (data.length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF) {
+            // skip UTF-8 BOM
+            i = 3;
+        }
+        for (; i < data.length; i++) {
+            byte b = data[i];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return b & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    // Reads the file list from info.json and returns the declared content types, keyed by filename. Files without
+    // declared content types are not included in the map.
+    private static Map<String, String> getContentTypesByFilename(JsonNode infoJson) {
+        Map<String, String> contentTypesByFilename = new HashMap<>();
+        JsonNode fileList = infoJson.get(KEY_FILES);
+        if (fileList != null && fileList.isArray()) {
+            for (JsonNode oneFileJson : fileList) {
+                String filename = oneFileJson.path(KEY_FILENAME).textValue();
+                String contentType = oneFileJson.path(KEY_CONTENT_TYPE).textValue();
+                if (StringUtils.isNotBlank(filename) && StringUtils.isNotBlank(contentType)) {
+                    contentTypesByFilename.put(filename, contentType);
+                }
+            }
+        }
+        return contentTypesByFilename;
+    }
+
+    // Parses the given bytes as JSON, returning null if the bytes can't be parsed.
+    private static JsonNode parseJsonOrNull(byte[] data) {
+        try {
+            return BridgeObjectMapper.get().readTree(data);
+        } catch (IOException ex) {
+            // Looked like JSON, but isn't. Treat it as non-JSON data.
+            return null;
+        }
+    }
+
+    // Result of parsing a single entry. jsonNode is null if the entry isn't JSON.
+    private static class ParseResult {
+        JsonNode jsonNode;
+        RuntimeException exception;
+    }
 }
@@ -3,19 +3,33 @@ package org.sagebionetworks.bridge.upload;
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
 import java.io.IOException;
+import java.util.Set;
 
+import com.google.common.collect.Sets;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.s3.S3Helper;
 
 /**
  * Validation handler for downloading the upload from S3. This handler reads
  * {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getUpload} and writes the downloaded data (as a
  * byte array) to {@link org.sagebionetworks.bridge.upload.UploadValidationContext#setData}.
+ * <p>
+ * For multipart uploads, this also checks the downloaded data against the MD5 the client declared when it requested
+ * the upload. S3 checks the Content-MD5 of single-part uploads on PUT, but multipart uploads are assembled from parts,
+ * so nothing else verifies the whole archive.
  */
 @Component
 public class S3DownloadHandler implements UploadValidationHandler {
+    private static final Set<UploadValidationContextKey> READ_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.UPLOAD);
+    private static final Set<UploadValidationContextKey> WRITE_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.DATA);
+
     private static final String UPLOAD_BUCKET = BridgeConfigFactory.getConfig().getProperty("upload.bucket");
 
     private S3Helper s3Helper;
@@ -26,11 +40,31 @@ public class S3DownloadHandler implements UploadValidationHandler {
         this.s3Helper = s3Helper;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getReadKeys() {
+        return READ_KEYS;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getWriteKeys() {
+        return WRITE_KEYS;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void handle(@Nonnull UploadValidationContext context) throws UploadValidationException {
         try {
-            byte[] s3Bytes = s3Helper.readS3FileAsBytes(UPLOAD_BUCKET, context.getUpload().getObjectId());
+            Upload upload = context.getUpload();
+            byte[] s3Bytes = s3Helper.readS3FileAsBytes(UPLOAD_BUCKET, upload.getObjectId());
+            if (upload.getMultipartUploadId() != null) {
+                String actualMd5 = Base64.encodeBase64String(DigestUtils.md5(s3Bytes));
+                if (!actualMd5.equals(upload.getContentMd5())) {
+                    throw new UploadValidationException("Multipart upload " + upload.getUploadId() +
+                            " has MD5 " + actualMd5 + ", but the client declared " + upload.getContentMd5());
+                }
+            }
             context.setData(s3Bytes);
         } catch (IOException ex) {
             throw new UploadValidationException(ex);
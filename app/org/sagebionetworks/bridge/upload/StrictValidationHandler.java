@@ -2,24 +2,25 @@ package org.sagebionetworks.bridge.upload;
 
 import javax.annotation.Nonnull;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Joiner;
-import org.joda.time.DateTime;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
-import org.sagebionetworks.bridge.models.upload.UploadFieldType;
 import org.sagebionetworks.bridge.models.upload.UploadSchema;
 import org.sagebionetworks.bridge.services.StudyService;
 import org.sagebionetworks.bridge.services.UploadSchemaService;
@@ -46,10 +47,24 @@ import org.sagebionetworks.bridge.services.UploadSchemaService;
  */
 @Component
 public class StrictValidationHandler implements UploadValidationHandler {
+    private static final Set<UploadValidationContextKey> READ_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.STUDY, UploadValidationContextKey.UPLOAD,
+            UploadValidationContextKey.HEALTH_DATA_RECORD_BUILDER,
+            UploadValidationContextKey.ATTACHMENTS_BY_FIELD_NAME);
+    private static final Set<UploadValidationContextKey> WRITE_KEYS = ImmutableSet.of();
+
     private static final Logger logger = LoggerFactory.getLogger(StrictValidationHandler.class);
 
     private static final Joiner ERROR_MESSAGE_JOINER = Joiner.on("; ");
 
+    // Compiled validation plans, keyed by the schema's field definition list. UploadSchemaService hands out copies of
+    // its cached schema revisions, but the copies share the cached revision's immutable field definition list, so
+    // keying on that list (by identity, using weak keys) means each cached schema revision is compiled once, and the
+    // plan is dropped when the revision leaves the schema cache.
+    private final LoadingCache<List<UploadFieldDefinition>, UploadSchemaValidationPlan> validationPlanCache =
+            CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(
+                    (List<UploadFieldDefinition> fieldDefList) -> UploadSchemaValidationPlan.compile(fieldDefList)));
+
     private StudyService studyService;
     private UploadSchemaService uploadSchemaService;
 
@@ -65,6 +80,18 @@ public class StrictValidationHandler implements UploadValidationHandler {
         this.uploadSchemaService = uploadSchemaService;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getReadKeys() {
+        return READ_KEYS;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getWriteKeys() {
+        return WRITE_KEYS;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void handle(@Nonnull UploadValidationContext context) throws UploadValidationException {
@@ -81,9 +108,9 @@ public class StrictValidationHandler implements UploadValidationHandler {
 
         // get schema
         UploadSchema schema = uploadSchemaService.getUploadSchemaByIdAndRev(studyIdentifier, schemaId, schemaRev);
-        List<UploadFieldDefinition> fieldDefList = schema.getFieldDefinitions();
+        UploadSchemaValidationPlan validationPlan = validationPlanCache.getUnchecked(schema.getFieldDefinitions());
 
-        List<String> errorList = validateAllFields(fieldDefList, attachmentFieldNameSet, recordDataNode);
+        List<String> errorList = validationPlan.validate(attachmentFieldNameSet, recordDataNode);
 
         handleErrors(context, schemaId, schemaRev, errorList);
     }
@@ -137,107 +164,4 @@ public class StrictValidationHandler implements UploadValidationHandler {
         Study study = studyService.getStudy(studyIdentifier);
         return study.isStrictUploadValidationEnabled();
     }
-
-    /**
-     * Given the schema, the attachments (all we need are names), and the JSON data nodes, we validate the data against
-     * the schema.
-     *
-     * @param fieldDefList
-     *         list of field definitions from the schema
-     * @param attachmentFieldNameSet
-     *         set of attachment field names that we have attachments for
-     * @param recordDataNode
-     *         JSON node of the parsed data to validate
-     * @return list of error messages, empty if there are no errors
-     */
-    private static List<String> validateAllFields(@Nonnull List<UploadFieldDefinition> fieldDefList,
-            @Nonnull Set<String> attachmentFieldNameSet, @Nonnull JsonNode recordDataNode) {
-        // walk the field definitions and validate fields
-        List<String> errorList = new ArrayList<>();
-        for (UploadFieldDefinition oneFieldDef : fieldDefList) {
-            String fieldName = oneFieldDef.getName();
-            UploadFieldType fieldType = oneFieldDef.getType();
-            boolean isRequired = oneFieldDef.isRequired();
-
-            if (UploadFieldType.ATTACHMENT_TYPE_SET.contains(fieldType)) {
-                // For attachment types, since they just get exported as raw files, we only need to check if it's
-                // required and present. Specifically, if it's required and it's not present, then that's an error.
-                if (isRequired && !attachmentFieldNameSet.contains(fieldName)) {
-                    errorList.add("Required attachment field " + fieldName + " missing");
-                }
-            } else {
-                JsonNode fieldValueNode = recordDataNode.get(fieldName);
-
-                if (fieldValueNode != null && !fieldValueNode.isNull()) {
-                    boolean isValid = validateJsonField(fieldType, fieldValueNode);
-                    if (!isValid) {
-                        errorList.add("Expected field " + fieldName + " to be " + fieldType.name() +
-                                ", but was instead JSON type " + fieldValueNode.getNodeType().name());
-                    }
-                } else if (isRequired) {
-                    errorList.add("Required field " + fieldName + " missing");
-                }
-            }
-        }
-
-        return errorList;
-    }
-
-    /**
-     * Given the expected field type and the field value JSON node, this validates the we have the correct type,
-     * returning true of the value is valid and false otherwise. Note that because attachment fields live in the
-     * attachments map and not in JSON, this will always return false for attachment types.
-     *
-     * @param fieldType
-     *         expected field type
-     * @param fieldValueNode
-     *         field value JSON node to validate
-     * @return true if valid, false otherwise
-     */
-    private static boolean validateJsonField(@Nonnull UploadFieldType fieldType, @Nonnull JsonNode fieldValueNode) {
-        switch (fieldType) {
-            case BOOLEAN:
-                return fieldValueNode.isBoolean();
-            case CALENDAR_DATE:
-                // We expect a string. Also, the string should be parseable by Joda LocalDate.
-                if (!fieldValueNode.isTextual()) {
-                    return false;
-                }
-
-                try {
-                    // DateUtils calls through to Joda parseLocalDate(), which is documented as
-                    // never returning null. So we don't need to null check here.
-                    DateUtils.parseCalendarDate(fieldValueNode.textValue());
-                    return true;
-                } catch (RuntimeException ex) {
-                    return false;
-                }
-            case FLOAT:
-            case INT:
-                // Research Kit doesn't distinguish between floats and ints, so neither should we. Just
-                // accept any number type.
-                return fieldValueNode.isNumber();
-            case INLINE_JSON_BLOB:
-                // JSON blobs are always JSON blobs. We don't need to do any special validation.
-                return true;
-            case STRING:
-                return fieldValueNode.isTextual();
-            case TIMESTAMP:
-                // either it's a string in ISO format, or it's a long in epoch milliseconds
-                if (fieldValueNode.isTextual()) {
-                    DateTime dateTime = UploadUtil.parseIosTimestamp(fieldValueNode.textValue());
-                    return dateTime != null;
-                } else if (fieldValueNode.isIntegralNumber()) {
-                    // any integral value can be converted to an epoch milliseconds, so this is good no
-                    // matter what
-                    return true;
-                } else {
-                    return false;
-                }
-            default:
-                // This should never happen, but just in case we add a new field to UploadFieldType
-                // but forget to upload this switch.
-                return false;
-        }
-    }
 }
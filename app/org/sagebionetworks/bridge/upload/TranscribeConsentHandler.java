@@ -1,22 +1,22 @@
 package org.sagebionetworks.bridge.upload;
 
-import static org.sagebionetworks.bridge.dao.ParticipantOption.DATA_GROUPS;
-import static org.sagebionetworks.bridge.dao.ParticipantOption.EXTERNAL_IDENTIFIER;
-import static org.sagebionetworks.bridge.dao.ParticipantOption.SHARING_SCOPE;
-
 import java.util.Set;
 
 import javax.annotation.Nonnull;
 
+import com.google.common.collect.Sets;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
 import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
-import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 import org.sagebionetworks.bridge.services.ParticipantOptionsService;
 
 @Component
 public class TranscribeConsentHandler implements UploadValidationHandler {
+    private static final Set<UploadValidationContextKey> READ_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.UPLOAD);
+    private static final Set<UploadValidationContextKey> WRITE_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.RECORD_PARTICIPANT_OPTIONS);
+
     private ParticipantOptionsService optionsService;
 
     @Autowired
@@ -24,23 +24,24 @@ public class TranscribeConsentHandler implements UploadValidationHandler {
         this.optionsService = optionsService;
     }
 
+    /** {@inheritDoc} */
     @Override
-    public void handle(@Nonnull UploadValidationContext context) {
-        // read sharing scope from options service
-        ParticipantOptionsLookup lookup = optionsService.getOptions(context.getUpload().getHealthCode());
-
-        // Get sharing scope (defaults to NO_SHARING)
-        SharingScope userSharingScope = lookup.getEnum(SHARING_SCOPE, SharingScope.class);
+    public Set<UploadValidationContextKey> getReadKeys() {
+        return READ_KEYS;
+    }
 
-        // Also get external ID
-        String userExternalId = lookup.getString(EXTERNAL_IDENTIFIER);
-        
-        // And get user data groups
-        Set<String> userDataGroups = lookup.getStringSet(DATA_GROUPS);
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getWriteKeys() {
+        return WRITE_KEYS;
+    }
 
-        // write sharing scope to health data record
-        HealthDataRecordBuilder recordBuilder = context.getHealthDataRecordBuilder();
-        recordBuilder.withUserSharingScope(userSharingScope).withUserExternalId(userExternalId)
-                .withUserDataGroups(userDataGroups);
+    @Override
+    public void handle(@Nonnull UploadValidationContext context) {
+        // Read the options into the context. UploadArtifactsHandler writes them to the health data record. We don't
+        // write them to the record builder here, since the builder isn't thread-safe, and this handler can run
+        // concurrently with handlers that read the builder.
+        ParticipantOptionsLookup lookup = optionsService.getOptions(context.getUpload().getHealthCode());
+        context.setParticipantOptions(lookup);
     }
 }
@@ -1,8 +1,10 @@
 package org.sagebionetworks.bridge.upload;
 
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nonnull;
 
+import com.google.common.collect.Sets;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -15,6 +17,11 @@ import org.sagebionetworks.bridge.services.UploadArchiveService;
  */
 @Component
 public class UnzipHandler implements UploadValidationHandler {
+    private static final Set<UploadValidationContextKey> READ_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.DECRYPTED_DATA);
+    private static final Set<UploadValidationContextKey> WRITE_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.UNZIPPED_DATA_MAP);
+
     private UploadArchiveService uploadArchiveService;
 
     /** Upload archive service, which handles decrypting and unzipping of files. This is configured by Spring. */
@@ -23,6 +30,18 @@ public class UnzipHandler implements UploadValidationHandler {
         this.uploadArchiveService = uploadArchiveService;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getReadKeys() {
+        return READ_KEYS;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getWriteKeys() {
+        return WRITE_KEYS;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void handle(@Nonnull UploadValidationContext context) {
@@ -1,18 +1,30 @@
 package org.sagebionetworks.bridge.upload;
 
-import java.io.IOException;
-import java.util.HashMap;
+import static org.sagebionetworks.bridge.dao.ParticipantOption.DATA_GROUPS;
+import static org.sagebionetworks.bridge.dao.ParticipantOption.EXTERNAL_IDENTIFIER;
+import static org.sagebionetworks.bridge.dao.ParticipantOption.SHARING_SCOPE;
+
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
+import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachment;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
@@ -21,13 +33,30 @@ import org.sagebionetworks.bridge.services.HealthDataService;
 
 @Component
 public class UploadArtifactsHandler implements UploadValidationHandler {
+    private static final Set<UploadValidationContextKey> READ_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.UPLOAD, UploadValidationContextKey.HEALTH_DATA_RECORD_BUILDER,
+            UploadValidationContextKey.RECORD_PARTICIPANT_OPTIONS,
+            UploadValidationContextKey.ATTACHMENTS_BY_FIELD_NAME);
+    private static final Set<UploadValidationContextKey> WRITE_KEYS = Sets.immutableEnumSet(
+            UploadValidationContextKey.HEALTH_DATA_RECORD_BUILDER, UploadValidationContextKey.RECORD_ID);
+
     private static final Logger logger = LoggerFactory.getLogger(UploadArtifactsHandler.class);
 
     private static final String ATTACHMENT_BUCKET = BridgeConfigFactory.getConfig().getProperty("attachment.bucket");
 
+    private ExecutorService attachmentExecutorService;
     private HealthDataService healthDataService;
     private S3Helper s3Helper;
 
+    /**
+     * Bounded executor service, used to upload attachments to S3 in parallel. This is configured by Spring and is
+     * shared across all upload validation tasks.
+     */
+    @Resource(name = "uploadArtifactsExecutorService")
+    public void setAttachmentExecutorService(ExecutorService attachmentExecutorService) {
+        this.attachmentExecutorService = attachmentExecutorService;
+    }
+
     @Autowired
     public void setHealthDataService(HealthDataService healthDataService) {
         this.healthDataService = healthDataService;
@@ -38,65 +67,101 @@ public class UploadArtifactsHandler implements UploadValidationHandler {
         this.s3Helper = s3Helper;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Set<UploadValidationContextKey> getReadKeys() {
+        return READ_KEYS;
+    }
+
+    /** {@inheritDoc} */
     @Override
-    public void handle(@Nonnull UploadValidationContext context) {
+    public Set<UploadValidationContextKey> getWriteKeys() {
+        return WRITE_KEYS;
+    }
+
+    @Override
+    public void handle(@Nonnull UploadValidationContext context) throws UploadValidationException {
         String uploadId = context.getUpload().getUploadId();
 
-        // step 1: upload health data record
+        // Pre-assign the record ID. This way, attachments can reference the record before it's written, and the
+        // record only needs to be written once, with its final attachment references.
+        String recordId = BridgeUtils.generateGuid();
         HealthDataRecordBuilder recordBuilder = context.getHealthDataRecordBuilder();
-        HealthDataRecord record = recordBuilder.build();
-        String recordId = healthDataService.createOrUpdateRecord(record);
-        context.setRecordId(recordId);
+        recordBuilder.withId(recordId);
+        transcribeParticipantOptions(context.getParticipantOptions(), recordBuilder);
 
         Map<String, byte[]> attachmentMap = context.getAttachmentsByFieldName();
         if (!attachmentMap.isEmpty()) {
-            // step 2: upload health data attachments
-            Map<String, String> attachmentIdsByFieldName = new HashMap<>();
-            for (Map.Entry<String, byte[]> oneAttachment : attachmentMap.entrySet()) {
-                String fieldName = oneAttachment.getKey();
-                byte[] data = oneAttachment.getValue();
-
-                // step 2a: upload attachments to metadata table
+            // step 1: create attachment metadata, with pre-assigned attachment IDs
+            // Use a LinkedHashMap to preserve the order of the attachment map.
+            Map<String, HealthDataAttachment> attachmentsByFieldName = new LinkedHashMap<>();
+            for (String fieldName : attachmentMap.keySet()) {
                 HealthDataAttachment attachmentMetadata = healthDataService.getAttachmentBuilder()
-                        .withRecordId(recordId).build();
-                String attachmentId = healthDataService.createOrUpdateAttachment(attachmentMetadata);
-                attachmentIdsByFieldName.put(fieldName, attachmentId);
+                        .withId(BridgeUtils.generateGuid()).withRecordId(recordId).build();
+                attachmentsByFieldName.put(fieldName, attachmentMetadata);
+            }
 
-                // step 2b: upload attachments to S3
-                try {
+            // step 2: upload attachments to S3 in parallel
+            Map<String, Future<?>> futuresByFieldName = new LinkedHashMap<>();
+            for (Map.Entry<String, HealthDataAttachment> oneAttachment : attachmentsByFieldName.entrySet()) {
+                String attachmentId = oneAttachment.getValue().getId();
+                byte[] data = attachmentMap.get(oneAttachment.getKey());
+                futuresByFieldName.put(oneAttachment.getKey(), attachmentExecutorService.submit(() -> {
                     s3Helper.writeBytesToS3(ATTACHMENT_BUCKET, attachmentId, data);
-                } catch (IOException ex) {
-                    addMessageAndWarn(context, String.format("Upload ID %s error uploading attachment for field %s: %s",
-                            uploadId, fieldName, ex.getMessage()), ex);
-                }
+                    return null;
+                }));
             }
 
-            // step 3: add attachment IDs to health data record
+            // step 3: upload attachment metadata in a single batch, while S3 uploads are in flight
+            healthDataService.createOrUpdateAttachments(ImmutableList.copyOf(attachmentsByFieldName.values()));
 
-            // Get the record back from the health data table (as it might have added new fields, like a record ID and
-            // a version.
-            HealthDataRecord downloadedRecord = healthDataService.getRecordById(recordId);
-            HealthDataRecordBuilder updatedRecordBuilder = healthDataService.getRecordBuilder().copyOf(
-                    downloadedRecord);
+            // Wait for S3 uploads. Messages are added on this thread, since the context isn't thread-safe.
+            for (Map.Entry<String, Future<?>> oneFuture : futuresByFieldName.entrySet()) {
+                String fieldName = oneFuture.getKey();
+                try {
+                    oneFuture.getValue().get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    addMessageAndWarn(context, String.format("Upload ID %s error uploading attachment for field %s: %s",
+                            uploadId, fieldName, cause.getMessage()), cause);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new UploadValidationException(String.format(
+                            "Upload ID %s interrupted while uploading attachments", uploadId), ex);
+                }
+            }
 
+            // step 4: write attachment IDs (foreign keys / S3 keys) to the data map
             // For code hygiene, make a deep copy of the dataMap. This shouldn't be too expensive, since all the large
             // fields are shunted off into attachments.
             // IosSchemaValidationHandler guarantees getData() to return an ObjectNode.
-            ObjectNode downloadedDataMap = (ObjectNode) downloadedRecord.getData();
-            ObjectNode updatedDataMap = downloadedDataMap.deepCopy();
-
-            // write attachment fields and IDs (foreign keys / S3 keys) to the updated data map
-            for (Map.Entry<String, String> oneAttachmentId : attachmentIdsByFieldName.entrySet()) {
-                String fieldName = oneAttachmentId.getKey();
-                String attachmentId = oneAttachmentId.getValue();
-                updatedDataMap.put(fieldName, attachmentId);
+            ObjectNode updatedDataMap = ((ObjectNode) recordBuilder.getData()).deepCopy();
+            for (Map.Entry<String, HealthDataAttachment> oneAttachment : attachmentsByFieldName.entrySet()) {
+                updatedDataMap.put(oneAttachment.getKey(), oneAttachment.getValue().getId());
             }
+            recordBuilder.withData(updatedDataMap);
+        }
+
+        // step 5: write the health data record, exactly once
+        HealthDataRecord record = recordBuilder.build();
+        healthDataService.createOrUpdateRecord(record);
+        context.setRecordId(recordId);
+    }
 
-            // Write the updated data map to the record. Write the record to the record table.
-            updatedRecordBuilder.withData(updatedDataMap);
-            HealthDataRecord updatedRecord = updatedRecordBuilder.build();
-            healthDataService.createOrUpdateRecord(updatedRecord);
+    // Writes the participant options read by TranscribeConsentHandler to the record. If the options weren't read, the
+    // record keeps whatever options were already in the builder.
+    private static void transcribeParticipantOptions(ParticipantOptionsLookup lookup,
+            HealthDataRecordBuilder recordBuilder) {
+        if (lookup == null) {
+            return;
         }
+
+        // Sharing scope defaults to NO_SHARING.
+        SharingScope userSharingScope = lookup.getEnum(SHARING_SCOPE, SharingScope.class);
+        String userExternalId = lookup.getString(EXTERNAL_IDENTIFIER);
+        Set<String> userDataGroups = lookup.getStringSet(DATA_GROUPS);
+        recordBuilder.withUserSharingScope(userSharingScope).withUserExternalId(userExternalId)
+                .withUserDataGroups(userDataGroups);
     }
 
     private static void addMessageAndWarn(UploadValidationContext context, String message, Throwable ex) {
@@ -0,0 +1,176 @@
+package org.sagebionetworks.bridge.upload;
+
+import javax.annotation.Nonnull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.joda.time.DateTime;
+
+import org.sagebionetworks.bridge.json.DateUtils;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadFieldType;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+
+/**
+ * <p>
+ * An immutable, pre-compiled validation plan for a single upload schema revision, used by
+ * {@link StrictValidationHandler}. Compiling the plan resolves each field's name, whether it's an attachment, whether
+ * it's required, and the type checker for its field type, so that validating a record is a single pass over arrays.
+ * </p>
+ * <p>
+ * Since schema revisions are immutable, a plan can be compiled once per schema revision and re-used for every upload.
+ * </p>
+ */
+public class UploadSchemaValidationPlan {
+    // Type checkers, by field type. Note that because attachment fields live in the attachments map and not in JSON,
+    // attachment types never use a type checker.
+    private static final Predicate<JsonNode> BOOLEAN_CHECKER = JsonNode::isBoolean;
+    private static final Predicate<JsonNode> CALENDAR_DATE_CHECKER = fieldValueNode -> {
+        // We expect a string. Also, the string should be parseable by Joda LocalDate.
+        if (!fieldValueNode.isTextual()) {
+            return false;
+        }
+
+        try {
+            // DateUtils calls through to Joda parseLocalDate(), which is documented as never returning null. So we
+            // don't need to null check here.
+            DateUtils.parseCalendarDate(fieldValueNode.textValue());
+            return true;
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    };
+    // Research Kit doesn't distinguish between floats and ints, so neither should we. Just accept any number type.
+    private static final Predicate<JsonNode> NUMBER_CHECKER = JsonNode::isNumber;
+    // JSON blobs are always JSON blobs. We don't need to do any special validation.
+    private static final Predicate<JsonNode> INLINE_JSON_BLOB_CHECKER = fieldValueNode -> true;
+    private static final Predicate<JsonNode> STRING_CHECKER = JsonNode::isTextual;
+    private static final Predicate<JsonNode> TIMESTAMP_CHECKER = fieldValueNode -> {
+        // either it's a string in ISO format, or it's a long in epoch milliseconds
+        if (fieldValueNode.isTextual()) {
+            DateTime dateTime = UploadUtil.parseIosTimestamp(fieldValueNode.textValue());
+            return dateTime != null;
+        } else {
+            // any integral value can be converted to an epoch milliseconds, so this is good no matter what
+            return fieldValueNode.isIntegralNumber();
+        }
+    };
+    // This should never happen, but just in case we add a new field to UploadFieldType but forget to update this.
+    private static final Predicate<JsonNode> UNKNOWN_TYPE_CHECKER = fieldValueNode -> false;
+
+    private final int numFields;
+    private final String[] fieldNames;
+    private final String[] fieldTypeNames;
+    private final List<Predicate<JsonNode>> typeCheckers;
+    private final BitSet attachmentFields;
+    private final BitSet requiredFields;
+
+    /**
+     * Compiles a validation plan from the given schema.
+     *
+     * @param schema
+     *         schema to compile, must be non-null
+     * @return compiled validation plan
+     */
+    public static UploadSchemaValidationPlan compile(@Nonnull UploadSchema schema) {
+        return compile(schema.getFieldDefinitions());
+    }
+
+    /**
+     * Compiles a validation plan from the given schema field definitions.
+     *
+     * @param fieldDefList
+     *         schema field definitions to compile, must be non-null
+     * @return compiled validation plan
+     */
+    public static UploadSchemaValidationPlan compile(@Nonnull List<UploadFieldDefinition> fieldDefList) {
+        return new UploadSchemaValidationPlan(fieldDefList);
+    }
+
+    private UploadSchemaValidationPlan(List<UploadFieldDefinition> fieldDefList) {
+        numFields = fieldDefList.size();
+        fieldNames = new String[numFields];
+        fieldTypeNames = new String[numFields];
+        typeCheckers = new ArrayList<>(numFields);
+        attachmentFields = new BitSet(numFields);
+        requiredFields = new BitSet(numFields);
+
+        for (int i = 0; i < numFields; i++) {
+            UploadFieldDefinition oneFieldDef = fieldDefList.get(i);
+            UploadFieldType fieldType = oneFieldDef.getType();
+
+            fieldNames[i] = oneFieldDef.getName();
+            fieldTypeNames[i] = fieldType.name();
+            typeCheckers.add(getTypeChecker(fieldType));
+            if (UploadFieldType.ATTACHMENT_TYPE_SET.contains(fieldType)) {
+                attachmentFields.set(i);
+            }
+            if (oneFieldDef.isRequired()) {
+                requiredFields.set(i);
+            }
+        }
+    }
+
+    /**
+     * Given the attachments (all we need are names) and the JSON data nodes, we validate the data against the schema.
+     *
+     * @param attachmentFieldNameSet
+     *         set of attachment field names that we have attachments for
+     * @param recordDataNode
+     *         JSON node of the parsed data to validate
+     * @return list of error messages, empty if there are no errors
+     */
+    public List<String> validate(@Nonnull Set<String> attachmentFieldNameSet, @Nonnull JsonNode recordDataNode) {
+        List<String> errorList = new ArrayList<>();
+        for (int i = 0; i < numFields; i++) {
+            String fieldName = fieldNames[i];
+
+            if (attachmentFields.get(i)) {
+                // For attachment types, since they just get exported as raw files, we only need to check if it's
+                // required and present. Specifically, if it's required and it's not present, then that's an error.
+                if (requiredFields.get(i) && !attachmentFieldNameSet.contains(fieldName)) {
+                    errorList.add("Required attachment field " + fieldName + " missing");
+                }
+            } else {
+                JsonNode fieldValueNode = recordDataNode.get(fieldName);
+
+                if (fieldValueNode != null && !fieldValueNode.isNull()) {
+                    if (!typeCheckers.get(i).test(fieldValueNode)) {
+                        errorList.add("Expected field " + fieldName + " to be " + fieldTypeNames[i] +
+                                ", but was instead JSON type " + fieldValueNode.getNodeType().name());
+                    }
+                } else if (requiredFields.get(i)) {
+                    errorList.add("Required field " + fieldName + " missing");
+                }
+            }
+        }
+
+        return errorList;
+    }
+
+    // Resolves the type checker for the given non-attachment field type.
+    private static Predicate<JsonNode> getTypeChecker(UploadFieldType fieldType) {
+        switch (fieldType) {
+            case BOOLEAN:
+                return BOOLEAN_CHECKER;
+            case CALENDAR_DATE:
+                return CALENDAR_DATE_CHECKER;
+            case FLOAT:
+            case INT:
+                return NUMBER_CHECKER;
+            case INLINE_JSON_BLOB:
+                return INLINE_JSON_BLOB_CHECKER;
+            case STRING:
+                return STRING_CHECKER;
+            case TIMESTAMP:
+                return TIMESTAMP_CHECKER;
+            default:
+                return UNKNOWN_TYPE_CHECKER;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.upload.Upload;
@@ -16,12 +17,14 @@ public class UploadValidationContext {
     private StudyIdentifier study;
     private Upload upload;
     private boolean success = true;
+    private Throwable handlerException;
     private List<String> messageList = new ArrayList<>();
     private byte[] data;
     private byte[] decryptedData;
     private Map<String, byte[]> unzippedDataMap;
     private Map<String, JsonNode> jsonDataMap;
     private HealthDataRecordBuilder healthDataRecordBuilder;
+    private ParticipantOptionsLookup participantOptions;
     private Map<String, byte[]> attachmentsByFieldName;
     private String recordId;
 
@@ -66,6 +69,20 @@ public class UploadValidationContext {
         this.success = success;
     }
 
+    /**
+     * The exception thrown by the validation handler that failed this upload, or null if no handler threw. This lets
+     * callers that run validation synchronously, like upload validation backfills, tell why validation failed, for
+     * example because DynamoDB was throttling us. Only UploadValidationTask will write to this field.
+     */
+    public Throwable getHandlerException() {
+        return handlerException;
+    }
+
+    /** @see #getHandlerException */
+    public void setHandlerException(Throwable handlerException) {
+        this.handlerException = handlerException;
+    }
+
     /**
      * Validation messages for this task, such as error messages. This is initially empty, and messages can be appended
      * by calling {@link #addMessage}. Messages are generally added by the error handling code in UploadValidationTask,
@@ -129,8 +146,8 @@ public class UploadValidationContext {
 
     /**
      * Health Data Record Builder, used to build a health data record that will be written to the health data record
-     * table. This is initially created by IosSchemaValidationHandler, is further updated by the
-     * TranscribeConsentHandler, and is finalized and persisted by UploadArtifactsHandler.
+     * table. This is initially created by IosSchemaValidationHandler, and is finalized (including participant
+     * options) and persisted by UploadArtifactsHandler.
      */
     public HealthDataRecordBuilder getHealthDataRecordBuilder() {
         return healthDataRecordBuilder;
@@ -141,6 +158,21 @@ public class UploadValidationContext {
         this.healthDataRecordBuilder = healthDataRecordBuilder;
     }
 
+    /**
+     * Participant options (sharing scope, external ID, and data groups) of the user who submitted the upload. This is
+     * read by the TranscribeConsentHandler and written to the health data record by UploadArtifactsHandler. This is
+     * kept separate from the record builder, so that reading the options can run concurrently with handlers that use
+     * the record builder.
+     */
+    public ParticipantOptionsLookup getParticipantOptions() {
+        return participantOptions;
+    }
+
+    /** @see #getParticipantOptions */
+    public void setParticipantOptions(ParticipantOptionsLookup participantOptions) {
+        this.participantOptions = participantOptions;
+    }
+
     /**
      * Map of health data attachments, keyed off the field name in the health data record. These files will be uploaded
      * to external storage (most likely S3) with metadata stored in Health Data Attachments table and field references
@@ -187,11 +219,13 @@ public class UploadValidationContext {
         copy.study = this.study;
         copy.upload = this.upload;
         copy.success = this.success;
+        copy.handlerException = this.handlerException;
         copy.data = this.data;
         copy.decryptedData = this.decryptedData;
         copy.unzippedDataMap = this.unzippedDataMap;
         copy.jsonDataMap = this.jsonDataMap;
         copy.healthDataRecordBuilder = this.healthDataRecordBuilder;
+        copy.participantOptions = this.participantOptions;
         copy.attachmentsByFieldName = this.attachmentsByFieldName;
         copy.recordId = this.recordId;
 
@@ -200,4 +234,46 @@ public class UploadValidationContext {
 
         return copy;
     }
+
+    /**
+     * Copies the field identified by the given key from the given context into this one. This is used to merge the
+     * results of handlers that ran concurrently on shallow copies. Package-scoped, since only UploadValidationTask
+     * needs this.
+     */
+    void copyField(UploadValidationContextKey key, UploadValidationContext from) {
+        switch (key) {
+            case STUDY:
+                this.study = from.study;
+                break;
+            case UPLOAD:
+                this.upload = from.upload;
+                break;
+            case DATA:
+                this.data = from.data;
+                break;
+            case DECRYPTED_DATA:
+                this.decryptedData = from.decryptedData;
+                break;
+            case UNZIPPED_DATA_MAP:
+                this.unzippedDataMap = from.unzippedDataMap;
+                break;
+            case JSON_DATA_MAP:
+                this.jsonDataMap = from.jsonDataMap;
+                break;
+            case HEALTH_DATA_RECORD_BUILDER:
+                this.healthDataRecordBuilder = from.healthDataRecordBuilder;
+                break;
+            case RECORD_PARTICIPANT_OPTIONS:
+                this.participantOptions = from.participantOptions;
+                break;
+            case ATTACHMENTS_BY_FIELD_NAME:
+                this.attachmentsByFieldName = from.attachmentsByFieldName;
+                break;
+            case RECORD_ID:
+                this.recordId = from.recordId;
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected context key " + key);
+        }
+    }
 }
@@ -0,0 +1,43 @@
+package org.sagebionetworks.bridge.upload;
+
+/**
+ * Identifies the data in {@link UploadValidationContext} that a handler reads or writes. Handlers declare these with
+ * {@link UploadValidationHandler#getReadKeys} and {@link UploadValidationHandler#getWriteKeys}, so that
+ * {@link UploadValidationTask} can run handlers that don't depend on each other concurrently.
+ */
+public enum UploadValidationContextKey {
+    /** @see UploadValidationContext#getStudy */
+    STUDY,
+
+    /** @see UploadValidationContext#getUpload */
+    UPLOAD,
+
+    /** @see UploadValidationContext#getData */
+    DATA,
+
+    /** @see UploadValidationContext#getDecryptedData */
+    DECRYPTED_DATA,
+
+    /** @see UploadValidationContext#getUnzippedDataMap */
+    UNZIPPED_DATA_MAP,
+
+    /** @see UploadValidationContext#getJsonDataMap */
+    JSON_DATA_MAP,
+
+    /**
+     * The health data record builder itself, and the record data, schema, and upload fields that are filled in when
+     * the builder is created.
+     *
+     * @see UploadValidationContext#getHealthDataRecordBuilder
+     */
+    HEALTH_DATA_RECORD_BUILDER,
+
+    /** @see UploadValidationContext#getParticipantOptions */
+    RECORD_PARTICIPANT_OPTIONS,
+
+    /** @see UploadValidationContext#getAttachmentsByFieldName */
+    ATTACHMENTS_BY_FIELD_NAME,
+
+    /** @see UploadValidationContext#getRecordId */
+    RECORD_ID,
+}
@@ -1,7 +1,11 @@
 package org.sagebionetworks.bridge.upload;
 
+import java.util.EnumSet;
+import java.util.Set;
 import javax.annotation.Nonnull;
 
+import com.google.common.collect.Sets;
+
 /**
  * <p>
  * This interface represents a handler for a sub-task in upload validation. This allows us to break down our back-end
@@ -10,10 +14,16 @@ import javax.annotation.Nonnull;
  * </p>
  * <p>
  * Over time, handlers will write additional data to the UploadValidationContext. Implementing handlers should clearly
- * document which data they read and write from the validation context.
+ * document which data they read and write from the validation context, and declare it with {@link #getReadKeys} and
+ * {@link #getWriteKeys}. Handlers that don't declare this are assumed to read and write everything, and are never run
+ * concurrently with other handlers.
  * </p>
  */
 public interface UploadValidationHandler {
+    /** All context keys. This is the default for handlers that don't declare what they read and write. */
+    Set<UploadValidationContextKey> ALL_KEYS = Sets.immutableEnumSet(EnumSet.allOf(
+            UploadValidationContextKey.class));
+
     /**
      * Invoke this handle to perform its validation sub-task on the given validation context.
      *
@@ -24,4 +34,20 @@ public interface UploadValidationHandler {
      *         if upload validation fails
      */
     void handle(@Nonnull UploadValidationContext context) throws UploadValidationException;
+
+    /**
+     * Context data this handler reads. Handlers that read data written by an earlier handler run after that handler.
+     * The message list isn't included, since every handler may write to it.
+     */
+    default Set<UploadValidationContextKey> getReadKeys() {
+        return ALL_KEYS;
+    }
+
+    /**
+     * Context data this handler writes, including data it modifies in place. Handlers that write data read or written
+     * by an earlier handler run after that handler.
+     */
+    default Set<UploadValidationContextKey> getWriteKeys() {
+        return ALL_KEYS;
+    }
 }
@@ -0,0 +1,147 @@
+package org.sagebionetworks.bridge.upload;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Resource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * In-process signal for upload validation completion. Long-polling callers wait on this instead of repeatedly reading
+ * the upload from DynamoDB, and {@link UploadValidationTask} signals it when it writes the validation status.
+ * </p>
+ * <p>
+ * Notifications only cover validations that run on this node. Uploads validated on another node are picked up by
+ * re-checking the upload status every few seconds while waiting. Callers should re-read the upload status after the
+ * wait either way, since the wait also ends on timeout.
+ * </p>
+ */
+@Component
+public class UploadValidationStatusNotifier {
+    // Uploads that completed recently, so that callers who start waiting just after completion don't wait for the full
+    // timeout.
+    private static final long RECENT_COMPLETION_SECONDS = 60;
+
+    // How often to re-check the upload status while waiting, for uploads validated on other nodes.
+    private static final long DEFAULT_RECHECK_INTERVAL_MILLIS = 5000;
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadValidationStatusNotifier.class);
+
+    private final Cache<String, Boolean> recentlyCompletedUploadIds = CacheBuilder.newBuilder()
+            .expireAfterWrite(RECENT_COMPLETION_SECONDS, TimeUnit.SECONDS).build();
+    private final Map<String, Set<CompletableFuture<Void>>> waitersByUploadId = new HashMap<>();
+    private ScheduledExecutorService executorService;
+    private long recheckIntervalMillis = DEFAULT_RECHECK_INTERVAL_MILLIS;
+
+    /**
+     * Executor used to time out waiters and to complete waiters, so that follow-up work from waiters doesn't run on
+     * the upload validation threads. This is configured by Spring.
+     */
+    @Resource(name = "uploadValidationStatusExecutorService")
+    public void setExecutorService(ScheduledExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /** Interval between upload status re-checks while waiting. Package-scoped so unit tests can shorten it. */
+    void setRecheckIntervalMillis(long recheckIntervalMillis) {
+        this.recheckIntervalMillis = recheckIntervalMillis;
+    }
+
+    /**
+     * Returns a future that completes when validation for the given upload completes, or when the timeout elapses,
+     * whichever comes first. The future completes normally in both cases, so callers should check the upload status
+     * afterwards.
+     *
+     * @param uploadId
+     *         upload to wait for
+     * @param timeoutMillis
+     *         max time to wait, in milliseconds
+     * @param statusCheck
+     *         returns true if the upload's stored status shows validation is complete, called every few seconds while
+     *         waiting, to pick up validations that complete on other nodes
+     * @return future that completes on validation completion or timeout
+     */
+    public CompletableFuture<Void> awaitValidation(@Nonnull String uploadId, long timeoutMillis,
+            @Nonnull BooleanSupplier statusCheck) {
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        synchronized (this) {
+            if (recentlyCompletedUploadIds.getIfPresent(uploadId) != null) {
+                waiter.complete(null);
+                return waiter;
+            }
+            waitersByUploadId.computeIfAbsent(uploadId, key -> new HashSet<>()).add(waiter);
+        }
+
+        ScheduledFuture<?> timeout = executorService.schedule(() -> {
+            removeWaiter(uploadId, waiter);
+            waiter.complete(null);
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> recheck = executorService.scheduleWithFixedDelay(() -> {
+            boolean isComplete;
+            try {
+                isComplete = statusCheck.getAsBoolean();
+            } catch (RuntimeException ex) {
+                // Keep waiting. The next re-check, the notification, or the timeout will wake the waiter.
+                logger.warn("Error re-checking validation status for upload " + uploadId + ": " + ex.getMessage(),
+                        ex);
+                return;
+            }
+            if (isComplete) {
+                removeWaiter(uploadId, waiter);
+                waiter.complete(null);
+            }
+        }, recheckIntervalMillis, recheckIntervalMillis, TimeUnit.MILLISECONDS);
+        waiter.whenComplete((result, ex) -> {
+            timeout.cancel(false);
+            recheck.cancel(false);
+        });
+        return waiter;
+    }
+
+    /** Signals that validation for the given upload is complete, waking all callers waiting on it. */
+    public void notifyValidationComplete(@Nonnull String uploadId) {
+        Set<CompletableFuture<Void>> waiterSet;
+        synchronized (this) {
+            recentlyCompletedUploadIds.put(uploadId, Boolean.TRUE);
+            waiterSet = waitersByUploadId.remove(uploadId);
+        }
+
+        if (waiterSet != null) {
+            for (CompletableFuture<Void> oneWaiter : waiterSet) {
+                executorService.execute(() -> oneWaiter.complete(null));
+            }
+        }
+    }
+
+    /** Number of callers currently waiting. Package-scoped for unit tests. */
+    synchronized int getWaiterCount() {
+        int count = 0;
+        for (Set<CompletableFuture<Void>> oneWaiterSet : waitersByUploadId.values()) {
+            count += oneWaiterSet.size();
+        }
+        return count;
+    }
+
+    private synchronized void removeWaiter(String uploadId, CompletableFuture<Void> waiter) {
+        Set<CompletableFuture<Void>> waiterSet = waitersByUploadId.get(uploadId);
+        if (waiterSet != null) {
+            waiterSet.remove(waiter);
+            if (waiterSet.isEmpty()) {
+                waitersByUploadId.remove(uploadId);
+            }
+        }
+    }
+}
@@ -1,10 +1,19 @@
 package org.sagebionetworks.bridge.upload;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,8 +21,16 @@ import org.sagebionetworks.bridge.dao.UploadDao;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
 
 /**
+ * <p>
  * This class represents an asynchronous upload validation task, corresponding with exactly one upload. It implements
  * the Runnable interface, so we can run it as asynchronous code.
+ * </p>
+ * <p>
+ * Handlers are grouped into stages. Consecutive handlers that don't read or write anything another handler in the
+ * same stage writes (see {@link UploadValidationHandler#getReadKeys} and {@link UploadValidationHandler#getWriteKeys})
+ * are put in the same stage, and run concurrently on the handler executor. Results are merged back in handler list
+ * order, so messages, failures, and context data are the same as if the handlers had run one at a time.
+ * </p>
  */
 public class UploadValidationTask implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(UploadValidationTask.class);
@@ -22,6 +39,9 @@ public class UploadValidationTask implements Runnable {
 
     private List<UploadValidationHandler> handlerList;
     private UploadDao uploadDao;
+    private UploadValidationStatusNotifier uploadValidationStatusNotifier;
+    private ExecutorService handlerExecutorService;
+    private UploadStatus validationStatus;
 
     /**
      * Constructs an upload validation task instance with the given context. This should only be called by the
@@ -57,47 +77,76 @@ public class UploadValidationTask implements Runnable {
         return uploadDao;
     }
 
+    /**
+     * Notifier, to wake up callers waiting for this upload's validation status. This is configured by Spring through
+     * the task factory.
+     */
+    public void setUploadValidationStatusNotifier(UploadValidationStatusNotifier uploadValidationStatusNotifier) {
+        this.uploadValidationStatusNotifier = uploadValidationStatusNotifier;
+    }
+
+    /** This is package-scoped to facilitate unit tests. */
+    /* package-scoped*/ UploadValidationStatusNotifier getUploadValidationStatusNotifier() {
+        return uploadValidationStatusNotifier;
+    }
+
+    /**
+     * Executor for running independent handlers concurrently. If this isn't set, handlers run one at a time. This is
+     * configured by Spring through the task factory.
+     */
+    public void setHandlerExecutorService(ExecutorService handlerExecutorService) {
+        this.handlerExecutorService = handlerExecutorService;
+    }
+
+    /** This is package-scoped to facilitate unit tests. */
+    /* package-scoped*/ ExecutorService getHandlerExecutorService() {
+        return handlerExecutorService;
+    }
+
+    /**
+     * The validation status written by {@link #run}, either SUCCEEDED or VALIDATION_FAILED, or null if the task hasn't
+     * run yet. If validation failed because a handler threw, the exception is in the context's handler exception.
+     */
+    public UploadStatus getValidationStatus() {
+        return validationStatus;
+    }
+
+    /**
+     * The exception thrown by the handler that failed validation, or null if validation succeeded or the handler
+     * failed without throwing.
+     */
+    public Throwable getHandlerException() {
+        return context.getHandlerException();
+    }
+
     /** {@inheritDoc} */
     @Override
     public void run() {
-        Stopwatch stopwatch = Stopwatch.createUnstarted();
-        for (UploadValidationHandler oneHandler : handlerList) {
-            String handlerName = oneHandler.getClass().getName();
-            stopwatch.start();
+        List<List<UploadValidationHandler>> stageList;
+        if (handlerExecutorService != null) {
+            stageList = makeStages(handlerList);
+        } else {
+            stageList = new ArrayList<>();
+            for (UploadValidationHandler oneHandler : handlerList) {
+                stageList.add(ImmutableList.of(oneHandler));
+            }
+        }
 
-            try {
-                oneHandler.handle(context);
-            } catch (Throwable ex) {
-                context.setSuccess(false);
-                context.addMessage(String.format("Exception thrown from upload validation handler %s: %s: %s",
-                        handlerName, ex.getClass().getName(), ex.getMessage()));
-
-                if (ex instanceof Error) {
-                    // Something really bad happened, like an OutOfMemoryError. Log this at the error level.
-                    logger.error(String.format("Critical error in upload validation handler %s for study %s, " +
-                            "upload %s, filename %s: %s: %s", handlerName, context.getStudy().getIdentifier(),
-                            context.getUpload().getUploadId(), context.getUpload().getFilename(),
-                            ex.getClass().getName(), ex.getMessage()), ex);
-                } else {
-                    // Upload validation failed. Since there are a lot of garbage uploads, log this at the info level
-                    // so it doesn't set off our alarms. Once the garbage uploads are cleaned up, we can bump this back
-                    // up to warning.
-                    logger.info(String.format("Exception thrown from upload validation handler %s for study %s, " +
-                            "upload %s, filename %s: %s: %s", handlerName, context.getStudy().getIdentifier(),
-                            context.getUpload().getUploadId(), context.getUpload().getFilename(),
-                            ex.getClass().getName(), ex.getMessage()), ex);
-                }
+        for (List<UploadValidationHandler> oneStage : stageList) {
+            boolean success;
+            if (oneStage.size() == 1) {
+                success = runHandler(oneStage.get(0), context);
+            } else {
+                success = runStageConcurrently(oneStage);
+            }
+            if (!success) {
                 break;
-            } finally {
-                long elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
-                stopwatch.reset();
-                // TODO: send this to somewhere other than the logs
-                logger.info(String.format("Upload validation handler %s took %d ms", handlerName, elapsedMillis));
             }
         }
 
         // write validation status to the upload DAO
         UploadStatus status = context.getSuccess() ? UploadStatus.SUCCEEDED : UploadStatus.VALIDATION_FAILED;
+        validationStatus = status;
         try {
             uploadDao.writeValidationStatus(context.getUpload(), status, context.getMessageList(),
                     context.getRecordId());
@@ -110,9 +159,136 @@ public class UploadValidationTask implements Runnable {
             logWriteValidationStatusException(status, ex);
         }
 
+        // Wake up anyone waiting on this upload. If writing the status failed, they'll see the upload as still in
+        // progress, which is still more accurate than making them wait for the timeout.
+        uploadValidationStatusNotifier.notifyValidationComplete(context.getUpload().getUploadId());
+
         // TODO: if validation fails, wipe the files from S3
     }
 
+    /**
+     * Groups consecutive handlers into stages, such that no handler in a stage reads or writes anything written by
+     * another handler in the same stage. Handlers that don't declare their keys read and write everything, so they
+     * always get a stage to themselves. This is package-scoped to facilitate unit tests.
+     */
+    static List<List<UploadValidationHandler>> makeStages(List<UploadValidationHandler> handlerList) {
+        List<List<UploadValidationHandler>> stageList = new ArrayList<>();
+        List<UploadValidationHandler> curStage = null;
+        Set<UploadValidationContextKey> stageReadKeys = EnumSet.noneOf(UploadValidationContextKey.class);
+        Set<UploadValidationContextKey> stageWriteKeys = EnumSet.noneOf(UploadValidationContextKey.class);
+        for (UploadValidationHandler oneHandler : handlerList) {
+            Set<UploadValidationContextKey> readKeys = oneHandler.getReadKeys();
+            Set<UploadValidationContextKey> writeKeys = oneHandler.getWriteKeys();
+            boolean independent = curStage != null && Collections.disjoint(readKeys, stageWriteKeys) &&
+                    Collections.disjoint(writeKeys, stageReadKeys) && Collections.disjoint(writeKeys, stageWriteKeys);
+            if (!independent) {
+                curStage = new ArrayList<>();
+                stageList.add(curStage);
+                stageReadKeys.clear();
+                stageWriteKeys.clear();
+            }
+
+            curStage.add(oneHandler);
+            stageReadKeys.addAll(readKeys);
+            stageWriteKeys.addAll(writeKeys);
+        }
+        return stageList;
+    }
+
+    // Runs the handlers in the stage concurrently, each on its own copy of the context. The first handler runs on this
+    // thread. Once they're all done, merges each handler's messages and writes back into the context, in handler list
+    // order, stopping at the first failure, just like running them one at a time would. Returns false if any handler
+    // failed.
+    private boolean runStageConcurrently(List<UploadValidationHandler> stage) {
+        int numHandlers = stage.size();
+        List<UploadValidationContext> copyList = new ArrayList<>();
+        List<Future<Boolean>> futureList = new ArrayList<>();
+        for (int i = 0; i < numHandlers; i++) {
+            UploadValidationHandler oneHandler = stage.get(i);
+            UploadValidationContext copy = context.shallowCopy();
+            copyList.add(copy);
+            if (i > 0) {
+                futureList.add(handlerExecutorService.submit(() -> runHandler(oneHandler, copy)));
+            }
+        }
+
+        List<Boolean> successList = new ArrayList<>();
+        successList.add(runHandler(stage.get(0), copyList.get(0)));
+        for (int i = 1; i < numHandlers; i++) {
+            // The results need to be merged before the next stage can start, so wait even if interrupted.
+            try {
+                successList.add(Uninterruptibles.getUninterruptibly(futureList.get(i - 1)));
+            } catch (ExecutionException ex) {
+                // runHandler() catches everything, so this should never happen.
+                Throwable cause = ex.getCause();
+                UploadValidationContext copy = copyList.get(i);
+                copy.setSuccess(false);
+                copy.setHandlerException(cause);
+                copy.addMessage(String.format("Exception thrown from upload validation handler %s: %s: %s",
+                        stage.get(i).getClass().getName(), cause.getClass().getName(), cause.getMessage()));
+                successList.add(false);
+            }
+        }
+
+        int baseMessageCount = context.getMessageList().size();
+        for (int i = 0; i < numHandlers; i++) {
+            UploadValidationContext copy = copyList.get(i);
+            List<String> copyMessageList = copy.getMessageList();
+            for (String oneMessage : copyMessageList.subList(baseMessageCount, copyMessageList.size())) {
+                context.addMessage(oneMessage);
+            }
+
+            if (!successList.get(i) || !copy.getSuccess()) {
+                // Handlers after this one wouldn't have run, so drop their results.
+                context.setSuccess(false);
+                context.setHandlerException(copy.getHandlerException());
+                return false;
+            }
+
+            for (UploadValidationContextKey oneKey : stage.get(i).getWriteKeys()) {
+                context.copyField(oneKey, copy);
+            }
+        }
+        return true;
+    }
+
+    // Runs a single handler on the given context, logging and recording any exception in the context. Returns false if
+    // the handler threw.
+    private boolean runHandler(UploadValidationHandler handler, UploadValidationContext handlerContext) {
+        String handlerName = handler.getClass().getName();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            handler.handle(handlerContext);
+            return true;
+        } catch (Throwable ex) {
+            handlerContext.setSuccess(false);
+            handlerContext.setHandlerException(ex);
+            handlerContext.addMessage(String.format("Exception thrown from upload validation handler %s: %s: %s",
+                    handlerName, ex.getClass().getName(), ex.getMessage()));
+
+            if (ex instanceof Error) {
+                // Something really bad happened, like an OutOfMemoryError. Log this at the error level.
+                logger.error(String.format("Critical error in upload validation handler %s for study %s, " +
+                        "upload %s, filename %s: %s: %s", handlerName, context.getStudy().getIdentifier(),
+                        context.getUpload().getUploadId(), context.getUpload().getFilename(),
+                        ex.getClass().getName(), ex.getMessage()), ex);
+            } else {
+                // Upload validation failed. Since there are a lot of garbage uploads, log this at the info level
+                // so it doesn't set off our alarms. Once the garbage uploads are cleaned up, we can bump this back
+                // up to warning.
+                logger.info(String.format("Exception thrown from upload validation handler %s for study %s, " +
+                        "upload %s, filename %s: %s: %s", handlerName, context.getStudy().getIdentifier(),
+                        context.getUpload().getUploadId(), context.getUpload().getFilename(),
+                        ex.getClass().getName(), ex.getMessage()), ex);
+            }
+            return false;
+        } finally {
+            long elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            // TODO: send this to somewhere other than the logs
+            logger.info(String.format("Upload validation handler %s took %d ms", handlerName, elapsedMillis));
+        }
+    }
+
     // Log helper. Unit tests will mock (spy) this, so we verify that we're catching and logging the exception.
     // Package-scoped so unit tests have access to this.
     void logWriteValidationStatusException(UploadStatus status, Exception ex) {
@@ -1,6 +1,7 @@
 package org.sagebionetworks.bridge.upload;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
@@ -20,6 +21,8 @@ import org.springframework.stereotype.Component;
 public class UploadValidationTaskFactory {
     private List<UploadValidationHandler> handlerList;
     private UploadDao uploadDao;
+    private UploadValidationStatusNotifier uploadValidationStatusNotifier;
+    private ExecutorService handlerExecutorService;
 
     /** Validation handler list. This is configured by Spring. */
     @Resource(name = "uploadValidationHandlerList")
@@ -33,6 +36,18 @@ public class UploadValidationTaskFactory {
         this.uploadDao = uploadDao;
     }
 
+    /** Notifier, used to signal validation completion to waiting callers. This is configured by Spring. */
+    @Autowired
+    public void setUploadValidationStatusNotifier(UploadValidationStatusNotifier uploadValidationStatusNotifier) {
+        this.uploadValidationStatusNotifier = uploadValidationStatusNotifier;
+    }
+
+    /** Executor for running independent validation handlers concurrently. This is configured by Spring. */
+    @Resource(name = "uploadValidationHandlerExecutorService")
+    public void setHandlerExecutorService(ExecutorService handlerExecutorService) {
+        this.handlerExecutorService = handlerExecutorService;
+    }
+
     /**
      * Factory method for creating a validation task instance, for validating a single upload.
      *
@@ -52,6 +67,8 @@ public class UploadValidationTaskFactory {
         UploadValidationTask task = new UploadValidationTask(context);
         task.setHandlerList(handlerList);
         task.setUploadDao(uploadDao);
+        task.setUploadValidationStatusNotifier(uploadValidationStatusNotifier);
+        task.setHandlerExecutorService(handlerExecutorService);
         return task;
     }
 }
@@ -0,0 +1,175 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.joda.time.LocalDate;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
+import org.sagebionetworks.bridge.dynamodb.DynamoIndexHelper;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
+
+/**
+ * <p>
+ * Benchmark for {@link DynamoIndexHelper} against DynamoDB Local, comparing sequential batch loads with concurrent
+ * chunked batch loads, for one upload date's worth of health data records.
+ * </p>
+ * <p>
+ * This creates its own health data table (with the uploadDate index) in DynamoDB Local, writes the records, runs the
+ * queries, and deletes the table. Don't point this at a real DynamoDB endpoint.
+ * </p>
+ * <p>
+ * Usage: play "run-main org.sagebionetworks.bridge.util.replay.DynamoIndexHelperBenchmark [[endpoint] [[records]
+ * [[batch load threads] [[iterations]]]]]"
+ * </p>
+ * <p>
+ * Defaults are http://localhost:8000, 50000 records, 8 batch load threads, and 3 iterations.
+ * </p>
+ */
+public class DynamoIndexHelperBenchmark {
+    private static final String INDEX_NAME = "uploadDate-index";
+    private static final String TABLE_NAME = "DynamoIndexHelperBenchmark-HealthDataRecord";
+    private static final LocalDate UPLOAD_DATE = LocalDate.parse("2016-06-01");
+    private static final int WRITE_BATCH_SIZE = 1000;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    public static void main(String[] args) throws Exception {
+        String endpoint = args.length > 0 ? args[0] : "http://localhost:8000";
+        int numRecords = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        // DynamoDB Local accepts any credentials.
+        AmazonDynamoDBClient client = new AmazonDynamoDBClient(new BasicAWSCredentials("dummy", "dummy"));
+        client.setEndpoint(endpoint);
+        DynamoDBMapper mapper = new DynamoDBMapper(client, new DynamoDBMapperConfig(
+                new DynamoDBMapperConfig.TableNameOverride(TABLE_NAME)));
+        DynamoDB ddb = new DynamoDB(client);
+
+        Table table = createTable(ddb, mapper);
+        ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService batchLoadExecutor = Executors.newFixedThreadPool(numThreads);
+        try {
+            writeRecords(mapper, numRecords);
+
+            DynamoIndexHelper sequentialHelper = DynamoIndexHelper.create(DynamoHealthDataRecord.class,
+                    table.getIndex(INDEX_NAME), mapper);
+            DynamoIndexHelper parallelHelper = DynamoIndexHelper.create(DynamoHealthDataRecord.class,
+                    table.getIndex(INDEX_NAME), mapper);
+            parallelHelper.setPrefetchExecutorService(prefetchExecutor);
+            parallelHelper.setBatchLoadExecutorService(batchLoadExecutor);
+
+            // warm up
+            query(sequentialHelper, numRecords);
+            query(parallelHelper, numRecords);
+
+            double sequentialMillis = 0.0;
+            double parallelMillis = 0.0;
+            double streamMillis = 0.0;
+            for (int i = 0; i < iterations; i++) {
+                sequentialMillis += query(sequentialHelper, numRecords);
+                parallelMillis += query(parallelHelper, numRecords);
+                streamMillis += stream(parallelHelper, numRecords);
+            }
+            System.out.println(String.format("%d records, %d batch load threads", numRecords, numThreads));
+            System.out.println(String.format("query(), sequential batch loads: %.1f ms", sequentialMillis /
+                    iterations));
+            System.out.println(String.format("query(), concurrent batch loads: %.1f ms (%.2fx)", parallelMillis /
+                    iterations, sequentialMillis / parallelMillis));
+            System.out.println(String.format("queryStream(), with prefetch: %.1f ms", streamMillis / iterations));
+        } finally {
+            prefetchExecutor.shutdown();
+            batchLoadExecutor.shutdown();
+            table.delete();
+            table.waitForDelete();
+        }
+    }
+
+    // Creates the benchmark table from the health data record's annotations, with keys-only indices, like prod.
+    private static Table createTable(DynamoDB ddb, DynamoDBMapper mapper) throws InterruptedException {
+        ProvisionedThroughput throughput = new ProvisionedThroughput(1000L, 1000L);
+        CreateTableRequest request = mapper.generateCreateTableRequest(DynamoHealthDataRecord.class)
+                .withProvisionedThroughput(throughput);
+        for (GlobalSecondaryIndex oneIndex : request.getGlobalSecondaryIndexes()) {
+            oneIndex.withProjection(new Projection().withProjectionType(ProjectionType.KEYS_ONLY))
+                    .withProvisionedThroughput(throughput);
+        }
+
+        Table table = ddb.createTable(request);
+        table.waitForActive();
+        return table;
+    }
+
+    // Writes records with small data maps, all with the same upload date.
+    private static void writeRecords(DynamoDBMapper mapper, int numRecords) {
+        long startNanos = System.nanoTime();
+        List<DynamoHealthDataRecord> batch = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            ObjectNode data = BridgeObjectMapper.get().createObjectNode();
+            data.put("answer", "answer " + i);
+            data.put("count", i);
+
+            DynamoHealthDataRecord record = new DynamoHealthDataRecord();
+            record.setId(BridgeUtils.generateGuid());
+            record.setHealthCode("health-code-" + (i % 1000));
+            record.setSchemaId("benchmark-schema");
+            record.setSchemaRevision(1);
+            record.setStudyId("benchmark-study");
+            record.setUploadDate(UPLOAD_DATE);
+            record.setData(data);
+            batch.add(record);
+
+            if (batch.size() >= WRITE_BATCH_SIZE) {
+                mapper.batchSave(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            mapper.batchSave(batch);
+        }
+        System.out.println(String.format("Wrote %d records in %.1f ms", numRecords,
+                (System.nanoTime() - startNanos) / NANOS_PER_MILLI));
+    }
+
+    // Returns wall-clock time in milliseconds to query all records for the upload date.
+    private static double query(DynamoIndexHelper helper, int expectedCount) {
+        long startNanos = System.nanoTime();
+        List<HealthDataRecord> recordList = helper.query(HealthDataRecord.class, "uploadDate",
+                UPLOAD_DATE.toString(), null);
+        double elapsedMillis = (System.nanoTime() - startNanos) / NANOS_PER_MILLI;
+        checkCount(recordList.size(), expectedCount);
+        return elapsedMillis;
+    }
+
+    // Returns wall-clock time in milliseconds to stream all records for the upload date.
+    private static double stream(DynamoIndexHelper helper, int expectedCount) {
+        long startNanos = System.nanoTime();
+        int count = helper.queryStream(HealthDataRecord.class, "uploadDate", UPLOAD_DATE.toString(), null,
+                record -> {});
+        double elapsedMillis = (System.nanoTime() - startNanos) / NANOS_PER_MILLI;
+        checkCount(count, expectedCount);
+        return elapsedMillis;
+    }
+
+    private static void checkCount(int count, int expectedCount) {
+        if (count != expectedCount) {
+            throw new IllegalStateException("Expected " + expectedCount + " records, got " + count);
+        }
+    }
+}
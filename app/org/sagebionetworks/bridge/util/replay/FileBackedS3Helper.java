@@ -0,0 +1,64 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+
+import org.sagebionetworks.bridge.s3.S3Helper;
+
+/**
+ * S3 helper that reads and writes local files instead of S3. Each bucket is mapped to a local directory, and each key
+ * is a file in that directory. This is used by the upload replay harness to run the upload validation handlers
+ * without touching S3, and by tests as a stand-in for S3 buckets.
+ */
+public class FileBackedS3Helper extends S3Helper {
+    private final Map<String, File> bucketDirMap;
+
+    /**
+     * Constructs a file-backed S3 helper with the given bucket to directory mapping.
+     *
+     * @param bucketDirMap
+     *         local directories, keyed by bucket name
+     */
+    public FileBackedS3Helper(Map<String, File> bucketDirMap) {
+        this.bucketDirMap = ImmutableMap.copyOf(bucketDirMap);
+    }
+
+    /** Reads the file for the given bucket and key. */
+    @Override
+    public byte[] readS3FileAsBytes(String bucket, String key) throws IOException {
+        return Files.readAllBytes(getFile(bucket, key).toPath());
+    }
+
+    /** Reads the file for the given bucket and key as a UTF-8 string. */
+    @Override
+    public String readS3FileAsString(String bucket, String key) throws IOException {
+        return new String(readS3FileAsBytes(bucket, key), Charsets.UTF_8);
+    }
+
+    /** Writes the given bytes to the file for the given bucket and key, creating the bucket directory if needed. */
+    @Override
+    public void writeBytesToS3(String bucket, String key, byte[] data) {
+        File file = getFile(bucket, key);
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), data);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Resolves the local file for the given bucket and key.
+    private File getFile(String bucket, String key) {
+        File bucketDir = bucketDirMap.get(bucket);
+        if (bucketDir == null) {
+            throw new IllegalArgumentException("No local directory configured for bucket " + bucket);
+        }
+        return new File(bucketDir, key);
+    }
+}
@@ -0,0 +1,86 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Latency and allocation stats for a single upload validation handler, collected by the upload replay harness. This
+ * class is thread-safe.
+ */
+public class HandlerStats {
+    private final String handlerName;
+    private final List<Long> latencyNanosList = new ArrayList<>();
+    private long allocatedBytes;
+    private int failureCount;
+    private long totalNanos;
+
+    /** Constructs stats for the handler with the given name. */
+    public HandlerStats(String handlerName) {
+        this.handlerName = handlerName;
+    }
+
+    /** Handler name, generally the handler's simple class name. */
+    public String getHandlerName() {
+        return handlerName;
+    }
+
+    /**
+     * Records a single handler call.
+     *
+     * @param latencyNanos
+     *         how long the handler took, in nanoseconds
+     * @param allocatedBytes
+     *         bytes allocated by the calling thread during the handler call, or a negative number if allocations
+     *         can't be measured on this JVM
+     * @param success
+     *         true if the handler succeeded, false if it threw
+     */
+    public synchronized void record(long latencyNanos, long allocatedBytes, boolean success) {
+        latencyNanosList.add(latencyNanos);
+        totalNanos += latencyNanos;
+        if (allocatedBytes > 0) {
+            this.allocatedBytes += allocatedBytes;
+        }
+        if (!success) {
+            failureCount++;
+        }
+    }
+
+    /** Total bytes allocated by the calling thread across all handler calls. */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /** Number of handler calls. */
+    public synchronized int getCount() {
+        return latencyNanosList.size();
+    }
+
+    /** Number of handler calls that threw. */
+    public synchronized int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the latency at the given percentile, using the nearest-rank method. Returns 0 if there are no calls.
+     *
+     * @param percentile
+     *         percentile, between 0 (exclusive) and 100 (inclusive)
+     * @return latency at the given percentile, in nanoseconds
+     */
+    public synchronized long getPercentileNanos(double percentile) {
+        if (latencyNanosList.isEmpty()) {
+            return 0;
+        }
+        List<Long> sortedList = new ArrayList<>(latencyNanosList);
+        Collections.sort(sortedList);
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedList.size());
+        return sortedList.get(Math.max(0, Math.min(sortedList.size(), rank) - 1));
+    }
+
+    /** Total time spent in this handler across all calls, in nanoseconds. */
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+}
@@ -0,0 +1,46 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.dao.HealthDataAttachmentDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataAttachment;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachment;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachmentBuilder;
+
+/**
+ * In-memory stand-in for the health data attachment DAO, used by the upload replay harness. This class is
+ * thread-safe.
+ */
+public class InMemoryHealthDataAttachmentDao implements HealthDataAttachmentDao {
+    private final Map<String, HealthDataAttachment> attachmentsById = new ConcurrentHashMap<>();
+
+    /** {@inheritDoc} */
+    @Override
+    public String createOrUpdateAttachment(@Nonnull HealthDataAttachment attachment) {
+        DynamoHealthDataAttachment dynamoAttachment = (DynamoHealthDataAttachment) attachment;
+        if (StringUtils.isBlank(dynamoAttachment.getId())) {
+            dynamoAttachment.setId(BridgeUtils.generateGuid());
+        }
+        attachmentsById.put(dynamoAttachment.getId(), dynamoAttachment);
+        return dynamoAttachment.getId();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<String> createOrUpdateAttachments(@Nonnull List<HealthDataAttachment> attachmentList) {
+        return attachmentList.stream().map(this::createOrUpdateAttachment).collect(Collectors.toList());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public HealthDataAttachmentBuilder getRecordBuilder() {
+        return new DynamoHealthDataAttachment.Builder();
+    }
+}
@@ -0,0 +1,124 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.dao.HealthDataDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
+import org.sagebionetworks.bridge.models.PagedResourceList;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
+
+/** In-memory stand-in for the health data DAO, used by the upload replay harness. This class is thread-safe. */
+public class InMemoryHealthDataDao implements HealthDataDao {
+    private final Map<String, HealthDataRecord> recordsById = new ConcurrentHashMap<>();
+
+    /** {@inheritDoc} */
+    @Override
+    public String createOrUpdateRecord(@Nonnull HealthDataRecord record) {
+        DynamoHealthDataRecord dynamoRecord = (DynamoHealthDataRecord) record;
+        if (StringUtils.isBlank(dynamoRecord.getId())) {
+            dynamoRecord.setId(BridgeUtils.generateGuid());
+        }
+        recordsById.put(dynamoRecord.getId(), dynamoRecord);
+        return dynamoRecord.getId();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int deleteRecordsForHealthCode(@Nonnull String healthCode) {
+        List<String> idList = recordsById.values().stream().filter(record -> healthCode.equals(
+                record.getHealthCode())).map(HealthDataRecord::getId).collect(Collectors.toList());
+        idList.forEach(recordsById::remove);
+        return idList.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public HealthDataRecord getRecordById(@Nonnull String id) {
+        return recordsById.get(id);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate) {
+        return recordsById.values().stream().filter(record -> record.getUploadDate() != null &&
+                uploadDate.equals(record.getUploadDate().toString())).collect(Collectors.toList());
+    }
+
+    /** {@inheritDoc} The offset key is the ID of the last record in the previous page. */
+    @Override
+    public PagedResourceList<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate,
+            @Nullable String offsetKey, int pageSize) {
+        List<HealthDataRecord> recordList = getRecordsForUploadDate(uploadDate).stream()
+                .filter(record -> offsetKey == null || record.getId().compareTo(offsetKey) > 0)
+                .sorted(Comparator.comparing(HealthDataRecord::getId)).limit(pageSize + 1)
+                .collect(Collectors.toList());
+        String nextOffsetKey = null;
+        if (recordList.size() > pageSize) {
+            recordList = recordList.subList(0, pageSize);
+            nextOffsetKey = recordList.get(pageSize - 1).getId();
+        }
+        return new PagedResourceList<>(recordList, null, pageSize, recordList.size()).withOffsetKey(nextOffsetKey);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int streamRecordsForUploadDate(@Nonnull String uploadDate, @Nonnull Consumer<HealthDataRecord> consumer) {
+        List<HealthDataRecord> recordList = getRecordsForUploadDate(uploadDate);
+        recordList.forEach(consumer);
+        return recordList.size();
+    }
+
+    /** {@inheritDoc} The offset key is the index of the first record in the next page. */
+    @Override
+    public PagedResourceList<HealthDataRecord> getRecordsForHealthCodeCreatedOn(@Nonnull String healthCode,
+            long createdOnStart, long createdOnEnd, @Nullable String offsetKey, int pageSize) {
+        List<HealthDataRecord> allRecordList = getRecordsForHealthCodeCreatedOn(healthCode, createdOnStart,
+                createdOnEnd);
+        int startIdx = offsetKey != null ? Integer.parseInt(offsetKey) : 0;
+        int endIdx = Math.min(startIdx + pageSize, allRecordList.size());
+        List<HealthDataRecord> recordList = allRecordList.subList(Math.min(startIdx, endIdx), endIdx);
+        String nextOffsetKey = endIdx < allRecordList.size() ? String.valueOf(endIdx) : null;
+        return new PagedResourceList<>(recordList, null, pageSize, recordList.size()).withOffsetKey(nextOffsetKey);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int streamRecordsForHealthCodeCreatedOn(@Nonnull String healthCode, long createdOnStart, long createdOnEnd,
+            @Nonnull Consumer<HealthDataRecord> consumer) {
+        List<HealthDataRecord> recordList = getRecordsForHealthCodeCreatedOn(healthCode, createdOnStart,
+                createdOnEnd);
+        recordList.forEach(consumer);
+        return recordList.size();
+    }
+
+    // Records for the health code in the created-on range, sorted by created-on, like the index.
+    private List<HealthDataRecord> getRecordsForHealthCodeCreatedOn(String healthCode, long createdOnStart,
+            long createdOnEnd) {
+        return recordsById.values().stream().filter(record -> healthCode.equals(record.getHealthCode()) &&
+                record.getCreatedOn() != null && record.getCreatedOn() >= createdOnStart &&
+                record.getCreatedOn() <= createdOnEnd).sorted(Comparator.comparing(HealthDataRecord::getCreatedOn))
+                .collect(Collectors.toList());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public HealthDataRecordBuilder getRecordBuilder() {
+        return new DynamoHealthDataRecord.Builder();
+    }
+
+    /** Number of records written so far. */
+    public int getRecordCount() {
+        return recordsById.size();
+    }
+}
@@ -0,0 +1,62 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.services.SurveyService;
+import org.sagebionetworks.bridge.services.UploadSchemaService;
+
+/**
+ * In-memory stand-in for the survey service, used by the upload replay harness to validate survey uploads. Surveys
+ * are added up front, as if they were published: Adding a survey creates its upload schema through the upload schema
+ * service and records the schema revision on the survey, same as publishing. Only getting surveys by keys is
+ * supported. This class is thread-safe.
+ */
+public class InMemorySurveyService extends SurveyService {
+    private final Map<String, Survey> surveyMap = new ConcurrentHashMap<>();
+    private final StudyIdentifier studyIdentifier;
+    private final UploadSchemaService uploadSchemaService;
+
+    /**
+     * @param studyIdentifier
+     *         study that surveys and their schemas are created in
+     * @param uploadSchemaService
+     *         upload schema service, used to create the surveys' schemas
+     */
+    public InMemorySurveyService(@Nonnull StudyIdentifier studyIdentifier,
+            @Nonnull UploadSchemaService uploadSchemaService) {
+        this.studyIdentifier = studyIdentifier;
+        this.uploadSchemaService = uploadSchemaService;
+    }
+
+    /**
+     * Adds the given survey, and creates its upload schema. The survey must have a GUID, created-on timestamp, and
+     * identifier. This modifies the survey to mark it published with its schema revision.
+     */
+    public void addSurvey(@Nonnull Survey survey) {
+        UploadSchema schema = uploadSchemaService.createUploadSchemaFromSurvey(studyIdentifier, survey);
+        survey.setSchemaRevision(schema.getRevision());
+        survey.setPublished(true);
+        surveyMap.put(makeKey(survey.getGuid(), survey.getCreatedOn()), survey);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Survey getSurvey(GuidCreatedOnVersionHolder keys) {
+        Survey survey = surveyMap.get(makeKey(keys.getGuid(), keys.getCreatedOn()));
+        if (survey == null) {
+            throw new EntityNotFoundException(Survey.class);
+        }
+        return survey;
+    }
+
+    private static String makeKey(String guid, long createdOn) {
+        return guid + ":" + createdOn;
+    }
+}
@@ -0,0 +1,118 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.LocalDate;
+
+import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
+import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadRequest;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
+
+/**
+ * In-memory stand-in for the upload DAO, used by the upload replay harness to run real upload validation tasks, which
+ * write their validation status through the DAO. This class is thread-safe.
+ */
+public class InMemoryUploadDao implements UploadDao {
+    private final Map<String, DynamoUpload2> uploadMap = new ConcurrentHashMap<>();
+
+    /** {@inheritDoc} */
+    @Override
+    public Upload createUpload(@Nonnull UploadRequest uploadRequest, @Nonnull String healthCode,
+            @Nullable String duplicateUploadId) {
+        checkNotNull(uploadRequest, "Upload request is null");
+        checkArgument(StringUtils.isNotBlank(healthCode), "Health code is null or blank");
+
+        DynamoUpload2 upload = new DynamoUpload2(uploadRequest, healthCode);
+        upload.setDuplicateUploadId(duplicateUploadId);
+        uploadMap.put(upload.getUploadId(), upload);
+        return upload;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Upload> createUploads(@Nonnull List<UploadRequest> uploadRequestList, @Nonnull String healthCode,
+            @Nonnull List<String> duplicateUploadIdList) {
+        checkArgument(uploadRequestList != null && !uploadRequestList.isEmpty(),
+                "Upload request list is null or empty");
+        checkNotNull(duplicateUploadIdList, "Duplicate upload ID list is null");
+        checkArgument(uploadRequestList.size() == duplicateUploadIdList.size(),
+                "Duplicate upload ID list must be the same size as upload request list");
+
+        ImmutableList.Builder<Upload> uploadListBuilder = ImmutableList.builder();
+        for (int i = 0; i < uploadRequestList.size(); i++) {
+            uploadListBuilder.add(createUpload(uploadRequestList.get(i), healthCode, duplicateUploadIdList.get(i)));
+        }
+        return uploadListBuilder.build();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Upload getUpload(@Nonnull String uploadId) {
+        DynamoUpload2 upload = uploadMap.get(uploadId);
+        if (upload == null) {
+            throw new NotFoundException(String.format("Upload ID %s not found", uploadId));
+        }
+        return upload;
+    }
+
+    /**
+     * Adds an upload that was created outside this DAO, such as a replayed upload, so that later writes and reads
+     * see it.
+     */
+    public void putUpload(@Nonnull DynamoUpload2 upload) {
+        uploadMap.put(upload.getUploadId(), upload);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeMultipartUploadInfo(@Nonnull Upload upload, @Nonnull String multipartUploadId, long partSize,
+            int partCount) {
+        checkArgument(StringUtils.isNotBlank(multipartUploadId), "Multipart upload ID is null or blank");
+
+        DynamoUpload2 upload2 = (DynamoUpload2) upload;
+        upload2.setMultipartUploadId(multipartUploadId);
+        upload2.setPartSize(partSize);
+        upload2.setPartCount(partCount);
+        uploadMap.put(upload2.getUploadId(), upload2);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void uploadComplete(@Nonnull Upload upload) {
+        DynamoUpload2 upload2 = (DynamoUpload2) upload;
+        synchronized (uploadMap) {
+            DynamoUpload2 existing = uploadMap.get(upload2.getUploadId());
+            if (existing != null && existing.getStatus() != UploadStatus.REQUESTED) {
+                throw new ConcurrentModificationException("Upload " + upload.getUploadId() + " is already complete");
+            }
+            upload2.setStatus(UploadStatus.VALIDATION_IN_PROGRESS);
+            upload2.setUploadDate(LocalDate.now(BridgeConstants.LOCAL_TIME_ZONE));
+            uploadMap.put(upload2.getUploadId(), upload2);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeValidationStatus(@Nonnull Upload upload, @Nonnull UploadStatus status,
+            @Nonnull List<String> validationMessageList, String recordId) {
+        DynamoUpload2 upload2 = (DynamoUpload2) upload;
+        upload2.setStatus(status);
+        upload2.appendValidationMessages(validationMessageList);
+        upload2.setRecordId(recordId);
+        uploadMap.put(upload2.getUploadId(), upload2);
+    }
+}
@@ -0,0 +1,165 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.sagebionetworks.bridge.dao.UploadSchemaDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadSchema;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadSchemaDao;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.models.upload.UploadSchemaType;
+
+/**
+ * In-memory stand-in for the upload schema DAO, used by the upload replay harness. Unlike the DynamoDB DAO, schemas
+ * that already have a revision keep that revision, so that schemas exported from a real environment can be loaded
+ * as-is. This class is thread-safe.
+ */
+public class InMemoryUploadSchemaDao implements UploadSchemaDao {
+    // Schema revisions, keyed by study ID, then schema ID, then revision.
+    private final Map<String, Map<String, NavigableMap<Integer, UploadSchema>>> schemaMap =
+            new ConcurrentHashMap<>();
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull UploadSchema createOrUpdateUploadSchema(@Nonnull String studyId,
+            @Nonnull UploadSchema uploadSchema) {
+        DynamoUploadSchema dynamoSchema = (DynamoUploadSchema) uploadSchema;
+        dynamoSchema.setStudyId(studyId);
+
+        NavigableMap<Integer, UploadSchema> revMap = schemaMap.computeIfAbsent(studyId,
+                key -> new ConcurrentHashMap<>()).computeIfAbsent(dynamoSchema.getSchemaId(),
+                key -> new ConcurrentSkipListMap<>());
+        synchronized (revMap) {
+            if (dynamoSchema.getRevision() <= 0) {
+                dynamoSchema.setRevision(revMap.isEmpty() ? 1 : revMap.lastKey() + 1);
+            }
+            revMap.put(dynamoSchema.getRevision(), dynamoSchema);
+        }
+        return dynamoSchema;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull UploadSchema createUploadSchemaFromSurvey(@Nonnull StudyIdentifier studyIdentifier,
+            @Nonnull Survey survey) {
+        // Same conversion as the DynamoDB DAO.
+        List<UploadFieldDefinition> fieldDefList = DynamoUploadSchemaDao.getFieldDefinitionsFromSurvey(survey);
+
+        String studyId = studyIdentifier.getIdentifier();
+        String schemaId = survey.getIdentifier();
+        NavigableMap<Integer, UploadSchema> revMap = schemaMap.computeIfAbsent(studyId,
+                key -> new ConcurrentHashMap<>()).computeIfAbsent(schemaId, key -> new ConcurrentSkipListMap<>());
+        synchronized (revMap) {
+            // If the latest revision has the same fields, in any order, re-use it instead of creating a new one.
+            Map.Entry<Integer, UploadSchema> latest = revMap.lastEntry();
+            if (latest != null && ImmutableSet.copyOf(latest.getValue().getFieldDefinitions()).equals(
+                    ImmutableSet.copyOf(fieldDefList))) {
+                return latest.getValue();
+            }
+
+            DynamoUploadSchema schema = new DynamoUploadSchema();
+            schema.setFieldDefinitions(fieldDefList);
+            schema.setName(survey.getName());
+            schema.setSchemaId(schemaId);
+            schema.setSchemaType(UploadSchemaType.IOS_SURVEY);
+            return createOrUpdateUploadSchema(studyId, schema);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteUploadSchemaByIdAndRev(@Nonnull StudyIdentifier studyIdentifier, @Nonnull String schemaId,
+            int rev) {
+        if (getRevMap(studyIdentifier.getIdentifier(), schemaId).remove(rev) == null) {
+            throw newNotFoundException(studyIdentifier.getIdentifier(), schemaId);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteUploadSchemaById(@Nonnull StudyIdentifier studyIdentifier, @Nonnull String schemaId) {
+        Map<String, NavigableMap<Integer, UploadSchema>> studySchemaMap = schemaMap.get(
+                studyIdentifier.getIdentifier());
+        if (studySchemaMap == null || studySchemaMap.remove(schemaId) == null) {
+            throw newNotFoundException(studyIdentifier.getIdentifier(), schemaId);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull UploadSchema getUploadSchema(@Nonnull String studyId, @Nonnull String schemaId) {
+        NavigableMap<Integer, UploadSchema> revMap = getRevMap(studyId, schemaId);
+        Map.Entry<Integer, UploadSchema> latest = revMap.lastEntry();
+        if (latest == null) {
+            throw newNotFoundException(studyId, schemaId);
+        }
+        return latest.getValue();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull List<UploadSchema> getUploadSchemaAllRevisions(@Nonnull StudyIdentifier studyIdentifier,
+            @Nonnull String schemaId) {
+        // Newest revision first, same as the DynamoDB DAO.
+        List<UploadSchema> schemaList = new ArrayList<>(getRevMap(studyIdentifier.getIdentifier(), schemaId)
+                .descendingMap().values());
+        if (schemaList.isEmpty()) {
+            throw newNotFoundException(studyIdentifier.getIdentifier(), schemaId);
+        }
+        return schemaList;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull UploadSchema getUploadSchemaByIdAndRev(@Nonnull StudyIdentifier studyIdentifier,
+            @Nonnull String schemaId, int schemaRev) {
+        UploadSchema schema = getRevMap(studyIdentifier.getIdentifier(), schemaId).get(schemaRev);
+        if (schema == null) {
+            throw new EntityNotFoundException(UploadSchema.class, String.format(
+                    "Upload schema not found for study %s, schema ID %s, revision %d",
+                    studyIdentifier.getIdentifier(), schemaId, schemaRev));
+        }
+        return schema;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull List<UploadSchema> getUploadSchemasForStudy(@Nonnull StudyIdentifier studyId) {
+        List<UploadSchema> schemaList = new ArrayList<>();
+        Map<String, NavigableMap<Integer, UploadSchema>> studySchemaMap = schemaMap.get(studyId.getIdentifier());
+        if (studySchemaMap != null) {
+            for (NavigableMap<Integer, UploadSchema> oneRevMap : studySchemaMap.values()) {
+                schemaList.addAll(oneRevMap.values());
+            }
+        }
+        return schemaList;
+    }
+
+    // Gets the revisions for the given schema. Returns an empty map if there are none.
+    private NavigableMap<Integer, UploadSchema> getRevMap(String studyId, String schemaId) {
+        Map<String, NavigableMap<Integer, UploadSchema>> studySchemaMap = schemaMap.get(studyId);
+        if (studySchemaMap != null) {
+            NavigableMap<Integer, UploadSchema> revMap = studySchemaMap.get(schemaId);
+            if (revMap != null) {
+                return revMap;
+            }
+        }
+        return new ConcurrentSkipListMap<>();
+    }
+
+    private static EntityNotFoundException newNotFoundException(String studyId, String schemaId) {
+        return new EntityNotFoundException(UploadSchema.class, String.format(
+                "Upload schema not found for study %s, schema ID %s", studyId, schemaId));
+    }
+}
@@ -0,0 +1,198 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.dynamodb.CompressedJsonNodeMarshaller;
+import org.sagebionetworks.bridge.dynamodb.JsonNodeMarshaller;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+/**
+ * <p>
+ * Benchmark for {@link CompressedJsonNodeMarshaller}, comparing the DynamoDB item size and write capacity units of
+ * health data records stored with plain JSON against compressed JSON. This uses a synthetic corpus modeled after our
+ * records: small and large surveys, tapping results stored as inline JSON, and sensor tasks whose data is just
+ * attachment IDs, each with info.json-like metadata.
+ * </p>
+ * <p>
+ * Item sizes follow DynamoDB's rules (attribute name lengths plus value sizes), and each write costs 1 WCU per KB,
+ * rounded up. This doesn't talk to DynamoDB.
+ * </p>
+ * <p>
+ * Usage: play "run-main org.sagebionetworks.bridge.util.replay.JsonCompressionBenchmark [[records per type]
+ * [[threshold bytes]]]"
+ * </p>
+ * <p>
+ * Defaults are 1000 records per type and a 1024 byte threshold, same as the marshaller.
+ * </p>
+ */
+public class JsonCompressionBenchmark {
+    private static final int BYTES_PER_WCU = 1024;
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    // Attributes other than data and metadata, with representative values. Numbers are counted as strings, which is
+    // close enough.
+    private static final Map<String, String> FIXED_ATTRIBUTES = new LinkedHashMap<>();
+    static {
+        FIXED_ATTRIBUTES.put("id", BridgeUtils.generateGuid());
+        FIXED_ATTRIBUTES.put("healthCode", BridgeUtils.generateGuid());
+        FIXED_ATTRIBUTES.put("createdOn", "1456855200000");
+        FIXED_ATTRIBUTES.put("schemaId", "benchmark-schema");
+        FIXED_ATTRIBUTES.put("schemaRevision", "3");
+        FIXED_ATTRIBUTES.put("studyId", "benchmark-study");
+        FIXED_ATTRIBUTES.put("uploadDate", "2016-03-01");
+        FIXED_ATTRIBUTES.put("uploadId", BridgeUtils.generateGuid());
+        FIXED_ATTRIBUTES.put("userSharingScope", "SPONSORS_AND_PARTNERS");
+        FIXED_ATTRIBUTES.put("version", "1");
+    }
+
+    private enum RecordType {
+        SMALL_SURVEY, LARGE_SURVEY, TAPPING, SENSOR
+    }
+
+    public static void main(String[] args) {
+        int recordsPerType = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int thresholdBytes = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+        JsonNodeMarshaller plainMarshaller = new JsonNodeMarshaller();
+        CompressedJsonNodeMarshaller compressedMarshaller = new CompressedJsonNodeMarshaller(true, thresholdBytes);
+        int fixedBytes = 0;
+        for (Map.Entry<String, String> oneEntry : FIXED_ATTRIBUTES.entrySet()) {
+            fixedBytes += utf8Length(oneEntry.getKey()) + utf8Length(oneEntry.getValue());
+        }
+
+        Random random = new Random(recordsPerType);
+        long totalPlainWcu = 0;
+        long totalCompressedWcu = 0;
+        System.out.println(String.format("%d records per type, compression threshold %d bytes", recordsPerType,
+                thresholdBytes));
+        for (RecordType oneType : RecordType.values()) {
+            long plainBytes = 0;
+            long compressedBytes = 0;
+            long plainWcu = 0;
+            long compressedWcu = 0;
+            long marshallNanos = 0;
+            long unmarshallNanos = 0;
+            for (int i = 0; i < recordsPerType; i++) {
+                JsonNode data = makeData(oneType, random);
+                JsonNode metadata = makeMetadata(oneType, random);
+
+                int plainItemBytes = fixedBytes + attributeSize("data", plainMarshaller.marshall(data)) +
+                        attributeSize("metadata", plainMarshaller.marshall(metadata));
+
+                long startNanos = System.nanoTime();
+                String compressedData = compressedMarshaller.marshall(data);
+                String compressedMetadata = compressedMarshaller.marshall(metadata);
+                marshallNanos += System.nanoTime() - startNanos;
+
+                startNanos = System.nanoTime();
+                compressedMarshaller.unmarshall(JsonNode.class, compressedData);
+                compressedMarshaller.unmarshall(JsonNode.class, compressedMetadata);
+                unmarshallNanos += System.nanoTime() - startNanos;
+
+                int compressedItemBytes = fixedBytes + attributeSize("data", compressedData) +
+                        attributeSize("metadata", compressedMetadata);
+
+                plainBytes += plainItemBytes;
+                compressedBytes += compressedItemBytes;
+                plainWcu += wcu(plainItemBytes);
+                compressedWcu += wcu(compressedItemBytes);
+            }
+
+            totalPlainWcu += plainWcu;
+            totalCompressedWcu += compressedWcu;
+            System.out.println(String.format("%s: avg item %d -> %d bytes, %d -> %d WCU (%.1f%% saved), " +
+                    "marshall %.1f us, unmarshall %.1f us", oneType, plainBytes / recordsPerType,
+                    compressedBytes / recordsPerType, plainWcu, compressedWcu, percentSaved(plainWcu, compressedWcu),
+                    marshallNanos / NANOS_PER_MICRO / recordsPerType,
+                    unmarshallNanos / NANOS_PER_MICRO / recordsPerType));
+        }
+        System.out.println(String.format("Total: %d -> %d WCU (%.1f%% saved)", totalPlainWcu, totalCompressedWcu,
+                percentSaved(totalPlainWcu, totalCompressedWcu)));
+    }
+
+    private static JsonNode makeData(RecordType type, Random random) {
+        ObjectNode data = BridgeObjectMapper.get().createObjectNode();
+        switch (type) {
+            case SMALL_SURVEY:
+                addSurveyAnswers(data, 5, random);
+                break;
+            case LARGE_SURVEY:
+                addSurveyAnswers(data, 80, random);
+                break;
+            case TAPPING:
+                ArrayNode sampleArray = data.putArray("tapping_results.json.TappingSamples");
+                for (int i = 0; i < 300; i++) {
+                    ObjectNode sample = sampleArray.addObject();
+                    sample.put("TapTimeStamp", i * 0.067 + random.nextDouble() * 0.01);
+                    sample.put("TapCoordinate", String.format("{%d, %d}", 60 + random.nextInt(200),
+                            400 + random.nextInt(200)));
+                    sample.put("TappedButtonId", random.nextBoolean() ? "TappedButtonLeft" : "TappedButtonRight");
+                }
+                data.put("tapping_results.json.ButtonRectLeft", "{{37.5, 458}, {122, 122}}");
+                data.put("tapping_results.json.ButtonRectRight", "{{160.5, 458}, {122, 122}}");
+                break;
+            case SENSOR:
+                for (String oneField : new String[] { "accel_walking_outbound.json.items",
+                        "deviceMotion_walking_outbound.json.items", "accel_walking_rest.json.items",
+                        "deviceMotion_walking_rest.json.items" }) {
+                    data.put(oneField, BridgeUtils.generateGuid());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown record type " + type);
+        }
+        return data;
+    }
+
+    private static void addSurveyAnswers(ObjectNode data, int numAnswers, Random random) {
+        for (int i = 0; i < numAnswers; i++) {
+            if (i % 4 == 3) {
+                data.put("question" + i, "free text answer " + Long.toHexString(random.nextLong()));
+            } else {
+                data.putArray("question" + i).add(random.nextInt(5));
+            }
+        }
+    }
+
+    private static JsonNode makeMetadata(RecordType type, Random random) {
+        ObjectNode metadata = BridgeObjectMapper.get().createObjectNode();
+        metadata.put("appVersion", "version 1.2, build 42");
+        metadata.put("phoneInfo", "iPhone 6");
+        metadata.put("item", type.name().toLowerCase());
+        metadata.put("taskRunId", BridgeUtils.generateGuid());
+        ArrayNode fileArray = metadata.putArray("files");
+        int numFiles = type == RecordType.SENSOR ? 8 : 1;
+        for (int i = 0; i < numFiles; i++) {
+            ObjectNode file = fileArray.addObject();
+            file.put("filename", type.name().toLowerCase() + "_" + i + ".json");
+            file.put("timestamp", String.format("2016-03-01T10:%02d:%02d-08:00", random.nextInt(60),
+                    random.nextInt(60)));
+            file.put("contentType", "application/json");
+        }
+        return metadata;
+    }
+
+    private static int attributeSize(String name, String value) {
+        return utf8Length(name) + utf8Length(value);
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(Charsets.UTF_8).length;
+    }
+
+    private static long wcu(int itemBytes) {
+        return (itemBytes + BYTES_PER_WCU - 1) / BYTES_PER_WCU;
+    }
+
+    private static double percentSaved(long before, long after) {
+        return before > 0 ? 100.0 * (before - after) / before : 0.0;
+    }
+}
@@ -0,0 +1,181 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.upload.ParseJsonHandler;
+import org.sagebionetworks.bridge.upload.UploadValidationContext;
+
+/**
+ * <p>
+ * Benchmark for the JSON sniffing in {@link ParseJsonHandler}, comparing it against parsing every entry and relying on
+ * parse exceptions to detect non-JSON entries (what the handler did before sniffing). This uses synthetic archives
+ * modeled after mPower: a walking activity archive with accelerometer, device motion, and pedometer JSON files for
+ * each leg of the walk, and a voice activity archive with a large audio recording and a short countdown recording.
+ * Both have an info.json that declares each file's content type.
+ * </p>
+ * <p>
+ * Parsing is sequential (no fork-join pool), so this measures sniffing alone.
+ * </p>
+ * <p>
+ * Usage: play "run-main org.sagebionetworks.bridge.util.replay.JsonSniffingBenchmark [[samples per sensor file]
+ * [[audio kilobytes] [[iterations]]]]"
+ * </p>
+ * <p>
+ * Defaults are 1000 samples per sensor file, 400 KB of audio, and 50 iterations.
+ * </p>
+ */
+public class JsonSniffingBenchmark {
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private static final String[] WALKING_LEGS = { "walking_outbound", "walking_return", "walking_rest" };
+    private static final String[] SENSOR_PREFIXES = { "accel", "deviceMotion", "pedometer" };
+
+    public static void main(String[] args) {
+        int samplesPerFile = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int audioKilobytes = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        Random random = new Random(samplesPerFile);
+        Map<String, byte[]> walkingArchive = makeWalkingArchive(samplesPerFile, random);
+        Map<String, byte[]> voiceArchive = makeVoiceArchive(audioKilobytes, random);
+        Map<String, byte[]> mixedArchive = new HashMap<>(walkingArchive);
+        mixedArchive.putAll(voiceArchive);
+        mixedArchive.put("info.json", makeInfoJson(mixedArchive));
+        System.out.println(String.format("%d samples per sensor file, %d KB audio, %d iterations", samplesPerFile,
+                audioKilobytes, iterations));
+
+        ParseJsonHandler handler = new ParseJsonHandler();
+        benchmark("Walking", handler, walkingArchive, iterations);
+        benchmark("Voice", handler, voiceArchive, iterations);
+        benchmark("Mixed", handler, mixedArchive, iterations);
+    }
+
+    // Warms up, checks that both approaches find the same JSON entries, then prints the mean time for each.
+    private static void benchmark(String name, ParseJsonHandler handler, Map<String, byte[]> archive,
+            int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            parseAll(archive);
+            parseSniffed(handler, archive);
+        }
+
+        Map<String, JsonNode> expectedJsonDataMap = parseAll(archive);
+        Map<String, JsonNode> actualJsonDataMap = parseSniffed(handler, archive);
+        if (!expectedJsonDataMap.keySet().equals(actualJsonDataMap.keySet())) {
+            System.out.println(String.format("%s: JSON entries differ! parse all %s, sniffed %s", name,
+                    expectedJsonDataMap.keySet(), actualJsonDataMap.keySet()));
+        }
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parseAll(archive);
+        }
+        double parseAllMillis = (System.nanoTime() - startNanos) / NANOS_PER_MILLI / iterations;
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parseSniffed(handler, archive);
+        }
+        double sniffedMillis = (System.nanoTime() - startNanos) / NANOS_PER_MILLI / iterations;
+
+        System.out.println(String.format("%s (%d entries, %d JSON): parse all %.2f ms, sniffed %.2f ms (%.2fx)",
+                name, archive.size(), actualJsonDataMap.size(), parseAllMillis, sniffedMillis,
+                parseAllMillis / sniffedMillis));
+    }
+
+    // Tries to parse every entry, treating parse exceptions as non-JSON. Returns the JSON entries.
+    private static Map<String, JsonNode> parseAll(Map<String, byte[]> archive) {
+        Map<String, JsonNode> jsonDataMap = new HashMap<>();
+        for (Map.Entry<String, byte[]> oneEntry : archive.entrySet()) {
+            try {
+                jsonDataMap.put(oneEntry.getKey(), BridgeObjectMapper.get().readTree(oneEntry.getValue()));
+            } catch (IOException ex) {
+                // not JSON
+            }
+        }
+        return jsonDataMap;
+    }
+
+    // Parses a copy of the archive with the handler, since the handler modifies the unzipped data map. Returns the
+    // JSON entries.
+    private static Map<String, JsonNode> parseSniffed(ParseJsonHandler handler, Map<String, byte[]> archive) {
+        UploadValidationContext context = new UploadValidationContext();
+        context.setUnzippedDataMap(new HashMap<>(archive));
+        handler.handle(context);
+        return context.getJsonDataMap();
+    }
+
+    private static Map<String, byte[]> makeWalkingArchive(int samplesPerFile, Random random) {
+        Map<String, byte[]> archive = new HashMap<>();
+        for (String oneLeg : WALKING_LEGS) {
+            for (String onePrefix : SENSOR_PREFIXES) {
+                if (onePrefix.equals("pedometer") && oneLeg.equals("walking_rest")) {
+                    // No steps while standing still.
+                    continue;
+                }
+                archive.put(onePrefix + "_" + oneLeg + ".json", makeSensorJson(samplesPerFile, random));
+            }
+        }
+        archive.put("info.json", makeInfoJson(archive));
+        return archive;
+    }
+
+    private static Map<String, byte[]> makeVoiceArchive(int audioKilobytes, Random random) {
+        Map<String, byte[]> archive = new HashMap<>();
+        archive.put("audio_audio.m4a", makeAudio(audioKilobytes * 1024, random));
+        archive.put("audio_countdown.m4a", makeAudio(audioKilobytes * 1024 / 10, random));
+        archive.put("momentInDayFormat.json", ("{\"questionType\":0,\"choiceAnswers\":[\"Immediately before " +
+                "Parkinson medication\"],\"item\":\"momentInDayFormat.json\"}").getBytes(Charsets.UTF_8));
+        archive.put("info.json", makeInfoJson(archive));
+        return archive;
+    }
+
+    // Accelerometer-like samples, in the same shape as our sensor files.
+    private static byte[] makeSensorJson(int numSamples, Random random) {
+        StringBuilder sensorBuilder = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < numSamples; i++) {
+            if (i > 0) {
+                sensorBuilder.append(',');
+            }
+            sensorBuilder.append(String.format("{\"timestamp\":%.3f,\"x\":%f,\"y\":%f,\"z\":%f}", i * 0.01,
+                    random.nextGaussian(), random.nextGaussian(), random.nextGaussian()));
+        }
+        sensorBuilder.append("]}");
+        return sensorBuilder.toString().getBytes(Charsets.UTF_8);
+    }
+
+    // An M4A file starts with the ftyp box header. The rest is noise, like compressed audio.
+    private static byte[] makeAudio(int numBytes, Random random) {
+        byte[] audio = new byte[numBytes];
+        random.nextBytes(audio);
+        byte[] header = { 0x00, 0x00, 0x00, 0x20, 'f', 't', 'y', 'p', 'M', '4', 'A', ' ' };
+        System.arraycopy(header, 0, audio, 0, Math.min(header.length, numBytes));
+        return audio;
+    }
+
+    // info.json listing every other entry in the archive, with its content type.
+    private static byte[] makeInfoJson(Map<String, byte[]> archive) {
+        ObjectNode infoJson = BridgeObjectMapper.get().createObjectNode();
+        infoJson.put("appVersion", "version 1.2, build 42");
+        infoJson.put("phoneInfo", "iPhone 6");
+        ArrayNode fileArray = infoJson.putArray("files");
+        for (String oneFilename : archive.keySet()) {
+            if (oneFilename.equals("info.json")) {
+                continue;
+            }
+            ObjectNode file = fileArray.addObject();
+            file.put("filename", oneFilename);
+            file.put("timestamp", "2016-03-01T10:15:00-08:00");
+            file.put("contentType", oneFilename.endsWith(".m4a") ? "audio/mp4" : "application/json");
+        }
+        return infoJson.toString().getBytes(Charsets.UTF_8);
+    }
+}
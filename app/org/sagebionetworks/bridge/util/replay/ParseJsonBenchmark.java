@@ -0,0 +1,172 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Charsets;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.upload.ParseJsonHandler;
+import org.sagebionetworks.bridge.upload.UploadValidationContext;
+
+/**
+ * <p>
+ * Benchmark for {@link ParseJsonHandler}, comparing sequential parsing against parallel parsing on the shared
+ * fork-join pool, using synthetic archives modeled after our sensor tasks (many small JSON files, plus an audio file).
+ * </p>
+ * <p>
+ * The first scenario measures wall-clock time for a single large archive at a time. The second scenario runs several
+ * validation threads processing large archives concurrently, alongside one thread processing small archives, and
+ * reports large-archive throughput and small-archive latency. With the per-upload parallelism cap, concurrent large
+ * archives shouldn't starve each other or the small archives.
+ * </p>
+ * <p>
+ * Usage: play "run-main org.sagebionetworks.bridge.util.replay.ParseJsonBenchmark [[entries per archive]
+ * [[samples per entry] [[validation threads] [[iterations]]]]]"
+ * </p>
+ * <p>
+ * Defaults are 300 entries, 100 samples per entry, 4 validation threads, and 20 iterations. Pool size, per-upload
+ * parallelism, and the parallel threshold come from the upload.json.parse.* config.
+ * </p>
+ */
+public class ParseJsonBenchmark {
+    private static final int SMALL_ARCHIVE_ENTRIES = 5;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    public static void main(String[] args) throws Exception {
+        int numEntries = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int samplesPerEntry = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        BridgeConfig config = BridgeConfigFactory.getConfig();
+        int poolSize = config.getPropertyAsInt("upload.json.parse.thread.count");
+        int maxParallelism = config.getPropertyAsInt("upload.json.parse.max.parallelism");
+        int parallelMinEntries = config.getPropertyAsInt("upload.json.parse.parallel.min.entries");
+
+        Map<String, byte[]> largeArchive = makeArchive(numEntries, samplesPerEntry);
+        Map<String, byte[]> smallArchive = makeArchive(SMALL_ARCHIVE_ENTRIES, samplesPerEntry);
+        System.out.println(String.format("%d entries per archive, %d samples per entry, pool size %d, per-upload " +
+                "parallelism %d, parallel threshold %d entries", numEntries, samplesPerEntry, poolSize,
+                maxParallelism, parallelMinEntries));
+
+        ParseJsonHandler sequentialHandler = new ParseJsonHandler();
+        ForkJoinPool pool = new ForkJoinPool(poolSize);
+        try {
+            ParseJsonHandler parallelHandler = new ParseJsonHandler();
+            parallelHandler.setForkJoinPool(pool);
+            parallelHandler.setParallelism(maxParallelism, parallelMinEntries);
+
+            // warm up
+            for (int i = 0; i < iterations; i++) {
+                parse(sequentialHandler, largeArchive);
+                parse(parallelHandler, largeArchive);
+            }
+
+            // Scenario 1: one archive at a time.
+            double sequentialMillis = timeSingle(sequentialHandler, largeArchive, iterations);
+            double parallelMillis = timeSingle(parallelHandler, largeArchive, iterations);
+            System.out.println(String.format("Single archive: sequential %.2f ms, parallel %.2f ms (%.2fx)",
+                    sequentialMillis, parallelMillis, sequentialMillis / parallelMillis));
+
+            // Scenario 2: concurrent validations.
+            System.out.println("Concurrent, sequential: " + timeConcurrent(sequentialHandler, largeArchive,
+                    smallArchive, numThreads, iterations));
+            System.out.println("Concurrent, parallel:   " + timeConcurrent(parallelHandler, largeArchive,
+                    smallArchive, numThreads, iterations));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Mean wall-clock time in milliseconds to parse the archive, one at a time.
+    private static double timeSingle(ParseJsonHandler handler, Map<String, byte[]> archive, int iterations) {
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parse(handler, archive);
+        }
+        return (System.nanoTime() - startNanos) / NANOS_PER_MILLI / iterations;
+    }
+
+    // Runs numThreads validation threads on large archives, plus one thread on small archives for as long as the large
+    // archives are running. Returns a summary of large-archive throughput and small-archive latency.
+    private static String timeConcurrent(ParseJsonHandler handler, Map<String, byte[]> largeArchive,
+            Map<String, byte[]> smallArchive, int numThreads, int iterations) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads + 1);
+        try {
+            AtomicBoolean largeDone = new AtomicBoolean(false);
+            Future<long[]> smallFuture = executor.submit(() -> {
+                long count = 0;
+                long totalNanos = 0;
+                while (!largeDone.get()) {
+                    long startNanos = System.nanoTime();
+                    parse(handler, smallArchive);
+                    totalNanos += System.nanoTime() - startNanos;
+                    count++;
+                }
+                return new long[] { count, totalNanos };
+            });
+
+            long startNanos = System.nanoTime();
+            List<Future<?>> largeFutureList = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                largeFutureList.add(executor.submit(() -> {
+                    for (int j = 0; j < iterations; j++) {
+                        parse(handler, largeArchive);
+                    }
+                }));
+            }
+            for (Future<?> oneFuture : largeFutureList) {
+                oneFuture.get();
+            }
+            double wallSeconds = (System.nanoTime() - startNanos) / NANOS_PER_SECOND;
+            largeDone.set(true);
+
+            long[] smallStats = smallFuture.get();
+            return String.format("%.1f large archives/sec, small archive mean latency %.3f ms",
+                    numThreads * iterations / wallSeconds,
+                    smallStats[0] > 0 ? smallStats[1] / NANOS_PER_MILLI / smallStats[0] : 0.0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Parses a copy of the archive, since the handler modifies the unzipped data map.
+    private static void parse(ParseJsonHandler handler, Map<String, byte[]> archive) {
+        UploadValidationContext context = new UploadValidationContext();
+        context.setUnzippedDataMap(new HashMap<>(archive));
+        handler.handle(context);
+    }
+
+    // Makes an archive with info.json, the given number of accelerometer-like JSON entries, and an audio entry.
+    private static Map<String, byte[]> makeArchive(int numEntries, int samplesPerEntry) {
+        Random random = new Random(numEntries);
+        Map<String, byte[]> archive = new HashMap<>();
+        archive.put("info.json", "{\"item\":\"benchmark\",\"files\":[]}".getBytes(Charsets.UTF_8));
+        archive.put("audio_audio.m4a", new byte[] { 0x00, 0x00, 0x00, 0x20, 'f', 't', 'y', 'p', 'M', '4', 'A' });
+
+        for (int i = 0; i < numEntries; i++) {
+            StringBuilder entryBuilder = new StringBuilder("{\"items\":[");
+            for (int j = 0; j < samplesPerEntry; j++) {
+                if (j > 0) {
+                    entryBuilder.append(',');
+                }
+                entryBuilder.append(String.format("{\"timestamp\":%d.%03d,\"x\":%f,\"y\":%f,\"z\":%f}", j, i,
+                        random.nextGaussian(), random.nextGaussian(), random.nextGaussian()));
+            }
+            entryBuilder.append("]}");
+            archive.put(String.format("accel_%04d.json", i), entryBuilder.toString().getBytes(Charsets.UTF_8));
+        }
+        return archive;
+    }
+}
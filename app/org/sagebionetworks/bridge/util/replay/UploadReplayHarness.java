@@ -0,0 +1,249 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.ImmutableList;
+import org.joda.time.LocalDate;
+
+import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
+import org.sagebionetworks.bridge.upload.UploadValidationContext;
+import org.sagebionetworks.bridge.upload.UploadValidationContextKey;
+import org.sagebionetworks.bridge.upload.UploadValidationException;
+import org.sagebionetworks.bridge.upload.UploadValidationHandler;
+import org.sagebionetworks.bridge.upload.UploadValidationStatusNotifier;
+import org.sagebionetworks.bridge.upload.UploadValidationTask;
+import org.sagebionetworks.bridge.upload.UploadValidationTaskFactory;
+
+/**
+ * <p>
+ * Runs uploads through an upload validation handler chain in parallel and measures throughput, per-handler latency
+ * percentiles, and per-handler allocation. Each upload is validated by a real {@link UploadValidationTask}, created by
+ * the {@link UploadValidationTaskFactory}, so handler staging, concurrent stages, and failure handling are the same as
+ * in production. Each handler is wrapped to record its stats.
+ * </p>
+ * <p>
+ * Allocation is measured on the thread that calls the handler, using the HotSpot thread allocation counters. Work that
+ * a handler hands off to other threads (for example, attachment uploads in UploadArtifactsHandler) isn't counted.
+ * </p>
+ */
+public class UploadReplayHarness {
+    private static final String HEALTH_CODE_PREFIX = "replay-";
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+    private static final double BYTES_PER_KB = 1024.0;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private final List<HandlerStats> statsList;
+    private final InMemoryUploadDao uploadDao = new InMemoryUploadDao();
+    private final UploadValidationTaskFactory taskFactory = new UploadValidationTaskFactory();
+    private final int parallelism;
+    private final StudyIdentifier study;
+    private final AtomicInteger successCount = new AtomicInteger();
+    private final AtomicInteger failureCount = new AtomicInteger();
+    private long wallNanos;
+
+    /**
+     * Constructs a replay harness that runs handlers one at a time.
+     *
+     * @see #UploadReplayHarness(StudyIdentifier, List, int, ExecutorService)
+     */
+    public UploadReplayHarness(StudyIdentifier study, List<UploadValidationHandler> handlerList, int parallelism) {
+        this(study, handlerList, parallelism, null);
+    }
+
+    /**
+     * Constructs a replay harness.
+     *
+     * @param study
+     *         study the uploads belong to
+     * @param handlerList
+     *         upload validation handlers, in the order they should be run
+     * @param parallelism
+     *         number of uploads to process at once
+     * @param handlerExecutorService
+     *         executor for running independent handlers concurrently, same as the upload validation task's handler
+     *         executor, or null to run handlers one at a time
+     */
+    public UploadReplayHarness(StudyIdentifier study, List<UploadValidationHandler> handlerList, int parallelism,
+            ExecutorService handlerExecutorService) {
+        this.study = study;
+        this.parallelism = parallelism;
+
+        ImmutableList.Builder<HandlerStats> statsListBuilder = ImmutableList.builder();
+        ImmutableList.Builder<UploadValidationHandler> timedHandlerListBuilder = ImmutableList.builder();
+        for (UploadValidationHandler oneHandler : handlerList) {
+            HandlerStats oneStats = new HandlerStats(oneHandler.getClass().getSimpleName());
+            statsListBuilder.add(oneStats);
+            timedHandlerListBuilder.add(new TimedHandler(oneHandler, oneStats));
+        }
+        this.statsList = statsListBuilder.build();
+
+        taskFactory.setHandlerList(timedHandlerListBuilder.build());
+        taskFactory.setUploadDao(uploadDao);
+        taskFactory.setUploadValidationStatusNotifier(new UploadValidationStatusNotifier());
+        taskFactory.setHandlerExecutorService(handlerExecutorService);
+    }
+
+    /**
+     * Replays the given uploads through the handler chain, blocking until all uploads are done. Upload IDs are also
+     * S3 keys, so the S3 helper used by the handlers must be able to find them.
+     *
+     * @param uploadIdList
+     *         upload IDs to replay
+     * @throws InterruptedException
+     *         if interrupted while waiting for the uploads to finish
+     */
+    public void replay(List<String> uploadIdList) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        long startNanos = System.nanoTime();
+        try {
+            for (String oneUploadId : uploadIdList) {
+                executor.execute(() -> replayUpload(oneUploadId));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        wallNanos += System.nanoTime() - startNanos;
+    }
+
+    // Runs a single upload through a validation task. Each handler records its own stats.
+    private void replayUpload(String uploadId) {
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(uploadId);
+        upload.setFilename(uploadId);
+        upload.setHealthCode(HEALTH_CODE_PREFIX + uploadId);
+        upload.setStatus(UploadStatus.VALIDATION_IN_PROGRESS);
+        upload.setUploadDate(LocalDate.now(BridgeConstants.LOCAL_TIME_ZONE));
+        uploadDao.putUpload(upload);
+
+        UploadValidationTask task = taskFactory.newTask(study, upload);
+        task.run();
+
+        if (task.getValidationStatus() == UploadStatus.SUCCEEDED) {
+            successCount.incrementAndGet();
+        } else {
+            failureCount.incrementAndGet();
+        }
+    }
+
+    /** Per-handler stats, in handler order. */
+    public List<HandlerStats> getHandlerStats() {
+        return statsList;
+    }
+
+    /** Number of uploads that failed validation. */
+    public int getFailureCount() {
+        return failureCount.get();
+    }
+
+    /** Number of uploads that passed validation. */
+    public int getSuccessCount() {
+        return successCount.get();
+    }
+
+    /** Human-readable throughput, latency, and allocation report. */
+    public String getReport() {
+        int uploadCount = successCount.get() + failureCount.get();
+        double wallSeconds = wallNanos / NANOS_PER_SECOND;
+        boolean allocationSupported = getCurrentThreadAllocatedBytes() >= 0;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Replayed %d uploads (%d succeeded, %d failed) in %.2f s with parallelism %d: " +
+                "%.2f uploads/sec%n", uploadCount, successCount.get(), failureCount.get(), wallSeconds, parallelism,
+                wallSeconds > 0 ? uploadCount / wallSeconds : 0.0));
+        report.append(String.format("%-28s %7s %6s %9s %9s %9s %9s %12s %10s%n", "Handler", "Count", "Fail",
+                "p50 ms", "p90 ms", "p99 ms", "max ms", "KB/upload", "MB/sec"));
+
+        long totalAllocatedBytes = 0;
+        for (HandlerStats oneStats : statsList) {
+            int count = oneStats.getCount();
+            long allocatedBytes = oneStats.getAllocatedBytes();
+            totalAllocatedBytes += allocatedBytes;
+
+            String kbPerUpload = "n/a";
+            String mbPerSec = "n/a";
+            if (allocationSupported && count > 0) {
+                kbPerUpload = String.format("%.1f", allocatedBytes / BYTES_PER_KB / count);
+                double handlerSeconds = oneStats.getTotalNanos() / NANOS_PER_SECOND;
+                mbPerSec = String.format("%.1f", handlerSeconds > 0 ? allocatedBytes / BYTES_PER_MB / handlerSeconds :
+                        0.0);
+            }
+
+            report.append(String.format("%-28s %7d %6d %9.2f %9.2f %9.2f %9.2f %12s %10s%n",
+                    oneStats.getHandlerName(), count, oneStats.getFailureCount(),
+                    oneStats.getPercentileNanos(50) / NANOS_PER_MILLI,
+                    oneStats.getPercentileNanos(90) / NANOS_PER_MILLI,
+                    oneStats.getPercentileNanos(99) / NANOS_PER_MILLI,
+                    oneStats.getPercentileNanos(100) / NANOS_PER_MILLI, kbPerUpload, mbPerSec));
+        }
+
+        if (allocationSupported && wallSeconds > 0) {
+            report.append(String.format("Overall allocation rate: %.1f MB/sec%n",
+                    totalAllocatedBytes / BYTES_PER_MB / wallSeconds));
+        }
+        return report.toString();
+    }
+
+    // Wraps a handler to record its latency, allocation, and failures. Read and write keys are passed through, so the
+    // task stages the handlers the same as it would without the wrapper.
+    private static class TimedHandler implements UploadValidationHandler {
+        private final UploadValidationHandler handler;
+        private final HandlerStats stats;
+
+        TimedHandler(UploadValidationHandler handler, HandlerStats stats) {
+            this.handler = handler;
+            this.stats = stats;
+        }
+
+        @Override
+        public Set<UploadValidationContextKey> getReadKeys() {
+            return handler.getReadKeys();
+        }
+
+        @Override
+        public Set<UploadValidationContextKey> getWriteKeys() {
+            return handler.getWriteKeys();
+        }
+
+        @Override
+        public void handle(@Nonnull UploadValidationContext context) throws UploadValidationException {
+            long startAllocatedBytes = getCurrentThreadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            boolean success = false;
+            try {
+                handler.handle(context);
+                success = true;
+            } finally {
+                long latencyNanos = System.nanoTime() - startNanos;
+                long allocatedBytes = startAllocatedBytes < 0 ? -1 :
+                        getCurrentThreadAllocatedBytes() - startAllocatedBytes;
+                stats.record(latencyNanos, allocatedBytes, success);
+            }
+        }
+    }
+
+    // Bytes allocated so far by the current thread, or -1 if this JVM doesn't support thread allocation counters.
+    private static long getCurrentThreadAllocatedBytes() {
+        ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+        if (threadMxBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspotThreadMxBean = (com.sun.management.ThreadMXBean) threadMxBean;
+            if (hotspotThreadMxBean.isThreadAllocatedMemorySupported() &&
+                    hotspotThreadMxBean.isThreadAllocatedMemoryEnabled()) {
+                return hotspotThreadMxBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
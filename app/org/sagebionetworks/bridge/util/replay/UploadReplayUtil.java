@@ -0,0 +1,254 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.crypto.BcCmsEncryptor;
+import org.sagebionetworks.bridge.crypto.CmsEncryptor;
+import org.sagebionetworks.bridge.crypto.PemUtils;
+import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.services.HealthDataService;
+import org.sagebionetworks.bridge.services.ParticipantOptionsService;
+import org.sagebionetworks.bridge.services.StudyService;
+import org.sagebionetworks.bridge.services.SurveyService;
+import org.sagebionetworks.bridge.services.UploadArchiveService;
+import org.sagebionetworks.bridge.services.UploadSchemaService;
+import org.sagebionetworks.bridge.upload.DecryptHandler;
+import org.sagebionetworks.bridge.upload.IosSchemaValidationHandler2;
+import org.sagebionetworks.bridge.upload.ParseJsonHandler;
+import org.sagebionetworks.bridge.upload.S3DownloadHandler;
+import org.sagebionetworks.bridge.upload.StrictValidationHandler;
+import org.sagebionetworks.bridge.upload.TranscribeConsentHandler;
+import org.sagebionetworks.bridge.upload.UnzipHandler;
+import org.sagebionetworks.bridge.upload.UploadArtifactsHandler;
+import org.sagebionetworks.bridge.upload.UploadValidationHandler;
+
+/**
+ * <p>
+ * Offline upload replay utility. This feeds a local directory of encrypted upload archives through the full upload
+ * validation handler chain, using local files in place of S3, in-memory stand-ins in place of DynamoDB, and a local
+ * certificate and private key for decryption. When it's done, it prints throughput, per-handler latency percentiles,
+ * and per-handler allocation rates. This is used to measure upload pipeline changes on a dev machine.
+ * </p>
+ * <p>
+ * Usage: play "run-main org.sagebionetworks.bridge.util.replay.UploadReplayUtil [archive dir] [schema dir]
+ * [cert PEM] [private key PEM] [[parallelism] [[study ID] [[passes]]]]"
+ * </p>
+ * <p>
+ * Each file in the archive dir is one upload, encrypted with the given cert. The schema dir contains one upload schema
+ * per JSON file, in the same format as the upload schema API. If the schema dir has a surveys subdirectory, each JSON
+ * file in it is a survey, in the same format as the survey API. Surveys are loaded as if they were published, so their
+ * schemas are created from their questions. Parallelism defaults to the number of processors, study
+ * ID defaults to "api", and passes defaults to 1. Only the last pass is reported, so use 2 or more passes to warm up
+ * the JVM first. Attachments are written to tmp/replay-attachments.
+ * </p>
+ */
+public class UploadReplayUtil {
+    private static final String DEFAULT_STUDY_ID = "api";
+    private static final String SCHEMA_FILE_SUFFIX = ".json";
+    private static final String SURVEY_DIR_NAME = "surveys";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 4) {
+            System.out.println("Usage: play \"run-main org.sagebionetworks.bridge.util.replay.UploadReplayUtil " +
+                    "[archive dir] [schema dir] [cert PEM] [private key PEM] [[parallelism] [[study ID] [[passes]]]]\"");
+            System.exit(1);
+            return;
+        }
+        File archiveDir = new File(args[0]);
+        File schemaDir = new File(args[1]);
+        File certFile = new File(args[2]);
+        File privKeyFile = new File(args[3]);
+        int parallelism = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        String studyId = args.length > 5 ? args[5] : DEFAULT_STUDY_ID;
+        int passes = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+
+        // Map the upload and attachment buckets to local directories. Attachments go into the source root's tmp
+        // directory, same as BulkDownloadUtil.
+        BridgeConfig config = BridgeConfigFactory.getConfig();
+        File attachmentDir = new File("tmp", "replay-attachments");
+        FileBackedS3Helper s3Helper = new FileBackedS3Helper(ImmutableMap.of(config.getProperty("upload.bucket"),
+                archiveDir, config.getProperty("attachment.bucket"), attachmentDir));
+
+        // Encryptor from the local cert and private key, used for all studies.
+        X509Certificate cert = PemUtils.loadCertificateFromPem(new String(Files.readAllBytes(certFile.toPath()),
+                Charsets.UTF_8));
+        PrivateKey privKey = PemUtils.loadPrivateKeyFromPem(new String(Files.readAllBytes(privKeyFile.toPath()),
+                Charsets.UTF_8));
+        CmsEncryptor encryptor = new BcCmsEncryptor(cert, privKey);
+        LoadingCache<String, CmsEncryptor> encryptorCache = CacheBuilder.newBuilder().build(CacheLoader.from(
+                encryptorStudyId -> encryptor));
+
+        // In-memory DAOs and survey service.
+        StudyIdentifier studyIdentifier = new StudyIdentifierImpl(studyId);
+        InMemoryUploadSchemaDao uploadSchemaDao = new InMemoryUploadSchemaDao();
+        loadSchemas(uploadSchemaDao, studyId, schemaDir);
+        UploadSchemaService uploadSchemaService = new UploadSchemaService();
+        uploadSchemaService.setUploadSchemaDao(uploadSchemaDao);
+        InMemorySurveyService surveyService = new InMemorySurveyService(studyIdentifier, uploadSchemaService);
+        loadSurveys(surveyService, new File(schemaDir, SURVEY_DIR_NAME));
+        InMemoryHealthDataDao healthDataDao = new InMemoryHealthDataDao();
+
+        ExecutorService attachmentExecutorService = Executors.newFixedThreadPool(config.getPropertyAsInt(
+                "upload.artifacts.thread.count"));
+        ExecutorService handlerExecutorService = Executors.newFixedThreadPool(config.getPropertyAsInt(
+                "upload.validation.handler.thread.count"));
+        try {
+            List<UploadValidationHandler> handlerList = createHandlerList(s3Helper, encryptorCache,
+                    uploadSchemaService, surveyService, healthDataDao, attachmentExecutorService);
+
+            // Each file in the archive dir is an upload, and its filename is the upload ID (S3 key).
+            String[] uploadIdArr = archiveDir.list((dir, name) -> new File(dir, name).isFile());
+            if (uploadIdArr == null) {
+                throw new IOException("Can't list archive dir " + archiveDir);
+            }
+            Arrays.sort(uploadIdArr);
+            List<String> uploadIdList = ImmutableList.copyOf(uploadIdArr);
+            System.out.println(String.format("Replaying %d uploads with parallelism %d, %d passes",
+                    uploadIdList.size(), parallelism, passes));
+
+            for (int i = 1; i <= passes; i++) {
+                UploadReplayHarness harness = new UploadReplayHarness(studyIdentifier, handlerList, parallelism,
+                        handlerExecutorService);
+                harness.replay(uploadIdList);
+                System.out.println("Pass " + i + ":");
+                if (i == passes) {
+                    System.out.println(harness.getReport());
+                } else {
+                    System.out.println(String.format("(warm-up) %d succeeded, %d failed", harness.getSuccessCount(),
+                            harness.getFailureCount()));
+                }
+            }
+            System.out.println(healthDataDao.getRecordCount() + " health data records created");
+        } finally {
+            attachmentExecutorService.shutdown();
+            handlerExecutorService.shutdown();
+        }
+    }
+
+    // Loads all upload schemas in the schema dir into the given DAO.
+    private static void loadSchemas(InMemoryUploadSchemaDao uploadSchemaDao, String studyId, File schemaDir)
+            throws IOException {
+        File[] schemaFileArr = schemaDir.listFiles((dir, name) -> name.endsWith(SCHEMA_FILE_SUFFIX));
+        if (schemaFileArr == null) {
+            throw new IOException("Can't list schema dir " + schemaDir);
+        }
+        for (File oneSchemaFile : schemaFileArr) {
+            UploadSchema schema = BridgeObjectMapper.get().readValue(oneSchemaFile, UploadSchema.class);
+            uploadSchemaDao.createOrUpdateUploadSchema(studyId, schema);
+        }
+        System.out.println("Loaded " + schemaFileArr.length + " schemas");
+    }
+
+    // Loads all surveys in the survey dir into the given survey service, which also creates their schemas. The survey
+    // dir is optional. Package-scoped for unit tests.
+    static void loadSurveys(InMemorySurveyService surveyService, File surveyDir) throws IOException {
+        if (!surveyDir.isDirectory()) {
+            return;
+        }
+        File[] surveyFileArr = surveyDir.listFiles((dir, name) -> name.endsWith(SCHEMA_FILE_SUFFIX));
+        if (surveyFileArr == null) {
+            throw new IOException("Can't list survey dir " + surveyDir);
+        }
+        for (File oneSurveyFile : surveyFileArr) {
+            Survey survey = BridgeObjectMapper.get().readValue(oneSurveyFile, Survey.class);
+            surveyService.addSurvey(survey);
+        }
+        System.out.println("Loaded " + surveyFileArr.length + " surveys");
+    }
+
+    // Creates the upload validation handler chain, in the same order as BridgeSpringConfig, wired to the local
+    // stand-ins.
+    private static List<UploadValidationHandler> createHandlerList(FileBackedS3Helper s3Helper,
+            LoadingCache<String, CmsEncryptor> encryptorCache, UploadSchemaService uploadSchemaService,
+            SurveyService surveyService, InMemoryHealthDataDao healthDataDao,
+            ExecutorService attachmentExecutorService) {
+        // services
+        UploadArchiveService uploadArchiveService = new UploadArchiveService();
+        uploadArchiveService.setCmsEncryptorCache(encryptorCache);
+
+        HealthDataService healthDataService = new HealthDataService();
+        healthDataService.setHealthDataDao(healthDataDao);
+        healthDataService.setHealthDataAttachmentDao(new InMemoryHealthDataAttachmentDao());
+
+        // Study and participant option stand-ins. Studies use strict validation, so that the replay covers
+        // StrictValidationHandler.
+        StudyService studyService = new StudyService() {
+            @Override
+            public Study getStudy(String identifier) {
+                DynamoStudy study = new DynamoStudy();
+                study.setIdentifier(identifier);
+                study.setStrictUploadValidationEnabled(true);
+                return study;
+            }
+        };
+        ParticipantOptionsService optionsService = new ParticipantOptionsService() {
+            @Override
+            public ParticipantOptionsLookup getOptions(String healthCode) {
+                return new ParticipantOptionsLookup(ImmutableMap.of());
+            }
+        };
+
+        // handlers
+        S3DownloadHandler s3DownloadHandler = new S3DownloadHandler();
+        s3DownloadHandler.setS3Helper(s3Helper);
+
+        DecryptHandler decryptHandler = new DecryptHandler();
+        decryptHandler.setUploadArchiveService(uploadArchiveService);
+
+        UnzipHandler unzipHandler = new UnzipHandler();
+        unzipHandler.setUploadArchiveService(uploadArchiveService);
+
+        IosSchemaValidationHandler2 iosSchemaValidationHandler2 = new IosSchemaValidationHandler2();
+        iosSchemaValidationHandler2.setHealthDataDao(healthDataDao);
+        iosSchemaValidationHandler2.setSurveyService(surveyService);
+        iosSchemaValidationHandler2.setUploadSchemaService(uploadSchemaService);
+
+        StrictValidationHandler strictValidationHandler = new StrictValidationHandler();
+        strictValidationHandler.setStudyService(studyService);
+        strictValidationHandler.setUploadSchemaService(uploadSchemaService);
+
+        TranscribeConsentHandler transcribeConsentHandler = new TranscribeConsentHandler();
+        transcribeConsentHandler.setOptionsService(optionsService);
+
+        UploadArtifactsHandler uploadArtifactsHandler = new UploadArtifactsHandler();
+        uploadArtifactsHandler.setAttachmentExecutorService(attachmentExecutorService);
+        uploadArtifactsHandler.setHealthDataService(healthDataService);
+        uploadArtifactsHandler.setS3Helper(s3Helper);
+
+        List<UploadValidationHandler> handlerList = new ArrayList<>();
+        handlerList.add(s3DownloadHandler);
+        handlerList.add(decryptHandler);
+        handlerList.add(unzipHandler);
+        handlerList.add(new ParseJsonHandler());
+        handlerList.add(iosSchemaValidationHandler2);
+        handlerList.add(strictValidationHandler);
+        handlerList.add(transcribeConsentHandler);
+        handlerList.add(uploadArtifactsHandler);
+        return handlerList;
+    }
+}
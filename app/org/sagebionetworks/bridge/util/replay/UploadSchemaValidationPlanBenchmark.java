@@ -0,0 +1,169 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadFieldDefinition;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadFieldType;
+import org.sagebionetworks.bridge.upload.UploadSchemaValidationPlan;
+
+/**
+ * <p>
+ * Benchmark for {@link UploadSchemaValidationPlan} on wide schemas, comparing validation with a plan compiled for
+ * every record (what strict validation cost before plans were cached with the schema revision) against validation with
+ * a single cached plan. Schemas mix every upload field type, with a quarter of the fields required and one in ten an
+ * attachment. Records fill in most non-attachment fields with valid values, modeled after large surveys.
+ * </p>
+ * <p>
+ * Usage: play "run-main org.sagebionetworks.bridge.util.replay.UploadSchemaValidationPlanBenchmark [[fields per
+ * schema] [[records] [[iterations]]]]"
+ * </p>
+ * <p>
+ * Defaults are 500 fields per schema, 1000 records, and 20 iterations.
+ * </p>
+ */
+public class UploadSchemaValidationPlanBenchmark {
+    private static final double NANOS_PER_MICRO = 1000.0;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    // Field types in the order they're assigned to fields. Attachments are every 10th field, so they're not listed.
+    private static final UploadFieldType[] NON_ATTACHMENT_TYPES = { UploadFieldType.BOOLEAN,
+            UploadFieldType.CALENDAR_DATE, UploadFieldType.FLOAT, UploadFieldType.INLINE_JSON_BLOB,
+            UploadFieldType.INT, UploadFieldType.STRING, UploadFieldType.TIMESTAMP };
+
+    public static void main(String[] args) {
+        int numFields = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int numRecords = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        List<UploadFieldDefinition> fieldDefList = makeFieldDefList(numFields);
+        Random random = new Random(numFields);
+        List<JsonNode> recordList = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            recordList.add(makeRecord(fieldDefList, random));
+        }
+        Set<String> attachmentFieldNameSet = new HashSet<>();
+        for (UploadFieldDefinition oneFieldDef : fieldDefList) {
+            if (UploadFieldType.ATTACHMENT_TYPE_SET.contains(oneFieldDef.getType())) {
+                attachmentFieldNameSet.add(oneFieldDef.getName());
+            }
+        }
+        System.out.println(String.format("%d fields per schema, %d records, %d iterations", numFields, numRecords,
+                iterations));
+
+        // warm up
+        UploadSchemaValidationPlan cachedPlan = UploadSchemaValidationPlan.compile(fieldDefList);
+        long errorCount = 0;
+        for (int i = 0; i < iterations; i++) {
+            errorCount += validateUncached(fieldDefList, attachmentFieldNameSet, recordList);
+            errorCount += validateCached(cachedPlan, attachmentFieldNameSet, recordList);
+        }
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            UploadSchemaValidationPlan.compile(fieldDefList);
+        }
+        double compileMicros = (System.nanoTime() - startNanos) / NANOS_PER_MICRO / iterations;
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            errorCount += validateUncached(fieldDefList, attachmentFieldNameSet, recordList);
+        }
+        double uncachedMillis = (System.nanoTime() - startNanos) / NANOS_PER_MILLI / iterations;
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            errorCount += validateCached(cachedPlan, attachmentFieldNameSet, recordList);
+        }
+        double cachedMillis = (System.nanoTime() - startNanos) / NANOS_PER_MILLI / iterations;
+
+        // Printing the error count keeps the JIT from throwing away the validation results.
+        System.out.println(String.format("Compile: %.1f us per schema", compileMicros));
+        System.out.println(String.format("Validate %d records: compiled per record %.2f ms, cached plan %.2f ms " +
+                "(%.2fx), %d errors", numRecords, uncachedMillis, cachedMillis, uncachedMillis / cachedMillis,
+                errorCount));
+    }
+
+    // Validates every record with a freshly compiled plan. Returns the number of errors.
+    private static long validateUncached(List<UploadFieldDefinition> fieldDefList,
+            Set<String> attachmentFieldNameSet, List<JsonNode> recordList) {
+        long errorCount = 0;
+        for (JsonNode oneRecord : recordList) {
+            errorCount += UploadSchemaValidationPlan.compile(fieldDefList).validate(attachmentFieldNameSet, oneRecord)
+                    .size();
+        }
+        return errorCount;
+    }
+
+    // Validates every record with the same plan. Returns the number of errors.
+    private static long validateCached(UploadSchemaValidationPlan plan, Set<String> attachmentFieldNameSet,
+            List<JsonNode> recordList) {
+        long errorCount = 0;
+        for (JsonNode oneRecord : recordList) {
+            errorCount += plan.validate(attachmentFieldNameSet, oneRecord).size();
+        }
+        return errorCount;
+    }
+
+    // Every 10th field is an attachment, every 4th field is required, and the rest cycle through the other types.
+    private static List<UploadFieldDefinition> makeFieldDefList(int numFields) {
+        List<UploadFieldDefinition> fieldDefList = new ArrayList<>();
+        for (int i = 0; i < numFields; i++) {
+            UploadFieldType fieldType = i % 10 == 9 ? UploadFieldType.ATTACHMENT_JSON_BLOB :
+                    NON_ATTACHMENT_TYPES[i % NON_ATTACHMENT_TYPES.length];
+            fieldDefList.add(new DynamoUploadFieldDefinition.Builder().withName(String.format("field%04d", i))
+                    .withType(fieldType).withRequired(i % 4 == 0).build());
+        }
+        return fieldDefList;
+    }
+
+    // Fills in about 9 in 10 non-attachment fields with valid values. Missing required fields become errors, like a
+    // real survey with skipped questions.
+    private static JsonNode makeRecord(List<UploadFieldDefinition> fieldDefList, Random random) {
+        ObjectNode record = BridgeObjectMapper.get().createObjectNode();
+        for (UploadFieldDefinition oneFieldDef : fieldDefList) {
+            if (random.nextInt(10) == 0) {
+                continue;
+            }
+
+            String fieldName = oneFieldDef.getName();
+            switch (oneFieldDef.getType()) {
+                case BOOLEAN:
+                    record.put(fieldName, random.nextBoolean());
+                    break;
+                case CALENDAR_DATE:
+                    record.put(fieldName, String.format("2016-%02d-%02d", 1 + random.nextInt(12),
+                            1 + random.nextInt(28)));
+                    break;
+                case FLOAT:
+                    record.put(fieldName, random.nextGaussian());
+                    break;
+                case INLINE_JSON_BLOB:
+                    record.putArray(fieldName).add(random.nextInt(5)).add(random.nextInt(5));
+                    break;
+                case INT:
+                    record.put(fieldName, random.nextInt(100));
+                    break;
+                case STRING:
+                    record.put(fieldName, "answer " + Long.toHexString(random.nextLong()));
+                    break;
+                case TIMESTAMP:
+                    record.put(fieldName, String.format("2016-03-01T10:%02d:%02d-08:00", random.nextInt(60),
+                            random.nextInt(60)));
+                    break;
+                default:
+                    // Attachments aren't in the record JSON.
+                    break;
+            }
+        }
+        return record;
+    }
+}
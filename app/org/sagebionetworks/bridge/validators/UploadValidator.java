@@ -13,6 +13,26 @@ public class UploadValidator implements Validator {
 
     private static final long MAX_UPLOAD_SIZE = 10L * 1000L * 1000L; // 10 MB
 
+    /**
+     * Max size for multipart uploads, which are used for large sensor archives. Validation holds the archive, its
+     * decrypted copy, and its unzipped entries in memory at once, on each of the async worker threads, so this is
+     * sized to a couple of max zip entries (max.zip.entry.size), not to what S3 can take. This is a known limitation:
+     * archives of hundreds of megabytes need validation to stream uploads instead of buffering them.
+     */
+    public static final long MAX_MULTIPART_UPLOAD_SIZE = 50L * 1000L * 1000L; // 50 MB
+
+    private final long maxUploadSize;
+
+    /** Constructs a validator for single-part uploads. This is the constructor used by Spring. */
+    public UploadValidator() {
+        this(MAX_UPLOAD_SIZE);
+    }
+
+    /** Constructs a validator with the given max content length, in bytes. */
+    public UploadValidator(long maxUploadSize) {
+        this.maxUploadSize = maxUploadSize;
+    }
+
     @Override
     public boolean supports(Class<?> clazz) {
         return UploadRequest.class.isAssignableFrom(clazz);
@@ -34,7 +54,7 @@ public class UploadValidator implements Validator {
         if (length <= 0L) {
             errors.rejectValue("contentLength", "Invalid content length. Must be > 0.");
         }
-        if (length > MAX_UPLOAD_SIZE) {
+        if (length > maxUploadSize) {
             errors.rejectValue("contentLength", "Content length is above the allowed maximum.");   
         }
         final String base64md5 = uploadRequest.getContentMd5();
@@ -0,0 +1,95 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Base64;
+import java.util.Random;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+public class CompressedJsonNodeMarshallerTest {
+    private static final CompressedJsonNodeMarshaller MARSHALLER = new CompressedJsonNodeMarshaller(true,
+            CompressedJsonNodeMarshaller.DEFAULT_THRESHOLD_BYTES);
+
+    @Test
+    public void smallJsonIsNotCompressed() {
+        ObjectNode node = BridgeObjectMapper.get().createObjectNode();
+        node.put("foo", "foo value");
+        node.put("bar", 42);
+
+        String marshalled = MARSHALLER.marshall(node);
+        assertEquals("{\"foo\":\"foo value\",\"bar\":42}", marshalled);
+        assertEquals(node, MARSHALLER.unmarshall(JsonNode.class, marshalled));
+    }
+
+    @Test
+    public void largeJsonIsCompressed() {
+        JsonNode node = makeLargeNode();
+        String json = new JsonNodeMarshaller().marshall(node);
+
+        String marshalled = MARSHALLER.marshall(node);
+        assertTrue(marshalled.startsWith(CompressedJsonNodeMarshaller.FORMAT_MARKER_GZIP));
+        assertTrue(marshalled.length() < json.length());
+        assertEquals(node, MARSHALLER.unmarshall(JsonNode.class, marshalled));
+    }
+
+    @Test
+    public void compressionDisabled() {
+        JsonNode node = makeLargeNode();
+        CompressedJsonNodeMarshaller marshaller = new CompressedJsonNodeMarshaller(false,
+                CompressedJsonNodeMarshaller.DEFAULT_THRESHOLD_BYTES);
+        assertEquals(new JsonNodeMarshaller().marshall(node), marshaller.marshall(node));
+    }
+
+    @Test
+    public void incompressibleJsonIsNotCompressed() {
+        // A single string of random base64 doesn't compress enough to make up for the base64 overhead.
+        byte[] randomBytes = new byte[2048];
+        new Random(1234).nextBytes(randomBytes);
+        JsonNode node = BridgeObjectMapper.get().valueToTree(Base64.getEncoder().encodeToString(randomBytes));
+
+        String marshalled = MARSHALLER.marshall(node);
+        assertEquals(new JsonNodeMarshaller().marshall(node), marshalled);
+        assertEquals(node, MARSHALLER.unmarshall(JsonNode.class, marshalled));
+    }
+
+    @Test
+    public void readsPlainJsonWrittenByJsonNodeMarshaller() {
+        // Records written before compression must still read.
+        JsonNode node = makeLargeNode();
+        String plain = new JsonNodeMarshaller().marshall(node);
+        assertEquals(node, MARSHALLER.unmarshall(JsonNode.class, plain));
+    }
+
+    @Test(expected = DynamoDBMappingException.class)
+    public void invalidBase64() {
+        MARSHALLER.unmarshall(JsonNode.class, CompressedJsonNodeMarshaller.FORMAT_MARKER_GZIP + "not base64!");
+    }
+
+    @Test(expected = DynamoDBMappingException.class)
+    public void invalidGzip() {
+        MARSHALLER.unmarshall(JsonNode.class, CompressedJsonNodeMarshaller.FORMAT_MARKER_GZIP + "bm90IGd6aXA=");
+    }
+
+    // Survey-like answers, with lots of repeated keys.
+    private static JsonNode makeLargeNode() {
+        ObjectNode node = BridgeObjectMapper.get().createObjectNode();
+        ArrayNode answerArray = node.putArray("answers");
+        for (int i = 0; i < 50; i++) {
+            ObjectNode answer = answerArray.addObject();
+            answer.put("questionType", 0);
+            answer.put("identifier", "question-" + i);
+            answer.put("startDate", "2016-03-01T10:00:00.000-0800");
+            answer.put("endDate", "2016-03-01T10:00:05.000-0800");
+            answer.putArray("choiceAnswers").add(i % 5);
+        }
+        return node;
+    }
+}
@@ -125,4 +125,20 @@ public class DynamoBackfillDaoTest {
         assertEquals("op3", json.get("operation").asText());
         assertFalse(iterator.hasNext());
     }
+
+    @Test
+    public void testUploadRecord() {
+        BackfillRecord record = backfillDao.createUploadRecord("task1", "study1", "upload1", "op1");
+        JsonNode json = record.toJsonNode();
+        assertEquals("study1", json.get("study").asText());
+        assertEquals("upload1", json.get("upload").asText());
+        assertEquals("op1", json.get("operation").asText());
+
+        // Read it back.
+        Iterator<? extends BackfillRecord> iterator = backfillDao.getRecords("task1");
+        assertTrue(iterator.hasNext());
+        json = iterator.next().toJsonNode();
+        assertEquals("upload1", json.get("upload").asText());
+        assertFalse(iterator.hasNext());
+    }
 }
@@ -0,0 +1,258 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class DynamoBatchWriterTest {
+    private static final String TABLE_NAME = "test-table";
+    private static final List<String> OBJECT_LIST = ImmutableList.of("foo", "bar", "baz");
+
+    private AmazonDynamoDB mockClient;
+    private DynamoDBMapper mockMapper;
+    private DynamoBatchWriter writer;
+
+    @Before
+    public void before() {
+        mockClient = mock(AmazonDynamoDB.class);
+        mockMapper = mock(DynamoDBMapper.class);
+        writer = new DynamoBatchWriter();
+        writer.setDynamoDbClient(mockClient);
+        writer.setRetryBaseDelayMillis(0);
+    }
+
+    @Test
+    public void noFailures() {
+        when(mockMapper.batchSave(OBJECT_LIST)).thenReturn(Collections.emptyList());
+        writer.batchSave(mockMapper, OBJECT_LIST);
+
+        verify(mockMapper).batchSave(OBJECT_LIST);
+        verifyZeroInteractions(mockClient);
+        assertTrue(writer.getAllMetrics().isEmpty());
+    }
+
+    @Test
+    public void retriesOnlyUnprocessedItems() {
+        // The mapper writes "foo", but "bar" and "baz" are throttled. The first retry writes "bar", the second "baz".
+        when(mockMapper.batchSave(OBJECT_LIST)).thenReturn(ImmutableList.of(makeFailedBatch(
+                new ProvisionedThroughputExceededException("throttled"), putRequest("bar"), putRequest("baz"))));
+        when(mockClient.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(
+                new BatchWriteItemResult().withUnprocessedItems(ImmutableMap.of(TABLE_NAME, ImmutableList.of(
+                        putRequest("baz")))),
+                new BatchWriteItemResult().withUnprocessedItems(ImmutableMap.of()));
+
+        writer.batchSave(mockMapper, OBJECT_LIST);
+
+        ArgumentCaptor<BatchWriteItemRequest> requestCaptor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(mockClient, times(2)).batchWriteItem(requestCaptor.capture());
+        List<BatchWriteItemRequest> requestList = requestCaptor.getAllValues();
+        assertEquals(ImmutableList.of(putRequest("bar"), putRequest("baz")), requestList.get(0).getRequestItems()
+                .get(TABLE_NAME));
+        assertEquals(ImmutableList.of(putRequest("baz")), requestList.get(1).getRequestItems().get(TABLE_NAME));
+
+        // Throttled by the mapper's batch and the first retry.
+        DynamoBatchWriter.TableMetrics metrics = writer.getMetrics(TABLE_NAME);
+        assertEquals(2, metrics.getThrottledCount());
+        assertEquals(3, metrics.getRetriedItemCount());
+        assertEquals(0, metrics.getFailedItemCount());
+    }
+
+    @Test
+    public void retriesAfterClientThrottling() {
+        when(mockMapper.batchDelete(OBJECT_LIST)).thenReturn(ImmutableList.of(makeFailedBatch(
+                new ProvisionedThroughputExceededException("throttled"), deleteRequest("foo"))));
+        when(mockClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenThrow(new ProvisionedThroughputExceededException("still throttled"))
+                .thenReturn(new BatchWriteItemResult().withUnprocessedItems(ImmutableMap.of()));
+
+        writer.batchDelete(mockMapper, OBJECT_LIST);
+
+        verify(mockClient, times(2)).batchWriteItem(any(BatchWriteItemRequest.class));
+        assertEquals(2, writer.getMetrics(TABLE_NAME).getThrottledCount());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        when(mockMapper.batchSave(OBJECT_LIST)).thenReturn(ImmutableList.of(makeFailedBatch(
+                new ProvisionedThroughputExceededException("throttled"), putRequest("bar"))));
+        when(mockClient.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(new BatchWriteItemResult()
+                .withUnprocessedItems(ImmutableMap.of(TABLE_NAME, ImmutableList.of(putRequest("bar")))));
+
+        try {
+            writer.batchSave(mockMapper, OBJECT_LIST);
+            fail("expected exception");
+        } catch (BridgeServiceException ex) {
+            assertTrue(ex.getMessage().contains(TABLE_NAME));
+        }
+
+        // The mapper's batch counts as the first attempt.
+        verify(mockClient, times(DynamoBatchWriter.MAX_ATTEMPTS - 1)).batchWriteItem(any(
+                BatchWriteItemRequest.class));
+        DynamoBatchWriter.TableMetrics metrics = writer.getMetrics(TABLE_NAME);
+        assertEquals(DynamoBatchWriter.MAX_ATTEMPTS, metrics.getThrottledCount());
+        assertEquals(DynamoBatchWriter.MAX_ATTEMPTS - 1, metrics.getRetriedItemCount());
+        assertEquals(1, metrics.getFailedItemCount());
+    }
+
+    @Test
+    public void doesNotRetryValidationErrors() {
+        AmazonServiceException validationEx = new AmazonServiceException("bad item");
+        validationEx.setErrorCode("ValidationException");
+        validationEx.setStatusCode(400);
+        when(mockMapper.batchSave(OBJECT_LIST)).thenReturn(ImmutableList.of(makeFailedBatch(validationEx,
+                putRequest("foo"))));
+
+        try {
+            writer.batchSave(mockMapper, OBJECT_LIST);
+            fail("expected exception");
+        } catch (BridgeServiceException ex) {
+            assertTrue(ex.getMessage().contains("bad item"));
+        }
+        verify(mockClient, never()).batchWriteItem(any(BatchWriteItemRequest.class));
+        assertEquals(0, writer.getMetrics(TABLE_NAME).getThrottledCount());
+        assertEquals(1, writer.getMetrics(TABLE_NAME).getFailedItemCount());
+    }
+
+    @Test
+    public void failureWithNoUnprocessedItems() {
+        DynamoDBMapper.FailedBatch failure = new DynamoDBMapper.FailedBatch();
+        failure.setException(new Exception("dummy exception message"));
+        failure.setUnprocessedItems(ImmutableMap.of());
+        when(mockMapper.batchDelete(OBJECT_LIST)).thenReturn(ImmutableList.of(failure));
+
+        try {
+            writer.batchDelete(mockMapper, OBJECT_LIST);
+            fail("expected exception");
+        } catch (BridgeServiceException ex) {
+            assertTrue(ex.getMessage().contains("dummy exception message"));
+        }
+        verifyZeroInteractions(mockClient);
+    }
+
+    @Test
+    public void capsConcurrency() throws Exception {
+        BridgeConfig mockConfig = mock(BridgeConfig.class);
+        when(mockConfig.getPropertyAsInt(DynamoBatchWriter.CONFIG_KEY_MAX_CONCURRENCY)).thenReturn(2);
+        writer.setConfig(mockConfig);
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(mockMapper.batchSave(any(List.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Uninterruptibles.sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+            inFlight.decrementAndGet();
+            return Collections.emptyList();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> futureList = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futureList.add(executor.submit(() -> writer.batchSave(mockMapper, OBJECT_LIST)));
+            }
+            for (Future<?> oneFuture : futureList) {
+                oneFuture.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(maxInFlight.get() <= 2);
+        verify(mockMapper, times(6)).batchSave(any(List.class));
+    }
+
+    @Test
+    public void writesSubBatches() {
+        // 60 objects are written as 3 sub-batches, each its own mapper call.
+        List<String> objectList = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            objectList.add("object-" + i);
+        }
+        List<Integer> batchSizeList = new ArrayList<>();
+        when(mockMapper.batchDelete(any(List.class))).thenAnswer(invocation -> {
+            batchSizeList.add(((List) invocation.getArguments()[0]).size());
+            return Collections.emptyList();
+        });
+
+        writer.batchDelete(mockMapper, objectList);
+        assertEquals(ImmutableList.of(25, 25, 10), batchSizeList);
+    }
+
+    @Test
+    public void getFailuresInsteadOfThrowing() {
+        DynamoDBMapper.FailedBatch failure = new DynamoDBMapper.FailedBatch();
+        failure.setException(new Exception("dummy exception message"));
+        failure.setUnprocessedItems(ImmutableMap.of());
+        when(mockMapper.batchSave(OBJECT_LIST)).thenReturn(ImmutableList.of(failure));
+
+        assertEquals(ImmutableList.of(failure), writer.batchSaveAndGetFailures(mockMapper, OBJECT_LIST));
+    }
+
+    @Test
+    public void metricsForUnknownTable() {
+        DynamoBatchWriter.TableMetrics metrics = writer.getMetrics("unknown-table");
+        assertEquals(0, metrics.getThrottledCount());
+        assertEquals(0, metrics.getRetriedItemCount());
+        assertEquals(0, metrics.getFailedItemCount());
+        assertSame(metrics, writer.getMetrics("unknown-table"));
+    }
+
+    private static DynamoDBMapper.FailedBatch makeFailedBatch(Exception ex, WriteRequest... requests) {
+        Map<String, List<WriteRequest>> unprocessedItems = ImmutableMap.of(TABLE_NAME, ImmutableList.copyOf(
+                requests));
+
+        DynamoDBMapper.FailedBatch failure = new DynamoDBMapper.FailedBatch();
+        failure.setException(ex);
+        failure.setUnprocessedItems(unprocessedItems);
+        return failure;
+    }
+
+    private static WriteRequest putRequest(String id) {
+        return new WriteRequest().withPutRequest(new PutRequest().withItem(ImmutableMap.of("id",
+                new AttributeValue(id))));
+    }
+
+    private static WriteRequest deleteRequest(String id) {
+        return new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(ImmutableMap.of("id",
+                new AttributeValue(id))));
+    }
+}
@@ -1,22 +1,46 @@
 package org.sagebionetworks.bridge.dynamodb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.document.KeyConditions;
+import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 
 @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -37,6 +61,80 @@ public class DynamoHealthDataDaoTest {
         assertEquals(id, arg.getValue().getId());
     }
 
+    @Test
+    public void createRecordWithBatchWriter() {
+        // mock batch writer
+        HealthDataRecordBatchWriter mockBatchWriter = mock(HealthDataRecordBatchWriter.class);
+        when(mockBatchWriter.isEnabled()).thenReturn(true);
+        ArgumentCaptor<DynamoHealthDataRecord> arg = ArgumentCaptor.forClass(DynamoHealthDataRecord.class);
+        when(mockBatchWriter.write(arg.capture())).thenReturn(CompletableFuture.completedFuture(null));
+
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setMapper(mockMapper);
+        dao.setBatchWriter(mockBatchWriter);
+
+        // execute - new records go through the batch writer
+        String id = dao.createOrUpdateRecord(new DynamoHealthDataRecord());
+        assertEquals(id, arg.getValue().getId());
+        verify(mockMapper, never()).save(any());
+    }
+
+    @Test
+    public void createRecordWithPreassignedIdWithBatchWriter() {
+        // mock batch writer
+        HealthDataRecordBatchWriter mockBatchWriter = mock(HealthDataRecordBatchWriter.class);
+        when(mockBatchWriter.isEnabled()).thenReturn(true);
+        when(mockBatchWriter.write(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setMapper(mockMapper);
+        dao.setBatchWriter(mockBatchWriter);
+
+        // execute - upload validation pre-assigns the record ID, but the record has never been saved
+        DynamoHealthDataRecord record = new DynamoHealthDataRecord();
+        record.setId("pre-assigned record");
+        assertEquals("pre-assigned record", dao.createOrUpdateRecord(record));
+        verify(mockBatchWriter).write(record);
+        verify(mockMapper, never()).save(any());
+    }
+
+    @Test
+    public void updateRecordWithBatchWriter() {
+        // mock batch writer
+        HealthDataRecordBatchWriter mockBatchWriter = mock(HealthDataRecordBatchWriter.class);
+        when(mockBatchWriter.isEnabled()).thenReturn(true);
+
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setMapper(mockMapper);
+        dao.setBatchWriter(mockBatchWriter);
+
+        // execute - updates need the version check, so they're saved directly
+        DynamoHealthDataRecord record = new DynamoHealthDataRecord();
+        record.setId("existing record");
+        record.setVersion(2L);
+        assertEquals("existing record", dao.createOrUpdateRecord(record));
+        verify(mockMapper).save(record);
+        verify(mockBatchWriter, never()).write(any());
+    }
+
+    @Test(expected = BridgeServiceException.class)
+    public void createRecordWithBatchWriterFailure() {
+        // mock batch writer
+        CompletableFuture<Void> failedFuture = new CompletableFuture<>();
+        failedFuture.completeExceptionally(new BridgeServiceException("test exception"));
+        HealthDataRecordBatchWriter mockBatchWriter = mock(HealthDataRecordBatchWriter.class);
+        when(mockBatchWriter.isEnabled()).thenReturn(true);
+        when(mockBatchWriter.write(any())).thenReturn(failedFuture);
+
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setMapper(mock(DynamoDBMapper.class));
+        dao.setBatchWriter(mockBatchWriter);
+        dao.createOrUpdateRecord(new DynamoHealthDataRecord());
+    }
+
     @Test
     public void deleteRecordsForHealthCode() {
         // mock mapper
@@ -50,12 +148,12 @@ public class DynamoHealthDataDaoTest {
         record.setId("test ID");
         List<HealthDataRecord> mockResult = Collections.<HealthDataRecord>singletonList(record);
 
-        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
-        when(mockIndex.queryKeys(HealthDataRecord.class, "healthCode", "test health code", null)).thenReturn(mockResult);
+        DynamoIndexHelper mockIndex = mockQueryKeysInPages(mockResult);
 
         // set up and execute
         DynamoHealthDataDao dao = new DynamoHealthDataDao();
         dao.setMapper(mockMapper);
+        dao.setDeleteBatchWriter(new DynamoBatchWriter());
         dao.setHealthCodeIndex(mockIndex);
         int numDeleted = dao.deleteRecordsForHealthCode("test health code");
         assertEquals(1, numDeleted);
@@ -86,12 +184,12 @@ public class DynamoHealthDataDaoTest {
         record.setId("error record");
         List<HealthDataRecord> mockResult = Collections.<HealthDataRecord>singletonList(record);
 
-        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
-        when(mockIndex.queryKeys(HealthDataRecord.class, "healthCode", "test health code", null)).thenReturn(mockResult);
+        DynamoIndexHelper mockIndex = mockQueryKeysInPages(mockResult);
 
         // set up
         DynamoHealthDataDao dao = new DynamoHealthDataDao();
         dao.setMapper(mockMapper);
+        dao.setDeleteBatchWriter(new DynamoBatchWriter());
         dao.setHealthCodeIndex(mockIndex);
 
         // execute and validate exception
@@ -104,13 +202,100 @@ public class DynamoHealthDataDaoTest {
         }
         assertNotNull(thrownEx);
 
-        // validate intermediate results
+        // validate intermediate results - there are no unprocessed items to retry, so we give up right away
+        verify(mockMapper, times(1)).batchDelete(any(List.class));
         List<HealthDataRecord> recordKeyList = arg.getValue();
         assertEquals(1, recordKeyList.size());
         assertEquals("test health code", recordKeyList.get(0).getHealthCode());
         assertEquals("error record", recordKeyList.get(0).getId());
     }
 
+    @Test
+    public void deleteRecordsForHealthCodeConcurrentBatchesWithRetry() {
+        // mock mapper - each batch is throttled, and all of its keys come back unprocessed
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.batchDelete(any(List.class))).thenAnswer(invocation -> {
+            List<HealthDataRecord> batch = (List<HealthDataRecord>) invocation.getArguments()[0];
+            assertTrue(batch.size() <= DynamoHealthDataDao.DELETE_BATCH_SIZE);
+            List<WriteRequest> requestList = new ArrayList<>();
+            for (HealthDataRecord oneRecord : batch) {
+                requestList.add(new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(ImmutableMap.of(
+                        "id", new AttributeValue(oneRecord.getId())))));
+            }
+
+            DynamoDBMapper.FailedBatch failure = new DynamoDBMapper.FailedBatch();
+            failure.setException(new ProvisionedThroughputExceededException("throttled"));
+            failure.setUnprocessedItems(ImmutableMap.of("HealthDataRecord3", requestList));
+            return Collections.singletonList(failure);
+        });
+
+        // mock client - the batch writer's retry deletes the unprocessed keys
+        List<String> deletedIdList = Collections.synchronizedList(new ArrayList<>());
+        AmazonDynamoDB mockClient = mock(AmazonDynamoDB.class);
+        when(mockClient.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(invocation -> {
+            BatchWriteItemRequest request = (BatchWriteItemRequest) invocation.getArguments()[0];
+            for (WriteRequest oneRequest : request.getRequestItems().get("HealthDataRecord3")) {
+                deletedIdList.add(oneRequest.getDeleteRequest().getKey().get("id").getS());
+            }
+            return new BatchWriteItemResult().withUnprocessedItems(ImmutableMap.of());
+        });
+        DynamoBatchWriter deleteBatchWriter = new DynamoBatchWriter();
+        deleteBatchWriter.setDynamoDbClient(mockClient);
+        deleteBatchWriter.setRetryBaseDelayMillis(0);
+
+        // mock index helper - 2 pages of 60 keys
+        List<HealthDataRecord> firstPage = makeRecordKeys(0, 60);
+        List<HealthDataRecord> secondPage = makeRecordKeys(60, 60);
+        DynamoIndexHelper mockIndex = mockQueryKeysInPages(firstPage, secondPage);
+
+        // set up and execute
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            DynamoHealthDataDao dao = new DynamoHealthDataDao();
+            dao.setMapper(mockMapper);
+            dao.setHealthCodeIndex(mockIndex);
+            dao.setDeleteBatchWriter(deleteBatchWriter);
+            dao.setDeleteExecutorService(executorService);
+            assertEquals(120, dao.deleteRecordsForHealthCode("test health code"));
+        } finally {
+            executorService.shutdown();
+        }
+
+        // 3 batches per page, each retried once
+        verify(mockMapper, times(6)).batchDelete(any(List.class));
+        verify(mockClient, times(6)).batchWriteItem(any(BatchWriteItemRequest.class));
+        assertEquals(120, deletedIdList.size());
+        assertEquals(120, new HashSet<>(deletedIdList).size());
+    }
+
+    private static List<HealthDataRecord> makeRecordKeys(int start, int count) {
+        List<HealthDataRecord> recordKeyList = new ArrayList<>();
+        for (int i = start; i < start + count; i++) {
+            DynamoHealthDataRecord record = new DynamoHealthDataRecord();
+            record.setHealthCode("test health code");
+            record.setId("record-" + i);
+            recordKeyList.add(record);
+        }
+        return recordKeyList;
+    }
+
+    // Mocks an index helper that passes the given pages of keys to the page consumer.
+    private static DynamoIndexHelper mockQueryKeysInPages(List<HealthDataRecord>... keyPages) {
+        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
+        when(mockIndex.queryKeysInPages(eq(HealthDataRecord.class), eq("healthCode"), eq("test health code"),
+                (RangeKeyCondition) isNull(), any(Consumer.class))).thenAnswer(invocation -> {
+                    Consumer<List<HealthDataRecord>> pageConsumer =
+                            (Consumer<List<HealthDataRecord>>) invocation.getArguments()[4];
+                    int count = 0;
+                    for (List<HealthDataRecord> oneKeyPage : keyPages) {
+                        pageConsumer.accept(oneKeyPage);
+                        count += oneKeyPage.size();
+                    }
+                    return count;
+                });
+        return mockIndex;
+    }
+
     @Test
     public void getRecordsForUploadDate() {
         // mock index helper
@@ -125,4 +310,81 @@ public class DynamoHealthDataDaoTest {
         List<HealthDataRecord> retVal = dao.getRecordsForUploadDate("2015-02-11");
         assertSame(mockResult, retVal);
     }
+
+    @Test
+    public void getRecordPageForUploadDate() {
+        // mock index helper
+        PagedResourceList<HealthDataRecord> mockPage = new PagedResourceList<>(
+                Collections.<HealthDataRecord>emptyList(), null, 50, 0);
+        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
+        when(mockIndex.<HealthDataRecord>queryPage(HealthDataRecord.class, "uploadDate", "2015-02-11", null,
+                "test offset key", 50)).thenReturn(mockPage);
+
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setUploadDateIndex(mockIndex);
+
+        // execute and validate
+        PagedResourceList<HealthDataRecord> retVal = dao.getRecordsForUploadDate("2015-02-11", "test offset key",
+                50);
+        assertSame(mockPage, retVal);
+    }
+
+    @Test
+    public void streamRecordsForUploadDate() {
+        // mock index helper
+        Consumer<HealthDataRecord> consumer = record -> {};
+        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
+        when(mockIndex.queryStream(HealthDataRecord.class, "uploadDate", "2015-02-11", null, consumer))
+                .thenReturn(42);
+
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setUploadDateIndex(mockIndex);
+
+        // execute and validate
+        assertEquals(42, dao.streamRecordsForUploadDate("2015-02-11", consumer));
+    }
+
+    @Test
+    public void getRecordPageForHealthCodeCreatedOn() {
+        // mock index helper
+        PagedResourceList<HealthDataRecord> mockPage = new PagedResourceList<>(
+                Collections.<HealthDataRecord>emptyList(), null, 50, 0);
+        ArgumentCaptor<RangeKeyCondition> conditionCaptor = ArgumentCaptor.forClass(RangeKeyCondition.class);
+        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
+        when(mockIndex.<HealthDataRecord>queryPage(eq(HealthDataRecord.class), eq("healthCode"),
+                eq("test health code"), conditionCaptor.capture(), eq("test offset key"), eq(50)))
+                .thenReturn(mockPage);
+
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setHealthCodeCreatedOnIndex(mockIndex);
+
+        // execute and validate
+        PagedResourceList<HealthDataRecord> retVal = dao.getRecordsForHealthCodeCreatedOn("test health code", 1000L,
+                2000L, "test offset key", 50);
+        assertSame(mockPage, retVal);
+        validateCreatedOnCondition(conditionCaptor.getValue(), 1000L, 2000L);
+    }
+
+    @Test
+    public void streamRecordsForHealthCodeCreatedOn() {
+        // mock index helper
+        Consumer<HealthDataRecord> consumer = record -> {};
+        ArgumentCaptor<RangeKeyCondition> conditionCaptor = ArgumentCaptor.forClass(RangeKeyCondition.class);
+        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
+        when(mockIndex.queryStream(eq(HealthDataRecord.class), eq("healthCode"), eq("test health code"),
+                conditionCaptor.capture(), same(consumer))).thenReturn(42);
+
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setHealthCodeCreatedOnIndex(mockIndex);
+
+        // execute and validate
+        assertEquals(42, dao.streamRecordsForHealthCodeCreatedOn("test health code", 1000L, 2000L, consumer));
+        validateCreatedOnCondition(conditionCaptor.getValue(), 1000L, 2000L);
+    }
+
+    private static void validateCreatedOnCondition(RangeKeyCondition condition, long start, long end) {
+        assertEquals("createdOn", condition.getAttrName());
+        assertEquals(KeyConditions.BETWEEN, condition.getKeyCondition());
+        assertArrayEquals(new Object[] { start, end }, condition.getValues());
+    }
 }
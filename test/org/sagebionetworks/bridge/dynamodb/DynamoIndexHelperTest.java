@@ -1,25 +1,51 @@
 package org.sagebionetworks.bridge.dynamodb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import javax.annotation.Nonnull;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.Select;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.models.PagedResourceList;
+
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class DynamoIndexHelperTest {
     
@@ -41,6 +67,12 @@ public class DynamoIndexHelperTest {
             this.key = key;
             this.value = value;
         }
+
+        // batch load matches loaded Things to key Things by the table key
+        @DynamoDBHashKey
+        public String getKey() {
+            return key;
+        }
     }
 
     // index.query() can't be mocked, so override queryHelper to sidestep this problem
@@ -66,12 +98,255 @@ public class DynamoIndexHelperTest {
         }
     }
     
+    // Simulates DynamoDB paging over the given keys. The exclusive start key is the last key of the previous page.
+    private static class PagingDynamoIndexHelper extends DynamoIndexHelper {
+        // Stands in for DynamoDB's 1MB page limit when the spec has no page size.
+        private static final int DEFAULT_PAGE_SIZE = 100;
+
+        private final List<String> keyList;
+        private final List<Integer> pageSizeList = new ArrayList<>();
+        private DynamoDBMapper mockMapper;
+
+        PagingDynamoIndexHelper(List<String> keyList) {
+            this.keyList = keyList;
+        }
+
+        @Override
+        protected QueryOutcome queryPageHelper(@Nonnull QuerySpec spec) {
+            assertEquals("test key", spec.getHashKey().getName());
+            assertEquals("test value", spec.getHashKey().getValue());
+
+            int startIdx = 0;
+            if (spec.getExclusiveStartKey() != null) {
+                KeyAttribute startKey = spec.getExclusiveStartKey().iterator().next();
+                assertEquals("key", startKey.getName());
+                startIdx = keyList.indexOf(startKey.getValue()) + 1;
+            }
+            int pageSize = spec.getMaxPageSize() != null ? spec.getMaxPageSize() : DEFAULT_PAGE_SIZE;
+            int endIdx = Math.min(startIdx + pageSize, keyList.size());
+            synchronized (pageSizeList) {
+                pageSizeList.add(spec.getMaxPageSize());
+            }
+
+            QueryResult result;
+            if (Select.COUNT.toString().equals(spec.getSelect())) {
+                result = new QueryResult().withCount(endIdx - startIdx);
+            } else {
+                List<Map<String, AttributeValue>> itemList = new ArrayList<>();
+                for (String oneKey : keyList.subList(startIdx, endIdx)) {
+                    itemList.add(ImmutableMap.of("key", new AttributeValue(oneKey)));
+                }
+                result = new QueryResult().withItems(itemList);
+            }
+            if (endIdx < keyList.size()) {
+                result.withLastEvaluatedKey(ImmutableMap.of("key", new AttributeValue(keyList.get(endIdx - 1))));
+            }
+            return new QueryOutcome(result);
+        }
+
+        @Override
+        protected Iterable<Item> queryHelper(@Nonnull String indexKeyName, @Nonnull Object indexKeyValue,
+                RangeKeyCondition rangeKeyCondition) {
+            assertEquals("test key", indexKeyName);
+            assertEquals("test value", indexKeyValue);
+
+            List<Item> itemList = new ArrayList<>();
+            for (String oneKey : keyList) {
+                itemList.add(new Item().with("key", oneKey));
+            }
+            return itemList;
+        }
+    }
+
+    // The mapper converts index items into key objects using the table class. Things only have a key.
+    private static void mockMarshallIntoObject(DynamoDBMapper mockMapper) {
+        when(mockMapper.marshallIntoObject(eq(Thing.class), any(Map.class))).thenAnswer(invocation -> {
+            Map<String, AttributeValue> item = (Map<String, AttributeValue>) invocation.getArguments()[1];
+            return new Thing(item.get("key").getS());
+        });
+    }
+
+    // Makes a paging index helper over numKeys keys, with a mapper that loads each key as a Thing with a value.
+    private static PagingDynamoIndexHelper makePagingHelper(int numKeys) {
+        List<String> keyList = new ArrayList<>();
+        for (int i = 0; i < numKeys; i++) {
+            keyList.add(String.format("key-%03d", i));
+        }
+        PagingDynamoIndexHelper pagingHelper = new PagingDynamoIndexHelper(keyList);
+        pagingHelper.setTableClass(Thing.class);
+
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        mockMarshallIntoObject(mockMapper);
+        when(mockMapper.batchLoad(any(List.class))).thenAnswer(invocation -> {
+            List<Thing> keyThingList = (List<Thing>) invocation.getArguments()[0];
+            assertTrue(keyThingList.size() <= DynamoIndexHelper.BATCH_LOAD_MAX_SIZE);
+
+            List<Object> loadedList = new ArrayList<>();
+            for (Thing oneKeyThing : keyThingList) {
+                loadedList.add(new Thing(oneKeyThing.key, oneKeyThing.key + " value"));
+            }
+            return ImmutableMap.of("dummy table", loadedList);
+        });
+        pagingHelper.setMapper(mockMapper);
+        pagingHelper.mockMapper = mockMapper;
+        return pagingHelper;
+    }
+
+    @Test
+    public void queryParallelBatchLoad() {
+        PagingDynamoIndexHelper pagingHelper = makePagingHelper(250);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        pagingHelper.setBatchLoadExecutorService(executorService);
+        try {
+            List<Thing> resultList = pagingHelper.query(Thing.class, "test key", "test value", null);
+
+            // Chunks are loaded concurrently, but results are in chunk order.
+            assertEquals(250, resultList.size());
+            for (int i = 0; i < 250; i++) {
+                Thing oneThing = resultList.get(i);
+                assertEquals(String.format("key-%03d", i), oneThing.key);
+                assertEquals(oneThing.key + " value", oneThing.value);
+            }
+
+            // 250 keys is 3 chunks. The mapper asserts that each chunk is at most 100 keys.
+            verify(pagingHelper.mockMapper, times(3)).batchLoad(any(List.class));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void queryBatchLoadResultsInKeyOrder() {
+        // BatchGetItem returns records in any order, split across tables. Simulate that by splitting each chunk in
+        // half and returning each half reversed, second half first. Also drop key-005, as if it were deleted after the
+        // index query.
+        PagingDynamoIndexHelper pagingHelper = makePagingHelper(150);
+        when(pagingHelper.mockMapper.batchLoad(any(List.class))).thenAnswer(invocation -> {
+            List<Thing> keyThingList = (List<Thing>) invocation.getArguments()[0];
+            List<Object> loadedList = new ArrayList<>();
+            for (Thing oneKeyThing : keyThingList) {
+                if (!oneKeyThing.key.equals("key-005")) {
+                    loadedList.add(new Thing(oneKeyThing.key, oneKeyThing.key + " value"));
+                }
+            }
+            int half = loadedList.size() / 2;
+            List<Object> firstHalf = new ArrayList<>(loadedList.subList(0, half));
+            List<Object> secondHalf = new ArrayList<>(loadedList.subList(half, loadedList.size()));
+            Collections.reverse(firstHalf);
+            Collections.reverse(secondHalf);
+            Map<String, List<Object>> resultMap = new LinkedHashMap<>();
+            resultMap.put("second half", secondHalf);
+            resultMap.put("first half", firstHalf);
+            return resultMap;
+        });
+
+        List<Thing> resultList = pagingHelper.query(Thing.class, "test key", "test value", null);
+        List<String> expectedKeyList = new ArrayList<>(pagingHelper.keyList);
+        expectedKeyList.remove("key-005");
+        assertEquals(expectedKeyList.size(), resultList.size());
+        for (int i = 0; i < resultList.size(); i++) {
+            Thing oneThing = resultList.get(i);
+            assertEquals(expectedKeyList.get(i), oneThing.key);
+            assertEquals(oneThing.key + " value", oneThing.value);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void queryParallelBatchLoadFailure() {
+        PagingDynamoIndexHelper pagingHelper = makePagingHelper(250);
+        when(pagingHelper.mockMapper.batchLoad(any(List.class))).thenThrow(new IllegalStateException(
+                "test exception"));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        pagingHelper.setBatchLoadExecutorService(executorService);
+        try {
+            pagingHelper.query(Thing.class, "test key", "test value", null);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void queryStream() {
+        PagingDynamoIndexHelper pagingHelper = makePagingHelper(250);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        pagingHelper.setPrefetchExecutorService(executorService);
+        try {
+            Set<String> keySet = new HashSet<>();
+            int count = pagingHelper.queryStream(Thing.class, "test key", "test value", null, (Thing oneThing) -> {
+                assertEquals(oneThing.key + " value", oneThing.value);
+                keySet.add(oneThing.key);
+            });
+            assertEquals(250, count);
+            assertEquals(250, keySet.size());
+
+            // Index pages are at most the batch load size.
+            assertEquals(ImmutableList.of(100, 100, 100), pagingHelper.pageSizeList);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void queryPage() {
+        PagingDynamoIndexHelper pagingHelper = makePagingHelper(70);
+
+        // Page through everything, 30 at a time. Offset keys are opaque, so just pass them back.
+        Set<String> keySet = new HashSet<>();
+        List<Integer> pageSizeList = new ArrayList<>();
+        String offsetKey = null;
+        do {
+            PagedResourceList<Thing> page = pagingHelper.queryPage(Thing.class, "test key", "test value", null,
+                    offsetKey, 30);
+            assertEquals(30, page.getPageSize());
+            pageSizeList.add(page.getItems().size());
+            for (Thing oneThing : page.getItems()) {
+                assertEquals(oneThing.key + " value", oneThing.value);
+                keySet.add(oneThing.key);
+            }
+            offsetKey = page.getOffsetKey();
+        } while (offsetKey != null);
+
+        assertEquals(ImmutableList.of(30, 30, 10), pageSizeList);
+        assertEquals(70, keySet.size());
+    }
+
+    @Test
+    public void queryPageLastPage() {
+        PagingDynamoIndexHelper pagingHelper = makePagingHelper(10);
+        PagedResourceList<Thing> page = pagingHelper.queryPage(Thing.class, "test key", "test value", null, null,
+                30);
+        assertEquals(10, page.getItems().size());
+        assertNull(page.getOffsetKey());
+    }
+
+    @Test
+    public void queryPageOffsetKey() {
+        PagingDynamoIndexHelper pagingHelper = makePagingHelper(10);
+        PagedResourceList<Thing> page = pagingHelper.queryPage(Thing.class, "test key", "test value", null, null, 5);
+        assertNotNull(page.getOffsetKey());
+
+        // The next page starts after the last key in the first page.
+        page = pagingHelper.queryPage(Thing.class, "test key", "test value", null, page.getOffsetKey(), 5);
+        Set<String> keySet = new HashSet<>();
+        for (Thing oneThing : page.getItems()) {
+            keySet.add(oneThing.key);
+        }
+        assertEquals(ImmutableSet.of("key-005", "key-006", "key-007", "key-008", "key-009"), keySet);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void queryPageInvalidOffsetKey() {
+        makePagingHelper(10).queryPage(Thing.class, "test key", "test value", null, "not an offset key!", 5);
+    }
+
     public void mockResultsOfQuery(RangeKeyCondition condition) {
         // mock index
         List<Item> mockItemList = ImmutableList.of(new Item().with("key", "foo key"),
                 new Item().with("key", "bar key"), new Item().with("key", "asdf key"),
                 new Item().with("key", "jkl; key"));
         helper = new TestDynamoIndexHelper("test key", "test value", condition, mockItemList);
+        helper.setTableClass(Thing.class);
 
         // mock mapper result
         Map<String, List<Object>> mockMapperResultMap = new HashMap<>();
@@ -82,6 +357,7 @@ public class DynamoIndexHelperTest {
 
         // mock mapper
         DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        mockMarshallIntoObject(mockMapper);
         arg = ArgumentCaptor.forClass(List.class);
         when(mockMapper.batchLoad(arg.capture())).thenReturn(mockMapperResultMap);
         helper.setMapper(mockMapper);
@@ -103,27 +379,46 @@ public class DynamoIndexHelperTest {
         // at least in the test context.
         validateKeyObjects(arg.getValue());
 
-        // Validate final results. Because of wonkiness with maps and ordering, we'll convert the Things into a map and
-        // validate the map.
+        // Validate final results. The mapper returns them in a map, but they're put back in index order.
         assertEquals(4, resultList.size());
-        Map<String, String> thingMap = new HashMap<>();
-        for (Thing oneThing : resultList) {
-            thingMap.put(oneThing.key, oneThing.value);
-        }
-
-        assertEquals(4, thingMap.size());
-        assertEquals("foo value", thingMap.get("foo key"));
-        assertEquals("bar value", thingMap.get("bar key"));
-        assertEquals("asdf value", thingMap.get("asdf key"));
-        assertEquals("jkl; value", thingMap.get("jkl; key"));
+        assertEquals("foo key", resultList.get(0).key);
+        assertEquals("foo value", resultList.get(0).value);
+        assertEquals("bar key", resultList.get(1).key);
+        assertEquals("bar value", resultList.get(1).value);
+        assertEquals("asdf key", resultList.get(2).key);
+        assertEquals("asdf value", resultList.get(2).value);
+        assertEquals("jkl; key", resultList.get(3).key);
+        assertEquals("jkl; value", resultList.get(3).value);
     }
     
     @Test
     public void testCount() {
-        mockResultsOfQuery(null);
-        int count = helper.queryKeyCount("test key", "test value", null);
-        // There are two lists of two items each
-        assertEquals(4, count);
+        PagingDynamoIndexHelper pagingHelper = makePagingHelper(250);
+        int count = pagingHelper.queryKeyCount("test key", "test value", null);
+        assertEquals(250, count);
+
+        // Counts are summed across pages, and no items are loaded.
+        assertEquals(3, pagingHelper.pageSizeList.size());
+        verify(pagingHelper.mockMapper, never()).batchLoad(any(List.class));
+    }
+
+    @Test
+    public void queryKeysInPages() {
+        PagingDynamoIndexHelper pagingHelper = makePagingHelper(250);
+        List<Integer> keyPageSizeList = new ArrayList<>();
+        List<String> keyList = new ArrayList<>();
+        int count = pagingHelper.<Thing>queryKeysInPages(Thing.class, "test key", "test value", null, keyPage -> {
+            keyPageSizeList.add(keyPage.size());
+            for (Thing oneThing : keyPage) {
+                keyList.add(oneThing.key);
+            }
+        });
+        assertEquals(250, count);
+        assertEquals(ImmutableList.of(100, 100, 50), keyPageSizeList);
+        assertEquals(pagingHelper.keyList, keyList);
+
+        // Key objects only, no table loads.
+        verify(pagingHelper.mockMapper, never()).batchLoad(any(List.class));
     }
 
     private static void validateKeyObjects(List<Thing> keyList) {
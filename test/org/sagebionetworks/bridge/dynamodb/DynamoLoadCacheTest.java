@@ -0,0 +1,185 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+
+public class DynamoLoadCacheTest {
+    private DynamoDBMapper mockMapper;
+    private DynamoLoadCache cache;
+
+    @Before
+    public void before() {
+        mockMapper = mock(DynamoDBMapper.class);
+        cache = new DynamoLoadCache();
+        cache.setConfig(mockConfig(10));
+    }
+
+    @Test
+    public void notConfiguredPassesThrough() {
+        DynamoHealthCode healthCode = new DynamoHealthCode("test-code", "test-study");
+        when(mockMapper.load(any(DynamoHealthCode.class))).thenReturn(healthCode);
+
+        DynamoLoadCache unconfiguredCache = new DynamoLoadCache();
+        assertFalse(unconfiguredCache.isEnabled(DynamoHealthCode.class));
+        assertSame(healthCode, unconfiguredCache.load(mockMapper, makeHealthCodeKey("test-code")));
+        assertSame(healthCode, unconfiguredCache.load(mockMapper, makeHealthCodeKey("test-code")));
+
+        verify(mockMapper, times(2)).load(any(DynamoHealthCode.class));
+        assertEquals(0, unconfiguredCache.getStats(DynamoHealthCode.class).requestCount());
+        assertTrue(unconfiguredCache.getAllStats().isEmpty());
+    }
+
+    @Test
+    public void classNotListedPassesThrough() {
+        DynamoUploadSchema schema = new DynamoUploadSchema();
+        when(mockMapper.load(any(DynamoUploadSchema.class))).thenReturn(schema);
+
+        assertFalse(cache.isEnabled(DynamoUploadSchema.class));
+        assertSame(schema, cache.load(mockMapper, new DynamoUploadSchema()));
+        assertSame(schema, cache.load(mockMapper, new DynamoUploadSchema()));
+        verify(mockMapper, times(2)).load(any(DynamoUploadSchema.class));
+    }
+
+    @Test
+    public void secondLoadIsHit() {
+        DynamoHealthCode healthCode = new DynamoHealthCode("test-code", "test-study");
+        when(mockMapper.load(any(DynamoHealthCode.class))).thenReturn(healthCode);
+
+        // Different key objects with the same key.
+        assertTrue(cache.isEnabled(DynamoHealthCode.class));
+        assertSame(healthCode, cache.load(mockMapper, makeHealthCodeKey("test-code")));
+        assertSame(healthCode, cache.load(mockMapper, makeHealthCodeKey("test-code")));
+        verify(mockMapper, times(1)).load(any(DynamoHealthCode.class));
+
+        CacheStats stats = cache.getStats(DynamoHealthCode.class);
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(stats, cache.getAllStats().get("DynamoHealthCode"));
+    }
+
+    @Test
+    public void rangeKeyIsPartOfKey() {
+        DynamoStudyConsent1 consent1 = makeConsent(1);
+        DynamoStudyConsent1 consent2 = makeConsent(2);
+        when(mockMapper.load(any(DynamoStudyConsent1.class))).thenReturn(consent1, consent2);
+
+        assertSame(consent1, cache.load(mockMapper, makeConsent(1)));
+        assertSame(consent2, cache.load(mockMapper, makeConsent(2)));
+        assertSame(consent1, cache.load(mockMapper, makeConsent(1)));
+        assertSame(consent2, cache.load(mockMapper, makeConsent(2)));
+        verify(mockMapper, times(2)).load(any(DynamoStudyConsent1.class));
+    }
+
+    @Test
+    public void notFoundIsNotCached() {
+        when(mockMapper.load(any(DynamoHealthCode.class))).thenReturn(null);
+
+        assertNull(cache.load(mockMapper, makeHealthCodeKey("test-code")));
+        assertNull(cache.load(mockMapper, makeHealthCodeKey("test-code")));
+        verify(mockMapper, times(2)).load(any(DynamoHealthCode.class));
+    }
+
+    @Test
+    public void saveInvalidates() {
+        DynamoHealthCode healthCode = new DynamoHealthCode("test-code", "test-study");
+        when(mockMapper.load(any(DynamoHealthCode.class))).thenReturn(healthCode);
+        cache.load(mockMapper, makeHealthCodeKey("test-code"));
+
+        cache.save(mockMapper, healthCode);
+        verify(mockMapper).save(healthCode);
+
+        cache.load(mockMapper, makeHealthCodeKey("test-code"));
+        verify(mockMapper, times(2)).load(any(DynamoHealthCode.class));
+    }
+
+    @Test
+    public void failedSaveInvalidates() {
+        DynamoHealthCode healthCode = new DynamoHealthCode("test-code", "test-study");
+        when(mockMapper.load(any(DynamoHealthCode.class))).thenReturn(healthCode);
+        doThrow(ConditionalCheckFailedException.class).when(mockMapper).save(healthCode);
+        cache.load(mockMapper, makeHealthCodeKey("test-code"));
+
+        try {
+            cache.save(mockMapper, healthCode);
+            fail("expected exception");
+        } catch (ConditionalCheckFailedException ex) {
+            // expected exception
+        }
+
+        cache.load(mockMapper, makeHealthCodeKey("test-code"));
+        verify(mockMapper, times(2)).load(any(DynamoHealthCode.class));
+    }
+
+    @Test
+    public void invalidateOnlyThatKey() {
+        when(mockMapper.load(any(DynamoStudyConsent1.class))).thenReturn(makeConsent(1), makeConsent(2),
+                makeConsent(1));
+        cache.load(mockMapper, makeConsent(1));
+        cache.load(mockMapper, makeConsent(2));
+
+        cache.invalidate(makeConsent(1));
+        cache.load(mockMapper, makeConsent(1));
+        cache.load(mockMapper, makeConsent(2));
+        verify(mockMapper, times(3)).load(any(DynamoStudyConsent1.class));
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        cache.setConfig(mockConfig(1));
+        when(mockMapper.load(any(DynamoHealthCode.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+
+        cache.load(mockMapper, makeHealthCodeKey("code-1"));
+        cache.load(mockMapper, makeHealthCodeKey("code-2"));
+        cache.load(mockMapper, makeHealthCodeKey("code-1"));
+        verify(mockMapper, times(3)).load(any(DynamoHealthCode.class));
+        assertTrue(cache.getStats(DynamoHealthCode.class).evictionCount() >= 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompleteKey() {
+        cache.load(mockMapper, new DynamoHealthCode());
+    }
+
+    // Study consents aren't cached in production, since they change on publish, but they have a range key, so the
+    // tests use them to make sure the range key is part of the cache key.
+    private static BridgeConfig mockConfig(int maxSize) {
+        BridgeConfig mockConfig = mock(BridgeConfig.class);
+        when(mockConfig.getPropertyAsList(DynamoLoadCache.CONFIG_KEY_CLASSES)).thenReturn(ImmutableList.of(
+                "DynamoHealthCode", "DynamoStudyConsent1"));
+        when(mockConfig.getPropertyAsInt(DynamoLoadCache.CONFIG_KEY_MAX_SIZE)).thenReturn(maxSize);
+        when(mockConfig.getPropertyAsInt(DynamoLoadCache.CONFIG_KEY_EXPIRE_MINUTES)).thenReturn(60);
+        return mockConfig;
+    }
+
+    private static DynamoHealthCode makeHealthCodeKey(String code) {
+        DynamoHealthCode key = new DynamoHealthCode();
+        key.setCode(code);
+        return key;
+    }
+
+    private static DynamoStudyConsent1 makeConsent(long createdOn) {
+        DynamoStudyConsent1 consent = new DynamoStudyConsent1();
+        consent.setSubpopulationGuid("test-subpop");
+        consent.setCreatedOn(createdOn);
+        return consent;
+    }
+}
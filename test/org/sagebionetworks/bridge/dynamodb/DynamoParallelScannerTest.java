@@ -0,0 +1,248 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+@SuppressWarnings("unchecked")
+public class DynamoParallelScannerTest {
+    private static final String TABLE_NAME = "test-table";
+
+    private AmazonDynamoDB mockClient;
+    private DynamoDBMapper mockMapper;
+    private ExecutorService executor;
+    private DynamoParallelScanner scanner;
+    private List<ScanRequest> requestList;
+
+    @Before
+    public void before() {
+        mockClient = mock(AmazonDynamoDB.class);
+        requestList = Collections.synchronizedList(new ArrayList<>());
+
+        // Items are converted to their ID.
+        mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.marshallIntoObject(eq(String.class), any(Map.class))).thenAnswer(invocation ->
+                ((Map<String, AttributeValue>) invocation.getArguments()[1]).get("id").getS());
+
+        DynamoNamingHelper mockNamingHelper = mock(DynamoNamingHelper.class);
+        when(mockNamingHelper.getFullyQualifiedTableName(String.class)).thenReturn(TABLE_NAME);
+
+        executor = Executors.newFixedThreadPool(4);
+        scanner = new DynamoParallelScanner();
+        scanner.setConfig(mockConfig(3, 2));
+        scanner.setDynamoDbClient(mockClient);
+        scanner.setDynamoNamingHelper(mockNamingHelper);
+        scanner.setScanExecutorService(executor);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void scansAllSegments() {
+        // Segment 0 has 2 pages, segment 1 has 1 page, and segment 2 is empty.
+        when(mockClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            ScanRequest request = (ScanRequest) invocation.getArguments()[0];
+            requestList.add(request);
+            switch (request.getSegment()) {
+                case 0:
+                    if (request.getExclusiveStartKey() == null) {
+                        return makeResult(ImmutableMap.of("id", new AttributeValue("a2")), "a1", "a2");
+                    }
+                    return makeResult(null, "a3");
+                case 1:
+                    return makeResult(null, "b1", "b2");
+                default:
+                    return makeResult(null);
+            }
+        });
+
+        DynamoDBScanExpression scan = new DynamoDBScanExpression().withFilterConditionEntry("studyKey",
+                new Condition().withComparisonOperator(ComparisonOperator.EQ).withAttributeValueList(
+                        new AttributeValue("test-study")));
+        List<String> resultList = scanner.scanToList(mockMapper, String.class, scan);
+        assertEquals(ImmutableSet.of("a1", "a2", "a3", "b1", "b2"), new HashSet<>(resultList));
+        assertEquals(5, resultList.size());
+
+        // One request per page, each with the table, segment, and filter.
+        assertEquals(4, requestList.size());
+        Set<Integer> segmentSet = new HashSet<>();
+        for (ScanRequest oneRequest : requestList) {
+            assertEquals(TABLE_NAME, oneRequest.getTableName());
+            assertEquals(3, oneRequest.getTotalSegments().intValue());
+            assertEquals(scan.getScanFilter(), oneRequest.getScanFilter());
+            assertEquals(ReturnConsumedCapacity.TOTAL.toString(), oneRequest.getReturnConsumedCapacity());
+            segmentSet.add(oneRequest.getSegment());
+        }
+        assertEquals(ImmutableSet.of(0, 1, 2), segmentSet);
+    }
+
+    @Test
+    public void boundedQueueDeliversEveryPage() {
+        // One segment with more pages than fit in the queue.
+        scanner.setConfig(mockConfig(1, 1));
+        when(mockClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            ScanRequest request = (ScanRequest) invocation.getArguments()[0];
+            int page = request.getExclusiveStartKey() == null ? 0 : Integer.parseInt(request.getExclusiveStartKey()
+                    .get("id").getS());
+            Map<String, AttributeValue> lastKey = page < 9 ? ImmutableMap.of("id", new AttributeValue(String.valueOf(
+                    page + 1))) : null;
+            return makeResult(lastKey, "item-" + page);
+        });
+
+        List<String> resultList = new ArrayList<>();
+        scanner.scan(mockMapper, String.class, new DynamoDBScanExpression(), resultList::add);
+
+        List<String> expectedList = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expectedList.add("item-" + i);
+        }
+        assertEquals(expectedList, resultList);
+    }
+
+    @Test
+    public void segmentErrorIsRethrown() {
+        when(mockClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            ScanRequest request = (ScanRequest) invocation.getArguments()[0];
+            if (request.getSegment() == 1) {
+                throw new IllegalStateException("segment failed");
+            }
+            return makeResult(null, "item-" + request.getSegment());
+        });
+
+        try {
+            scanner.scanToList(mockMapper, String.class, new DynamoDBScanExpression());
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            assertEquals("segment failed", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void segmentErrorIsWrapped() {
+        Error segmentError = new NoClassDefFoundError("segment failed");
+        when(mockClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            ScanRequest request = (ScanRequest) invocation.getArguments()[0];
+            if (request.getSegment() == 1) {
+                throw segmentError;
+            }
+            return makeResult(null, "item-" + request.getSegment());
+        });
+
+        try {
+            scanner.scanToList(mockMapper, String.class, new DynamoDBScanExpression());
+            fail("expected exception");
+        } catch (BridgeServiceException ex) {
+            assertSame(segmentError, ex.getCause());
+        }
+    }
+
+    @Test
+    public void stuckSegmentTimesOut() throws Exception {
+        scanner.setPageTimeoutMillis(100);
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        when(mockClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            ScanRequest request = (ScanRequest) invocation.getArguments()[0];
+            if (request.getSegment() == 1) {
+                releaseLatch.await();
+            }
+            return makeResult(null, "item-" + request.getSegment());
+        });
+
+        try {
+            scanner.scanToList(mockMapper, String.class, new DynamoDBScanExpression());
+            fail("expected exception");
+        } catch (BridgeServiceException ex) {
+            // expected exception
+        } finally {
+            releaseLatch.countDown();
+        }
+    }
+
+    @Test
+    public void consumerErrorAbandonsScan() {
+        // Every segment pages forever, so this only returns if the segments give up.
+        when(mockClient.scan(any(ScanRequest.class))).thenReturn(makeResult(ImmutableMap.of("id",
+                new AttributeValue("next")), "item"));
+
+        RuntimeException thrownEx = null;
+        try {
+            scanner.scan(mockMapper, String.class, new DynamoDBScanExpression(), item -> {
+                throw new IllegalArgumentException("consumer failed");
+            });
+            fail("expected exception");
+        } catch (IllegalArgumentException ex) {
+            thrownEx = ex;
+        }
+        assertEquals("consumer failed", thrownEx.getMessage());
+
+        // The segment threads are freed up for the next scan.
+        AmazonDynamoDB mockClient2 = mock(AmazonDynamoDB.class);
+        when(mockClient2.scan(any(ScanRequest.class))).thenReturn(makeResult(null, "item"));
+        scanner.setDynamoDbClient(mockClient2);
+        assertEquals(3, scanner.scanToList(mockMapper, String.class, new DynamoDBScanExpression()).size());
+    }
+
+    @Test
+    public void missingConsumedCapacity() {
+        ScanResult result = makeResult(null, "item");
+        result.setConsumedCapacity(null);
+        when(mockClient.scan(any(ScanRequest.class))).thenReturn(result);
+
+        assertEquals(3, scanner.scanToList(mockMapper, String.class, new DynamoDBScanExpression()).size());
+    }
+
+    private static BridgeConfig mockConfig(int segmentCount, int queuePages) {
+        BridgeConfig mockConfig = mock(BridgeConfig.class);
+        when(mockConfig.getPropertyAsInt(DynamoParallelScanner.CONFIG_KEY_SEGMENT_COUNT)).thenReturn(segmentCount);
+        when(mockConfig.getPropertyAsInt(DynamoParallelScanner.CONFIG_KEY_QUEUE_PAGES)).thenReturn(queuePages);
+        when(mockConfig.getPropertyAsInt(DynamoParallelScanner.CONFIG_KEY_READ_CAPACITY_PER_SECOND)).thenReturn(
+                1000);
+        return mockConfig;
+    }
+
+    private static ScanResult makeResult(Map<String, AttributeValue> lastKey, String... ids) {
+        List<Map<String, AttributeValue>> itemList = new ArrayList<>();
+        for (String oneId : ids) {
+            itemList.add(ImmutableMap.of("id", new AttributeValue(oneId)));
+        }
+        return new ScanResult().withItems(ImmutableList.copyOf(itemList)).withLastEvaluatedKey(lastKey)
+                .withConsumedCapacity(new ConsumedCapacity().withTableName(TABLE_NAME).withCapacityUnits(0.5));
+    }
+}
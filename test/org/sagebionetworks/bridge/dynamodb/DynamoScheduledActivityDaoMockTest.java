@@ -79,6 +79,7 @@ public class DynamoScheduledActivityDaoMockTest {
         when(mapper.load(any(DynamoScheduledActivity.class))).thenReturn(testSchActivity);
         activityDao = new DynamoScheduledActivityDao();
         activityDao.setDdbMapper(mapper);
+        activityDao.setBatchWriter(new DynamoBatchWriter());
     }
 
     @After
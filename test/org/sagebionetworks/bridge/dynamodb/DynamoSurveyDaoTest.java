@@ -59,6 +59,7 @@ public class DynamoSurveyDaoTest {
 
     private TestSurvey testSurvey;
     private Set<GuidCreatedOnVersionHolderImpl> surveysToDelete;
+    private Set<String> schemaIdsToDelete;
 
     @Before
     public void before() {
@@ -66,6 +67,7 @@ public class DynamoSurveyDaoTest {
         // remove all but two questions to reduce DDB usage.
         testSurvey.setElements(testSurvey.getElements().subList(0, 2));
         surveysToDelete = new HashSet<>();
+        schemaIdsToDelete = new HashSet<>();
     }
 
     @After
@@ -78,6 +80,15 @@ public class DynamoSurveyDaoTest {
                 logger.error(ex.getMessage(), ex);
             }
         }
+
+        // clean up schemas
+        for (String oneSchemaId : schemaIdsToDelete) {
+            try {
+                uploadSchemaDao.deleteUploadSchemaById(TEST_STUDY, oneSchemaId);
+            } catch (Exception ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
     }
 
     // Helper methods to ensure we always record these calls for cleanup
@@ -94,8 +105,12 @@ public class DynamoSurveyDaoTest {
         return versionedSurvey;
     }
     
+    // SurveyService creates the upload schema before publishing, so we do the same here.
     private Survey publishSurvey(StudyIdentifier studyIdentifier, Survey survey) {
-        Survey publishedSurvey = surveyDao.publishSurvey(studyIdentifier, survey);
+        UploadSchema schema = uploadSchemaDao.createUploadSchemaFromSurvey(studyIdentifier,
+                surveyDao.getSurvey(survey));
+        schemaIdsToDelete.add(schema.getSchemaId());
+        Survey publishedSurvey = surveyDao.publishSurvey(survey, schema.getRevision());
         return publishedSurvey;
     }
 
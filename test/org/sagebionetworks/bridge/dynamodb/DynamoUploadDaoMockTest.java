@@ -1,14 +1,17 @@
 package org.sagebionetworks.bridge.dynamodb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -38,7 +41,7 @@ public class DynamoUploadDaoMockTest {
         DynamoUploadDao dao = new DynamoUploadDao();
         dao.setDdbMapper(mockMapper);
         UploadRequest req = createUploadRequest();
-        Upload upload = dao.createUpload(req, "fakeHealthCode");
+        Upload upload = dao.createUpload(req, "fakeHealthCode", null);
 
         // Validate that our mock DDB mapper was called.
         ArgumentCaptor<DynamoUpload2> arg = ArgumentCaptor.forClass(DynamoUpload2.class);
@@ -52,6 +55,45 @@ public class DynamoUploadDaoMockTest {
         assertEquals(req.getName(), arg.getValue().getFilename());
     }
 
+    @Test
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void createUploads() {
+        // mock DDB mapper
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.batchSave(anyList())).thenReturn(ImmutableList.of());
+
+        // execute
+        DynamoUploadDao dao = new DynamoUploadDao();
+        dao.setDdbMapper(mockMapper);
+        dao.setBatchWriter(new DynamoBatchWriter());
+        UploadRequest req = createUploadRequest();
+        List<Upload> uploadList = dao.createUploads(ImmutableList.of(req, req), "fakeHealthCode",
+                Arrays.asList(null, "original-upload"));
+
+        // Validate that our mock DDB mapper was called with both uploads in one batch.
+        ArgumentCaptor<List> arg = ArgumentCaptor.forClass(List.class);
+        verify(mockMapper).batchSave(arg.capture());
+        assertEquals(uploadList, arg.getValue());
+
+        assertEquals(2, uploadList.size());
+        assertNotEquals(uploadList.get(0).getUploadId(), uploadList.get(1).getUploadId());
+        assertNull(uploadList.get(0).getDuplicateUploadId());
+        assertEquals("original-upload", uploadList.get(1).getDuplicateUploadId());
+        for (Upload oneUpload : uploadList) {
+            DynamoUpload2 upload2 = (DynamoUpload2) oneUpload;
+            assertEquals(req.getContentMd5(), upload2.getContentMd5());
+            assertEquals("fakeHealthCode", upload2.getHealthCode());
+            assertEquals(UploadStatus.REQUESTED, upload2.getStatus());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createUploadsMismatchedDupeList() {
+        DynamoUploadDao dao = new DynamoUploadDao();
+        dao.setDdbMapper(mock(DynamoDBMapper.class));
+        dao.createUploads(ImmutableList.of(createUploadRequest()), "fakeHealthCode", ImmutableList.of());
+    }
+
     @Test
     public void getUpload() {
         // mock DDB mapper
@@ -73,7 +73,7 @@ public class DynamoUploadDaoTest {
         UploadRequest uploadRequest = UploadRequest.fromJson(uploadRequestJsonNode);
 
         // create upload
-        DynamoUpload2 upload = (DynamoUpload2) dao.createUpload(uploadRequest, TEST_HEALTH_CODE);
+        DynamoUpload2 upload = (DynamoUpload2) dao.createUpload(uploadRequest, TEST_HEALTH_CODE, null);
         assertUpload(upload);
         assertEquals(UploadStatus.REQUESTED, upload.getStatus());
         assertNotNull(upload.getUploadId());
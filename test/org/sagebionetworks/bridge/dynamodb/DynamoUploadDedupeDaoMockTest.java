@@ -0,0 +1,231 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
+import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.redis.JedisOps;
+import org.sagebionetworks.bridge.redis.JedisTransaction;
+import org.sagebionetworks.bridge.redis.RedisKey;
+
+@SuppressWarnings("unchecked")
+public class DynamoUploadDedupeDaoMockTest {
+    private static final String TEST_HEALTH_CODE = "test-health-code";
+    private static final String TEST_ORIGINAL_UPLOAD_ID = "original-upload";
+    private static final String TEST_UPLOAD_MD5 = "test-md5";
+    private static final DateTime TEST_UPLOAD_REQUESTED_ON = DateTime.parse("2016-02-15T10:26:45-0800");
+    private static final String TEST_REDIS_KEY = RedisKey.UPLOAD_DEDUPE.getRedisKey(TEST_HEALTH_CODE + ":" +
+            TEST_UPLOAD_MD5);
+
+    // 3 refresh intervals of 5 minutes
+    private static final int EXPECTED_REDIS_TTL_SECONDS = 900;
+
+    private DynamoUploadDedupeDao dao;
+    private DynamoDBMapper mockMapper;
+    private DynamoIndexHelper mockIndex;
+    private JedisOps mockJedisOps;
+
+    @Before
+    public void setup() {
+        // The filter loads dates relative to now.
+        DateTimeUtils.setCurrentMillisFixed(TEST_UPLOAD_REQUESTED_ON.getMillis());
+
+        BridgeConfig mockConfig = mock(BridgeConfig.class);
+        when(mockConfig.getPropertyAsInt(DynamoUploadDedupeDao.CONFIG_KEY_FILTER_EXPECTED_UPLOADS_PER_DAY))
+                .thenReturn(1000);
+        when(mockConfig.getProperty(DynamoUploadDedupeDao.CONFIG_KEY_FILTER_FALSE_POSITIVE_RATE)).thenReturn(
+                "0.001");
+        when(mockConfig.getPropertyAsInt(DynamoUploadDedupeDao.CONFIG_KEY_FILTER_REFRESH_MINUTES)).thenReturn(5);
+
+        mockMapper = mock(DynamoDBMapper.class);
+        mockIndex = mock(DynamoIndexHelper.class);
+        when(mockIndex.queryKeys(eq(DynamoUploadDedupe.class), eq(
+                DynamoUploadDedupeDao.INDEX_KEY_UPLOAD_REQUESTED_DATE), anyString(), any())).thenReturn(
+                ImmutableList.of());
+
+        // Nothing registered recently, unless a test says otherwise.
+        mockJedisOps = mock(JedisOps.class);
+
+        dao = new DynamoUploadDedupeDao();
+        dao.setConfig(mockConfig);
+        dao.setMapper(mockMapper);
+        dao.setBatchWriter(new DynamoBatchWriter());
+        dao.setRequestedOnIndex(mockIndex);
+        dao.setJedisOps(mockJedisOps);
+    }
+
+    @After
+    public void cleanup() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void notLoadedQueries() {
+        // Filter isn't loaded, so we fall back to the query.
+        mockQuery(ImmutableList.of());
+        assertNull(dao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON));
+        verify(mockMapper).query(eq(DynamoUploadDedupe.class), any(DynamoDBQueryExpression.class));
+    }
+
+    @Test
+    public void definitelyNotSeenSkipsQuery() {
+        dao.refreshFilter();
+        assertNull(dao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON));
+        verify(mockJedisOps).get(TEST_REDIS_KEY);
+        verify(mockMapper, never()).query(eq(DynamoUploadDedupe.class), any(DynamoDBQueryExpression.class));
+    }
+
+    @Test
+    public void loadedFromIndexQueries() {
+        // Upload was registered (by another node) 2 days ago.
+        DynamoUploadDedupe dedupeKey = new DynamoUploadDedupe();
+        dedupeKey.setHealthCode(TEST_HEALTH_CODE);
+        dedupeKey.setUploadMd5(TEST_UPLOAD_MD5);
+        when(mockIndex.queryKeys(DynamoUploadDedupe.class, DynamoUploadDedupeDao.INDEX_KEY_UPLOAD_REQUESTED_DATE,
+                "2016-02-13", null)).thenReturn(ImmutableList.of(dedupeKey));
+        dao.refreshFilter();
+
+        mockQuery(ImmutableList.of(makeDedupe()));
+        assertEquals(TEST_ORIGINAL_UPLOAD_ID, dao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5,
+                TEST_UPLOAD_REQUESTED_ON));
+    }
+
+    @Test
+    public void registeredOnOtherNodeSinceRefreshQueries() {
+        // Another node registered the upload after our last refresh. Only Redis knows about it.
+        dao.refreshFilter();
+        when(mockJedisOps.get(TEST_REDIS_KEY)).thenReturn(TEST_ORIGINAL_UPLOAD_ID);
+
+        mockQuery(ImmutableList.of(makeDedupe()));
+        assertEquals(TEST_ORIGINAL_UPLOAD_ID, dao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5,
+                TEST_UPLOAD_REQUESTED_ON.plusMinutes(1)));
+    }
+
+    @Test
+    public void redisErrorQueries() {
+        dao.refreshFilter();
+        when(mockJedisOps.get(TEST_REDIS_KEY)).thenThrow(RuntimeException.class);
+
+        mockQuery(ImmutableList.of());
+        assertNull(dao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON));
+        verify(mockMapper).query(eq(DynamoUploadDedupe.class), any(DynamoDBQueryExpression.class));
+    }
+
+    @Test
+    public void staleFilterQueries() {
+        // The filter hasn't been refreshed in more than 2 refresh intervals, so Redis may no longer cover the gap.
+        dao.refreshFilter();
+        DateTimeUtils.setCurrentMillisFixed(TEST_UPLOAD_REQUESTED_ON.plusMinutes(11).getMillis());
+
+        mockQuery(ImmutableList.of());
+        assertNull(dao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON.plusMinutes(11)));
+        verify(mockMapper).query(eq(DynamoUploadDedupe.class), any(DynamoDBQueryExpression.class));
+    }
+
+    @Test
+    public void refreshOnlyLoadsNewUploads() {
+        // First refresh loads every date in the window.
+        dao.refreshFilter();
+        for (int i = 0; i <= 7; i++) {
+            verify(mockIndex).queryKeys(DynamoUploadDedupe.class,
+                    DynamoUploadDedupeDao.INDEX_KEY_UPLOAD_REQUESTED_DATE,
+                    TEST_UPLOAD_REQUESTED_ON.minusDays(i).toLocalDate().toString(), null);
+        }
+
+        // Second refresh only loads today, from just before the first refresh.
+        DateTimeUtils.setCurrentMillisFixed(TEST_UPLOAD_REQUESTED_ON.plusMinutes(5).getMillis());
+        dao.refreshFilter();
+
+        ArgumentCaptor<RangeKeyCondition> conditionCaptor = ArgumentCaptor.forClass(RangeKeyCondition.class);
+        verify(mockIndex, times(2)).queryKeys(eq(DynamoUploadDedupe.class), eq(
+                DynamoUploadDedupeDao.INDEX_KEY_UPLOAD_REQUESTED_DATE), eq("2016-02-15"), conditionCaptor.capture());
+        RangeKeyCondition condition = conditionCaptor.getAllValues().stream().filter(oneCondition ->
+                oneCondition != null).findFirst().get();
+        assertEquals(DynamoUploadDedupeDao.INDEX_KEY_UPLOAD_REQUESTED_ON, condition.getAttrName());
+        assertEquals(TEST_UPLOAD_REQUESTED_ON.minusMinutes(1).getMillis(), condition.getValues()[0]);
+
+        // No other date was queried again.
+        verify(mockIndex, never()).queryKeys(eq(DynamoUploadDedupe.class), anyString(), eq("2016-02-14"),
+                isA(RangeKeyCondition.class));
+    }
+
+    @Test
+    public void registerAddsToFilterAndRedis() {
+        dao.refreshFilter();
+        dao.registerUpload(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON, TEST_ORIGINAL_UPLOAD_ID);
+        verify(mockJedisOps).setex(TEST_REDIS_KEY, EXPECTED_REDIS_TTL_SECONDS, TEST_ORIGINAL_UPLOAD_ID);
+
+        mockQuery(ImmutableList.of(makeDedupe()));
+        assertEquals(TEST_ORIGINAL_UPLOAD_ID, dao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5,
+                TEST_UPLOAD_REQUESTED_ON.plusHours(1)));
+    }
+
+    @Test
+    public void registerUploadsAddsToRedis() {
+        JedisTransaction mockTransaction = mock(JedisTransaction.class);
+        when(mockTransaction.setex(anyString(), anyInt(), anyString())).thenReturn(mockTransaction);
+        when(mockJedisOps.getTransaction()).thenReturn(mockTransaction);
+
+        when(mockMapper.batchSave(any(List.class))).thenReturn(ImmutableList.of());
+        dao.registerUploads(TEST_HEALTH_CODE, ImmutableMap.of(TEST_UPLOAD_MD5, TEST_ORIGINAL_UPLOAD_ID),
+                TEST_UPLOAD_REQUESTED_ON);
+
+        verify(mockTransaction).setex(TEST_REDIS_KEY, EXPECTED_REDIS_TTL_SECONDS, TEST_ORIGINAL_UPLOAD_ID);
+        verify(mockTransaction).exec();
+    }
+
+    @Test
+    public void refreshErrorDoesNotThrow() {
+        when(mockIndex.queryKeys(eq(DynamoUploadDedupe.class), anyString(), anyString(), any())).thenThrow(
+                RuntimeException.class);
+        dao.refreshFilter();
+
+        // Falls back to the query.
+        mockQuery(ImmutableList.of());
+        assertNull(dao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON));
+        verify(mockMapper).query(eq(DynamoUploadDedupe.class), any(DynamoDBQueryExpression.class));
+    }
+
+    private void mockQuery(List<DynamoUploadDedupe> resultList) {
+        PaginatedQueryList<DynamoUploadDedupe> mockResultList = mock(PaginatedQueryList.class);
+        when(mockResultList.isEmpty()).thenReturn(resultList.isEmpty());
+        if (!resultList.isEmpty()) {
+            when(mockResultList.get(0)).thenReturn(resultList.get(0));
+        }
+        when(mockMapper.query(eq(DynamoUploadDedupe.class), any(DynamoDBQueryExpression.class))).thenReturn(
+                mockResultList);
+    }
+
+    private static DynamoUploadDedupe makeDedupe() {
+        DynamoUploadDedupe dedupe = new DynamoUploadDedupe();
+        dedupe.setHealthCode(TEST_HEALTH_CODE);
+        dedupe.setUploadMd5(TEST_UPLOAD_MD5);
+        dedupe.setOriginalUploadId(TEST_ORIGINAL_UPLOAD_ID);
+        return dedupe;
+    }
+}
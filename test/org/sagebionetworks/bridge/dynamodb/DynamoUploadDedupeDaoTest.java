@@ -3,9 +3,12 @@ package org.sagebionetworks.bridge.dynamodb;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
+import java.util.Map;
 import javax.annotation.Resource;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.joda.time.DateTime;
 import org.junit.After;
 import org.junit.Before;
@@ -53,6 +56,13 @@ public class DynamoUploadDedupeDaoTest {
         assertEquals(TEST_ORIGINAL_UPLOAD_ID, originalUploadId);
     }
 
+    @Test
+    public void getDuplicates() {
+        Map<String, String> originalUploadIdsByMd5 = dao.getDuplicates(TEST_HEALTHCODE, ImmutableSet.of(
+                TEST_UPLOAD_MD5, "different-md5"), TEST_UPLOAD_REQUESTED_ON.plusDays(1));
+        assertEquals(ImmutableMap.of(TEST_UPLOAD_MD5, TEST_ORIGINAL_UPLOAD_ID), originalUploadIdsByMd5);
+    }
+
     @Test
     public void differentHealthCode() {
         String originalUploadId = dao.getDuplicate("different-healthcode", TEST_UPLOAD_MD5,
@@ -561,17 +561,20 @@ public class DynamoUploadSchemaDaoMockTest {
         // mock DDB mapper
         DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
 
+        List<DynamoUploadSchema> schemaList = ImmutableList.of(makeUploadSchema("test-study", "delete-schema", 1));
         PaginatedQueryList<DynamoUploadSchema> mockQueryResult = mock(PaginatedQueryList.class);
         when(mockQueryResult.isEmpty()).thenReturn(false);
+        when(mockQueryResult.iterator()).thenReturn(schemaList.iterator());
 
         ArgumentCaptor<DynamoDBQueryExpression> queryCaptor = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
         when(mockMapper.query(eq(DynamoUploadSchema.class), queryCaptor.capture())).thenReturn(mockQueryResult);
 
-        when(mockMapper.batchDelete(mockQueryResult)).thenReturn(ImmutableList.<DynamoDBMapper.FailedBatch>of());
+        when(mockMapper.batchDelete(schemaList)).thenReturn(ImmutableList.<DynamoDBMapper.FailedBatch>of());
 
         // set up test dao and execute
         DynamoUploadSchemaDao dao = new DynamoUploadSchemaDao();
         dao.setDdbMapper(mockMapper);
+        dao.setBatchWriter(new DynamoBatchWriter());
         dao.deleteUploadSchemaById(new StudyIdentifierImpl("test-study"), "delete-schema");
 
         // validate intermediate args
@@ -579,6 +582,9 @@ public class DynamoUploadSchemaDaoMockTest {
         DynamoUploadSchema queryKey = query.getHashKeyValues();
         assertEquals("test-study", queryKey.getStudyId());
         assertEquals("delete-schema", queryKey.getSchemaId());
+
+        // The batch writer deletes the schemas it iterated from the query results.
+        verify(mockMapper).batchDelete(schemaList);
     }
 
     @Test
@@ -622,17 +628,20 @@ public class DynamoUploadSchemaDaoMockTest {
         // mock DDB mapper
         DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
 
+        List<DynamoUploadSchema> schemaList = ImmutableList.of(makeUploadSchema("test-study", "delete-schema", 1));
         PaginatedQueryList<DynamoUploadSchema> mockQueryResult = mock(PaginatedQueryList.class);
         when(mockQueryResult.isEmpty()).thenReturn(false);
+        when(mockQueryResult.iterator()).thenReturn(schemaList.iterator());
 
         ArgumentCaptor<DynamoDBQueryExpression> queryCaptor = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
         when(mockMapper.query(eq(DynamoUploadSchema.class), queryCaptor.capture())).thenReturn(mockQueryResult);
 
-        when(mockMapper.batchDelete(mockQueryResult)).thenReturn(ImmutableList.of(failure));
+        when(mockMapper.batchDelete(schemaList)).thenReturn(ImmutableList.of(failure));
 
         // set up test dao and execute
         DynamoUploadSchemaDao dao = new DynamoUploadSchemaDao();
         dao.setDdbMapper(mockMapper);
+        dao.setBatchWriter(new DynamoBatchWriter());
         Exception thrownEx = null;
         try {
             dao.deleteUploadSchemaById(new StudyIdentifierImpl("test-study"), "delete-schema");
@@ -0,0 +1,232 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class HealthDataRecordBatchWriterTest {
+    private static final String TABLE_NAME = "HealthDataRecord3";
+
+    private AmazonDynamoDB mockClient;
+    private DynamoDBMapper mockMapper;
+    private HealthDataRecordBatchWriter writer;
+
+    @Before
+    public void before() {
+        mockClient = mock(AmazonDynamoDB.class);
+        DynamoBatchWriter dynamoBatchWriter = new DynamoBatchWriter();
+        dynamoBatchWriter.setDynamoDbClient(mockClient);
+        dynamoBatchWriter.setRetryBaseDelayMillis(0);
+
+        mockMapper = mock(DynamoDBMapper.class);
+        writer = new HealthDataRecordBatchWriter();
+        writer.setConfig(mockConfig(true, 200));
+        writer.setDynamoBatchWriter(dynamoBatchWriter);
+        writer.setMapper(mockMapper);
+    }
+
+    @After
+    public void after() {
+        writer.stop();
+    }
+
+    @Test
+    public void disabled() {
+        writer.setConfig(mockConfig(false, 200));
+        writer.start();
+        assertFalse(writer.isEnabled());
+    }
+
+    @Test
+    public void coalescesConcurrentWrites() throws Exception {
+        List<List<String>> batchIdList = Collections.synchronizedList(new ArrayList<>());
+        when(mockMapper.batchSave(any(List.class))).thenAnswer(invocation -> {
+            List<DynamoHealthDataRecord> recordList = (List<DynamoHealthDataRecord>) invocation.getArguments()[0];
+            List<String> idList = new ArrayList<>();
+            for (DynamoHealthDataRecord oneRecord : recordList) {
+                assertEquals(1L, oneRecord.getVersion().longValue());
+                idList.add(oneRecord.getId());
+            }
+            batchIdList.add(idList);
+            return Collections.emptyList();
+        });
+
+        // 30 records arrive well within the linger window.
+        writer.start();
+        assertTrue(writer.isEnabled());
+        List<CompletableFuture<Void>> futureList = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            futureList.add(writer.write(makeRecord("record-" + i)));
+        }
+        for (CompletableFuture<Void> oneFuture : futureList) {
+            oneFuture.get(5, TimeUnit.SECONDS);
+        }
+
+        // A full batch, and the rest once the linger window passes.
+        assertEquals(2, batchIdList.size());
+        assertEquals(HealthDataRecordBatchWriter.BATCH_SIZE, batchIdList.get(0).size());
+        assertEquals(5, batchIdList.get(1).size());
+    }
+
+    @Test
+    public void collectBatchStopsAtBatchSize() throws Exception {
+        // Not started, so records stay queued until we collect them.
+        writer.setConfig(mockConfig(true, 0));
+        for (int i = 0; i < 30; i++) {
+            writer.write(makeRecord("record-" + i));
+        }
+        assertEquals(HealthDataRecordBatchWriter.BATCH_SIZE, writer.collectBatch().size());
+        assertEquals(5, writer.collectBatch().size());
+    }
+
+    @Test
+    public void retriesUnprocessedItems() throws Exception {
+        // The mapper leaves record-1 unprocessed. The batch writer's retry writes it.
+        when(mockMapper.batchSave(any(List.class))).thenReturn(ImmutableList.of(makeFailedBatch("record-1")));
+        when(mockClient.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(new BatchWriteItemResult()
+                .withUnprocessedItems(ImmutableMap.of()));
+
+        HealthDataRecordBatchWriter.PendingWrite write0 = new HealthDataRecordBatchWriter.PendingWrite(
+                makeRecord("record-0"));
+        HealthDataRecordBatchWriter.PendingWrite write1 = new HealthDataRecordBatchWriter.PendingWrite(
+                makeRecord("record-1"));
+        writer.writeBatch(ImmutableList.of(write0, write1));
+
+        write0.future.get();
+        write1.future.get();
+
+        // The retry only has the unprocessed record.
+        verify(mockMapper, times(1)).batchSave(any(List.class));
+        ArgumentCaptor<BatchWriteItemRequest> requestCaptor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(mockClient).batchWriteItem(requestCaptor.capture());
+        assertEquals(1, requestCaptor.getValue().getRequestItems().get(TABLE_NAME).size());
+    }
+
+    @Test
+    public void failsAfterMaxAttempts() throws Exception {
+        when(mockMapper.batchSave(any(List.class))).thenReturn(ImmutableList.of(makeFailedBatch("record-1")));
+        when(mockClient.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(new BatchWriteItemResult()
+                .withUnprocessedItems(makeFailedBatch("record-1").getUnprocessedItems()));
+
+        HealthDataRecordBatchWriter.PendingWrite write0 = new HealthDataRecordBatchWriter.PendingWrite(
+                makeRecord("record-0"));
+        HealthDataRecordBatchWriter.PendingWrite write1 = new HealthDataRecordBatchWriter.PendingWrite(
+                makeRecord("record-1"));
+        writer.writeBatch(ImmutableList.of(write0, write1));
+
+        // record-0 still succeeds on its own.
+        write0.future.get();
+        try {
+            write1.future.get();
+            fail("expected exception");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof BridgeServiceException);
+        }
+
+        // The mapper's batch counts as the first attempt.
+        verify(mockMapper, times(1)).batchSave(any(List.class));
+        verify(mockClient, times(DynamoBatchWriter.MAX_ATTEMPTS - 1)).batchWriteItem(any(
+                BatchWriteItemRequest.class));
+    }
+
+    @Test
+    public void failsWholeBatchOnException() throws Exception {
+        // We don't know what was written, so every record fails.
+        when(mockMapper.batchSave(any(List.class))).thenThrow(new RuntimeException("mapping error"));
+
+        HealthDataRecordBatchWriter.PendingWrite write0 = new HealthDataRecordBatchWriter.PendingWrite(
+                makeRecord("record-0"));
+        HealthDataRecordBatchWriter.PendingWrite write1 = new HealthDataRecordBatchWriter.PendingWrite(
+                makeRecord("record-1"));
+        writer.writeBatch(ImmutableList.of(write0, write1));
+
+        for (HealthDataRecordBatchWriter.PendingWrite onePendingWrite : ImmutableList.of(write0, write1)) {
+            try {
+                onePendingWrite.future.get();
+                fail("expected exception");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause().getMessage().contains("mapping error"));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsExistingRecords() {
+        DynamoHealthDataRecord record = makeRecord("existing-record");
+        record.setVersion(3L);
+        writer.write(record);
+    }
+
+    @Test
+    public void stopWritesQueuedRecords() throws Exception {
+        when(mockMapper.batchSave(any(List.class))).thenReturn(Collections.emptyList());
+
+        // Not started, so nothing collects the record until stop().
+        CompletableFuture<Void> future = writer.write(makeRecord("record-0"));
+        assertFalse(future.isDone());
+        writer.stop();
+        future.get(5, TimeUnit.SECONDS);
+    }
+
+    private static BridgeConfig mockConfig(boolean enabled, int lingerMillis) {
+        BridgeConfig mockConfig = mock(BridgeConfig.class);
+        when(mockConfig.getProperty(HealthDataRecordBatchWriter.CONFIG_KEY_ENABLED))
+                .thenReturn(String.valueOf(enabled));
+        when(mockConfig.getPropertyAsInt(HealthDataRecordBatchWriter.CONFIG_KEY_LINGER_MILLIS))
+                .thenReturn(lingerMillis);
+        when(mockConfig.getPropertyAsInt(HealthDataRecordBatchWriter.CONFIG_KEY_THREAD_COUNT)).thenReturn(2);
+        return mockConfig;
+    }
+
+    private static DynamoHealthDataRecord makeRecord(String id) {
+        DynamoHealthDataRecord record = new DynamoHealthDataRecord();
+        record.setId(id);
+        record.setHealthCode("test health code");
+        return record;
+    }
+
+    private static DynamoDBMapper.FailedBatch makeFailedBatch(String unprocessedId) {
+        Map<String, List<WriteRequest>> unprocessedItems = new HashMap<>();
+        unprocessedItems.put(TABLE_NAME, ImmutableList.of(new WriteRequest().withPutRequest(
+                new PutRequest().withItem(ImmutableMap.of("id", new AttributeValue(unprocessedId))))));
+
+        DynamoDBMapper.FailedBatch failure = new DynamoDBMapper.FailedBatch();
+        failure.setException(new ProvisionedThroughputExceededException("throttled"));
+        failure.setUnprocessedItems(unprocessedItems);
+        return failure;
+    }
+}
@@ -0,0 +1,78 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UploadDedupeFilterTest {
+    private static final LocalDate START_DATE = LocalDate.parse("2016-02-10");
+    private static final LocalDate END_DATE = LocalDate.parse("2016-02-17");
+    private static final long LOADED_AS_OF_MILLIS = 1455560805000L;
+
+    private UploadDedupeFilter filter;
+
+    @Before
+    public void setup() {
+        filter = new UploadDedupeFilter(1000, 0.001);
+    }
+
+    @Test
+    public void unloadedDatesMightContain() {
+        // Nothing is loaded, so we can't rule anything out.
+        assertTrue(filter.mightContain("health-code", "md5", START_DATE, END_DATE, 0));
+
+        // Putting an upload doesn't make the date loaded.
+        filter.put("other-health-code", "other-md5", START_DATE);
+        assertTrue(filter.mightContain("health-code", "md5", START_DATE, START_DATE, 0));
+    }
+
+    @Test
+    public void loadedDates() {
+        markAllLoaded();
+        filter.put("health-code", "md5", START_DATE.plusDays(3));
+
+        assertTrue(filter.mightContain("health-code", "md5", START_DATE, END_DATE, LOADED_AS_OF_MILLIS));
+        assertFalse(filter.mightContain("health-code", "other-md5", START_DATE, END_DATE, LOADED_AS_OF_MILLIS));
+        assertFalse(filter.mightContain("other-health-code", "md5", START_DATE, END_DATE, LOADED_AS_OF_MILLIS));
+
+        // Outside the date range.
+        assertFalse(filter.mightContain("health-code", "md5", START_DATE.plusDays(4), END_DATE,
+                LOADED_AS_OF_MILLIS));
+    }
+
+    @Test
+    public void staleDatesMightContain() {
+        markAllLoaded();
+
+        // Dates loaded before the min loaded time can't rule anything out.
+        assertTrue(filter.mightContain("health-code", "md5", START_DATE, END_DATE, LOADED_AS_OF_MILLIS + 1));
+
+        // Reloading a date makes it fresh again.
+        filter.markLoaded(END_DATE, LOADED_AS_OF_MILLIS + 1);
+        assertFalse(filter.mightContain("health-code", "md5", END_DATE, END_DATE, LOADED_AS_OF_MILLIS + 1));
+        assertEquals(LOADED_AS_OF_MILLIS + 1, filter.getLoadedAsOfMillis(END_DATE).longValue());
+    }
+
+    @Test
+    public void removeDatesBefore() {
+        markAllLoaded();
+        filter.put("health-code", "md5", START_DATE);
+        filter.removeDatesBefore(START_DATE.plusDays(1));
+
+        // Removed dates are no longer loaded, so they go back to "might contain".
+        assertNull(filter.getLoadedAsOfMillis(START_DATE));
+        assertTrue(filter.mightContain("health-code", "md5", START_DATE, START_DATE, 0));
+        assertEquals(LOADED_AS_OF_MILLIS, filter.getLoadedAsOfMillis(START_DATE.plusDays(1)).longValue());
+    }
+
+    private void markAllLoaded() {
+        for (LocalDate date = START_DATE; !date.isAfter(END_DATE); date = date.plusDays(1)) {
+            filter.markLoaded(date, LOADED_AS_OF_MILLIS);
+        }
+    }
+}
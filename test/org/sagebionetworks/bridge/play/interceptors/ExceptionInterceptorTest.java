@@ -7,6 +7,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static play.test.Helpers.contentAsString;
 
+import java.lang.reflect.Method;
 import java.util.Map;
 
 import org.aopalliance.intercept.MethodInvocation;
@@ -15,6 +16,7 @@ import org.junit.Test;
 import org.sagebionetworks.bridge.config.Environment;
 import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
 import org.sagebionetworks.bridge.exceptions.ConsentRequiredException;
+import org.sagebionetworks.bridge.exceptions.NotFoundException;
 import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
@@ -25,6 +27,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import play.libs.F.Promise;
 import play.mvc.Http;
 import play.mvc.Result;
 
@@ -106,4 +109,26 @@ public class ExceptionInterceptorTest {
         // And no further properties
         assertEquals(14, node.size());
     }
-}    
+
+    @Test
+    public void asyncMethodThrowsReturnsPromise() throws Throwable {
+        Method asyncMethod = ExceptionInterceptorTest.class.getDeclaredMethod("dummyAsyncMethod");
+
+        MethodInvocation invocation = mock(MethodInvocation.class);
+        when(invocation.getMethod()).thenReturn(asyncMethod);
+        when(invocation.proceed()).thenThrow(new NotFoundException("not found"));
+
+        @SuppressWarnings("unchecked")
+        Promise<Result> promise = (Promise<Result>)interceptor.invoke(invocation);
+        Result result = promise.get(1000);
+        assertEquals(404, result.toScala().header().status());
+
+        JsonNode node = new ObjectMapper().readTree(contentAsString(result));
+        assertEquals("not found", node.get("message").asText());
+    }
+
+    // Stand-in for an asynchronous controller method. Only the return type matters.
+    private static Promise<Result> dummyAsyncMethod() {
+        return null;
+    }
+}
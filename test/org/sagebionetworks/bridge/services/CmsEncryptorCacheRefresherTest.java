@@ -0,0 +1,151 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.crypto.CmsEncryptor;
+import org.sagebionetworks.bridge.crypto.CmsEncryptorCacheLoader;
+import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.util.replay.FileBackedS3Helper;
+
+public class CmsEncryptorCacheRefresherTest {
+    private File certDir;
+    private File privKeyDir;
+    private File tmpDir;
+    private LoadingCache<String, CmsEncryptor> cache;
+    private ExecutorService loadExecutor;
+    private StudyService mockStudyService;
+    private CmsEncryptorCacheRefresher refresher;
+
+    @Before
+    public void before() throws Exception {
+        // File-backed stand-in for the cert and private key buckets.
+        BridgeConfig config = BridgeConfigFactory.getConfig();
+        tmpDir = Files.createTempDirectory("CmsEncryptorCacheRefresherTest").toFile();
+        certDir = new File(tmpDir, "cert");
+        privKeyDir = new File(tmpDir, "privKey");
+        FileBackedS3Helper s3Helper = new FileBackedS3Helper(ImmutableMap.of(
+                config.getProperty("upload.cms.cert.bucket"), certDir,
+                config.getProperty("upload.cms.priv.bucket"), privKeyDir));
+
+        // Real cache and cache loader, reading from the local files.
+        CmsEncryptorCacheLoader cacheLoader = new CmsEncryptorCacheLoader();
+        cacheLoader.setS3CmsHelper(s3Helper);
+        cache = CacheBuilder.newBuilder().recordStats().build(cacheLoader);
+
+        mockStudyService = mock(StudyService.class);
+        loadExecutor = Executors.newFixedThreadPool(2);
+
+        refresher = new CmsEncryptorCacheRefresher();
+        refresher.setCmsEncryptorCache(cache);
+        refresher.setLoadExecutor(loadExecutor);
+        refresher.setStudyService(mockStudyService);
+    }
+
+    @After
+    public void after() throws Exception {
+        loadExecutor.shutdownNow();
+        deleteEncryptionMaterials("study-a");
+        deleteEncryptionMaterials("study-b");
+        certDir.delete();
+        privKeyDir.delete();
+        tmpDir.delete();
+    }
+
+    @Test
+    public void warmRefreshAndEvict() throws Exception {
+        // study-a and study-b have encryption materials. study-c doesn't.
+        writeEncryptionMaterials("study-a");
+        writeEncryptionMaterials("study-b");
+        mockStudies("study-a", "study-b", "study-c");
+
+        // First run warms the cache for all studies that have encryption materials.
+        refresher.refreshAll();
+        assertEquals(2, cache.size());
+        CmsEncryptor encryptorA = cache.getIfPresent("study-a");
+        assertNotNull(encryptorA);
+        assertNotNull(cache.getIfPresent("study-b"));
+        assertNull(cache.getIfPresent("study-c"));
+        assertEquals(2, cache.stats().loadSuccessCount());
+        assertEquals(1, cache.stats().loadExceptionCount());
+
+        // Warmed entries don't hit the loader.
+        assertSame(encryptorA, cache.get("study-a"));
+
+        // Second run reloads. study-a is rotated. study-b's materials are gone, so we keep the old encryptor.
+        // study-c was deleted, so it's not loaded.
+        CmsEncryptor encryptorB = cache.getIfPresent("study-b");
+        writeEncryptionMaterials("study-a");
+        deleteEncryptionMaterials("study-b");
+        mockStudies("study-a", "study-b");
+
+        refresher.refreshAll();
+        assertNotSame(encryptorA, cache.getIfPresent("study-a"));
+        assertSame(encryptorB, cache.getIfPresent("study-b"));
+        assertNull(cache.getIfPresent("study-c"));
+
+        // Third run evicts deleted studies.
+        mockStudies("study-a");
+        refresher.refreshAll();
+        assertEquals(1, cache.size());
+        assertNull(cache.getIfPresent("study-b"));
+    }
+
+    @Test
+    public void studyServiceError() {
+        when(mockStudyService.getStudies()).thenThrow(RuntimeException.class);
+
+        // Doesn't throw.
+        refresher.refreshAll();
+        assertEquals(0, cache.size());
+    }
+
+    private void mockStudies(String... studyIds) {
+        ImmutableList.Builder<Study> studyListBuilder = ImmutableList.builder();
+        for (String oneStudyId : studyIds) {
+            DynamoStudy study = new DynamoStudy();
+            study.setIdentifier(oneStudyId);
+            studyListBuilder.add(study);
+        }
+        when(mockStudyService.getStudies()).thenReturn(studyListBuilder.build());
+    }
+
+    private void writeEncryptionMaterials(String studyId) throws Exception {
+        copyResource("/cms/rsacert.pem", new File(certDir, studyId + ".pem"));
+        copyResource("/cms/rsaprivkey.pem", new File(privKeyDir, studyId + ".pem"));
+    }
+
+    private void deleteEncryptionMaterials(String studyId) {
+        new File(certDir, studyId + ".pem").delete();
+        new File(privKeyDir, studyId + ".pem").delete();
+    }
+
+    private static void copyResource(String resourcePath, File dest) throws Exception {
+        Files.createDirectories(dest.getParentFile().toPath());
+        Files.copy(new ClassPathResource(resourcePath).getFile().toPath(), dest.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+}
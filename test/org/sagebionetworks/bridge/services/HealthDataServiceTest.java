@@ -1,19 +1,26 @@
 package org.sagebionetworks.bridge.services;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
 import org.junit.Test;
 
+import org.sagebionetworks.bridge.dao.HealthDataAttachmentDao;
 import org.sagebionetworks.bridge.dao.HealthDataDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataAttachment;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
+import org.sagebionetworks.bridge.models.PagedResourceList;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachment;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 
 public class HealthDataServiceTest {
@@ -21,6 +28,9 @@ public class HealthDataServiceTest {
     // for getRecordBuilder().
     private static final HealthDataDao DAO = new DynamoHealthDataDao();
 
+    private static final DateTime CREATED_ON_START = DateTime.parse("2016-03-01T00:00:00.000Z");
+    private static final DateTime CREATED_ON_END = DateTime.parse("2016-03-31T23:59:59.999Z");
+
     @Test(expected = InvalidEntityException.class)
     public void createOrUpdateRecordNullRecord() {
         new HealthDataService().createOrUpdateRecord(null);
@@ -123,4 +133,147 @@ public class HealthDataServiceTest {
         assertEquals("bar healthcode", recordList.get(1).getHealthCode());
         assertEquals("baz healthcode", recordList.get(2).getHealthCode());
     }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordPageForUploadDateInvalidUploadDate() {
+        new HealthDataService().getRecordsForUploadDate("2014-02-31", null, 50);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordPageForUploadDatePageSizeTooSmall() {
+        new HealthDataService().getRecordsForUploadDate("2014-02-12", null, 4);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordPageForUploadDatePageSizeTooLarge() {
+        new HealthDataService().getRecordsForUploadDate("2014-02-12", null, 101);
+    }
+
+    @Test
+    public void getRecordPageForUploadDateSuccess() {
+        PagedResourceList<HealthDataRecord> mockPage = new PagedResourceList<>(ImmutableList.of(
+                DAO.getRecordBuilder().withHealthCode("foo healthcode").withSchemaId("dummy schema")
+                        .withSchemaRevision(3).withStudyId("dummy study").build()), null, 50, 1)
+                .withOffsetKey("next page");
+
+        HealthDataDao mockDao = mock(HealthDataDao.class);
+        when(mockDao.getRecordsForUploadDate("2014-02-12", "this page", 50)).thenReturn(mockPage);
+
+        HealthDataService svc = new HealthDataService();
+        svc.setHealthDataDao(mockDao);
+
+        // execute and validate
+        PagedResourceList<HealthDataRecord> page = svc.getRecordsForUploadDate("2014-02-12", "this page", 50);
+        assertSame(mockPage, page);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void streamRecordsForUploadDateInvalidUploadDate() {
+        new HealthDataService().streamRecordsForUploadDate("This is not a calendar date.", record -> {});
+    }
+
+    @Test
+    public void streamRecordsForUploadDateSuccess() {
+        Consumer<HealthDataRecord> consumer = record -> {};
+        HealthDataDao mockDao = mock(HealthDataDao.class);
+        when(mockDao.streamRecordsForUploadDate("2014-02-12", consumer)).thenReturn(37);
+
+        HealthDataService svc = new HealthDataService();
+        svc.setHealthDataDao(mockDao);
+
+        // execute and validate
+        assertEquals(37, svc.streamRecordsForUploadDate("2014-02-12", consumer));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordPageForHealthCodeCreatedOnBlankHealthCode() {
+        new HealthDataService().getRecordsForHealthCodeCreatedOn("", CREATED_ON_START, CREATED_ON_END, null, 50);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordPageForHealthCodeCreatedOnNullStart() {
+        new HealthDataService().getRecordsForHealthCodeCreatedOn("foo healthcode", null, CREATED_ON_END, null, 50);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordPageForHealthCodeCreatedOnNullEnd() {
+        new HealthDataService().getRecordsForHealthCodeCreatedOn("foo healthcode", CREATED_ON_START, null, null,
+                50);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordPageForHealthCodeCreatedOnStartAfterEnd() {
+        new HealthDataService().getRecordsForHealthCodeCreatedOn("foo healthcode", CREATED_ON_END, CREATED_ON_START,
+                null, 50);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordPageForHealthCodeCreatedOnPageSizeTooLarge() {
+        new HealthDataService().getRecordsForHealthCodeCreatedOn("foo healthcode", CREATED_ON_START, CREATED_ON_END,
+                null, 101);
+    }
+
+    @Test
+    public void getRecordPageForHealthCodeCreatedOnSuccess() {
+        PagedResourceList<HealthDataRecord> mockPage = new PagedResourceList<>(ImmutableList.of(
+                DAO.getRecordBuilder().withHealthCode("foo healthcode").withSchemaId("dummy schema")
+                        .withSchemaRevision(3).withStudyId("dummy study").build()), null, 50, 1)
+                .withOffsetKey("next page");
+
+        HealthDataDao mockDao = mock(HealthDataDao.class);
+        when(mockDao.getRecordsForHealthCodeCreatedOn("foo healthcode", CREATED_ON_START.getMillis(),
+                CREATED_ON_END.getMillis(), "this page", 50)).thenReturn(mockPage);
+
+        HealthDataService svc = new HealthDataService();
+        svc.setHealthDataDao(mockDao);
+
+        // execute and validate
+        PagedResourceList<HealthDataRecord> page = svc.getRecordsForHealthCodeCreatedOn("foo healthcode",
+                CREATED_ON_START, CREATED_ON_END, "this page", 50);
+        assertSame(mockPage, page);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void streamRecordsForHealthCodeCreatedOnBlankHealthCode() {
+        new HealthDataService().streamRecordsForHealthCodeCreatedOn(null, CREATED_ON_START, CREATED_ON_END,
+                record -> {});
+    }
+
+    @Test
+    public void streamRecordsForHealthCodeCreatedOnSuccess() {
+        Consumer<HealthDataRecord> consumer = record -> {};
+        HealthDataDao mockDao = mock(HealthDataDao.class);
+        when(mockDao.streamRecordsForHealthCodeCreatedOn("foo healthcode", CREATED_ON_START.getMillis(),
+                CREATED_ON_END.getMillis(), consumer)).thenReturn(19);
+
+        HealthDataService svc = new HealthDataService();
+        svc.setHealthDataDao(mockDao);
+
+        // execute and validate
+        assertEquals(19, svc.streamRecordsForHealthCodeCreatedOn("foo healthcode", CREATED_ON_START, CREATED_ON_END,
+                consumer));
+    }
+
+    @Test(expected = InvalidEntityException.class)
+    public void createOrUpdateAttachmentsNullList() {
+        new HealthDataService().createOrUpdateAttachments(null);
+    }
+
+    @Test
+    public void createOrUpdateAttachmentsSuccess() {
+        List<HealthDataAttachment> attachmentList = ImmutableList.of(
+                new DynamoHealthDataAttachment.Builder().withRecordId("test record").build(),
+                new DynamoHealthDataAttachment.Builder().withRecordId("test record").build());
+
+        // mock dao
+        HealthDataAttachmentDao mockDao = mock(HealthDataAttachmentDao.class);
+        when(mockDao.createOrUpdateAttachments(attachmentList)).thenReturn(ImmutableList.of("foo", "bar"));
+
+        HealthDataService svc = new HealthDataService();
+        svc.setHealthDataAttachmentDao(mockDao);
+
+        // execute and validate
+        List<String> retVal = svc.createOrUpdateAttachments(attachmentList);
+        assertEquals(ImmutableList.of("foo", "bar"), retVal);
+    }
 }
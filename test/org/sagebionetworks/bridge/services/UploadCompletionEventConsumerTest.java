@@ -0,0 +1,162 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.dao.HealthCodeDao;
+import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
+import org.sagebionetworks.bridge.sqs.InMemoryMessageQueue;
+
+public class UploadCompletionEventConsumerTest {
+    private static final String TEST_BUCKET = "test-bucket";
+    private static final String TEST_HEALTH_CODE = "test-health-code";
+    private static final String TEST_UPLOAD_ID = "test-upload";
+
+    private HealthCodeDao mockHealthCodeDao;
+    private UploadDao mockUploadDao;
+    private UploadService mockUploadService;
+    private InMemoryMessageQueue queue;
+    private UploadCompletionEventConsumer consumer;
+
+    @Before
+    public void setup() {
+        // mock config
+        BridgeConfig mockConfig = mock(BridgeConfig.class);
+        when(mockConfig.getProperty(UploadService.CONFIG_KEY_UPLOAD_BUCKET)).thenReturn(TEST_BUCKET);
+
+        // mocks
+        mockHealthCodeDao = mock(HealthCodeDao.class);
+        when(mockHealthCodeDao.getStudyIdentifier(TEST_HEALTH_CODE)).thenReturn(
+                TestConstants.TEST_STUDY_IDENTIFIER);
+        mockUploadDao = mock(UploadDao.class);
+        mockUploadService = mock(UploadService.class);
+        queue = new InMemoryMessageQueue();
+
+        // set up consumer
+        consumer = new UploadCompletionEventConsumer();
+        consumer.setConfig(mockConfig);
+        consumer.setHealthCodeDao(mockHealthCodeDao);
+        consumer.setQueue(queue);
+        consumer.setUploadDao(mockUploadDao);
+        consumer.setUploadService(mockUploadService);
+    }
+
+    @Test
+    public void completesUpload() {
+        DynamoUpload2 upload = mockUpload(UploadStatus.REQUESTED);
+        queue.sendMessage(makeEvent("ObjectCreated:Put", TEST_BUCKET, TEST_UPLOAD_ID));
+
+        consumer.poll();
+        verify(mockUploadService).uploadComplete(TestConstants.TEST_STUDY, upload);
+        assertQueueEmpty();
+    }
+
+    @Test
+    public void alreadyCompleted() {
+        // The client already called uploadComplete.
+        mockUpload(UploadStatus.VALIDATION_IN_PROGRESS);
+        queue.sendMessage(makeEvent("ObjectCreated:Put", TEST_BUCKET, TEST_UPLOAD_ID));
+
+        consumer.poll();
+        verifyZeroInteractions(mockUploadService);
+        assertQueueEmpty();
+    }
+
+    @Test
+    public void uploadNotFound() {
+        when(mockUploadDao.getUpload(TEST_UPLOAD_ID)).thenThrow(NotFoundException.class);
+        queue.sendMessage(makeEvent("ObjectCreated:Put", TEST_BUCKET, TEST_UPLOAD_ID));
+
+        consumer.poll();
+        verifyZeroInteractions(mockUploadService);
+        assertQueueEmpty();
+    }
+
+    @Test
+    public void ignoresOtherEventsAndBuckets() {
+        queue.sendMessage(makeEvent("ObjectRemoved:Delete", TEST_BUCKET, TEST_UPLOAD_ID));
+        queue.sendMessage(makeEvent("ObjectCreated:Put", "other-bucket", TEST_UPLOAD_ID));
+
+        // S3 test event, which has no records.
+        queue.sendMessage("{\"Service\":\"Amazon S3\",\"Event\":\"s3:TestEvent\",\"Bucket\":\"" + TEST_BUCKET +
+                "\"}");
+
+        // Garbage message.
+        queue.sendMessage("not json");
+
+        consumer.poll();
+        verifyZeroInteractions(mockUploadDao, mockUploadService);
+        assertQueueEmpty();
+    }
+
+    @Test
+    public void urlEncodedKey() {
+        DynamoUpload2 upload = mockUpload(UploadStatus.REQUESTED);
+        when(mockUploadDao.getUpload("upload id")).thenReturn(upload);
+        queue.sendMessage(makeEvent("ObjectCreated:CompleteMultipartUpload", TEST_BUCKET, "upload+id"));
+
+        consumer.poll();
+        verify(mockUploadService).uploadComplete(TestConstants.TEST_STUDY, upload);
+    }
+
+    @Test
+    public void errorLeavesMessageForRetry() {
+        DynamoUpload2 upload = mockUpload(UploadStatus.REQUESTED);
+        doThrow(RuntimeException.class).when(mockUploadService).uploadComplete(any(), same(upload));
+        queue.sendMessage(makeEvent("ObjectCreated:Put", TEST_BUCKET, TEST_UPLOAD_ID));
+
+        consumer.poll();
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(1, queue.getInFlightCount());
+
+        // Redelivered message is retried.
+        queue.redeliverInFlightMessages();
+        assertEquals(1, queue.getPendingCount());
+    }
+
+    @Test
+    public void noStudy() {
+        mockUpload(UploadStatus.REQUESTED);
+        when(mockHealthCodeDao.getStudyIdentifier(anyString())).thenReturn(null);
+        queue.sendMessage(makeEvent("ObjectCreated:Put", TEST_BUCKET, TEST_UPLOAD_ID));
+
+        consumer.poll();
+        verifyZeroInteractions(mockUploadService);
+        assertQueueEmpty();
+    }
+
+    private DynamoUpload2 mockUpload(UploadStatus status) {
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setHealthCode(TEST_HEALTH_CODE);
+        upload.setStatus(status);
+        upload.setUploadId(TEST_UPLOAD_ID);
+        when(mockUploadDao.getUpload(TEST_UPLOAD_ID)).thenReturn(upload);
+        return upload;
+    }
+
+    private void assertQueueEmpty() {
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(0, queue.getInFlightCount());
+    }
+
+    // Makes a minimal S3 event notification with a single record.
+    private static String makeEvent(String eventName, String bucket, String key) {
+        return "{\"Records\":[{\"eventName\":\"" + eventName + "\",\"s3\":{\"bucket\":{\"name\":\"" + bucket +
+                "\"},\"object\":{\"key\":\"" + key + "\",\"size\":1024}}}]}";
+    }
+}
@@ -1,7 +1,13 @@
 package org.sagebionetworks.bridge.services;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -13,6 +19,7 @@ import org.junit.Test;
 
 import org.sagebionetworks.bridge.dao.UploadSchemaDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoUploadFieldDefinition;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
 import org.sagebionetworks.bridge.dynamodb.DynamoUploadSchema;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
@@ -157,7 +164,7 @@ public class UploadSchemaServiceTest {
         UploadSchemaService svc = new UploadSchemaService();
         svc.setUploadSchemaDao(mockDao);
         UploadSchema svcRetVal = svc.getUploadSchema(makeTestStudy(), "test-schema");
-        assertSame(daoRetVal, svcRetVal);
+        assertCopyOf(daoRetVal, svcRetVal);
     }
 
     @Test(expected = BadRequestException.class)
@@ -197,7 +204,7 @@ public class UploadSchemaServiceTest {
         UploadSchemaService svc = new UploadSchemaService();
         svc.setUploadSchemaDao(mockDao);
         UploadSchema svcRetVal = svc.getUploadSchemaByIdAndRev(makeTestStudy(), "test-schema-rev", 1);
-        assertSame(daoRetVal, svcRetVal);
+        assertCopyOf(daoRetVal, svcRetVal);
     }
 
     @Test
@@ -241,6 +248,171 @@ public class UploadSchemaServiceTest {
         assertSame(daoRetVal, svcRetVal);
     }
 
+    @Test
+    public void getByIdAndRevCached() {
+        // mock dao
+        StudyIdentifier studyIdentifier = makeTestStudy();
+        UploadSchema daoRetVal = new DynamoUploadSchema();
+        UploadSchemaDao mockDao = mock(UploadSchemaDao.class);
+        when(mockDao.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-rev", 1)).thenReturn(daoRetVal);
+
+        UploadSchemaService svc = new UploadSchemaService();
+        svc.setUploadSchemaDao(mockDao);
+
+        // Get the schema twice. Only the first call goes to the DAO.
+        assertCopyOf(daoRetVal, svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-rev", 1));
+        assertCopyOf(daoRetVal, svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-rev", 1));
+        verify(mockDao, times(1)).getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-rev", 1);
+
+        // Delete the schema rev. The next get goes to the DAO again.
+        svc.deleteUploadSchemaByIdAndRev(studyIdentifier, "test-schema-rev", 1);
+        assertCopyOf(daoRetVal, svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-rev", 1));
+        verify(mockDao, times(2)).getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-rev", 1);
+    }
+
+    @Test
+    public void getByIdAndRevInvalidatedByDeleteAllRevisions() {
+        // mock dao
+        StudyIdentifier studyIdentifier = makeTestStudy();
+        UploadSchemaDao mockDao = mock(UploadSchemaDao.class);
+        when(mockDao.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema", 1)).thenReturn(
+                new DynamoUploadSchema());
+        when(mockDao.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema", 2)).thenReturn(
+                new DynamoUploadSchema());
+        when(mockDao.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-other", 1)).thenReturn(
+                new DynamoUploadSchema());
+
+        UploadSchemaService svc = new UploadSchemaService();
+        svc.setUploadSchemaDao(mockDao);
+
+        // populate cache
+        svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema", 1);
+        svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema", 2);
+        svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-other", 1);
+
+        // Delete all revisions of test-schema. Both revisions go back to the DAO. The other schema is still cached.
+        svc.deleteUploadSchemaById(studyIdentifier, "test-schema");
+        svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema", 1);
+        svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema", 2);
+        svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-other", 1);
+        verify(mockDao, times(2)).getUploadSchemaByIdAndRev(studyIdentifier, "test-schema", 1);
+        verify(mockDao, times(2)).getUploadSchemaByIdAndRev(studyIdentifier, "test-schema", 2);
+        verify(mockDao, times(1)).getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-other", 1);
+    }
+
+    @Test
+    public void getSchemaCachedAndInvalidatedByUpdate() {
+        // mock dao
+        DynamoUploadSchema rev1 = new DynamoUploadSchema();
+        rev1.setSchemaId("test-schema");
+        rev1.setRevision(1);
+
+        DynamoUploadSchema rev2 = new DynamoUploadSchema();
+        rev2.setSchemaId("test-schema");
+        rev2.setRevision(2);
+
+        UploadSchemaDao mockDao = mock(UploadSchemaDao.class);
+        when(mockDao.getUploadSchema("test-study", "test-schema")).thenReturn(rev1, rev2);
+
+        UploadSchemaService svc = new UploadSchemaService();
+        svc.setUploadSchemaDao(mockDao);
+
+        // Get the latest schema twice. Only the first call goes to the DAO.
+        assertCopyOf(rev1, svc.getUploadSchema(makeTestStudy(), "test-schema"));
+        assertCopyOf(rev1, svc.getUploadSchema(makeTestStudy(), "test-schema"));
+        verify(mockDao, times(1)).getUploadSchema("test-study", "test-schema");
+
+        // Getting the latest schema also caches that specific revision.
+        assertCopyOf(rev1, svc.getUploadSchemaByIdAndRev(makeTestStudy(), "test-schema", 1));
+        verify(mockDao, never()).getUploadSchemaByIdAndRev(any(), any(), anyInt());
+
+        // Update the schema. The latest schema is fetched from the DAO again.
+        DynamoUploadSchema schemaToUpdate = new DynamoUploadSchema();
+        schemaToUpdate.setName("test schema");
+        schemaToUpdate.setSchemaId("test-schema");
+        schemaToUpdate.setSchemaType(UploadSchemaType.IOS_DATA);
+        schemaToUpdate.setFieldDefinitions(ImmutableList.of(new DynamoUploadFieldDefinition.Builder()
+                .withName("test-field").withType(UploadFieldType.INT).build()));
+        when(mockDao.createOrUpdateUploadSchema("test-study", schemaToUpdate)).thenReturn(rev2);
+        svc.createOrUpdateUploadSchema(makeTestStudy(), schemaToUpdate);
+
+        assertCopyOf(rev2, svc.getUploadSchema(makeTestStudy(), "test-schema"));
+        verify(mockDao, times(2)).getUploadSchema("test-study", "test-schema");
+    }
+
+    @Test
+    public void getSchemaCachedAndInvalidatedBySurveyPublish() {
+        // mock dao
+        DynamoUploadSchema rev1 = new DynamoUploadSchema();
+        rev1.setSchemaId("test-survey");
+        rev1.setRevision(1);
+
+        DynamoUploadSchema rev2 = new DynamoUploadSchema();
+        rev2.setSchemaId("test-survey");
+        rev2.setRevision(2);
+
+        DynamoSurvey survey = new DynamoSurvey();
+        survey.setIdentifier("test-survey");
+
+        UploadSchemaDao mockDao = mock(UploadSchemaDao.class);
+        when(mockDao.getUploadSchema("test-study", "test-survey")).thenReturn(rev1, rev2);
+        when(mockDao.createUploadSchemaFromSurvey(makeTestStudy(), survey)).thenReturn(rev2);
+
+        UploadSchemaService svc = new UploadSchemaService();
+        svc.setUploadSchemaDao(mockDao);
+
+        // Cache the latest schema.
+        assertCopyOf(rev1, svc.getUploadSchema(makeTestStudy(), "test-survey"));
+        assertCopyOf(rev1, svc.getUploadSchema(makeTestStudy(), "test-survey"));
+        verify(mockDao, times(1)).getUploadSchema("test-study", "test-survey");
+
+        // Publishing the survey creates a new revision. The latest schema is fetched from the DAO again.
+        assertSame(rev2, svc.createUploadSchemaFromSurvey(makeTestStudy(), survey));
+        assertCopyOf(rev2, svc.getUploadSchema(makeTestStudy(), "test-survey"));
+        verify(mockDao, times(2)).getUploadSchema("test-study", "test-survey");
+    }
+
+    @Test
+    public void cachedSchemaCantBeModifiedByCallers() {
+        // mock dao
+        StudyIdentifier studyIdentifier = makeTestStudy();
+        DynamoUploadSchema daoRetVal = new DynamoUploadSchema();
+        daoRetVal.setName("test schema");
+        daoRetVal.setFieldDefinitions(ImmutableList.of(new DynamoUploadFieldDefinition.Builder()
+                .withName("test-field").withType(UploadFieldType.INT).build()));
+        UploadSchemaDao mockDao = mock(UploadSchemaDao.class);
+        when(mockDao.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-rev", 1)).thenReturn(daoRetVal);
+
+        UploadSchemaService svc = new UploadSchemaService();
+        svc.setUploadSchemaDao(mockDao);
+
+        // Modify the schema we get back, and the schema the DAO returned. The cached schema is unchanged.
+        DynamoUploadSchema firstSchema = (DynamoUploadSchema) svc.getUploadSchemaByIdAndRev(studyIdentifier,
+                "test-schema-rev", 1);
+        firstSchema.setName("modified by caller");
+        firstSchema.setFieldDefinitions(ImmutableList.of());
+        daoRetVal.setName("modified by DAO caller");
+
+        UploadSchema secondSchema = svc.getUploadSchemaByIdAndRev(studyIdentifier, "test-schema-rev", 1);
+        assertNotSame(firstSchema, secondSchema);
+        assertEquals("test schema", secondSchema.getName());
+        assertEquals(1, secondSchema.getFieldDefinitions().size());
+
+        // Copies share the cached schema's field definition list, which validation plans are keyed on.
+        assertSame(secondSchema.getFieldDefinitions(), svc.getUploadSchemaByIdAndRev(studyIdentifier,
+                "test-schema-rev", 1).getFieldDefinitions());
+    }
+
+    // The service returns copies of the DAO's schemas, with the same values and the same field definition list.
+    private static void assertCopyOf(UploadSchema expected, UploadSchema actual) {
+        assertNotSame(expected, actual);
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getRevision(), actual.getRevision());
+        assertEquals(expected.getSchemaId(), actual.getSchemaId());
+        assertEquals(expected.getSchemaType(), actual.getSchemaType());
+        assertEquals(expected.getFieldDefinitions(), actual.getFieldDefinitions());
+    }
+
     private static StudyIdentifier makeTestStudy() {
         return new StudyIdentifierImpl("test-study");
     }
@@ -1,19 +1,27 @@
 package org.sagebionetworks.bridge.services;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import com.amazonaws.auth.AWSSessionCredentials;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.apache.commons.codec.binary.Base64;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
@@ -27,8 +35,10 @@ import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.dao.UploadDao;
 import org.sagebionetworks.bridge.dao.UploadDedupeDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.accounts.User;
+import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadSession;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
@@ -68,6 +78,7 @@ public class UploadServiceCreateUploadMockTest {
         TEST_USER.setHealthCode(TEST_HEALTH_CODE);
     }
 
+    private UploadSessionCredentialsService mockCredentialsSvc;
     private UploadDedupeDao mockUploadDedupeDao;
     private UploadDao mockUploadDao;
     private ArgumentCaptor<GeneratePresignedUrlRequest> presignedUrlRequestArgumentCaptor;
@@ -93,7 +104,7 @@ public class UploadServiceCreateUploadMockTest {
 
         // mock upload credentials service
         AWSSessionCredentials mockCredentials = mock(AWSSessionCredentials.class);
-        UploadSessionCredentialsService mockCredentialsSvc = mock(UploadSessionCredentialsService.class);
+        mockCredentialsSvc = mock(UploadSessionCredentialsService.class);
         when(mockCredentialsSvc.getSessionCredentials()).thenReturn(mockCredentials);
 
         // mock presigned URL call
@@ -120,7 +131,7 @@ public class UploadServiceCreateUploadMockTest {
     @Test
     public void isNotDupe() {
         // mock upload DAO
-        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE)).thenReturn(TEST_UPLOAD);
+        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE, null)).thenReturn(TEST_UPLOAD);
 
         // mock upload dedupe DAO
         when(mockUploadDedupeDao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON)).thenReturn(
@@ -129,7 +140,7 @@ public class UploadServiceCreateUploadMockTest {
         testUpload(TEST_UPLOAD_ID);
 
         // verify we created and registered the dupe
-        verify(mockUploadDao).createUpload(uploadRequest, TEST_HEALTH_CODE);
+        verify(mockUploadDao).createUpload(uploadRequest, TEST_HEALTH_CODE, null);
         verify(mockUploadDedupeDao).registerUpload(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON,
                 TEST_UPLOAD_ID);
     }
@@ -149,14 +160,15 @@ public class UploadServiceCreateUploadMockTest {
         testUpload(TEST_ORIGINAL_UPLOAD_ID);
 
         // verify we never create or register a dupe
-        verify(mockUploadDao, never()).createUpload(any(), any());
+        verify(mockUploadDao, never()).createUpload(any(), any(), any());
         verify(mockUploadDedupeDao, never()).registerUpload(any(), any(), any(), any());
     }
 
     @Test
     public void isDupeOfCompleteUpload() {
         // mock upload DAO
-        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE)).thenReturn(TEST_UPLOAD);
+        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE, TEST_ORIGINAL_UPLOAD_ID)).thenReturn(
+                TEST_UPLOAD);
 
         DynamoUpload2 originalUpload = new DynamoUpload2();
         originalUpload.setUploadId(TEST_ORIGINAL_UPLOAD_ID);
@@ -169,8 +181,8 @@ public class UploadServiceCreateUploadMockTest {
 
         testUpload(TEST_UPLOAD_ID);
 
-        // verify we create the upload, but we don't register a dupe
-        verify(mockUploadDao).createUpload(uploadRequest, TEST_HEALTH_CODE);
+        // verify we create the upload linked to the original, but we don't register a dupe
+        verify(mockUploadDao).createUpload(uploadRequest, TEST_HEALTH_CODE, TEST_ORIGINAL_UPLOAD_ID);
         verify(mockUploadDedupeDao, never()).registerUpload(any(), any(), any(), any());
     }
 
@@ -179,7 +191,7 @@ public class UploadServiceCreateUploadMockTest {
         // Throwing on dedupe logic shouldn't fail the upload.
 
         // mock upload DAO
-        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE)).thenReturn(TEST_UPLOAD);
+        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE, null)).thenReturn(TEST_UPLOAD);
 
         // mock upload dedupe DAO
         when(mockUploadDedupeDao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON)).thenThrow(
@@ -188,7 +200,7 @@ public class UploadServiceCreateUploadMockTest {
         testUpload(TEST_UPLOAD_ID);
 
         // verify we created and registered the dupe
-        verify(mockUploadDao).createUpload(uploadRequest, TEST_HEALTH_CODE);
+        verify(mockUploadDao).createUpload(uploadRequest, TEST_HEALTH_CODE, null);
         verify(mockUploadDedupeDao).registerUpload(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON,
                 TEST_UPLOAD_ID);
     }
@@ -198,7 +210,7 @@ public class UploadServiceCreateUploadMockTest {
         // Throwing on dedupe logic shouldn't fail the upload.
 
         // mock upload DAO
-        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE)).thenReturn(TEST_UPLOAD);
+        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE, null)).thenReturn(TEST_UPLOAD);
 
         // mock upload dedupe DAO
         when(mockUploadDedupeDao.getDuplicate(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON)).thenReturn(
@@ -209,11 +221,96 @@ public class UploadServiceCreateUploadMockTest {
         testUpload(TEST_UPLOAD_ID);
 
         // verify we created and registered the dupe (even if we threw immediately after registration)
-        verify(mockUploadDao).createUpload(uploadRequest, TEST_HEALTH_CODE);
+        verify(mockUploadDao).createUpload(uploadRequest, TEST_HEALTH_CODE, null);
         verify(mockUploadDedupeDao).registerUpload(TEST_HEALTH_CODE, TEST_UPLOAD_MD5, TEST_UPLOAD_REQUESTED_ON,
                 TEST_UPLOAD_ID);
     }
 
+    @Test
+    public void createUploads() throws Exception {
+        // Three uploads: one is a dupe of a previous upload, and two are the same file.
+        String otherMd5 = Base64.encodeBase64String("other-md5".getBytes());
+        UploadRequest otherUploadRequest = UploadRequest.fromJson(BridgeObjectMapper.get().readTree(
+                TEST_UPLOAD_REQUEST_JSON.replace(TEST_UPLOAD_MD5, otherMd5)));
+        List<UploadRequest> uploadRequestList = ImmutableList.of(uploadRequest, otherUploadRequest,
+                otherUploadRequest);
+
+        // mock upload dedupe DAO
+        when(mockUploadDedupeDao.getDuplicates(TEST_HEALTH_CODE, ImmutableSet.of(TEST_UPLOAD_MD5, otherMd5),
+                TEST_UPLOAD_REQUESTED_ON)).thenReturn(ImmutableMap.of(TEST_UPLOAD_MD5, TEST_ORIGINAL_UPLOAD_ID));
+
+        // mock upload DAO
+        List<Upload> uploadList = ImmutableList.of(makeUpload("upload-1"), makeUpload("upload-2"), makeUpload(
+                "upload-3"));
+        when(mockUploadDao.createUploads(uploadRequestList, TEST_HEALTH_CODE, Arrays.asList(TEST_ORIGINAL_UPLOAD_ID,
+                null, null))).thenReturn(uploadList);
+
+        // execute and validate
+        List<UploadSession> uploadSessionList = svc.createUploads(TestConstants.TEST_STUDY, TEST_USER,
+                uploadRequestList);
+        assertEquals(3, uploadSessionList.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("upload-" + (i + 1), uploadSessionList.get(i).getId());
+            assertEquals(TEST_PRESIGNED_URL, uploadSessionList.get(i).getUrl());
+        }
+
+        List<GeneratePresignedUrlRequest> presignedUrlRequestList = presignedUrlRequestArgumentCaptor.getAllValues();
+        assertEquals(3, presignedUrlRequestList.size());
+        assertEquals("upload-1", presignedUrlRequestList.get(0).getKey());
+        assertEquals(TEST_UPLOAD_MD5, presignedUrlRequestList.get(0).getContentMd5());
+        assertEquals("upload-2", presignedUrlRequestList.get(1).getKey());
+        assertEquals(otherMd5, presignedUrlRequestList.get(1).getContentMd5());
+        assertEquals("upload-3", presignedUrlRequestList.get(2).getKey());
+        assertEquals(otherMd5, presignedUrlRequestList.get(2).getContentMd5());
+
+        // Only the first copy of the non-dupe file is registered. All URLs are signed with the same credentials.
+        verify(mockUploadDedupeDao).registerUploads(TEST_HEALTH_CODE, ImmutableMap.of(otherMd5, "upload-2"),
+                TEST_UPLOAD_REQUESTED_ON);
+        verify(mockCredentialsSvc, times(1)).getSessionCredentials();
+    }
+
+    @Test
+    public void createUploadsDedupeErrors() {
+        // Throwing on dedupe logic shouldn't fail the uploads.
+        when(mockUploadDedupeDao.getDuplicates(any(), any(), any())).thenThrow(RuntimeException.class);
+        doThrow(RuntimeException.class).when(mockUploadDedupeDao).registerUploads(any(), any(), any());
+
+        List<UploadRequest> uploadRequestList = ImmutableList.of(uploadRequest);
+        when(mockUploadDao.createUploads(uploadRequestList, TEST_HEALTH_CODE, Arrays.asList((String) null)))
+                .thenReturn(ImmutableList.of(TEST_UPLOAD));
+
+        List<UploadSession> uploadSessionList = svc.createUploads(TestConstants.TEST_STUDY, TEST_USER,
+                uploadRequestList);
+        assertEquals(1, uploadSessionList.size());
+        assertEquals(TEST_UPLOAD_ID, uploadSessionList.get(0).getId());
+        verify(mockUploadDedupeDao).registerUploads(TEST_HEALTH_CODE, ImmutableMap.of(TEST_UPLOAD_MD5,
+                TEST_UPLOAD_ID), TEST_UPLOAD_REQUESTED_ON);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void createUploadsEmpty() {
+        svc.createUploads(TestConstants.TEST_STUDY, TEST_USER, ImmutableList.of());
+    }
+
+    @Test
+    public void createUploadsTooMany() {
+        List<UploadRequest> uploadRequestList = Collections.nCopies(UploadService.MAX_UPLOAD_BATCH_SIZE + 1,
+                uploadRequest);
+        try {
+            svc.createUploads(TestConstants.TEST_STUDY, TEST_USER, uploadRequestList);
+            fail("expected exception");
+        } catch (BadRequestException ex) {
+            // expected exception
+        }
+        verify(mockUploadDao, never()).createUploads(any(), any(), any());
+    }
+
+    private static Upload makeUpload(String uploadId) {
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(uploadId);
+        return upload;
+    }
+
     private void testUpload(String expectedUploadId) {
         // execute and validate
         UploadSession uploadSession = svc.createUpload(TestConstants.TEST_STUDY, TEST_USER, uploadRequest);
@@ -1,13 +1,21 @@
 package org.sagebionetworks.bridge.services;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
 import com.google.common.collect.ImmutableList;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.sagebionetworks.bridge.dao.UploadDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
@@ -17,6 +25,7 @@ import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
+import org.sagebionetworks.bridge.upload.UploadValidationStatusNotifier;
 
 @SuppressWarnings("unchecked")
 public class UploadServiceMockTest {
@@ -185,6 +194,101 @@ public class UploadServiceMockTest {
         assertEquals("getStatusRecordIdWithNoRecord - message", status.getMessageList().get(0));
     }
 
+    @Test(expected = BadRequestException.class)
+    public void waitForStatusZeroTimeout() {
+        new UploadService().waitForUploadValidationStatus(makeUser("waitForStatus"), "test-upload-id", 0);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void waitForStatusTimeoutTooLong() {
+        new UploadService().waitForUploadValidationStatus(makeUser("waitForStatus"), "test-upload-id",
+                UploadService.MAX_VALIDATION_STATUS_WAIT_SECONDS + 1);
+    }
+
+    @Test(expected = UnauthorizedException.class)
+    public void waitForStatusWithMismatchedHealthCode() {
+        DynamoUpload2 mockUpload = new DynamoUpload2();
+        mockUpload.setHealthCode("wrong-health-code");
+        mockUpload.setStatus(UploadStatus.VALIDATION_IN_PROGRESS);
+
+        UploadDao mockDao = mock(UploadDao.class);
+        when(mockDao.getUpload("mismatched-health-codes")).thenReturn(mockUpload);
+
+        UploadService svc = new UploadService();
+        svc.setUploadDao(mockDao);
+
+        svc.waitForUploadValidationStatus(makeUser("right-health-code"), "mismatched-health-codes", 10);
+    }
+
+    @Test
+    public void waitForStatusAlreadyComplete() throws Exception {
+        // mock upload dao
+        DynamoUpload2 mockUpload = new DynamoUpload2();
+        mockUpload.setHealthCode("waitForStatus");
+        mockUpload.setStatus(UploadStatus.VALIDATION_FAILED);
+        mockUpload.setUploadId("test-upload-id");
+
+        UploadDao mockDao = mock(UploadDao.class);
+        when(mockDao.getUpload("test-upload-id")).thenReturn(mockUpload);
+
+        UploadValidationStatusNotifier mockNotifier = mock(UploadValidationStatusNotifier.class);
+
+        // create test service with mocks
+        UploadService svc = new UploadService();
+        svc.setUploadDao(mockDao);
+        svc.setUploadValidationStatusNotifier(mockNotifier);
+
+        // execute and validate - We don't wait.
+        CompletableFuture<UploadValidationStatus> future = svc.waitForUploadValidationStatus(
+                makeUser("waitForStatus"), "test-upload-id", 10);
+        assertTrue(future.isDone());
+        assertEquals(UploadStatus.VALIDATION_FAILED, future.get().getStatus());
+        verifyZeroInteractions(mockNotifier);
+    }
+
+    @Test
+    public void waitForStatusInProgress() throws Exception {
+        // mock upload dao - First call is in progress. Second call (after waiting) is done.
+        DynamoUpload2 inProgressUpload = new DynamoUpload2();
+        inProgressUpload.setHealthCode("waitForStatus");
+        inProgressUpload.setStatus(UploadStatus.VALIDATION_IN_PROGRESS);
+        inProgressUpload.setUploadId("test-upload-id");
+
+        DynamoUpload2 succeededUpload = new DynamoUpload2();
+        succeededUpload.setHealthCode("waitForStatus");
+        succeededUpload.setStatus(UploadStatus.SUCCEEDED);
+        succeededUpload.setUploadId("test-upload-id");
+
+        UploadDao mockDao = mock(UploadDao.class);
+        when(mockDao.getUpload("test-upload-id")).thenReturn(inProgressUpload, succeededUpload);
+
+        // mock notifier - Complete the wait when we say so.
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        UploadValidationStatusNotifier mockNotifier = mock(UploadValidationStatusNotifier.class);
+        ArgumentCaptor<BooleanSupplier> statusCheckCaptor = ArgumentCaptor.forClass(BooleanSupplier.class);
+        when(mockNotifier.awaitValidation(eq("test-upload-id"), eq(10000L), statusCheckCaptor.capture()))
+                .thenReturn(waiter);
+
+        // create test service with mocks
+        UploadService svc = new UploadService();
+        svc.setUploadDao(mockDao);
+        svc.setUploadValidationStatusNotifier(mockNotifier);
+
+        // execute and validate
+        CompletableFuture<UploadValidationStatus> future = svc.waitForUploadValidationStatus(
+                makeUser("waitForStatus"), "test-upload-id", 10);
+        assertFalse(future.isDone());
+
+        // The status check re-reads the upload. It's still in progress on the second read.
+        when(mockDao.getUpload("test-upload-id")).thenReturn(inProgressUpload, succeededUpload);
+        assertFalse(statusCheckCaptor.getValue().getAsBoolean());
+        assertTrue(statusCheckCaptor.getValue().getAsBoolean());
+
+        waiter.complete(null);
+        assertTrue(future.isDone());
+        assertEquals(UploadStatus.SUCCEEDED, future.get().getStatus());
+    }
+
     // Helper method for creating users. UploadService only cares about healthCode, so that's the only thing we set.
     private static User makeUser(String healthCode) {
         User user = new User();
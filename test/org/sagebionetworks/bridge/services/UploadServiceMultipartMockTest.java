@@ -0,0 +1,385 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URL;
+import java.util.List;
+
+import com.amazonaws.auth.AWSSessionCredentials;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.dao.UploadDedupeDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
+import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.User;
+import org.sagebionetworks.bridge.models.upload.MultipartUploadSession;
+import org.sagebionetworks.bridge.models.upload.UploadPartList;
+import org.sagebionetworks.bridge.models.upload.UploadRequest;
+import org.sagebionetworks.bridge.models.upload.UploadSession;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
+import org.sagebionetworks.bridge.validators.UploadValidator;
+
+public class UploadServiceMultipartMockTest {
+    private static final String TEST_BUCKET = "test-bucket";
+    private static final String TEST_CONTENT_TYPE = "application/zip";
+    private static final String TEST_HEALTH_CODE = "test-health-code";
+    private static final String TEST_MULTIPART_UPLOAD_ID = "test-multipart-upload";
+    private static final int TEST_PART_SIZE = 5 * 1024 * 1024;
+    private static final String TEST_PRESIGNED_URL = "http://www.example.com/";
+    private static final String TEST_UPLOAD_ID = "test-upload";
+    private static final String TEST_UPLOAD_MD5 = Base64.encodeBase64String("test-md5".getBytes());
+
+    private static final User TEST_USER;
+    static {
+        TEST_USER = new User();
+        TEST_USER.setHealthCode(TEST_HEALTH_CODE);
+    }
+
+    private BridgeConfig mockConfig;
+    private AmazonS3 mockS3Client;
+    private UploadDao mockUploadDao;
+    private UploadDedupeDao mockUploadDedupeDao;
+    private UploadValidationService mockUploadValidationService;
+    private ArgumentCaptor<GeneratePresignedUrlRequest> presignedUrlRequestArgumentCaptor;
+    private UploadService svc;
+
+    @Before
+    public void setup() throws Exception {
+        // mock config
+        mockConfig = mock(BridgeConfig.class);
+        when(mockConfig.getProperty(UploadService.CONFIG_KEY_UPLOAD_BUCKET)).thenReturn(TEST_BUCKET);
+        when(mockConfig.getPropertyAsInt(UploadService.CONFIG_KEY_MULTIPART_PART_SIZE)).thenReturn(TEST_PART_SIZE);
+
+        // mock DAOs and S3. (The tests will mock the calls, since they vary with each test.)
+        mockS3Client = mock(AmazonS3.class);
+        mockUploadDao = mock(UploadDao.class);
+        mockUploadDedupeDao = mock(UploadDedupeDao.class);
+        mockUploadValidationService = mock(UploadValidationService.class);
+
+        // mock upload credentials service
+        AWSSessionCredentials mockCredentials = mock(AWSSessionCredentials.class);
+        UploadSessionCredentialsService mockCredentialsSvc = mock(UploadSessionCredentialsService.class);
+        when(mockCredentialsSvc.getSessionCredentials()).thenReturn(mockCredentials);
+
+        // mock presigned URL call
+        presignedUrlRequestArgumentCaptor = ArgumentCaptor.forClass(GeneratePresignedUrlRequest.class);
+        AmazonS3 mockS3UploadClient = mock(AmazonS3.class);
+        when(mockS3UploadClient.generatePresignedUrl(presignedUrlRequestArgumentCaptor.capture())).thenReturn(new URL(
+                TEST_PRESIGNED_URL));
+
+        // set up service
+        svc = new UploadService();
+        svc.setConfig(mockConfig);
+        svc.setValidator(new UploadValidator());
+        svc.setS3Client(mockS3Client);
+        svc.setS3UploadClient(mockS3UploadClient);
+        svc.setUploadDao(mockUploadDao);
+        svc.setUploadDedupeDao(mockUploadDedupeDao);
+        svc.setUploadSessionCredentialsService(mockCredentialsSvc);
+        svc.setUploadValidationService(mockUploadValidationService);
+    }
+
+    @Test
+    public void createMultipartUpload() throws Exception {
+        // 12 MB upload with 5 MB parts is 3 parts.
+        UploadRequest uploadRequest = makeUploadRequest(12 * 1024 * 1024);
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(TEST_UPLOAD_ID);
+        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE, null)).thenReturn(upload);
+        mockInitiateMultipartUpload();
+
+        // execute and validate
+        MultipartUploadSession session = svc.createMultipartUpload(TestConstants.TEST_STUDY, TEST_USER,
+                uploadRequest);
+        assertEquals(TEST_UPLOAD_ID, session.getId());
+        assertEquals(TEST_PART_SIZE, session.getPartSize());
+        assertEquals(3, session.getPartCount());
+
+        ArgumentCaptor<InitiateMultipartUploadRequest> initiateRequestCaptor = ArgumentCaptor.forClass(
+                InitiateMultipartUploadRequest.class);
+        verify(mockS3Client).initiateMultipartUpload(initiateRequestCaptor.capture());
+        InitiateMultipartUploadRequest initiateRequest = initiateRequestCaptor.getValue();
+        assertEquals(TEST_BUCKET, initiateRequest.getBucketName());
+        assertEquals(TEST_UPLOAD_ID, initiateRequest.getKey());
+        assertEquals(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION,
+                initiateRequest.getObjectMetadata().getSSEAlgorithm());
+        assertEquals(TEST_CONTENT_TYPE, initiateRequest.getObjectMetadata().getContentType());
+
+        verify(mockUploadDao).writeMultipartUploadInfo(upload, TEST_MULTIPART_UPLOAD_ID, TEST_PART_SIZE, 3);
+        verify(mockUploadDedupeDao).registerUpload(eq(TEST_HEALTH_CODE), eq(TEST_UPLOAD_MD5), any(), eq(
+                TEST_UPLOAD_ID));
+    }
+
+    @Test
+    public void createMultipartUploadCapsPartCount() throws Exception {
+        // With 2.5 KB parts, a 50 MB upload would need 20,000 parts. This should be capped at 10,000 parts by making
+        // the parts bigger.
+        when(mockConfig.getPropertyAsInt(UploadService.CONFIG_KEY_MULTIPART_PART_SIZE)).thenReturn(2500);
+        svc.setConfig(mockConfig);
+
+        UploadRequest uploadRequest = makeUploadRequest(UploadValidator.MAX_MULTIPART_UPLOAD_SIZE);
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(TEST_UPLOAD_ID);
+        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE, null)).thenReturn(upload);
+        mockInitiateMultipartUpload();
+
+        MultipartUploadSession session = svc.createMultipartUpload(TestConstants.TEST_STUDY, TEST_USER,
+                uploadRequest);
+        assertEquals(5000, session.getPartSize());
+        assertEquals(10000, session.getPartCount());
+    }
+
+    @Test
+    public void createMultipartUploadNeverLinkedAsDupe() throws Exception {
+        // Multipart uploads are never linked to earlier uploads, even completed ones, since their MD5 isn't verified
+        // until validation.
+        UploadRequest uploadRequest = makeUploadRequest(12 * 1024 * 1024);
+        when(mockUploadDedupeDao.getDuplicate(eq(TEST_HEALTH_CODE), eq(TEST_UPLOAD_MD5), any())).thenReturn(
+                "original-upload");
+        DynamoUpload2 originalUpload = new DynamoUpload2();
+        originalUpload.setStatus(UploadStatus.SUCCEEDED);
+        originalUpload.setRecordId("original-record");
+        when(mockUploadDao.getUpload("original-upload")).thenReturn(originalUpload);
+
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(TEST_UPLOAD_ID);
+        when(mockUploadDao.createUpload(uploadRequest, TEST_HEALTH_CODE, null)).thenReturn(upload);
+        mockInitiateMultipartUpload();
+
+        MultipartUploadSession session = svc.createMultipartUpload(TestConstants.TEST_STUDY, TEST_USER,
+                uploadRequest);
+        assertEquals(TEST_UPLOAD_ID, session.getId());
+        verify(mockUploadDedupeDao, never()).getDuplicate(any(), any(), any());
+        verify(mockUploadDedupeDao).registerUpload(eq(TEST_HEALTH_CODE), eq(TEST_UPLOAD_MD5), any(), eq(
+                TEST_UPLOAD_ID));
+    }
+
+    @Test(expected = InvalidEntityException.class)
+    public void createMultipartUploadTooBig() throws Exception {
+        svc.createMultipartUpload(TestConstants.TEST_STUDY, TEST_USER, makeUploadRequest(
+                UploadValidator.MAX_MULTIPART_UPLOAD_SIZE + 1));
+    }
+
+    @Test
+    public void getUploadPartUrl() {
+        mockMultipartUpload(UploadStatus.REQUESTED);
+
+        UploadSession session = svc.getUploadPartUrl(TEST_USER, TEST_UPLOAD_ID, 2);
+        assertEquals(TEST_UPLOAD_ID, session.getId());
+        assertEquals(TEST_PRESIGNED_URL, session.getUrl());
+
+        GeneratePresignedUrlRequest presignedUrlRequest = presignedUrlRequestArgumentCaptor.getValue();
+        assertEquals(TEST_BUCKET, presignedUrlRequest.getBucketName());
+        assertEquals(TEST_UPLOAD_ID, presignedUrlRequest.getKey());
+        assertEquals("2", presignedUrlRequest.getRequestParameters().get("partNumber"));
+        assertEquals(TEST_MULTIPART_UPLOAD_ID, presignedUrlRequest.getRequestParameters().get("uploadId"));
+    }
+
+    @Test
+    public void getUploadPartUrlInvalidPartNumber() {
+        mockMultipartUpload(UploadStatus.REQUESTED);
+        for (int onePartNumber : new int[] { 0, 4 }) {
+            try {
+                svc.getUploadPartUrl(TEST_USER, TEST_UPLOAD_ID, onePartNumber);
+                fail("expected exception for part number " + onePartNumber);
+            } catch (BadRequestException ex) {
+                // expected exception
+            }
+        }
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getUploadPartUrlNotMultipart() {
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setHealthCode(TEST_HEALTH_CODE);
+        upload.setStatus(UploadStatus.REQUESTED);
+        upload.setUploadId(TEST_UPLOAD_ID);
+        when(mockUploadDao.getUpload(TEST_UPLOAD_ID)).thenReturn(upload);
+
+        svc.getUploadPartUrl(TEST_USER, TEST_UPLOAD_ID, 1);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getUploadPartUrlAlreadyComplete() {
+        mockMultipartUpload(UploadStatus.VALIDATION_IN_PROGRESS);
+        svc.getUploadPartUrl(TEST_USER, TEST_UPLOAD_ID, 1);
+    }
+
+    @Test
+    public void listUploadPartsPaginated() {
+        mockMultipartUpload(UploadStatus.REQUESTED);
+        when(mockS3Client.listParts(any(ListPartsRequest.class))).thenReturn(
+                makePartListing(true, makePartSummary(1), makePartSummary(2)),
+                makePartListing(false, makePartSummary(3)));
+
+        UploadPartList partList = svc.listUploadParts(TEST_USER, TEST_UPLOAD_ID);
+        assertEquals(TEST_UPLOAD_ID, partList.getUploadId());
+        assertEquals(TEST_PART_SIZE, partList.getPartSize());
+        assertEquals(3, partList.getPartCount());
+        assertEquals(3, partList.getParts().size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, partList.getParts().get(i).getPartNumber());
+            assertEquals(TEST_PART_SIZE, partList.getParts().get(i).getSize());
+        }
+    }
+
+    @Test
+    public void uploadPartComplete() {
+        mockMultipartUpload(UploadStatus.REQUESTED);
+        when(mockS3Client.listParts(any(ListPartsRequest.class))).thenReturn(makePartListing(false,
+                makePartSummary(1), makePartSummary(3)));
+
+        UploadPartList partList = svc.uploadPartComplete(TEST_USER, TEST_UPLOAD_ID, 3);
+        assertEquals(2, partList.getParts().size());
+
+        try {
+            svc.uploadPartComplete(TEST_USER, TEST_UPLOAD_ID, 2);
+            fail("expected exception");
+        } catch (NotFoundException ex) {
+            // expected exception
+        }
+    }
+
+    @Test
+    public void uploadCompleteMissingParts() {
+        DynamoUpload2 upload = mockMultipartUpload(UploadStatus.REQUESTED);
+        when(mockS3Client.listParts(any(ListPartsRequest.class))).thenReturn(makePartListing(false,
+                makePartSummary(1), makePartSummary(3)));
+
+        try {
+            svc.uploadComplete(TestConstants.TEST_STUDY, upload);
+            fail("expected exception");
+        } catch (BadRequestException ex) {
+            assertEquals("Upload " + TEST_UPLOAD_ID + " is missing parts [2]", ex.getMessage());
+        }
+        verify(mockS3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        verify(mockUploadDao, never()).uploadComplete(any());
+        verify(mockUploadValidationService, never()).validateUpload(any(), any());
+    }
+
+    @Test
+    public void uploadCompleteAssemblesParts() {
+        DynamoUpload2 upload = mockMultipartUpload(UploadStatus.REQUESTED);
+        when(mockS3Client.listParts(any(ListPartsRequest.class))).thenReturn(makePartListing(false,
+                makePartSummary(1), makePartSummary(2), makePartSummary(3)));
+        mockS3Metadata();
+
+        svc.uploadComplete(TestConstants.TEST_STUDY, upload);
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeRequestCaptor = ArgumentCaptor.forClass(
+                CompleteMultipartUploadRequest.class);
+        verify(mockS3Client).completeMultipartUpload(completeRequestCaptor.capture());
+        CompleteMultipartUploadRequest completeRequest = completeRequestCaptor.getValue();
+        assertEquals(TEST_BUCKET, completeRequest.getBucketName());
+        assertEquals(TEST_UPLOAD_ID, completeRequest.getKey());
+        assertEquals(TEST_MULTIPART_UPLOAD_ID, completeRequest.getUploadId());
+
+        List<PartETag> partETagList = completeRequest.getPartETags();
+        assertEquals(3, partETagList.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, partETagList.get(i).getPartNumber());
+            assertEquals("etag-" + (i + 1), partETagList.get(i).getETag());
+        }
+
+        verify(mockUploadDao).uploadComplete(upload);
+        verify(mockUploadValidationService).validateUpload(same(TestConstants.TEST_STUDY), same(upload));
+    }
+
+    @Test
+    public void nonMultipartUploadNeverListsParts() {
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(TEST_UPLOAD_ID);
+        upload.setStatus(UploadStatus.REQUESTED);
+        mockS3Metadata();
+
+        svc.uploadComplete(TestConstants.TEST_STUDY, upload);
+        verify(mockS3Client, never()).listParts(any(ListPartsRequest.class));
+        verify(mockS3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        verify(mockUploadDao, never()).writeMultipartUploadInfo(any(), anyString(), anyLong(), anyInt());
+        verify(mockUploadValidationService).validateUpload(same(TestConstants.TEST_STUDY), same(upload));
+    }
+
+    private static UploadRequest makeUploadRequest(long contentLength) throws Exception {
+        JsonNode uploadRequestJsonNode = BridgeObjectMapper.get().readTree("{\n" +
+                "   \"name\":\"test-upload\",\n" +
+                "   \"contentLength\":" + contentLength + ",\n" +
+                "   \"contentMd5\":\"" + TEST_UPLOAD_MD5 + "\",\n" +
+                "   \"contentType\":\"" + TEST_CONTENT_TYPE + "\"\n" +
+                "}");
+        return UploadRequest.fromJson(uploadRequestJsonNode);
+    }
+
+    private void mockInitiateMultipartUpload() {
+        InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+        initiateResult.setUploadId(TEST_MULTIPART_UPLOAD_ID);
+        when(mockS3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(
+                initiateResult);
+    }
+
+    // Mocks a 3-part multipart upload with the given status.
+    private DynamoUpload2 mockMultipartUpload(UploadStatus status) {
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setHealthCode(TEST_HEALTH_CODE);
+        upload.setMultipartUploadId(TEST_MULTIPART_UPLOAD_ID);
+        upload.setPartCount(3);
+        upload.setPartSize((long) TEST_PART_SIZE);
+        upload.setStatus(status);
+        upload.setUploadId(TEST_UPLOAD_ID);
+        when(mockUploadDao.getUpload(TEST_UPLOAD_ID)).thenReturn(upload);
+        return upload;
+    }
+
+    private void mockS3Metadata() {
+        ObjectMetadata mockObjMetadata = mock(ObjectMetadata.class);
+        when(mockObjMetadata.getSSEAlgorithm()).thenReturn(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        when(mockS3Client.getObjectMetadata(TEST_BUCKET, TEST_UPLOAD_ID)).thenReturn(mockObjMetadata);
+    }
+
+    private static PartListing makePartListing(boolean isTruncated, PartSummary... parts) {
+        PartListing partListing = new PartListing();
+        partListing.setParts(ImmutableList.copyOf(parts));
+        partListing.setTruncated(isTruncated);
+        partListing.setNextPartNumberMarker(parts[parts.length - 1].getPartNumber());
+        return partListing;
+    }
+
+    private static PartSummary makePartSummary(int partNumber) {
+        PartSummary partSummary = new PartSummary();
+        partSummary.setPartNumber(partNumber);
+        partSummary.setSize(TEST_PART_SIZE);
+        partSummary.setETag("etag-" + partNumber);
+        return partSummary;
+    }
+}
@@ -1,7 +1,13 @@
 package org.sagebionetworks.bridge.services;
 
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -16,17 +22,23 @@ import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.dao.UploadDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
+import org.sagebionetworks.bridge.upload.UploadValidationStatusNotifier;
 
 @SuppressWarnings("unchecked")
 public class UploadServiceUploadCompleteMockTest {
     private static final String TEST_BUCKET = "test-bucket";
+    private static final String TEST_HEALTH_CODE = "test-health-code";
+    private static final String TEST_ORIGINAL_RECORD_ID = "original-record";
+    private static final String TEST_ORIGINAL_UPLOAD_ID = "original-upload";
     private static final String TEST_UPLOAD_ID = "test-upload";
 
     private AmazonS3 mockS3Client;
     private UploadDao mockUploadDao;
     private UploadValidationService mockUploadValidationService;
+    private UploadValidationStatusNotifier mockNotifier;
     private UploadService svc;
 
     @Before
@@ -39,6 +51,7 @@ public class UploadServiceUploadCompleteMockTest {
         mockS3Client = mock(AmazonS3.class);
         mockUploadDao = mock(UploadDao.class);
         mockUploadValidationService = mock(UploadValidationService.class);
+        mockNotifier = mock(UploadValidationStatusNotifier.class);
 
         // Set up service
         svc = new UploadService();
@@ -46,6 +59,7 @@ public class UploadServiceUploadCompleteMockTest {
         svc.setS3Client(mockS3Client);
         svc.setUploadDao(mockUploadDao);
         svc.setUploadValidationService(mockUploadValidationService);
+        svc.setUploadValidationStatusNotifier(mockNotifier);
     }
 
     @Test
@@ -103,4 +117,110 @@ public class UploadServiceUploadCompleteMockTest {
         verify(mockUploadDao).uploadComplete(upload);
         verify(mockUploadValidationService).validateUpload(TestConstants.TEST_STUDY, upload);
     }
+
+    @Test
+    public void dupeOfSucceededUpload() {
+        // set up input
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setDuplicateUploadId(TEST_ORIGINAL_UPLOAD_ID);
+        upload.setHealthCode(TEST_HEALTH_CODE);
+        upload.setUploadId(TEST_UPLOAD_ID);
+        upload.setStatus(UploadStatus.REQUESTED);
+
+        // mock S3
+        mockS3Metadata();
+
+        // mock upload DAO
+        DynamoUpload2 originalUpload = new DynamoUpload2();
+        originalUpload.setHealthCode(TEST_HEALTH_CODE);
+        originalUpload.setRecordId(TEST_ORIGINAL_RECORD_ID);
+        originalUpload.setStatus(UploadStatus.SUCCEEDED);
+        originalUpload.setUploadId(TEST_ORIGINAL_UPLOAD_ID);
+        when(mockUploadDao.getUpload(TEST_ORIGINAL_UPLOAD_ID)).thenReturn(originalUpload);
+
+        // execute
+        svc.uploadComplete(TestConstants.TEST_STUDY, upload);
+
+        // Verify we link to the original record and skip validation.
+        verify(mockUploadDao).uploadComplete(upload);
+        verify(mockUploadDao).writeValidationStatus(same(upload), eq(UploadStatus.SUCCEEDED), anyList(),
+                eq(TEST_ORIGINAL_RECORD_ID));
+        verify(mockNotifier).notifyValidationComplete(TEST_UPLOAD_ID);
+        verifyZeroInteractions(mockUploadValidationService);
+    }
+
+    @Test
+    public void dupeOfFailedUpload() {
+        // set up input
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setDuplicateUploadId(TEST_ORIGINAL_UPLOAD_ID);
+        upload.setHealthCode(TEST_HEALTH_CODE);
+        upload.setUploadId(TEST_UPLOAD_ID);
+        upload.setStatus(UploadStatus.REQUESTED);
+
+        // mock S3
+        mockS3Metadata();
+
+        // mock upload DAO
+        DynamoUpload2 originalUpload = new DynamoUpload2();
+        originalUpload.setHealthCode(TEST_HEALTH_CODE);
+        originalUpload.setStatus(UploadStatus.VALIDATION_FAILED);
+        originalUpload.setUploadId(TEST_ORIGINAL_UPLOAD_ID);
+        when(mockUploadDao.getUpload(TEST_ORIGINAL_UPLOAD_ID)).thenReturn(originalUpload);
+
+        // execute
+        svc.uploadComplete(TestConstants.TEST_STUDY, upload);
+
+        // The original failed, so we re-validate. (The failure might have been fixed by a schema change.)
+        verify(mockUploadDao).uploadComplete(upload);
+        verify(mockUploadDao, never()).writeValidationStatus(any(), any(), any(), any());
+        verify(mockUploadValidationService).validateUpload(TestConstants.TEST_STUDY, upload);
+    }
+
+    @Test
+    public void errorGettingOriginalUpload() {
+        // set up input
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setDuplicateUploadId(TEST_ORIGINAL_UPLOAD_ID);
+        upload.setHealthCode(TEST_HEALTH_CODE);
+        upload.setUploadId(TEST_UPLOAD_ID);
+        upload.setStatus(UploadStatus.REQUESTED);
+
+        // mock S3 and upload DAO
+        mockS3Metadata();
+        when(mockUploadDao.getUpload(TEST_ORIGINAL_UPLOAD_ID)).thenThrow(RuntimeException.class);
+
+        // execute
+        svc.uploadComplete(TestConstants.TEST_STUDY, upload);
+
+        // Dedupe errors fall back to full validation.
+        verify(mockUploadDao).uploadComplete(upload);
+        verify(mockUploadValidationService).validateUpload(TestConstants.TEST_STUDY, upload);
+    }
+
+    @Test
+    public void concurrentlyCompleted() {
+        // set up input
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(TEST_UPLOAD_ID);
+        upload.setStatus(UploadStatus.REQUESTED);
+
+        // mock S3
+        mockS3Metadata();
+
+        // Mock upload DAO. Another caller (client or S3 event) completed the upload first.
+        doThrow(ConcurrentModificationException.class).when(mockUploadDao).uploadComplete(upload);
+
+        // execute - doesn't throw
+        svc.uploadComplete(TestConstants.TEST_STUDY, upload);
+
+        // Validation was kicked off by the other caller, not us.
+        verifyZeroInteractions(mockUploadValidationService);
+    }
+
+    private void mockS3Metadata() {
+        ObjectMetadata mockObjMetadata = mock(ObjectMetadata.class);
+        when(mockObjMetadata.getSSEAlgorithm()).thenReturn(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        when(mockS3Client.getObjectMetadata(TEST_BUCKET, TEST_UPLOAD_ID)).thenReturn(mockObjMetadata);
+    }
 }
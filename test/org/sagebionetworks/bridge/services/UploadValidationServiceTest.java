@@ -1,7 +1,10 @@
 package org.sagebionetworks.bridge.services;
 
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.concurrent.ExecutorService;
@@ -11,6 +14,7 @@ import org.sagebionetworks.bridge.TestUtils;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import org.sagebionetworks.bridge.upload.UploadValidationTask;
 import org.sagebionetworks.bridge.upload.UploadValidationTaskFactory;
 
@@ -45,4 +49,55 @@ public class UploadValidationServiceTest {
         // validate
         verify(mockExecutor).execute(mockTask);
     }
+
+    @Test
+    public void validateUploadSynchronously() {
+        // inputs
+        Study study = TestUtils.getValidStudy(UploadValidationServiceTest.class);
+        Upload upload = new DynamoUpload2();
+
+        // mock task and task factory
+        UploadValidationTask mockTask = mock(UploadValidationTask.class);
+        when(mockTask.getValidationStatus()).thenReturn(UploadStatus.SUCCEEDED);
+        UploadValidationTaskFactory mockTaskFactory = mock(UploadValidationTaskFactory.class);
+        when(mockTaskFactory.newTask(study, upload)).thenReturn(mockTask);
+
+        // set up service - The async thread pool should never be used.
+        ExecutorService mockExecutor = mock(ExecutorService.class);
+        UploadValidationService svc = new UploadValidationService();
+        svc.setAsyncExecutorService(mockExecutor);
+        svc.setTaskFactory(mockTaskFactory);
+
+        // execute and validate
+        svc.validateUploadSynchronously(study, upload);
+        verify(mockTask).run();
+        verifyZeroInteractions(mockExecutor);
+    }
+
+    @Test
+    public void validateUploadSynchronouslyFailed() {
+        // inputs
+        Study study = TestUtils.getValidStudy(UploadValidationServiceTest.class);
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId("test-upload");
+
+        // mock task and task factory - The task failed because a handler threw.
+        Exception handlerEx = new RuntimeException("handler failed");
+        UploadValidationTask mockTask = mock(UploadValidationTask.class);
+        when(mockTask.getValidationStatus()).thenReturn(UploadStatus.VALIDATION_FAILED);
+        when(mockTask.getHandlerException()).thenReturn(handlerEx);
+        UploadValidationTaskFactory mockTaskFactory = mock(UploadValidationTaskFactory.class);
+        when(mockTaskFactory.newTask(study, upload)).thenReturn(mockTask);
+
+        UploadValidationService svc = new UploadValidationService();
+        svc.setTaskFactory(mockTaskFactory);
+
+        // execute and validate
+        try {
+            svc.validateUploadSynchronously(study, upload);
+            fail("expected exception");
+        } catch (RuntimeException ex) {
+            assertSame(handlerEx, ex.getCause());
+        }
+    }
 }
@@ -0,0 +1,245 @@
+package org.sagebionetworks.bridge.services.backfill;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.dao.BackfillDao;
+import org.sagebionetworks.bridge.dao.HealthCodeDao;
+import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.backfill.BackfillRecord;
+import org.sagebionetworks.bridge.models.backfill.BackfillStatus;
+import org.sagebionetworks.bridge.models.backfill.BackfillTask;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.services.UploadValidationService;
+
+public class UploadValidationBackfillTest {
+    private static final String TASK_NAME = "uploadValidationByUploadIdBackfill";
+    private static final String TASK_ID = "current-task";
+    private static final String TEST_HEALTH_CODE = "test-health-code";
+    private static final String TEST_STUDY_ID = "test-study";
+
+    private final Map<String, DynamoUpload2> mockUploads = new HashMap<>();
+
+    private BackfillDao mockBackfillDao;
+    private BackfillCallback mockCallback;
+    private UploadDao mockUploadDao;
+    private UploadValidationService mockUploadValidationService;
+    private BackfillTask task;
+    private List<String> uploadIdList;
+    private UploadValidationBackfill backfill;
+
+    @Before
+    public void setup() {
+        // mock config - High rates so the tests don't wait on the rate limiter.
+        BridgeConfig mockConfig = mock(BridgeConfig.class);
+        when(mockConfig.getPropertyAsInt(UploadValidationBackfill.CONFIG_KEY_CONCURRENCY)).thenReturn(2);
+        when(mockConfig.getProperty(UploadValidationBackfill.CONFIG_KEY_INITIAL_RATE)).thenReturn("1000");
+        when(mockConfig.getProperty(UploadValidationBackfill.CONFIG_KEY_MAX_RATE)).thenReturn("1000");
+        when(mockConfig.getProperty(UploadValidationBackfill.CONFIG_KEY_MIN_RATE)).thenReturn("100");
+
+        // mock DAOs
+        mockBackfillDao = mock(BackfillDao.class);
+        mockUploadDao = mock(UploadDao.class);
+
+        HealthCodeDao mockHealthCodeDao = mock(HealthCodeDao.class);
+        when(mockHealthCodeDao.getStudyIdentifier(TEST_HEALTH_CODE)).thenReturn(TEST_STUDY_ID);
+
+        mockUploadValidationService = mock(UploadValidationService.class);
+        mockCallback = mock(BackfillCallback.class);
+
+        task = mockTask(TASK_ID, BackfillStatus.IN_PROCESS);
+
+        // set up backfill
+        backfill = new UploadValidationBackfill() {
+            @Override
+            protected List<String> getUploadIdList(BackfillTask task, BackfillCallback callback) {
+                return uploadIdList;
+            }
+        };
+        backfill.setBackfillDao(mockBackfillDao);
+        backfill.setBackfillRecordFactory(new BackfillRecordFactory());
+        backfill.setConfig(mockConfig);
+        backfill.setHealthCodeDao(mockHealthCodeDao);
+        backfill.setUploadDao(mockUploadDao);
+        backfill.setUploadValidationService(mockUploadValidationService);
+    }
+
+    @Test
+    public void redriveAndCheckpoint() {
+        uploadIdList = ImmutableList.of("upload-1", "upload-2", "upload-3");
+        mockUploads("upload-1", "upload-2", "upload-3");
+        doReturn(ImmutableList.of(task)).when(mockBackfillDao).getTasks(eq(TASK_NAME), anyLong());
+
+        backfill.doBackfill(task, mockCallback);
+
+        for (String oneUploadId : uploadIdList) {
+            verify(mockUploadValidationService).validateUploadSynchronously(eq(new StudyIdentifierImpl(
+                    TEST_STUDY_ID)), eq(mockUploads.get(oneUploadId)));
+            verify(mockBackfillDao).createUploadRecord(TASK_ID, TEST_STUDY_ID, oneUploadId,
+                    UploadValidationBackfill.OPERATION_REDRIVE);
+        }
+    }
+
+    @Test
+    public void resumeFromIncompleteTasks() {
+        // Two previous runs failed. Before that, a run completed. Uploads from the failed runs are skipped. Uploads
+        // from the completed run are not.
+        BackfillTask completedTask = mockTask("completed-task", BackfillStatus.COMPLETED);
+        BackfillTask failedTask1 = mockTask("failed-task-1", BackfillStatus.FAILED);
+        BackfillTask failedTask2 = mockTask("failed-task-2", BackfillStatus.FAILED);
+        doReturn(ImmutableList.of(completedTask, failedTask1, failedTask2, task)).when(mockBackfillDao).getTasks(
+                eq(TASK_NAME), anyLong());
+        doReturn(mockRecordIter("upload-1")).when(mockBackfillDao).getRecords("failed-task-1");
+        doReturn(mockRecordIter("upload-2")).when(mockBackfillDao).getRecords("failed-task-2");
+
+        uploadIdList = ImmutableList.of("upload-1", "upload-2", "upload-3");
+        mockUploads("upload-1", "upload-2", "upload-3");
+
+        backfill.doBackfill(task, mockCallback);
+
+        verify(mockBackfillDao, never()).getRecords("completed-task");
+        verify(mockUploadDao, never()).getUpload("upload-1");
+        verify(mockUploadDao, never()).getUpload("upload-2");
+        verify(mockBackfillDao).createUploadRecord(TASK_ID, TEST_STUDY_ID, "upload-3",
+                UploadValidationBackfill.OPERATION_REDRIVE);
+    }
+
+    @Test
+    public void retryOnThrottling() {
+        uploadIdList = ImmutableList.of("upload-1");
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setHealthCode(TEST_HEALTH_CODE);
+        upload.setUploadId("upload-1");
+        when(mockUploadDao.getUpload("upload-1")).thenThrow(new ProvisionedThroughputExceededException("throttled"))
+                .thenReturn(upload);
+        doReturn(ImmutableList.of(task)).when(mockBackfillDao).getTasks(eq(TASK_NAME), anyLong());
+
+        backfill.doBackfill(task, mockCallback);
+
+        verify(mockUploadDao, times(2)).getUpload("upload-1");
+        verify(mockBackfillDao).createUploadRecord(TASK_ID, TEST_STUDY_ID, "upload-1",
+                UploadValidationBackfill.OPERATION_REDRIVE);
+    }
+
+    @Test
+    public void retryOnThrottledValidation() {
+        // Validation handlers catch everything, so throttling shows up as the cause of the validation failure.
+        uploadIdList = ImmutableList.of("upload-1");
+        mockUploads("upload-1");
+        doThrow(new RuntimeException("validation failed", new ProvisionedThroughputExceededException("throttled")))
+                .doNothing().when(mockUploadValidationService).validateUploadSynchronously(any(), any());
+        doReturn(ImmutableList.of(task)).when(mockBackfillDao).getTasks(eq(TASK_NAME), anyLong());
+
+        backfill.doBackfill(task, mockCallback);
+
+        verify(mockUploadValidationService, times(2)).validateUploadSynchronously(any(), any());
+        verify(mockBackfillDao).createUploadRecord(TASK_ID, TEST_STUDY_ID, "upload-1",
+                UploadValidationBackfill.OPERATION_REDRIVE);
+    }
+
+    @Test
+    public void failedValidationIsNotCheckpointed() {
+        uploadIdList = ImmutableList.of("upload-1", "upload-2");
+        mockUploads("upload-1", "upload-2");
+        doThrow(new RuntimeException("validation failed")).when(mockUploadValidationService)
+                .validateUploadSynchronously(any(), eq(mockUploads.get("upload-1")));
+        doReturn(ImmutableList.of(task)).when(mockBackfillDao).getTasks(eq(TASK_NAME), anyLong());
+
+        backfill.doBackfill(task, mockCallback);
+
+        // Not throttling, so we only try once, and we don't checkpoint it.
+        verify(mockUploadValidationService, times(1)).validateUploadSynchronously(any(),
+                eq(mockUploads.get("upload-1")));
+        verify(mockBackfillDao, never()).createUploadRecord(anyString(), anyString(), eq("upload-1"), anyString());
+        verify(mockBackfillDao).createUploadRecord(TASK_ID, TEST_STUDY_ID, "upload-2",
+                UploadValidationBackfill.OPERATION_REDRIVE);
+    }
+
+    @Test
+    public void errorDoesNotFailBackfill() {
+        uploadIdList = ImmutableList.of("upload-1", "upload-2");
+        mockUploads("upload-2");
+        when(mockUploadDao.getUpload("upload-1")).thenThrow(NotFoundException.class);
+        doReturn(ImmutableList.of(task)).when(mockBackfillDao).getTasks(eq(TASK_NAME), anyLong());
+
+        backfill.doBackfill(task, mockCallback);
+
+        // Not-found isn't throttling, so we only try once, and we don't checkpoint it.
+        verify(mockUploadDao, times(1)).getUpload("upload-1");
+        verify(mockBackfillDao, never()).createUploadRecord(anyString(), anyString(), eq("upload-1"), anyString());
+        verify(mockBackfillDao).createUploadRecord(TASK_ID, TEST_STUDY_ID, "upload-2",
+                UploadValidationBackfill.OPERATION_REDRIVE);
+    }
+
+    @Test
+    public void isThrottlingException() {
+        assertTrue(UploadValidationBackfill.isThrottlingException(new ProvisionedThroughputExceededException(
+                "throttled")));
+
+        AmazonServiceException slowDownEx = new AmazonServiceException("slow down");
+        slowDownEx.setErrorCode("SlowDown");
+        assertTrue(UploadValidationBackfill.isThrottlingException(new RuntimeException(slowDownEx)));
+
+        AmazonServiceException unavailableEx = new AmazonServiceException("unavailable");
+        unavailableEx.setStatusCode(503);
+        assertTrue(UploadValidationBackfill.isThrottlingException(unavailableEx));
+
+        AmazonServiceException accessDeniedEx = new AmazonServiceException("access denied");
+        accessDeniedEx.setErrorCode("AccessDenied");
+        accessDeniedEx.setStatusCode(403);
+        assertFalse(UploadValidationBackfill.isThrottlingException(accessDeniedEx));
+        assertFalse(UploadValidationBackfill.isThrottlingException(new NotFoundException("not found")));
+    }
+
+    private void mockUploads(String... uploadIds) {
+        for (String oneUploadId : uploadIds) {
+            DynamoUpload2 upload = new DynamoUpload2();
+            upload.setHealthCode(TEST_HEALTH_CODE);
+            upload.setUploadId(oneUploadId);
+            when(mockUploadDao.getUpload(oneUploadId)).thenReturn(upload);
+            mockUploads.put(oneUploadId, upload);
+        }
+    }
+
+    private static BackfillTask mockTask(String taskId, BackfillStatus status) {
+        BackfillTask task = mock(BackfillTask.class);
+        when(task.getId()).thenReturn(taskId);
+        when(task.getName()).thenReturn(TASK_NAME);
+        when(task.getStatus()).thenReturn(status.name());
+        return task;
+    }
+
+    private static Iterator<BackfillRecord> mockRecordIter(String uploadId) {
+        BackfillRecord record = mock(BackfillRecord.class);
+        JsonNode recordJson = BridgeObjectMapper.get().createObjectNode().put("upload", uploadId);
+        when(record.toJsonNode()).thenReturn(recordJson);
+        return ImmutableList.of(record).iterator();
+    }
+}
@@ -1,10 +1,13 @@
 package org.sagebionetworks.bridge.upload;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Charsets;
@@ -37,4 +40,132 @@ public class ParseJsonHandlerTest {
         assertEquals(1, jsonInnerMap.size());
         assertTrue((boolean) jsonInnerMap.get("isJson"));
     }
+
+    @Test
+    public void mixedArchive() {
+        // This is modeled after an mPower walking activity, with JSON accelerometer data, an m4a audio file, and a
+        // CSV-like text file. Content types are declared in info.json for some, but not all, files.
+        String infoJsonText = "{\n" +
+                "   \"files\":[{\n" +
+                "       \"filename\":\"accel_walking_outbound.json\",\n" +
+                "       \"contentType\":\"application/json\"\n" +
+                "   },{\n" +
+                "       \"filename\":\"audio_audio.m4a\",\n" +
+                "       \"contentType\":\"audio/mp4\"\n" +
+                "   },{\n" +
+                "       \"filename\":\"tapping_samples.csv\",\n" +
+                "       \"contentType\":\"text/csv\"\n" +
+                "   },{\n" +
+                "       \"filename\":\"momentInDay\"\n" +
+                "   },{\n" +
+                "       \"filename\":\"empty\"\n" +
+                "   }],\n" +
+                "   \"item\":\"walking-activity\"\n" +
+                "}";
+
+        // m4a files start with a 4-byte box size, followed by "ftyp".
+        byte[] audioBytes = new byte[] { 0x00, 0x00, 0x00, 0x20, 'f', 't', 'y', 'p', 'M', '4', 'A', ' ' };
+
+        Map<String, byte[]> inputMap = new HashMap<>();
+        inputMap.put("info.json", infoJsonText.getBytes(Charsets.UTF_8));
+        inputMap.put("accel_walking_outbound.json", "\n [{\"x\":0.1,\"y\":0.2,\"z\":0.3}]"
+                .getBytes(Charsets.UTF_8));
+        inputMap.put("audio_audio.m4a", audioBytes);
+        inputMap.put("tapping_samples.csv", "12.5,34.2\n13.1,35.0".getBytes(Charsets.UTF_8));
+        inputMap.put("momentInDay", "{\"choiceAnswers\":[\"morning\"]}".getBytes(Charsets.UTF_8));
+        inputMap.put("empty", new byte[0]);
+
+        UploadValidationContext ctx = new UploadValidationContext();
+        ctx.setUnzippedDataMap(inputMap);
+
+        // execute and validate
+        new ParseJsonHandler().handle(ctx);
+
+        Map<String, byte[]> byteMap = ctx.getUnzippedDataMap();
+        assertEquals(3, byteMap.size());
+        assertSame(audioBytes, byteMap.get("audio_audio.m4a"));
+        assertEquals("12.5,34.2\n13.1,35.0", new String(byteMap.get("tapping_samples.csv"), Charsets.UTF_8));
+        assertEquals(0, byteMap.get("empty").length);
+
+        Map<String, JsonNode> jsonDataMap = ctx.getJsonDataMap();
+        assertEquals(3, jsonDataMap.size());
+        assertEquals("walking-activity", jsonDataMap.get("info.json").get("item").textValue());
+        assertEquals(0.3, jsonDataMap.get("accel_walking_outbound.json").get(0).get("z").doubleValue(), 0.001);
+        assertEquals("morning", jsonDataMap.get("momentInDay").get("choiceAnswers").get(0).textValue());
+    }
+
+    @Test
+    public void parallel() {
+        // Enough entries to parse in parallel. Even entries are JSON. Odd entries look like JSON, but aren't.
+        Map<String, byte[]> inputMap = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            String text = i % 2 == 0 ? "{\"index\":" + i + "}" : "{not JSON " + i;
+            inputMap.put("entry" + i, bytes(text));
+        }
+        inputMap.put("audio.m4a", new byte[] { 0x00, 0x00, 0x00, 0x20, 'f', 't', 'y', 'p' });
+
+        UploadValidationContext ctx = new UploadValidationContext();
+        ctx.setUnzippedDataMap(inputMap);
+
+        // execute
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ParseJsonHandler handler = new ParseJsonHandler();
+            handler.setForkJoinPool(pool);
+            handler.setParallelism(3, 10);
+            handler.handle(ctx);
+        } finally {
+            pool.shutdown();
+        }
+
+        // validate - same as parsing sequentially
+        Map<String, byte[]> byteMap = ctx.getUnzippedDataMap();
+        assertEquals(26, byteMap.size());
+        assertTrue(byteMap.containsKey("audio.m4a"));
+
+        Map<String, JsonNode> jsonDataMap = ctx.getJsonDataMap();
+        assertEquals(25, jsonDataMap.size());
+        for (int i = 0; i < 50; i++) {
+            String entryName = "entry" + i;
+            if (i % 2 == 0) {
+                assertEquals(i, jsonDataMap.get(entryName).get("index").intValue());
+                assertFalse(byteMap.containsKey(entryName));
+            } else {
+                assertFalse(jsonDataMap.containsKey(entryName));
+                assertTrue(byteMap.containsKey(entryName));
+            }
+        }
+    }
+
+    @Test
+    public void isJsonCandidate() {
+        // objects and arrays, with and without whitespace and BOM
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("{}"), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("[]"), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes(" \r\n\t{}"), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("\uFEFF{}"), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("{}"), "text/plain"));
+
+        // scalars, depending on content type hints
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("42"), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("-1"), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("\"bar\""), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("true"), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("false"), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("null"), null));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo", bytes("42"), "application/json"));
+        assertFalse(ParseJsonHandler.isJsonCandidate("foo", bytes("42"), "text/csv"));
+        assertTrue(ParseJsonHandler.isJsonCandidate("foo.json", bytes("42"), "text/csv"));
+
+        // not JSON
+        assertFalse(ParseJsonHandler.isJsonCandidate("foo", new byte[0], null));
+        assertFalse(ParseJsonHandler.isJsonCandidate("foo.json", bytes("  \n "), null));
+        assertFalse(ParseJsonHandler.isJsonCandidate("foo", bytes("This is not JSON"), null));
+        assertFalse(ParseJsonHandler.isJsonCandidate("foo", new byte[] { 0x00, 0x00, 0x00, 0x20 }, null));
+        assertFalse(ParseJsonHandler.isJsonCandidate("foo", new byte[] { (byte) 0xFF, (byte) 0xF1 }, null));
+    }
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(Charsets.UTF_8);
+    }
 }
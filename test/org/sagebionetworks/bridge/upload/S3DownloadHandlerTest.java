@@ -1,12 +1,16 @@
 package org.sagebionetworks.bridge.upload;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 
 import com.google.common.base.Charsets;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Test;
 
 import org.sagebionetworks.bridge.TestConstants;
@@ -41,6 +45,32 @@ public class S3DownloadHandlerTest {
         assertEquals("test data", new String(ctx.getData(), Charsets.UTF_8));
     }
 
+    @Test
+    public void multipartMd5Matches() throws Exception {
+        byte[] data = "test data".getBytes(Charsets.UTF_8);
+        UploadValidationContext ctx = makeMultipartContext(Base64.encodeBase64String(DigestUtils.md5(data)));
+        S3DownloadHandler handler = makeHandler(data);
+
+        handler.handle(ctx);
+        assertEquals("test data", new String(ctx.getData(), Charsets.UTF_8));
+    }
+
+    @Test
+    public void multipartMd5Mismatch() throws Exception {
+        byte[] data = "test data".getBytes(Charsets.UTF_8);
+        UploadValidationContext ctx = makeMultipartContext(Base64.encodeBase64String(DigestUtils.md5(
+                "other data")));
+        S3DownloadHandler handler = makeHandler(data);
+
+        try {
+            handler.handle(ctx);
+            fail("expected exception");
+        } catch (UploadValidationException ex) {
+            // expected exception
+        }
+        assertNull(ctx.getData());
+    }
+
     @Test(expected = UploadValidationException.class)
     public void exception() throws Exception {
         // inputs
@@ -62,4 +92,24 @@ public class S3DownloadHandlerTest {
         // execute
         handler.handle(ctx);
     }
+
+    private static UploadValidationContext makeMultipartContext(String contentMd5) {
+        DynamoUpload2 upload2 = new DynamoUpload2();
+        upload2.setUploadId("test-upload-id");
+        upload2.setMultipartUploadId("test-multipart-upload-id");
+        upload2.setContentMd5(contentMd5);
+
+        UploadValidationContext ctx = new UploadValidationContext();
+        ctx.setUpload(upload2);
+        return ctx;
+    }
+
+    private static S3DownloadHandler makeHandler(byte[] data) throws Exception {
+        S3Helper mockS3Helper = mock(S3Helper.class);
+        when(mockS3Helper.readS3FileAsBytes(TestConstants.UPLOAD_BUCKET, "test-upload-id")).thenReturn(data);
+
+        S3DownloadHandler handler = new S3DownloadHandler();
+        handler.setS3Helper(mockS3Helper);
+        return handler;
+    }
 }
@@ -1,14 +1,11 @@
 package org.sagebionetworks.bridge.upload;
 
-import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
 import org.junit.Test;
 
@@ -21,84 +18,31 @@ import org.sagebionetworks.bridge.services.ParticipantOptionsService;
 
 public class TranscribeConsentHandlerTest {
     private static final String TEST_HEALTHCODE = "test-healthcode";
-    private static final String TEST_EXTERNAL_ID = "test-external-id";
-    private static final String TEST_USER_GROUPS = "test-group1,test-group2";
 
     @Test
     public void test() {
         // mock options service
+        ParticipantOptionsLookup lookup = new ParticipantOptionsLookup(ImmutableMap.of(
+                ParticipantOption.SHARING_SCOPE.name(), ParticipantOption.SharingScope.SPONSORS_AND_PARTNERS.name()));
         ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
-        when(mockOptionsService.getOptions(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(
-            ImmutableMap.of(
-                ParticipantOption.SHARING_SCOPE.name(), ParticipantOption.SharingScope.SPONSORS_AND_PARTNERS.name(),
-                ParticipantOption.EXTERNAL_IDENTIFIER.name(), TEST_EXTERNAL_ID,
-                ParticipantOption.DATA_GROUPS.name(), TEST_USER_GROUPS)
-            )
-        );
-        
-        HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
-        HealthDataRecordBuilder outputRecordBuilder = setupContextAndRunHandler(recordBuilder, mockOptionsService);
-        
-        assertSame(recordBuilder, outputRecordBuilder);
-        assertEquals(ParticipantOption.SharingScope.SPONSORS_AND_PARTNERS, outputRecordBuilder.getUserSharingScope());
-        assertEquals(TEST_EXTERNAL_ID, outputRecordBuilder.getUserExternalId());
-        assertEquals(Sets.newHashSet("test-group1","test-group2"), outputRecordBuilder.getUserDataGroups());
-    }
-
-    @Test
-    public void testNoParticipantOptions() {
-        // mock options service
-        ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
-        when(mockOptionsService.getOptions(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(Maps.newHashMap()));
-
-        HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
-        HealthDataRecordBuilder outputRecordBuilder = setupContextAndRunHandler(recordBuilder, mockOptionsService);
-        
-        assertSame(recordBuilder, outputRecordBuilder);
-        assertEquals(ParticipantOption.SharingScope.NO_SHARING, outputRecordBuilder.getUserSharingScope());
-        assertNull(outputRecordBuilder.getUserExternalId());
-        assertNull(outputRecordBuilder.getUserDataGroups());
-    }
+        when(mockOptionsService.getOptions(TEST_HEALTHCODE)).thenReturn(lookup);
 
-    @Test
-    public void emptyStringSetConvertedCorrectly() {
-        ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
-        when(mockOptionsService.getOptions(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(ImmutableMap.of(
-                ParticipantOption.DATA_GROUPS.name(), "")));
-        
-        HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
-        HealthDataRecordBuilder outputRecordBuilder = setupContextAndRunHandler(recordBuilder, mockOptionsService);
-        
-        assertNull(outputRecordBuilder.getUserDataGroups());
-    }
-    
-    @Test
-    public void setOfOneStringConvertedCorrectly() {
-        ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
-        when(mockOptionsService.getOptions(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(
-                ImmutableMap.of(ParticipantOption.DATA_GROUPS.name(), "group1")));
-        
-        HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
-        HealthDataRecordBuilder outputRecordBuilder = setupContextAndRunHandler(recordBuilder, mockOptionsService);
-        
-        assertEquals(Sets.newHashSet("group1"), outputRecordBuilder.getUserDataGroups());
-    }
-    
-    private HealthDataRecordBuilder setupContextAndRunHandler(HealthDataRecordBuilder recordBuilder,
-            ParticipantOptionsService optsService) {
         TranscribeConsentHandler handler = new TranscribeConsentHandler();
-        handler.setOptionsService(optsService);
+        handler.setOptionsService(mockOptionsService);
 
-        // set up context - handler expects Upload and RecordBuilder
+        // set up context - handler expects Upload
         DynamoUpload2 upload = new DynamoUpload2();
         upload.setHealthCode(TEST_HEALTHCODE);
 
+        HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
         UploadValidationContext context = new UploadValidationContext();
         context.setUpload(upload);
         context.setHealthDataRecordBuilder(recordBuilder);
 
-        // execute
+        // execute and validate - The options go in the context. The record builder is left alone, since other
+        // handlers may be reading it concurrently.
         handler.handle(context);
-        return context.getHealthDataRecordBuilder();
+        assertSame(lookup, context.getParticipantOptions());
+        assertNull(recordBuilder.getUserSharingScope());
     }
 }
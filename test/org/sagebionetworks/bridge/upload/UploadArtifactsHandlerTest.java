@@ -1,12 +1,18 @@
 package org.sagebionetworks.bridge.upload;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -14,7 +20,9 @@ import java.util.TreeMap;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.joda.time.LocalDate;
 import org.joda.time.format.ISODateTimeFormat;
@@ -27,7 +35,9 @@ import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataAttachment;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachment;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachmentBuilder;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 import org.sagebionetworks.bridge.s3.S3Helper;
@@ -35,62 +45,194 @@ import org.sagebionetworks.bridge.services.HealthDataService;
 
 public class UploadArtifactsHandlerTest {
     private static final long ARBITRARY_TIMESTAMP = 1424136378727L;
-    private static final String ATTACHMENT_ID_BAR = "attachment-bar";
-    private static final String ATTACHMENT_ID_FOO = "attachment-foo";
     private static final String ATTACHMENT_TEXT_BAR = "This is bar";
     private static final String ATTACHMENT_TEXT_FOO = "This is foo";
     private static final byte[] BYTES_BAR = ATTACHMENT_TEXT_BAR.getBytes(Charsets.UTF_8);
     private static final byte[] BYTES_FOO = ATTACHMENT_TEXT_FOO.getBytes(Charsets.UTF_8);
-    private static final String TEST_RECORD_ID = "test-record";
+    private static final String TEST_ATTACHMENT_ID = "test-attachment";
     private static final String TEST_UPLOAD_ID = "test-upload";
     private static final Set<String> USER_DATA_GROUPS = Sets.newHashSet("group1","group2");
 
     @Test
     public void test() throws Exception {
-        // Intermediate record w/o attachments.
-        String dataJsonText = "{\n" +
-                "   \"json.json.string\":\"This is a string\",\n" +
-                "   \"json.json.int\":42\n" +
-                "}";
-        JsonNode dataJson = BridgeObjectMapper.get().readTree(dataJsonText);
-        HealthDataRecord intermediateRecord = createValidRecordBuilder(dataJson).withId(TEST_RECORD_ID).build();
-
         // mock health data service
-        HealthDataService mockHealthDataService = mock(HealthDataService.class);
+        HealthDataService mockHealthDataService = mockHealthDataService();
+        S3Helper mockS3Helper = mock(S3Helper.class);
+        UploadArtifactsHandler handler = setupHandler(mockHealthDataService, mockS3Helper);
+
+        // set up context
+        // To make sure tests are consistent, use a TreeMap for the attachment map, so that the keys are returned in
+        // alphabetical order.
+        Map<String, byte[]> attachmentMap = new TreeMap<>();
+        attachmentMap.put("bar.txt", BYTES_BAR);
+        attachmentMap.put("foo.txt", BYTES_FOO);
+        UploadValidationContext context = setupContext(attachmentMap);
+
+        // execute
+        handler.handle(context);
+
+        // validate - create attachments. Attachments are written in a single batch, in the order of the attachment
+        // map, all with the same record ID.
+        ArgumentCaptor<List> createAttachmentArgCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mockHealthDataService).createOrUpdateAttachments(createAttachmentArgCaptor.capture());
+        verify(mockHealthDataService, never()).createOrUpdateAttachment(any());
+
+        List<HealthDataAttachment> createAttachmentArgList = createAttachmentArgCaptor.getValue();
+        assertEquals(2, createAttachmentArgList.size());
+
+        String recordId = context.getRecordId();
+        assertNotNull(recordId);
+        for (HealthDataAttachment oneAttachment : createAttachmentArgList) {
+            assertNotNull(oneAttachment.getId());
+            assertEquals(recordId, oneAttachment.getRecordId());
+        }
+        String barAttachmentId = createAttachmentArgList.get(0).getId();
+        String fooAttachmentId = createAttachmentArgList.get(1).getId();
+
+        // validate - S3 uploads
+        verify(mockS3Helper).writeBytesToS3(TestConstants.ATTACHMENT_BUCKET, barAttachmentId, BYTES_BAR);
+        verify(mockS3Helper).writeBytesToS3(TestConstants.ATTACHMENT_BUCKET, fooAttachmentId, BYTES_FOO);
 
+        // validate - record is written exactly once, with the pre-assigned record ID and attachment references
         ArgumentCaptor<HealthDataRecord> createRecordArgCaptor = ArgumentCaptor.forClass(HealthDataRecord.class);
-        when(mockHealthDataService.createOrUpdateRecord(createRecordArgCaptor.capture())).thenReturn(TEST_RECORD_ID);
+        verify(mockHealthDataService).createOrUpdateRecord(createRecordArgCaptor.capture());
+        verify(mockHealthDataService, never()).getRecordById(any());
 
-        ArgumentCaptor<HealthDataAttachment> createAttachmentArgCaptor = ArgumentCaptor.forClass(
-                HealthDataAttachment.class);
-        when(mockHealthDataService.createOrUpdateAttachment(createAttachmentArgCaptor.capture())).thenReturn(
-                ATTACHMENT_ID_BAR, ATTACHMENT_ID_FOO);
+        HealthDataRecord createRecordArg = createRecordArgCaptor.getValue();
+        assertRecordFields(recordId, createRecordArg);
 
-        when(mockHealthDataService.getRecordById(TEST_RECORD_ID)).thenReturn(intermediateRecord);
+        JsonNode createRecordDataJson = createRecordArg.getData();
+        assertEquals(4, createRecordDataJson.size());
+        assertEquals("This is a string", createRecordDataJson.get("json.json.string").textValue());
+        assertEquals(42, createRecordDataJson.get("json.json.int").intValue());
+        assertEquals(barAttachmentId, createRecordDataJson.get("bar.txt").textValue());
+        assertEquals(fooAttachmentId, createRecordDataJson.get("foo.txt").textValue());
 
-        when(mockHealthDataService.getAttachmentBuilder()).thenAnswer(
-                invocation -> new DynamoHealthDataAttachment.Builder());
+        // validate no messages on the context
+        assertTrue(context.getMessageList().isEmpty());
+    }
+
+    @Test
+    public void noAttachments() throws Exception {
+        HealthDataService mockHealthDataService = mockHealthDataService();
+        S3Helper mockS3Helper = mock(S3Helper.class);
+        UploadArtifactsHandler handler = setupHandler(mockHealthDataService, mockS3Helper);
+        UploadValidationContext context = setupContext(ImmutableMap.of());
+
+        // execute
+        handler.handle(context);
+
+        // validate - no attachments
+        verify(mockHealthDataService, never()).createOrUpdateAttachments(any());
+        verifyZeroInteractions(mockS3Helper);
 
-        when(mockHealthDataService.getRecordBuilder()).thenAnswer(invocation -> new DynamoHealthDataRecord.Builder());
+        // validate - record
+        ArgumentCaptor<HealthDataRecord> createRecordArgCaptor = ArgumentCaptor.forClass(HealthDataRecord.class);
+        verify(mockHealthDataService).createOrUpdateRecord(createRecordArgCaptor.capture());
+
+        HealthDataRecord createRecordArg = createRecordArgCaptor.getValue();
+        assertNotNull(context.getRecordId());
+        assertRecordFields(context.getRecordId(), createRecordArg);
+        assertEquals(2, createRecordArg.getData().size());
+
+        assertTrue(context.getMessageList().isEmpty());
+    }
 
-        // mock S3 helper
+    @Test
+    public void s3Error() throws Exception {
+        HealthDataService mockHealthDataService = mockHealthDataService();
         S3Helper mockS3Helper = mock(S3Helper.class);
+        doThrow(IOException.class).when(mockS3Helper).writeBytesToS3(TestConstants.ATTACHMENT_BUCKET,
+                TEST_ATTACHMENT_ID, BYTES_FOO);
+        when(mockHealthDataService.getAttachmentBuilder()).thenAnswer(
+                invocation -> new DynamoHealthDataAttachment.Builder() {
+                    @Override
+                    public HealthDataAttachmentBuilder withId(String id) {
+                        // Force a known attachment ID so we can make the S3 upload fail.
+                        return super.withId(TEST_ATTACHMENT_ID);
+                    }
+                });
+        UploadArtifactsHandler handler = setupHandler(mockHealthDataService, mockS3Helper);
+        UploadValidationContext context = setupContext(ImmutableMap.of("foo.txt", BYTES_FOO));
 
-        // set up handler
-        UploadArtifactsHandler handler = new UploadArtifactsHandler();
-        handler.setHealthDataService(mockHealthDataService);
-        handler.setS3Helper(mockS3Helper);
+        // execute
+        handler.handle(context);
 
-        // set up context
-        // To make sure tests are consistent, use a TreeMap for the attachment map, so that the keys are returned in
-        // alphabetical order.
-        Map<String, byte[]> attachmentMap = new TreeMap<>();
-        attachmentMap.put("bar.txt", "This is bar".getBytes(Charsets.UTF_8));
-        attachmentMap.put("foo.txt", "This is foo".getBytes(Charsets.UTF_8));
+        // The S3 failure is reported as a message, but the record is still written.
+        verify(mockHealthDataService).createOrUpdateRecord(any());
+        assertEquals(1, context.getMessageList().size());
+        assertTrue(context.getMessageList().get(0).contains("foo.txt"));
+    }
+
+    @Test
+    public void participantOptions() throws Exception {
+        HealthDataRecord record = handleWithParticipantOptions(ImmutableMap.of(
+                ParticipantOption.SHARING_SCOPE.name(), ParticipantOption.SharingScope.ALL_QUALIFIED_RESEARCHERS.name(),
+                ParticipantOption.EXTERNAL_IDENTIFIER.name(), "test-external-id",
+                ParticipantOption.DATA_GROUPS.name(), "test-group1,test-group2"));
+        assertEquals(ParticipantOption.SharingScope.ALL_QUALIFIED_RESEARCHERS, record.getUserSharingScope());
+        assertEquals("test-external-id", record.getUserExternalId());
+        assertEquals(Sets.newHashSet("test-group1", "test-group2"), record.getUserDataGroups());
+    }
+
+    @Test
+    public void noParticipantOptions() throws Exception {
+        HealthDataRecord record = handleWithParticipantOptions(ImmutableMap.of());
+        assertEquals(ParticipantOption.SharingScope.NO_SHARING, record.getUserSharingScope());
+        assertNull(record.getUserExternalId());
+        assertNull(record.getUserDataGroups());
+    }
+
+    @Test
+    public void emptyStringSetConvertedCorrectly() throws Exception {
+        HealthDataRecord record = handleWithParticipantOptions(ImmutableMap.of(
+                ParticipantOption.DATA_GROUPS.name(), ""));
+        assertNull(record.getUserDataGroups());
+    }
 
-        // Most important thing in the record builder is the data map. It's the same as the one we expect back in the
-        // intermediate record
-        HealthDataRecordBuilder recordBuilder = createValidRecordBuilder(dataJson);
+    @Test
+    public void setOfOneStringConvertedCorrectly() throws Exception {
+        HealthDataRecord record = handleWithParticipantOptions(ImmutableMap.of(
+                ParticipantOption.DATA_GROUPS.name(), "group1"));
+        assertEquals(Sets.newHashSet("group1"), record.getUserDataGroups());
+    }
+
+    // Runs the handler with the given participant options in the context, and returns the record it wrote.
+    private static HealthDataRecord handleWithParticipantOptions(Map<String, String> optionMap) throws Exception {
+        HealthDataService mockHealthDataService = mockHealthDataService();
+        UploadArtifactsHandler handler = setupHandler(mockHealthDataService, mock(S3Helper.class));
+        UploadValidationContext context = setupContext(ImmutableMap.of());
+        context.setParticipantOptions(new ParticipantOptionsLookup(optionMap));
+
+        handler.handle(context);
+
+        ArgumentCaptor<HealthDataRecord> createRecordArgCaptor = ArgumentCaptor.forClass(HealthDataRecord.class);
+        verify(mockHealthDataService).createOrUpdateRecord(createRecordArgCaptor.capture());
+        return createRecordArgCaptor.getValue();
+    }
+
+    private static HealthDataService mockHealthDataService() {
+        HealthDataService mockHealthDataService = mock(HealthDataService.class);
+        when(mockHealthDataService.getAttachmentBuilder()).thenAnswer(
+                invocation -> new DynamoHealthDataAttachment.Builder());
+        return mockHealthDataService;
+    }
+
+    private static UploadArtifactsHandler setupHandler(HealthDataService healthDataService, S3Helper s3Helper) {
+        // Direct executor, so that S3 uploads happen on the test thread.
+        UploadArtifactsHandler handler = new UploadArtifactsHandler();
+        handler.setAttachmentExecutorService(MoreExecutors.newDirectExecutorService());
+        handler.setHealthDataService(healthDataService);
+        handler.setS3Helper(s3Helper);
+        return handler;
+    }
+
+    private static UploadValidationContext setupContext(Map<String, byte[]> attachmentMap) throws Exception {
+        String dataJsonText = "{\n" +
+                "   \"json.json.string\":\"This is a string\",\n" +
+                "   \"json.json.int\":42\n" +
+                "}";
+        JsonNode dataJson = BridgeObjectMapper.get().readTree(dataJsonText);
 
         // only need upload ID from upload
         DynamoUpload2 upload = new DynamoUpload2();
@@ -98,82 +240,27 @@ public class UploadArtifactsHandlerTest {
 
         UploadValidationContext context = new UploadValidationContext();
         context.setAttachmentsByFieldName(attachmentMap);
-        context.setHealthDataRecordBuilder(recordBuilder);
+        context.setHealthDataRecordBuilder(createValidRecordBuilder(dataJson));
         context.setUpload(upload);
+        return context;
+    }
 
-        // execute
-        handler.handle(context);
-
-        // validate result - create record
-        List<HealthDataRecord> createRecordArgList = createRecordArgCaptor.getAllValues();
-        assertEquals(2, createRecordArgList.size());
-
-        // First record is the intermediate record. This will have data, but no record ID, since record ID is assigned
-        // by this call.
-        HealthDataRecord createIntermediateRecordArg = createRecordArgList.get(0);
-        assertEquals("dummy-healthcode", createIntermediateRecordArg.getHealthCode());
-        assertNull(createIntermediateRecordArg.getId());
-        assertEquals(ARBITRARY_TIMESTAMP, createIntermediateRecordArg.getCreatedOn().longValue());
-        assertEquals("dummy-schema", createIntermediateRecordArg.getSchemaId());
-        assertEquals(1, createIntermediateRecordArg.getSchemaRevision());
-        assertEquals("dummy-study", createIntermediateRecordArg.getStudyId());
-        assertEquals("2015-11-18", createIntermediateRecordArg.getUploadDate().toString(ISODateTimeFormat.date()));
-        assertEquals(TEST_UPLOAD_ID, createIntermediateRecordArg.getUploadId());
-        assertEquals("dummy-external-ID", createIntermediateRecordArg.getUserExternalId());
-        assertEquals(ParticipantOption.SharingScope.SPONSORS_AND_PARTNERS, createIntermediateRecordArg.getUserSharingScope());
-        assertEquals(USER_DATA_GROUPS, createIntermediateRecordArg.getUserDataGroups());
-        assertEquals(42, createIntermediateRecordArg.getVersion().longValue());
-
-        assertTrue(createIntermediateRecordArg.getMetadata().isObject());
-        assertEquals(0, createIntermediateRecordArg.getMetadata().size());
-
-        JsonNode createIntermediateRecordDataJson = createIntermediateRecordArg.getData();
-        assertEquals(2, createIntermediateRecordDataJson.size());
-        assertEquals("This is a string", createIntermediateRecordDataJson.get("json.json.string").textValue());
-        assertEquals(42, createIntermediateRecordDataJson.get("json.json.int").intValue());
-
-        // Second record is the final record. This has data (with attachments) and record ID;
-        HealthDataRecord createFinalRecordArg = createRecordArgList.get(1);
-        assertEquals("dummy-healthcode", createFinalRecordArg.getHealthCode());
-        assertEquals(TEST_RECORD_ID, createFinalRecordArg.getId());
-        assertEquals(ARBITRARY_TIMESTAMP, createFinalRecordArg.getCreatedOn().longValue());
-        assertEquals("dummy-schema", createFinalRecordArg.getSchemaId());
-        assertEquals(1, createFinalRecordArg.getSchemaRevision());
-        assertEquals("dummy-study", createFinalRecordArg.getStudyId());
-        assertEquals("2015-11-18", createFinalRecordArg.getUploadDate().toString(ISODateTimeFormat.date()));
-        assertEquals(TEST_UPLOAD_ID, createFinalRecordArg.getUploadId());
-        assertEquals("dummy-external-ID", createFinalRecordArg.getUserExternalId());
-        assertEquals(ParticipantOption.SharingScope.SPONSORS_AND_PARTNERS, createFinalRecordArg.getUserSharingScope());
-        assertEquals(USER_DATA_GROUPS, createFinalRecordArg.getUserDataGroups());
-        assertEquals(42, createFinalRecordArg.getVersion().longValue());
-
-        assertTrue(createFinalRecordArg.getMetadata().isObject());
-        assertEquals(0, createFinalRecordArg.getMetadata().size());
-
-        JsonNode createFinalRecordDataJson = createFinalRecordArg.getData();
-        assertEquals(4, createFinalRecordDataJson.size());
-        assertEquals("This is a string", createFinalRecordDataJson.get("json.json.string").textValue());
-        assertEquals(42, createFinalRecordDataJson.get("json.json.int").intValue());
-        assertEquals(ATTACHMENT_ID_BAR, createFinalRecordDataJson.get("bar.txt").textValue());
-        assertEquals(ATTACHMENT_ID_FOO, createFinalRecordDataJson.get("foo.txt").textValue());
-
-        // validate - create attachment. The order doesn't matter, since the call to create
-        // attachment only includes the record ID, which is the same for all attachments in a given record.
-        List<HealthDataAttachment> createAttachmentArgList = createAttachmentArgCaptor.getAllValues();
-        assertEquals(2, createAttachmentArgList.size());
-        for (HealthDataAttachment oneAttachment : createAttachmentArgList) {
-            assertEquals(TEST_RECORD_ID, oneAttachment.getRecordId());
-        }
-
-        // validate - S3 uploads
-        verify(mockS3Helper).writeBytesToS3(TestConstants.ATTACHMENT_BUCKET, ATTACHMENT_ID_BAR, BYTES_BAR);
-        verify(mockS3Helper).writeBytesToS3(TestConstants.ATTACHMENT_BUCKET, ATTACHMENT_ID_FOO, BYTES_FOO);
-
-        // validate record ID in the context
-        assertEquals(TEST_RECORD_ID, context.getRecordId());
-
-        // validate no messages on the context
-        assertTrue(context.getMessageList().isEmpty());
+    private static void assertRecordFields(String expectedRecordId, HealthDataRecord record) {
+        assertEquals("dummy-healthcode", record.getHealthCode());
+        assertEquals(expectedRecordId, record.getId());
+        assertEquals(ARBITRARY_TIMESTAMP, record.getCreatedOn().longValue());
+        assertEquals("dummy-schema", record.getSchemaId());
+        assertEquals(1, record.getSchemaRevision());
+        assertEquals("dummy-study", record.getStudyId());
+        assertEquals("2015-11-18", record.getUploadDate().toString(ISODateTimeFormat.date()));
+        assertEquals(TEST_UPLOAD_ID, record.getUploadId());
+        assertEquals("dummy-external-ID", record.getUserExternalId());
+        assertEquals(ParticipantOption.SharingScope.SPONSORS_AND_PARTNERS, record.getUserSharingScope());
+        assertEquals(USER_DATA_GROUPS, record.getUserDataGroups());
+        assertEquals(42, record.getVersion().longValue());
+
+        assertTrue(record.getMetadata().isObject());
+        assertEquals(0, record.getMetadata().size());
     }
 
     // creates a record builder that has all the valid values filled in, with the data JsonNode specified
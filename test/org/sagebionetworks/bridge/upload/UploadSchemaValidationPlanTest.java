@@ -0,0 +1,87 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadFieldDefinition;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadSchema;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadFieldType;
+
+public class UploadSchemaValidationPlanTest {
+    private static final int NUM_WIDE_FIELDS = 200;
+
+    @Test
+    public void emptySchema() {
+        DynamoUploadSchema schema = new DynamoUploadSchema();
+        schema.setFieldDefinitions(ImmutableList.of());
+
+        UploadSchemaValidationPlan plan = UploadSchemaValidationPlan.compile(schema);
+        assertTrue(plan.validate(ImmutableSet.of(), BridgeObjectMapper.get().createObjectNode()).isEmpty());
+    }
+
+    @Test
+    public void wideSchema() {
+        // Make a wide schema, alternating between required ints, optional strings, and required attachments.
+        List<UploadFieldDefinition> fieldDefList = new ArrayList<>();
+        for (int i = 0; i < NUM_WIDE_FIELDS; i++) {
+            UploadFieldType type;
+            boolean required;
+            switch (i % 3) {
+                case 0:
+                    type = UploadFieldType.INT;
+                    required = true;
+                    break;
+                case 1:
+                    type = UploadFieldType.STRING;
+                    required = false;
+                    break;
+                default:
+                    type = UploadFieldType.ATTACHMENT_BLOB;
+                    required = true;
+                    break;
+            }
+            fieldDefList.add(new DynamoUploadFieldDefinition.Builder().withName("field" + i).withType(type)
+                    .withRequired(required).build());
+        }
+        DynamoUploadSchema schema = new DynamoUploadSchema();
+        schema.setFieldDefinitions(fieldDefList);
+        UploadSchemaValidationPlan plan = UploadSchemaValidationPlan.compile(schema);
+
+        // Fill in all fields correctly, except field0 (missing int), field1 (int instead of string), and field2
+        // (missing attachment).
+        ObjectNode recordDataNode = BridgeObjectMapper.get().createObjectNode();
+        ImmutableSet.Builder<String> attachmentFieldNameSetBuilder = ImmutableSet.builder();
+        recordDataNode.put("field1", 42);
+        for (int i = 3; i < NUM_WIDE_FIELDS; i++) {
+            switch (i % 3) {
+                case 0:
+                    recordDataNode.put("field" + i, i);
+                    break;
+                case 1:
+                    recordDataNode.put("field" + i, "value" + i);
+                    break;
+                default:
+                    attachmentFieldNameSetBuilder.add("field" + i);
+                    break;
+            }
+        }
+
+        // Validate twice, to make sure the plan can be re-used. Errors are in schema order.
+        for (int i = 0; i < 2; i++) {
+            List<String> errorList = plan.validate(attachmentFieldNameSetBuilder.build(), recordDataNode);
+            assertEquals(ImmutableList.of("Required field field0 missing",
+                    "Expected field field1 to be STRING, but was instead JSON type NUMBER",
+                    "Required attachment field field2 missing"), errorList);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UploadValidationStatusNotifierTest {
+    private static final long LONG_TIMEOUT_MILLIS = 60000;
+
+    private ScheduledExecutorService executorService;
+    private UploadValidationStatusNotifier notifier;
+
+    @Before
+    public void before() {
+        executorService = new ScheduledThreadPoolExecutor(1);
+        notifier = new UploadValidationStatusNotifier();
+        notifier.setExecutorService(executorService);
+    }
+
+    @After
+    public void after() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void notifyWakesWaiters() throws Exception {
+        CompletableFuture<Void> waiter1 = notifier.awaitValidation("test-upload", LONG_TIMEOUT_MILLIS, () -> false);
+        CompletableFuture<Void> waiter2 = notifier.awaitValidation("test-upload", LONG_TIMEOUT_MILLIS, () -> false);
+        CompletableFuture<Void> otherWaiter = notifier.awaitValidation("other-upload", LONG_TIMEOUT_MILLIS, () -> false);
+        assertFalse(waiter1.isDone());
+        assertFalse(waiter2.isDone());
+        assertEquals(3, notifier.getWaiterCount());
+
+        notifier.notifyValidationComplete("test-upload");
+        waiter1.get(1, TimeUnit.SECONDS);
+        waiter2.get(1, TimeUnit.SECONDS);
+        assertFalse(otherWaiter.isDone());
+        assertEquals(1, notifier.getWaiterCount());
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        CompletableFuture<Void> waiter = notifier.awaitValidation("test-upload", 10, () -> false);
+        waiter.get(1, TimeUnit.SECONDS);
+
+        // Timed out waiters are cleaned up. Wait for the timeout task to finish, since the waiter is completed after
+        // it's removed.
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.SECONDS);
+        assertEquals(0, notifier.getWaiterCount());
+    }
+
+    @Test
+    public void recheckWakesWaiter() throws Exception {
+        // Validation completes on another node, so there's no notification. The status re-check picks it up.
+        notifier.setRecheckIntervalMillis(10);
+        AtomicBoolean isComplete = new AtomicBoolean(false);
+        CompletableFuture<Void> waiter = notifier.awaitValidation("test-upload", LONG_TIMEOUT_MILLIS,
+                isComplete::get);
+        assertFalse(waiter.isDone());
+
+        isComplete.set(true);
+        waiter.get(1, TimeUnit.SECONDS);
+        assertEquals(0, notifier.getWaiterCount());
+    }
+
+    @Test
+    public void recheckErrorKeepsWaiting() throws Exception {
+        notifier.setRecheckIntervalMillis(10);
+        AtomicInteger checkCount = new AtomicInteger();
+        CompletableFuture<Void> waiter = notifier.awaitValidation("test-upload", LONG_TIMEOUT_MILLIS, () -> {
+            if (checkCount.incrementAndGet() == 1) {
+                throw new RuntimeException("test exception");
+            }
+            return true;
+        });
+
+        waiter.get(1, TimeUnit.SECONDS);
+        assertEquals(2, checkCount.get());
+    }
+
+    @Test
+    public void recentlyCompleted() {
+        notifier.notifyValidationComplete("test-upload");
+
+        // Waiting after completion returns right away.
+        CompletableFuture<Void> waiter = notifier.awaitValidation("test-upload", LONG_TIMEOUT_MILLIS, () -> false);
+        assertTrue(waiter.isDone());
+        assertEquals(0, notifier.getWaiterCount());
+    }
+
+    @Test
+    public void notifyWithNoWaiters() {
+        // Doesn't throw.
+        notifier.notifyValidationComplete("test-upload");
+        assertEquals(0, notifier.getWaiterCount());
+    }
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.assertSame;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 import org.sagebionetworks.bridge.TestUtils;
@@ -23,6 +25,12 @@ public class UploadValidationTaskFactoryTest {
         taskFactory.setHandlerList(handlerList);
         taskFactory.setUploadDao(dao);
 
+        UploadValidationStatusNotifier notifier = new UploadValidationStatusNotifier();
+        taskFactory.setUploadValidationStatusNotifier(notifier);
+
+        ExecutorService handlerExecutorService = Executors.newSingleThreadExecutor();
+        taskFactory.setHandlerExecutorService(handlerExecutorService);
+
         // inputs
         DynamoStudy study = TestUtils.getValidStudy(UploadValidationTaskFactoryTest.class);
         DynamoUpload2 upload2 = new DynamoUpload2();
@@ -33,5 +41,8 @@ public class UploadValidationTaskFactoryTest {
         assertSame(upload2, task.getContext().getUpload());
         assertSame(handlerList, task.getHandlerList());
         assertSame(dao, task.getUploadDao());
+        assertSame(notifier, task.getUploadValidationStatusNotifier());
+        assertSame(handlerExecutorService, task.getHandlerExecutorService());
+        handlerExecutorService.shutdown();
     }
 }
@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.upload;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -13,9 +14,13 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import javax.annotation.Nonnull;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import org.junit.Test;
 import org.sagebionetworks.bridge.TestUtils;
@@ -35,6 +40,7 @@ public class UploadValidationTaskTest {
         // execute
         UploadValidationContext ctx = testHelper(handlerList, UploadStatus.SUCCEEDED, "test-record-id");
         assertTrue(ctx.getSuccess());
+        assertNull(ctx.getHandlerException());
 
         // validate that the handlers ran by checking the messages they wrote
         List<String> messageList = ctx.getMessageList();
@@ -78,6 +84,7 @@ public class UploadValidationTaskTest {
         // execute
         UploadValidationContext ctx = testHelper(handlerList, UploadStatus.VALIDATION_FAILED, null);
         assertFalse(ctx.getSuccess());
+        assertTrue(exClass.isInstance(ctx.getHandlerException()));
 
         // Validate validation messages. First message is foo handler. Second message is error message. Just check that
         // the second message exists.
@@ -87,9 +94,95 @@ public class UploadValidationTaskTest {
         assertFalse(Strings.isNullOrEmpty(messageList.get(1)));
     }
 
+    @Test
+    public void makeStagesForProductionHandlers() {
+        UploadValidationHandler s3DownloadHandler = new S3DownloadHandler();
+        UploadValidationHandler decryptHandler = new DecryptHandler();
+        UploadValidationHandler unzipHandler = new UnzipHandler();
+        UploadValidationHandler parseJsonHandler = new ParseJsonHandler();
+        UploadValidationHandler iosSchemaValidationHandler = new IosSchemaValidationHandler2();
+        UploadValidationHandler strictValidationHandler = new StrictValidationHandler();
+        UploadValidationHandler transcribeConsentHandler = new TranscribeConsentHandler();
+        UploadValidationHandler uploadArtifactsHandler = new UploadArtifactsHandler();
+
+        List<List<UploadValidationHandler>> stageList = UploadValidationTask.makeStages(ImmutableList.of(
+                s3DownloadHandler, decryptHandler, unzipHandler, parseJsonHandler, iosSchemaValidationHandler,
+                strictValidationHandler, transcribeConsentHandler, uploadArtifactsHandler));
+
+        // Only strict validation and consent transcription are independent.
+        assertEquals(ImmutableList.of(ImmutableList.of(s3DownloadHandler), ImmutableList.of(decryptHandler),
+                ImmutableList.of(unzipHandler), ImmutableList.of(parseJsonHandler),
+                ImmutableList.of(iosSchemaValidationHandler),
+                ImmutableList.of(strictValidationHandler, transcribeConsentHandler),
+                ImmutableList.of(uploadArtifactsHandler)), stageList);
+    }
+
+    @Test
+    public void makeStagesUndeclaredKeys() {
+        // Handlers that don't declare keys always get their own stage.
+        UploadValidationHandler fooHandler = new MessageHandler("foo");
+        UploadValidationHandler barHandler = new KeyedMessageHandler("bar");
+        UploadValidationHandler bazHandler = new KeyedMessageHandler("baz");
+        UploadValidationHandler quxHandler = new MessageHandler("qux");
+
+        List<List<UploadValidationHandler>> stageList = UploadValidationTask.makeStages(ImmutableList.of(fooHandler,
+                barHandler, bazHandler, quxHandler));
+        assertEquals(ImmutableList.of(ImmutableList.of(fooHandler), ImmutableList.of(barHandler, bazHandler),
+                ImmutableList.of(quxHandler)), stageList);
+    }
+
+    @Test
+    public void concurrentStage() {
+        // foo and bar run concurrently, then the record ID handler runs by itself.
+        List<UploadValidationHandler> handlerList = ImmutableList.of(new KeyedMessageHandler("foo was here"),
+                new KeyedMessageHandler("bar was here"), new RecordIdHandler("test-record-id"));
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            UploadValidationContext ctx = testHelper(handlerList, executorService, UploadStatus.SUCCEEDED,
+                    "test-record-id");
+            assertTrue(ctx.getSuccess());
+            assertEquals(ImmutableList.of("foo was here", "bar was here"), ctx.getMessageList());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentStageException() throws Exception {
+        // foo throws. bar runs concurrently with foo, but since it comes after foo, its results are dropped.
+        UploadValidationHandler fooHandler = new KeyedMessageHandler("foo") {
+            @Override
+            public void handle(@Nonnull UploadValidationContext context) {
+                throw new RuntimeException("foo failed");
+            }
+        };
+        List<UploadValidationHandler> handlerList = ImmutableList.of(fooHandler,
+                new KeyedMessageHandler("bar was here"), new RecordIdHandler("never called"));
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            UploadValidationContext ctx = testHelper(handlerList, executorService, UploadStatus.VALIDATION_FAILED,
+                    null);
+            assertFalse(ctx.getSuccess());
+            assertEquals("foo failed", ctx.getHandlerException().getMessage());
+
+            List<String> messageList = ctx.getMessageList();
+            assertEquals(1, messageList.size());
+            assertTrue(messageList.get(0).contains("foo failed"));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
     // helper test method, encapsulating core setup and validation
     private static UploadValidationContext testHelper(List<UploadValidationHandler> handlerList,
             UploadStatus expectedStatus, String expectedRecordId) {
+        return testHelper(handlerList, null, expectedStatus, expectedRecordId);
+    }
+
+    private static UploadValidationContext testHelper(List<UploadValidationHandler> handlerList,
+            ExecutorService handlerExecutorService, UploadStatus expectedStatus, String expectedRecordId) {
         // input
         DynamoStudy study = TestUtils.getValidStudy(UploadValidationTaskTest.class);
 
@@ -107,13 +200,21 @@ public class UploadValidationTaskTest {
         UploadValidationTask task = new UploadValidationTask(ctx);
         task.setHandlerList(handlerList);
         task.setUploadDao(mockDao);
+        task.setHandlerExecutorService(handlerExecutorService);
+
+        UploadValidationStatusNotifier mockNotifier = mock(UploadValidationStatusNotifier.class);
+        task.setUploadValidationStatusNotifier(mockNotifier);
 
         // execute
         task.run();
+        assertEquals(expectedStatus, task.getValidationStatus());
 
         // validate the upload dao write validation status call
         verify(mockDao).writeValidationStatus(upload2, expectedStatus, ctx.getMessageList(), expectedRecordId);
 
+        // validate that waiting callers are woken up
+        verify(mockNotifier).notifyValidationComplete("test-upload");
+
         return ctx;
     }
 
@@ -143,11 +244,17 @@ public class UploadValidationTaskTest {
         task.setHandlerList(handlerList);
         task.setUploadDao(mockDao);
 
+        UploadValidationStatusNotifier mockNotifier = mock(UploadValidationStatusNotifier.class);
+        task.setUploadValidationStatusNotifier(mockNotifier);
+
         // execute
         task.run();
 
         // verify log helper was called
         verify(task).logWriteValidationStatusException(UploadStatus.SUCCEEDED, toThrow);
+
+        // Waiting callers are still woken up.
+        verify(mockNotifier).notifyValidationComplete("test-upload");
     }
 
     // Test handler that makes its presence known only by writing a message to the validation context.
@@ -164,6 +271,24 @@ public class UploadValidationTaskTest {
         }
     }
 
+    // Message handler that declares it doesn't read or write any context data, so it can run concurrently with other
+    // handlers like it.
+    private static class KeyedMessageHandler extends MessageHandler {
+        public KeyedMessageHandler(String message) {
+            super(message);
+        }
+
+        @Override
+        public Set<UploadValidationContextKey> getReadKeys() {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public Set<UploadValidationContextKey> getWriteKeys() {
+            return ImmutableSet.of();
+        }
+    }
+
     // Test handler that simulates writing the record ID to the context, so we can test writing the record ID to the
     // validation status.
     private static class RecordIdHandler implements UploadValidationHandler {
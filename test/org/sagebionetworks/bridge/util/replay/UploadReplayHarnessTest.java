@@ -0,0 +1,216 @@
+package org.sagebionetworks.bridge.util.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurveyQuestion;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
+import org.sagebionetworks.bridge.models.surveys.BooleanConstraints;
+import org.sagebionetworks.bridge.models.surveys.SurveyQuestion;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.services.UploadSchemaService;
+import org.sagebionetworks.bridge.upload.IosSchemaValidationHandler2;
+import org.sagebionetworks.bridge.upload.UploadValidationContext;
+import org.sagebionetworks.bridge.upload.UploadValidationContextKey;
+import org.sagebionetworks.bridge.upload.UploadValidationException;
+import org.sagebionetworks.bridge.upload.UploadValidationHandler;
+
+public class UploadReplayHarnessTest {
+    @Test
+    public void replay() throws Exception {
+        // First handler fails uploads whose ID starts with "bad". Second handler counts calls.
+        UploadValidationHandler failingHandler = context -> {
+            if (context.getUpload().getUploadId().startsWith("bad")) {
+                throw new UploadValidationException("bad upload");
+            }
+        };
+        AtomicInteger countingHandlerCalls = new AtomicInteger();
+        UploadValidationHandler countingHandler = context -> countingHandlerCalls.incrementAndGet();
+
+        UploadReplayHarness harness = new UploadReplayHarness(TestConstants.TEST_STUDY, ImmutableList.of(
+                failingHandler, countingHandler), 4);
+        harness.replay(ImmutableList.of("good-1", "good-2", "good-3", "bad-1"));
+
+        // Failed uploads stop at the failing handler.
+        assertEquals(3, harness.getSuccessCount());
+        assertEquals(1, harness.getFailureCount());
+        assertEquals(3, countingHandlerCalls.get());
+
+        List<HandlerStats> statsList = harness.getHandlerStats();
+        assertEquals(2, statsList.size());
+        assertEquals(4, statsList.get(0).getCount());
+        assertEquals(1, statsList.get(0).getFailureCount());
+        assertEquals(3, statsList.get(1).getCount());
+        assertEquals(0, statsList.get(1).getFailureCount());
+
+        String report = harness.getReport();
+        assertTrue(report.startsWith("Replayed 4 uploads (3 succeeded, 1 failed)"));
+    }
+
+    @Test
+    public void replayWithHandlerExecutor() throws Exception {
+        // Two independent handlers, which the validation task runs concurrently on the handler executor.
+        AtomicInteger fooCalls = new AtomicInteger();
+        AtomicInteger barCalls = new AtomicInteger();
+        ExecutorService handlerExecutorService = Executors.newSingleThreadExecutor();
+        try {
+            UploadReplayHarness harness = new UploadReplayHarness(TestConstants.TEST_STUDY, ImmutableList.of(
+                    new ReadUploadHandler(fooCalls), new ReadUploadHandler(barCalls)), 2, handlerExecutorService);
+            harness.replay(ImmutableList.of("upload-1", "upload-2"));
+
+            assertEquals(2, harness.getSuccessCount());
+            assertEquals(0, harness.getFailureCount());
+            assertEquals(2, fooCalls.get());
+            assertEquals(2, barCalls.get());
+            for (HandlerStats oneStats : harness.getHandlerStats()) {
+                assertEquals(2, oneStats.getCount());
+            }
+        } finally {
+            handlerExecutorService.shutdown();
+        }
+    }
+
+    @Test
+    public void replaySurvey() throws Exception {
+        // Write a survey to the survey dir, in the survey API format, and load it the same way the replay util does.
+        DateTime surveyCreatedOn = DateTime.parse("2016-03-01T10:00:00.000Z");
+        BooleanConstraints constraints = new BooleanConstraints();
+        SurveyQuestion question = new DynamoSurveyQuestion();
+        question.setIdentifier("high_bp");
+        question.setConstraints(constraints);
+
+        DynamoSurvey survey = new DynamoSurvey("test-survey-guid", surveyCreatedOn.getMillis());
+        survey.setIdentifier("test-survey");
+        survey.setName("Test Survey");
+        survey.setElements(ImmutableList.of(question));
+
+        File surveyDir = Files.createTempDirectory("UploadReplayHarnessTest").toFile();
+        File surveyFile = new File(surveyDir, "test-survey.json");
+        UploadSchemaService uploadSchemaService = new UploadSchemaService();
+        uploadSchemaService.setUploadSchemaDao(new InMemoryUploadSchemaDao());
+        InMemorySurveyService surveyService = new InMemorySurveyService(TestConstants.TEST_STUDY,
+                uploadSchemaService);
+        try {
+            BridgeObjectMapper.get().writeValue(surveyFile, survey);
+            UploadReplayUtil.loadSurveys(surveyService, surveyDir);
+        } finally {
+            surveyFile.delete();
+            surveyDir.delete();
+        }
+
+        // Loading the survey creates its schema.
+        UploadSchema schema = uploadSchemaService.getUploadSchema(TestConstants.TEST_STUDY, "test-survey");
+        assertEquals(1, schema.getFieldDefinitions().size());
+        assertEquals("high_bp", schema.getFieldDefinitions().get(0).getName());
+
+        // First handler stands in for unzipping and parsing, with a survey answer that references the survey by guid
+        // and createdOn. Then the real schema validation handler, then a handler that captures the record.
+        UploadValidationHandler parseHandler = context -> {
+            ObjectNode infoJson = BridgeObjectMapper.get().createObjectNode();
+            infoJson.put("surveyGuid", "test-survey-guid");
+            infoJson.put("surveyCreatedOn", surveyCreatedOn.toString());
+            ObjectNode fileJson = infoJson.putArray("files").addObject();
+            fileJson.put("filename", "high_bp.json");
+            fileJson.put("timestamp", "2016-03-02T10:15:00-08:00");
+
+            ObjectNode answerJson = BridgeObjectMapper.get().createObjectNode();
+            answerJson.put("item", "high_bp");
+            answerJson.put("questionType", "Boolean");
+            answerJson.put("booleanAnswer", true);
+
+            Map<String, JsonNode> jsonDataMap = new HashMap<>();
+            jsonDataMap.put("info.json", infoJson);
+            jsonDataMap.put("high_bp.json", answerJson);
+            context.setJsonDataMap(jsonDataMap);
+            context.setUnzippedDataMap(new HashMap<>());
+        };
+
+        IosSchemaValidationHandler2 schemaValidationHandler = new IosSchemaValidationHandler2();
+        schemaValidationHandler.setHealthDataDao(new InMemoryHealthDataDao());
+        schemaValidationHandler.setSurveyService(surveyService);
+        schemaValidationHandler.setUploadSchemaService(uploadSchemaService);
+
+        Map<String, HealthDataRecordBuilder> recordBuilderByUploadId = new HashMap<>();
+        UploadValidationHandler captureHandler = context -> {
+            synchronized (recordBuilderByUploadId) {
+                recordBuilderByUploadId.put(context.getUpload().getUploadId(), context.getHealthDataRecordBuilder());
+            }
+        };
+
+        UploadReplayHarness harness = new UploadReplayHarness(TestConstants.TEST_STUDY, ImmutableList.of(
+                parseHandler, schemaValidationHandler, captureHandler), 2);
+        harness.replay(ImmutableList.of("survey-1", "survey-2"));
+        assertEquals(2, harness.getSuccessCount());
+        assertEquals(0, harness.getFailureCount());
+
+        assertEquals(2, recordBuilderByUploadId.size());
+        for (HealthDataRecordBuilder oneRecordBuilder : recordBuilderByUploadId.values()) {
+            assertEquals("test-survey", oneRecordBuilder.getSchemaId());
+            assertEquals(schema.getRevision(), oneRecordBuilder.getSchemaRevision());
+            assertTrue(oneRecordBuilder.getData().get("high_bp").booleanValue());
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        HandlerStats stats = new HandlerStats("test");
+        assertEquals(0, stats.getPercentileNanos(50));
+
+        // Record 1 through 100, out of order.
+        for (int i = 100; i >= 1; i--) {
+            stats.record(i, 10, true);
+        }
+        assertEquals(100, stats.getCount());
+        assertEquals(50, stats.getPercentileNanos(50));
+        assertEquals(90, stats.getPercentileNanos(90));
+        assertEquals(99, stats.getPercentileNanos(99));
+        assertEquals(100, stats.getPercentileNanos(100));
+        assertEquals(5050, stats.getTotalNanos());
+        assertEquals(1000, stats.getAllocatedBytes());
+    }
+
+    // Handler that only reads the upload and counts calls.
+    private static class ReadUploadHandler implements UploadValidationHandler {
+        private final AtomicInteger callCount;
+
+        ReadUploadHandler(AtomicInteger callCount) {
+            this.callCount = callCount;
+        }
+
+        @Override
+        public Set<UploadValidationContextKey> getReadKeys() {
+            return ImmutableSet.of(UploadValidationContextKey.UPLOAD);
+        }
+
+        @Override
+        public Set<UploadValidationContextKey> getWriteKeys() {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public void handle(@Nonnull UploadValidationContext context) {
+            callCount.incrementAndGet();
+        }
+    }
+}